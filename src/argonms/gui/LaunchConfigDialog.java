@@ -19,6 +19,8 @@
 package argonms.gui;
 
 import argonms.gui.model.Configuration;
+import argonms.gui.model.JvmProfile;
+import argonms.gui.model.ServerRole;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.FlowLayout;
@@ -40,6 +42,7 @@ import javax.swing.BorderFactory;
 import javax.swing.DefaultListModel;
 import javax.swing.JButton;
 import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
 import javax.swing.JDialog;
 import javax.swing.JLabel;
 import javax.swing.JList;
@@ -141,6 +144,14 @@ public class LaunchConfigDialog extends JDialog {
 		c.gridy = 7;
 		c.weightx = 0;
 		add(constructScriptPathPanel(), c);
+		c.anchor = GridBagConstraints.LAST_LINE_START;
+		c.gridwidth = 1;
+		c.gridheight = 1;
+		c.fill = GridBagConstraints.BOTH;
+		c.gridx = 0;
+		c.gridy = 8;
+		c.weightx = 0;
+		add(constructJvmOptionsPanel(), c);
 
 		//right column
 		c.anchor = GridBagConstraints.FIRST_LINE_END;
@@ -1045,6 +1056,32 @@ public class LaunchConfigDialog extends JDialog {
 		});
 	}
 
+	/**
+	 * This method is not thread-safe. It must be called from the Swing EDT.
+	 */
+	private JPanel constructJvmOptionsPanel() {
+		JPanel panel = new JPanel();
+		panel.setLayout(new GridLayout(1, ServerRole.values().length));
+		panel.setBorder(BorderFactory.createTitledBorder(
+				BorderFactory.createLineBorder(Color.BLACK), "JVM Options"));
+		for (final ServerRole role : ServerRole.values()) {
+			final String name = Character.toUpperCase(role.getKey().charAt(0)) + role.getKey().substring(1);
+			JButton button = new JButton(name);
+			button.addActionListener(new ActionListener() {
+				@Override
+				public void actionPerformed(ActionEvent e) {
+					JDialog d = new JvmOptionsDialog(LaunchConfigDialog.this, name + " JVM Options",
+							"argonms.gui.jvm." + role.getKey() + ".", m.getConfig().getJvmProfile(role), false);
+					d.setResizable(false);
+					d.pack();
+					d.setVisible(true);
+				}
+			});
+			panel.add(button);
+		}
+		return panel;
+	}
+
 	/**
 	 * This method is not thread-safe. It must be called from the Swing EDT.
 	 */
@@ -1085,36 +1122,8 @@ public class LaunchConfigDialog extends JDialog {
 	 * This method is not thread-safe. It must be called from the Swing EDT.
 	 */
 	private void applyChanges() {
-		byte[] oldGameServerList = null;
-		boolean shopWasEnabled = false;
-		if (changes.containsKey("argonms.gui.game.run"))
-			oldGameServerList = m.getConfig().getEnabledGameServers();
-		if (changes.containsKey("argonms.gui.shop.run"))
-			shopWasEnabled = m.getConfig().isShopEnabled();
 		m.getConfig().updateProps(changes, this);
-		m.getConfig().initialize(this);
-		if (oldGameServerList != null) {
-			byte[] newGameServerList = m.getConfig().getEnabledGameServers();
-			//perform a set difference on enabled game servers
-			//(new list - old list) to find tabs to add
-			for (byte serverId : newGameServerList)
-				if (!contains(oldGameServerList, serverId))
-					m.addGameTab(serverId);
-			//perform a set difference on enabled game servers
-			//(old list - new list) to find tabs to remove
-			for (byte serverId : oldGameServerList)
-				if (!contains(newGameServerList, serverId))
-					m.removeGameTab(serverId);
-		}
-		if (changes.containsKey("argonms.gui.shop.run")) {
-			if (m.getConfig().isShopEnabled()) {
-				if (!shopWasEnabled)
-					m.addShopTab();
-			} else {
-				if (shopWasEnabled)
-					m.removeShopTab();
-			}
-		}
+		m.getConfig().applyChanges(changes, m, this);
 		changes.clear();
 		applyButton.setEnabled(false);
 	}
@@ -1164,6 +1173,7 @@ public class LaunchConfigDialog extends JDialog {
 			if (text == null)
 				text = m.getConfig().getGameServerPropertiesPath(id);
 			final JTextField gamePropsUrl = new JTextField(text, 10);
+			JButton jvmButton = new JButton("JVM Options");
 			JButton okButton = new JButton("OK");
 			JButton cancelButton = new JButton("Cancel");
 			gamePropsUrl.setEditable(false);
@@ -1186,6 +1196,16 @@ public class LaunchConfigDialog extends JDialog {
 					}
 				}
 			});
+			jvmButton.addActionListener(new ActionListener() {
+				@Override
+				public void actionPerformed(ActionEvent e) {
+					JDialog d = new JvmOptionsDialog(GameServerSettings.this, "Game" + id + " JVM Options",
+							"argonms.gui.game." + id + ".jvm.", m.getConfig().getGameServerJvmOverrides(id), true);
+					d.setResizable(false);
+					d.pack();
+					d.setVisible(true);
+				}
+			});
 			okButton.addActionListener(new ActionListener() {
 				@Override
 				public void actionPerformed(ActionEvent e) {
@@ -1211,11 +1231,133 @@ public class LaunchConfigDialog extends JDialog {
 			urlPanel.add(gamePropsLbl);
 			urlPanel.add(gamePropsUrl);
 			add(urlPanel);
+			add(jvmButton);
 			add(okButton);
 			add(cancelButton);
 		}
 	}
 
+	private class JvmOptionsDialog extends JDialog {
+		private final String keyPrefix;
+		private final JTextField heapSize;
+		private final JComboBox gc;
+		private final JTextField flags;
+		private final JTextField properties;
+
+		/**
+		 * This method is not thread-safe. It must be called from the Swing EDT.
+		 * @param keyPrefix the start of the key of each setting in
+		 * launcher.properties
+		 * @param override whether empty settings fall back to the ones of
+		 * every game server rather than to the defaults of the JVM
+		 */
+		public JvmOptionsDialog(JDialog owner, String title, String keyPrefix, JvmProfile current, boolean override) {
+			super(owner, title, true);
+			this.keyPrefix = keyPrefix;
+
+			Integer currentHeapSize = current.getHeapSize();
+			heapSize = new JTextField(getSetting("heap", currentHeapSize == null ? "" : currentHeapSize.toString()), 6);
+			gc = new JComboBox();
+			gc.addItem(override ? "Same as every game server" : "Chosen by the JVM");
+			for (JvmProfile.GarbageCollector collector : JvmProfile.GarbageCollector.values())
+				gc.addItem(collector);
+			JvmProfile.GarbageCollector currentGc = current.getGarbageCollector();
+			JvmProfile.GarbageCollector selectedGc = JvmProfile.GarbageCollector.forKey(getSetting("gc", currentGc == null ? "" : currentGc.getKey()));
+			if (selectedGc != null)
+				gc.setSelectedItem(selectedGc);
+			flags = new JTextField(getSetting("flags", current.getFlags() == null ? "" : current.getFlags()), 30);
+			flags.setToolTipText("Separated by spaces, e.g. \"MaxGCPauseMillis=200 -Xss512k\" (-XX: may be left out)");
+			properties = new JTextField(getSetting("properties", current.getProperties() == null ? "" : current.getProperties()), 30);
+			properties.setToolTipText("Separated by spaces, e.g. \"file.encoding=UTF-8\"");
+
+			final String oldHeapSize = currentHeapSize == null ? "" : currentHeapSize.toString();
+			final String oldGc = currentGc == null ? "" : currentGc.getKey();
+			final String oldFlags = current.getFlags() == null ? "" : current.getFlags();
+			final String oldProperties = current.getProperties() == null ? "" : current.getProperties();
+			JButton okButton = new JButton("OK");
+			JButton cancelButton = new JButton("Cancel");
+			okButton.addActionListener(new ActionListener() {
+				@Override
+				public void actionPerformed(ActionEvent e) {
+					String heap = heapSize.getText().trim();
+					if (!heap.isEmpty() && !heap.matches("\\d{1,6}")) {
+						JOptionPane.showMessageDialog(
+							JvmOptionsDialog.this,
+							"The heap size must be a whole number of megabytes.",
+							"Invalid Heap Size",
+							JOptionPane.ERROR_MESSAGE
+						);
+						return;
+					}
+					Object selectedGc = gc.getSelectedItem();
+					updateSetting("heap", oldHeapSize, heap);
+					updateSetting("gc", oldGc, selectedGc instanceof JvmProfile.GarbageCollector ? ((JvmProfile.GarbageCollector) selectedGc).getKey() : "");
+					updateSetting("flags", oldFlags, flags.getText().trim());
+					updateSetting("properties", oldProperties, properties.getText().trim());
+					applyButton.setEnabled(!changes.isEmpty());
+					dispose();
+				}
+			});
+			cancelButton.addActionListener(new ActionListener() {
+				@Override
+				public void actionPerformed(ActionEvent e) {
+					dispose();
+				}
+			});
+
+			setLayout(new GridBagLayout());
+			GridBagConstraints c = new GridBagConstraints();
+			c.insets = new Insets(5, 5, 5, 5);
+			c.anchor = GridBagConstraints.LINE_START;
+			c.gridx = 0;
+			c.gridy = 0;
+			add(new JLabel("Maximum heap size (MB):"), c);
+			c.gridy = 1;
+			add(new JLabel("Garbage collector:"), c);
+			c.gridy = 2;
+			add(new JLabel("Other JVM flags:"), c);
+			c.gridy = 3;
+			add(new JLabel("System properties:"), c);
+			c.gridx = 1;
+			c.gridy = 0;
+			add(heapSize, c);
+			c.gridy = 1;
+			add(gc, c);
+			c.fill = GridBagConstraints.HORIZONTAL;
+			c.gridy = 2;
+			add(flags, c);
+			c.gridy = 3;
+			add(properties, c);
+			c.fill = GridBagConstraints.NONE;
+			c.gridx = 0;
+			c.gridy = 4;
+			c.gridwidth = 2;
+			add(new JLabel(override ? "Empty settings are the same as for every game server."
+					: "An empty heap size leaves it up to the JVM."), c);
+			JPanel buttonsPanel = new JPanel();
+			buttonsPanel.add(okButton);
+			buttonsPanel.add(cancelButton);
+			c.anchor = GridBagConstraints.LINE_END;
+			c.gridy = 5;
+			add(buttonsPanel, c);
+		}
+
+		/**
+		 * @return the value of the given setting with any unsaved change
+		 */
+		private String getSetting(String setting, String saved) {
+			String changed = changes.get(keyPrefix + setting);
+			return changed != null ? changed : saved;
+		}
+
+		private void updateSetting(String setting, String saved, String value) {
+			if (!value.equals(saved))
+				changes.put(keyPrefix + setting, value);
+			else
+				changes.remove(keyPrefix + setting);
+		}
+	}
+
 	private class ClasspathDialog extends JDialog {
 		private static final int CHARS_PER_LINE = 25;
 
@@ -34,6 +34,7 @@ import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.lang.reflect.InvocationTargetException;
 import java.net.URL;
+import java.util.Arrays;
 
 import javax.swing.JFrame;
 import javax.swing.JLabel;
@@ -42,6 +43,8 @@ import javax.swing.JTabbedPane;
 import javax.swing.JWindow;
 import javax.swing.SwingUtilities;
 
+import argonms.gui.daemon.Daemon;
+import argonms.gui.model.ConfigWatcher;
 import argonms.gui.model.Configuration;
 import argonms.gui.model.Environment;
 import argonms.gui.model.Model;
@@ -51,11 +54,20 @@ import argonms.gui.model.Model;
  * @author GoldenKevin
  */
 public class Main {
-	private static final Dimension SPLASH_SIZE = new Dimension(400, 250);
+	//not a Dimension, so that loading this class does not initialize AWT
+	private static final int SPLASH_WIDTH = 400, SPLASH_HEIGHT = 250;
 
+	/**
+	 * This method is not thread-safe. It must be called from the Swing EDT.
+	 */
 	private static void close(Model m) {
-		m.stopAllProcesses();
-		System.exit(0);
+		//give the servers a chance to shut themselves down before we exit
+		m.stopAllProcesses(new Runnable() {
+			@Override
+			public void run() {
+				System.exit(0);
+			}
+		});
 	}
 
 	private static Model load(Container popup, final JLabel message, final String[] args) throws InterruptedException, InvocationTargetException {
@@ -237,16 +249,26 @@ public class Main {
 	 */
 	private static JWindow constructSplash(JLabel message) {
 		JWindow splash = new JWindow();
+		Dimension splashSize = new Dimension(SPLASH_WIDTH, SPLASH_HEIGHT);
 		Dimension screenSize = Toolkit.getDefaultToolkit().getScreenSize();
 		splash.getContentPane().add(new JLabel("ArgonMS Server Manager"), BorderLayout.PAGE_START);
 		splash.getContentPane().add(message, BorderLayout.PAGE_END);
-		splash.setSize(SPLASH_SIZE);
-		splash.setLocation((screenSize.width / 2) - (SPLASH_SIZE.width / 2),
-				(screenSize.height / 2) - (SPLASH_SIZE.height / 2));
+		splash.setSize(splashSize);
+		splash.setLocation((screenSize.width / 2) - (splashSize.width / 2),
+				(screenSize.height / 2) - (splashSize.height / 2));
 		return splash;
 	}
 
 	public static void main(String[] args) throws InterruptedException, InvocationTargetException {
+		//decide before anything touches AWT, since there may be no display
+		if (args.length > 0 && args[0].equals("--headless")) {
+			Daemon.main(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
+		if (Boolean.getBoolean("java.awt.headless")) {
+			Daemon.main(args);
+			return;
+		}
 		//some wrapper objects that we can pass to the anonymous classes.
 		//this allows us to access objects created inside them.
 		final JWindow[] splash = new JWindow[1];
@@ -272,6 +294,9 @@ public class Main {
 					m.setFrame(window);
 					window.pack();
 					window.setVisible(true);
+					m.validatePathsInBackground();
+					m.getClassDataSharing().refreshFingerprint();
+					new ConfigWatcher(m).start();
 				}
 				splash[0].setVisible(false);
 				splash[0].dispose();
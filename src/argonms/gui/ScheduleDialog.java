@@ -0,0 +1,259 @@
+/*
+ * ArgonMS Server Manager - a process launcher and organizer utilizing Swing.
+ * Copyright (C) 2011-2013  GoldenKevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package argonms.gui;
+
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.FlowLayout;
+import java.awt.GridBagConstraints;
+import java.awt.GridBagLayout;
+import java.awt.Insets;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.swing.BorderFactory;
+import javax.swing.DefaultListModel;
+import javax.swing.JButton;
+import javax.swing.JComboBox;
+import javax.swing.JDialog;
+import javax.swing.JLabel;
+import javax.swing.JList;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTextArea;
+import javax.swing.JTextField;
+import javax.swing.ListSelectionModel;
+import javax.swing.Timer;
+
+import argonms.gui.model.Environment;
+import argonms.gui.model.JobScheduler;
+import argonms.gui.model.Model;
+import argonms.gui.model.ScheduledJob;
+
+/**
+ * Lists the scheduled jobs and when they are next due, lets them be added,
+ * removed and run by hand, and shows what came of their recent runs.
+ * @author GoldenKevin
+ */
+@SuppressWarnings("serial")
+public class ScheduleDialog extends JDialog {
+	private static final int REFRESH_INTERVAL = 1000; //in ms
+
+	private final Model m;
+	private final DateFormat timeFormat;
+	private final List<ScheduledJob> listed;
+	private final DefaultListModel jobNames;
+	private final JList jobs;
+	private final JTextArea history;
+	private final Timer refresher;
+
+	/**
+	 * This method is not thread-safe. It must be called from the Swing EDT.
+	 */
+	public ScheduleDialog(Model model) {
+		super(model.getFrame(), "Scheduled Jobs", false);
+		m = model;
+		timeFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+		listed = new ArrayList<ScheduledJob>();
+
+		jobNames = new DefaultListModel();
+		jobs = new JList(jobNames);
+		jobs.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+		jobs.setVisibleRowCount(8);
+		jobs.setFont(Environment.getConsoleFont());
+		JButton add = new JButton("Add...");
+		add.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				addJob();
+			}
+		});
+		JButton remove = new JButton("Remove");
+		remove.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				ScheduledJob job = getSelectedJob();
+				if (job != null)
+					m.getConfig().removeScheduledJob(job.getName(), m, ScheduleDialog.this);
+				refresh();
+			}
+		});
+		JButton runNow = new JButton("Run Now");
+		runNow.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				ScheduledJob job = getSelectedJob();
+				if (job != null)
+					m.getJobScheduler().run(job);
+				refresh();
+			}
+		});
+		JPanel jobButtons = new JPanel(new FlowLayout(FlowLayout.TRAILING));
+		jobButtons.add(add);
+		jobButtons.add(remove);
+		jobButtons.add(runNow);
+		JPanel jobsPanel = new JPanel(new BorderLayout());
+		jobsPanel.setBorder(BorderFactory.createTitledBorder(
+				BorderFactory.createLineBorder(Color.black), "Jobs"));
+		jobsPanel.add(new JScrollPane(jobs), BorderLayout.CENTER);
+		jobsPanel.add(jobButtons, BorderLayout.PAGE_END);
+
+		history = new JTextArea(12, 100);
+		history.setEditable(false);
+		history.setFont(Environment.getConsoleFont());
+		JPanel historyPanel = new JPanel(new BorderLayout());
+		historyPanel.setBorder(BorderFactory.createTitledBorder(
+				BorderFactory.createLineBorder(Color.black), "Recent Runs"));
+		historyPanel.add(new JScrollPane(history), BorderLayout.CENTER);
+
+		setLayout(new BorderLayout());
+		add(jobsPanel, BorderLayout.PAGE_START);
+		add(historyPanel, BorderLayout.CENTER);
+
+		refresher = new Timer(REFRESH_INTERVAL, new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				refresh();
+			}
+		});
+		addWindowListener(new WindowAdapter() {
+			@Override
+			public void windowClosed(WindowEvent e) {
+				refresher.stop();
+			}
+		});
+		setDefaultCloseOperation(DISPOSE_ON_CLOSE);
+		refresh();
+		refresher.start();
+	}
+
+	private ScheduledJob getSelectedJob() {
+		int index = jobs.getSelectedIndex();
+		return index == -1 ? null : listed.get(index);
+	}
+
+	/**
+	 * This method is not thread-safe. It must be called from the Swing EDT.
+	 */
+	private void refresh() {
+		JobScheduler scheduler = m.getJobScheduler();
+		String selected = getSelectedJob() == null ? null : getSelectedJob().getName();
+		listed.clear();
+		listed.addAll(m.getConfig().getScheduledJobs());
+		List<String> names = new ArrayList<String>();
+		int reselect = -1;
+		for (ScheduledJob job : listed) {
+			long next = scheduler.getNextRun(job.getName());
+			names.add(String.format("%-16s %-16s %-60s next %s", job.getName(), job.getSchedule(), job.describe(),
+					next == -1 ? "never" : timeFormat.format(new Date(next))));
+			if (job.getName().equals(selected))
+				reselect = names.size() - 1;
+		}
+		boolean same = names.size() == jobNames.getSize();
+		for (int i = 0; same && i < names.size(); i++)
+			same = names.get(i).equals(jobNames.get(i));
+		if (!same) {
+			jobNames.clear();
+			for (String name : names)
+				jobNames.addElement(name);
+			jobs.setSelectedIndex(reselect);
+		}
+
+		StringBuilder sb = new StringBuilder();
+		for (JobScheduler.Run run : scheduler.getHistory())
+			sb.append(timeFormat.format(new Date(run.getTime()))).append("  ")
+					.append(String.format("%-16s ", run.getJob())).append(run.getOutcome()).append('\n');
+		if (!sb.toString().equals(history.getText())) {
+			history.setText(sb.toString());
+			history.setCaretPosition(0);
+		}
+	}
+
+	/**
+	 * This method is not thread-safe. It must be called from the Swing EDT.
+	 */
+	private void addJob() {
+		JTextField name = new JTextField(20);
+		JTextField cron = new JTextField("0 4 * * *", 20);
+		JComboBox action = new JComboBox();
+		for (ScheduledJob.Action a : ScheduledJob.Action.values())
+			action.addItem(a.getKey());
+		JTextField servers = new JTextField("all", 20);
+		JTextField command = new JTextField(20);
+		JTextField batch = new JTextField("1", 4);
+		JPanel form = new JPanel(new GridBagLayout());
+		GridBagConstraints c = new GridBagConstraints();
+		c.insets = new Insets(2, 2, 2, 2);
+		c.anchor = GridBagConstraints.LINE_START;
+		String[] labels = { "Name:", "Schedule (min hour day month weekday):", "Action:", "Servers (all, center, login, shop, game, game1, ...):", "Command:", "Restart batch size:" };
+		Component[] inputs = { name, cron, action, servers, command, batch };
+		for (int i = 0; i < labels.length; i++) {
+			c.gridy = i;
+			c.gridx = 0;
+			form.add(new JLabel(labels[i]), c);
+			c.gridx = 1;
+			form.add(inputs[i], c);
+		}
+
+		while (true) {
+			int option = JOptionPane.showConfirmDialog(this, form, "Add Scheduled Job", JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+			if (option != JOptionPane.OK_OPTION)
+				return;
+			String jobName = name.getText().trim();
+			Map<String, String> settings = new HashMap<String, String>();
+			settings.put("cron", cron.getText());
+			settings.put("action", (String) action.getSelectedItem());
+			settings.put("servers", servers.getText());
+			if (!command.getText().trim().isEmpty())
+				settings.put("command", command.getText());
+			settings.put("batch", batch.getText());
+			ScheduledJob job;
+			try {
+				if (!ScheduledJob.isValidName(jobName))
+					throw new IllegalArgumentException("The name may only have letters, digits, - and _");
+				job = ScheduledJob.parse(jobName, settings);
+			} catch (IllegalArgumentException e) {
+				JOptionPane.showMessageDialog(this, e.getMessage(), "Invalid job", JOptionPane.ERROR_MESSAGE);
+				continue;
+			}
+			if (m.getConfig().getScheduledJob(jobName) != null) {
+				if (JOptionPane.showConfirmDialog(this, "Replace the job named " + jobName + "?", "Job exists", JOptionPane.YES_NO_OPTION) != JOptionPane.YES_OPTION)
+					continue;
+				m.getConfig().removeScheduledJob(jobName, m, this);
+			}
+			Map<String, String> props = new HashMap<String, String>();
+			job.toProperties(props);
+			m.getConfig().updateProps(props, this);
+			m.getConfig().applyChanges(props, m, this);
+			refresh();
+			return;
+		}
+	}
+}
@@ -0,0 +1,673 @@
+/*
+ * ArgonMS Server Manager - a process launcher and organizer utilizing Swing.
+ * Copyright (C) 2011-2013  GoldenKevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package argonms.gui.console;
+
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.Dimension;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Insets;
+import java.awt.Toolkit;
+import java.awt.datatransfer.StringSelection;
+import java.awt.event.AdjustmentEvent;
+import java.awt.event.AdjustmentListener;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.event.FocusAdapter;
+import java.awt.event.FocusEvent;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseListener;
+import java.awt.event.MouseWheelEvent;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.swing.JComponent;
+import javax.swing.JPanel;
+import javax.swing.JScrollBar;
+import javax.swing.UIManager;
+
+import argonms.gui.model.Environment;
+
+/**
+ * A read-only, line wrapped console that only ever looks at the lines that
+ * are actually visible, so that the cost of painting, scrolling, and laying it
+ * out does not depend on how much history is kept in its LineStore.
+ *
+ * The vertical scroll bar counts logical lines rather than pixels. The view
+ * follows the end of the output unless the user is holding it in place by
+ * pressing a mouse button, using the scroll wheel, or holding an arrow key.
+ *
+ * If a LineFilter is set, only the lines that pass it are shown and the
+ * scroll bar counts those lines instead. If a LineClassifier is set, lines are
+ * colored by their level, and double clicking the first line of a throwable
+ * folds or expands its stack trace.
+ *
+ * This class is not thread-safe. It must only be used from the Swing EDT.
+ * @author GoldenKevin
+ */
+@SuppressWarnings("serial")
+public class ConsoleView extends JPanel {
+	private static final int WHEEL_LINES = 3;
+	private static final int DEFAULT_COLUMNS = 80, DEFAULT_ROWS = 25;
+	private static final Color SEVERE_COLOR = new Color(230, 60, 60);
+	private static final Color WARNING_COLOR = new Color(230, 150, 0);
+	private static final Color FOLD_MARKER_COLOR = Color.GRAY;
+
+	private class Canvas extends JComponent {
+		public Canvas() {
+			setFont(Environment.getConsoleFont());
+			setFocusable(true);
+			setOpaque(true);
+		}
+
+		@Override
+		public Dimension getPreferredSize() {
+			FontMetrics fm = getFontMetrics(getFont());
+			Insets in = getInsets();
+			return new Dimension(DEFAULT_COLUMNS * fm.charWidth('m') + in.left + in.right,
+					DEFAULT_ROWS * fm.getHeight() + in.top + in.bottom);
+		}
+
+		@Override
+		protected void paintComponent(Graphics g) {
+			paintLines(g);
+		}
+	}
+
+	private final LineStore store;
+	private LineFilter filter;
+	private LineClassifier classifier;
+	private final Canvas canvas;
+	private final JScrollBar scrollBar;
+	private final KeyAdapter keyAdapter;
+	private final MouseAdapter mouseAdapter;
+	private boolean heldByScrollWheel;
+	private boolean heldByClick;
+	private boolean heldBySearch;
+	private final Set<Integer> heldKeys;
+	//first position that the scroll bar was synced with, so that lines that
+	//are trimmed off the head while the user is holding don't move the view
+	private long syncedFirstPosition;
+
+	//what was painted at each row the last time, for mapping mouse locations
+	private long[] rowLines;
+	private int[] rowColumns;
+	private int paintedRows;
+	private char[] lineBuffer;
+
+	//selection, as (line, column) pairs. anchorLine is -1 if nothing selected
+	private long anchorLine, caretLine;
+	private int anchorColumn, caretColumn;
+	private Color selectionBackground;
+
+	public ConsoleView(LineStore store) {
+		super(new BorderLayout());
+		this.store = store;
+		heldKeys = new HashSet<Integer>();
+		rowLines = new long[0];
+		rowColumns = new int[0];
+		lineBuffer = new char[256];
+		anchorLine = -1;
+
+		canvas = new Canvas();
+		scrollBar = new JScrollBar(JScrollBar.VERTICAL);
+		add(canvas, BorderLayout.CENTER);
+		add(scrollBar, BorderLayout.LINE_END);
+
+		mouseAdapter = new MouseAdapter() {
+			@Override
+			public void mousePressed(MouseEvent e) {
+				heldByClick = true;
+				if (e.getSource() == canvas) {
+					canvas.requestFocusInWindow();
+					if (e.getButton() == MouseEvent.BUTTON1) {
+						if (!moveCaretTo(e.getX(), e.getY()))
+							return;
+						if ((e.getModifiersEx() & InputEvent.SHIFT_DOWN_MASK) == 0 || anchorLine == -1) {
+							anchorLine = caretLine;
+							anchorColumn = caretColumn;
+						}
+						canvas.repaint();
+					}
+				}
+			}
+
+			@Override
+			public void mouseReleased(MouseEvent e) {
+				heldByClick = false;
+			}
+
+			@Override
+			public void mouseClicked(MouseEvent e) {
+				if (e.getSource() == canvas && e.getButton() == MouseEvent.BUTTON1 && e.getClickCount() == 2)
+					toggleFoldAt(e.getY());
+			}
+
+			@Override
+			public void mouseDragged(MouseEvent e) {
+				if (e.getSource() == canvas && anchorLine != -1 && moveCaretTo(e.getX(), e.getY()))
+					canvas.repaint();
+			}
+
+			@Override
+			public void mouseWheelMoved(MouseWheelEvent e) {
+				heldByScrollWheel = true;
+				scrollBar.setValue(scrollBar.getValue() + e.getWheelRotation() * WHEEL_LINES);
+			}
+		};
+
+		keyAdapter = new KeyAdapter() {
+			private boolean isHandledKey(KeyEvent e) {
+				switch (e.getKeyCode()) {
+					case KeyEvent.VK_LEFT:
+					case KeyEvent.VK_RIGHT:
+					case KeyEvent.VK_UP:
+					case KeyEvent.VK_DOWN:
+					case KeyEvent.VK_PAGE_UP:
+					case KeyEvent.VK_PAGE_DOWN:
+						return true;
+					default:
+						return false;
+				}
+			}
+
+			@Override
+			public void keyPressed(KeyEvent e) {
+				if (isHandledKey(e))
+					heldKeys.add(Integer.valueOf(e.getKeyCode()));
+				switch (e.getKeyCode()) {
+					case KeyEvent.VK_UP:
+						scrollBar.setValue(scrollBar.getValue() - 1);
+						break;
+					case KeyEvent.VK_DOWN:
+						scrollBar.setValue(scrollBar.getValue() + 1);
+						break;
+					case KeyEvent.VK_PAGE_UP:
+						scrollBar.setValue(scrollBar.getValue() - scrollBar.getVisibleAmount());
+						break;
+					case KeyEvent.VK_PAGE_DOWN:
+						scrollBar.setValue(scrollBar.getValue() + scrollBar.getVisibleAmount());
+						break;
+					case KeyEvent.VK_A:
+						if ((e.getModifiersEx() & InputEvent.CTRL_DOWN_MASK) != 0)
+							selectAll();
+						break;
+					case KeyEvent.VK_C:
+						if ((e.getModifiersEx() & InputEvent.CTRL_DOWN_MASK) != 0)
+							copySelection();
+						break;
+				}
+			}
+
+			@Override
+			public void keyReleased(KeyEvent e) {
+				if (isHandledKey(e))
+					heldKeys.remove(Integer.valueOf(e.getKeyCode()));
+			}
+		};
+
+		canvas.addFocusListener(new FocusAdapter() {
+			@Override
+			public void focusLost(FocusEvent e) {
+				heldKeys.clear();
+			}
+		});
+		canvas.addComponentListener(new ComponentAdapter() {
+			@Override
+			public void componentResized(ComponentEvent e) {
+				syncScrollBar();
+			}
+		});
+		canvas.addMouseMotionListener(mouseAdapter);
+		canvas.addMouseWheelListener(mouseAdapter);
+		scrollBar.addMouseWheelListener(mouseAdapter);
+		scrollBar.addAdjustmentListener(new AdjustmentListener() {
+			@Override
+			public void adjustmentValueChanged(AdjustmentEvent e) {
+				if (!scrollHold() && !e.getValueIsAdjusting())
+					scrollToEnd();
+				canvas.repaint();
+			}
+		});
+		updateScrollBarInputListeners();
+		updateColors();
+		syncScrollBar();
+	}
+
+	@Override
+	public void updateUI() {
+		super.updateUI();
+		setBorder(UIManager.getBorder("ScrollPane.border"));
+		if (canvas != null)
+			updateColors();
+	}
+
+	private void updateColors() {
+		selectionBackground = UIManager.getColor("TextArea.selectionBackground");
+		if (selectionBackground == null)
+			selectionBackground = Color.GRAY;
+	}
+
+	private void addFirstMouseListener(Component c) {
+		c.removeMouseListener(mouseAdapter);
+
+		MouseListener[] existingClickListeners = c.getMouseListeners();
+		for (int i = 0; i < existingClickListeners.length; i++)
+			c.removeMouseListener(existingClickListeners[i]);
+
+		c.addMouseListener(mouseAdapter);
+
+		for (int i = 0; i < existingClickListeners.length; i++)
+			c.addMouseListener(existingClickListeners[i]);
+	}
+
+	private void addLastMouseListener(Component c) {
+		c.removeMouseListener(mouseAdapter);
+		c.addMouseListener(mouseAdapter);
+	}
+
+	private void addLastKeyListener(Component c) {
+		c.removeKeyListener(keyAdapter);
+		c.addKeyListener(keyAdapter);
+	}
+
+	public void updateScrollBarInputListeners() {
+		addLastKeyListener(canvas);
+		addLastMouseListener(canvas);
+		addLastMouseListener(scrollBar);
+		for (Component c : scrollBar.getComponents())
+			addFirstMouseListener(c);
+	}
+
+	private boolean scrollHold() {
+		return heldByClick || heldByScrollWheel || heldBySearch || !heldKeys.isEmpty();
+	}
+
+	/**
+	 * Sets the background and foreground colors of the text.
+	 */
+	public void setColors(Color background, Color foreground) {
+		canvas.setBackground(background);
+		canvas.setForeground(foreground);
+		canvas.repaint();
+	}
+
+	/**
+	 * Only show the lines that pass the given filter, or every line if filter
+	 * is null. Must be called again whenever the filter itself changes.
+	 */
+	public void setFilter(LineFilter filter) {
+		this.filter = filter;
+		syncedFirstPosition = firstPosition();
+		syncScrollBar();
+		canvas.repaint();
+	}
+
+	/**
+	 * Color lines by the level that the given classifier tagged them with, or
+	 * don't color them if classifier is null.
+	 */
+	public void setClassifier(LineClassifier classifier) {
+		this.classifier = classifier;
+		canvas.repaint();
+	}
+
+	//positions of lines that are shown. these are just line numbers if there
+	//is no filter
+	private long firstPosition() {
+		return filter == null ? store.getFirstLine() : filter.getFirstPosition();
+	}
+
+	private long endPosition() {
+		return filter == null ? store.getEndLine() : filter.getEndPosition();
+	}
+
+	private long lineAt(long position) {
+		return filter == null ? position : filter.getLine(position);
+	}
+
+	private long positionOf(long line) {
+		return filter == null ? line : filter.getPosition(line);
+	}
+
+	/**
+	 * @return whether the given line passes the filter
+	 */
+	public boolean isShown(long line) {
+		long position = positionOf(line);
+		return position < endPosition() && lineAt(position) == line;
+	}
+
+	private int visibleRows() {
+		Insets in = canvas.getInsets();
+		int height = canvas.getHeight() - in.top - in.bottom;
+		if (height <= 0)
+			return DEFAULT_ROWS;
+		return Math.max(1, height / canvas.getFontMetrics(canvas.getFont()).getHeight());
+	}
+
+	private int visibleColumns() {
+		Insets in = canvas.getInsets();
+		int width = canvas.getWidth() - in.left - in.right;
+		if (width <= 0)
+			return DEFAULT_COLUMNS;
+		return Math.max(1, width / canvas.getFontMetrics(canvas.getFont()).charWidth('m'));
+	}
+
+	private void scrollToEnd() {
+		scrollBar.setValue(scrollBar.getMaximum() - scrollBar.getVisibleAmount());
+	}
+
+	/**
+	 * Updates the range of the scroll bar to the lines that are currently in
+	 * the store.
+	 */
+	private void syncScrollBar() {
+		long first = firstPosition();
+		int trimmed = (int) Math.min(Integer.MAX_VALUE, first - syncedFirstPosition);
+		syncedFirstPosition = first;
+		int count = (int) (endPosition() - first);
+		int extent = Math.min(visibleRows(), count);
+		int value = scrollBar.getValue();
+		if (scrollHold())
+			value = Math.max(0, value - trimmed);
+		else
+			value = count - extent;
+		scrollBar.setValues(Math.min(value, count - extent), extent, 0, count);
+		scrollBar.setBlockIncrement(Math.max(1, extent - 1));
+		if (anchorLine != -1 && anchorLine < store.getFirstLine())
+			anchorLine = -1;
+	}
+
+	/**
+	 * Must be called after lines were appended to the store.
+	 */
+	public void linesAppended() {
+		heldByScrollWheel = false;
+		syncScrollBar();
+		canvas.repaint();
+	}
+
+	/**
+	 * Must be called after the store was cleared.
+	 */
+	public void storeCleared() {
+		anchorLine = -1;
+		heldBySearch = false;
+		syncedFirstPosition = firstPosition();
+		syncScrollBar();
+		canvas.repaint();
+	}
+
+	private Color colorOf(long line) {
+		if (classifier != null) {
+			LineClassifier.Level level = classifier.getLevel(line);
+			if (level == LineClassifier.Level.SEVERE)
+				return SEVERE_COLOR;
+			if (level == LineClassifier.Level.WARNING)
+				return WARNING_COLOR;
+		}
+		return canvas.getForeground();
+	}
+
+	/**
+	 * @return the text to draw after a line to show whether a stack trace
+	 * under it is folded, or null if there is no stack trace under it
+	 */
+	private String foldMarkerOf(long line) {
+		if (classifier == null)
+			return null;
+		int folded = classifier.getFoldedLines(line);
+		if (folded != 0)
+			return " [+" + folded + "]";
+		if (classifier.isExpanded(line))
+			return " [-]";
+		return null;
+	}
+
+	private int rowsFor(int length, int columns) {
+		return Math.max(1, (length + columns - 1) / columns);
+	}
+
+	private int fetch(long line) {
+		int length = store.getLineLength(line);
+		if (lineBuffer.length < length)
+			lineBuffer = new char[Math.max(length, lineBuffer.length * 2)];
+		return store.getLine(line, lineBuffer);
+	}
+
+	private void paintLines(Graphics g) {
+		Insets in = canvas.getInsets();
+		g.setColor(canvas.getBackground());
+		g.fillRect(0, 0, canvas.getWidth(), canvas.getHeight());
+		g.setFont(canvas.getFont());
+		FontMetrics fm = g.getFontMetrics();
+		int lineHeight = fm.getHeight(), charWidth = fm.charWidth('m');
+		int rows = visibleRows(), columns = visibleColumns();
+		//one extra row for a partially visible row at the bottom
+		if (rowLines.length < rows + 1) {
+			rowLines = new long[rows + 1];
+			rowColumns = new int[rows + 1];
+		}
+
+		long first = firstPosition(), end = endPosition();
+		long top = first + scrollBar.getValue();
+		int skipRows = 0;
+		if (scrollBar.getValue() + scrollBar.getVisibleAmount() >= scrollBar.getMaximum()) {
+			//anchor the last line to the bottom, since wrapped lines can make
+			//the last few lines take up more rows than the scroll bar thinks
+			int needed = rows;
+			top = end;
+			while (needed > 0 && top > first) {
+				top--;
+				needed -= rowsFor(store.getLineLength(lineAt(top)), columns);
+			}
+			skipRows = Math.max(0, -needed);
+		}
+
+		long selStartLine = -1, selEndLine = -1;
+		int selStartCol = 0, selEndCol = 0;
+		if (anchorLine != -1) {
+			if (anchorLine < caretLine || anchorLine == caretLine && anchorColumn <= caretColumn) {
+				selStartLine = anchorLine;
+				selStartCol = anchorColumn;
+				selEndLine = caretLine;
+				selEndCol = caretColumn;
+			} else {
+				selStartLine = caretLine;
+				selStartCol = caretColumn;
+				selEndLine = anchorLine;
+				selEndCol = anchorColumn;
+			}
+		}
+
+		int row = 0;
+		int y = in.top;
+		for (long position = top; position < end && row <= rows; position++) {
+			long line = lineAt(position);
+			int length = fetch(line);
+			Color foreground = colorOf(line);
+			String marker = foldMarkerOf(line);
+			for (int col = 0; col < length || col == 0; col += columns) {
+				if (skipRows > 0) {
+					skipRows--;
+					continue;
+				}
+				if (row > rows)
+					break;
+				int count = Math.min(columns, length - col);
+				rowLines[row] = line;
+				rowColumns[row] = col;
+				if (line >= selStartLine && line <= selEndLine && selStartLine != -1) {
+					int from = line == selStartLine ? Math.max(col, selStartCol) : col;
+					int to = line == selEndLine ? Math.min(col + count, selEndCol) : col + count;
+					//include the line break in the selection
+					if (line != selEndLine && col + columns >= length)
+						to++;
+					if (to > from) {
+						g.setColor(selectionBackground);
+						g.fillRect(in.left + (from - col) * charWidth, y, (to - from) * charWidth, lineHeight);
+					}
+				}
+				if (count > 0) {
+					g.setColor(foreground);
+					g.drawChars(lineBuffer, col, count, in.left, y + fm.getAscent());
+				}
+				if (marker != null && col + columns >= length) {
+					g.setColor(FOLD_MARKER_COLOR);
+					g.drawString(marker, in.left + Math.max(0, count) * charWidth, y + fm.getAscent());
+				}
+				row++;
+				y += lineHeight;
+			}
+		}
+		paintedRows = row;
+	}
+
+	private int rowAt(int y) {
+		Insets in = canvas.getInsets();
+		FontMetrics fm = canvas.getFontMetrics(canvas.getFont());
+		return Math.max(0, Math.min(paintedRows - 1, (y - in.top) / fm.getHeight()));
+	}
+
+	/**
+	 * Moves the caret to the character under the given point.
+	 * @return false if there is no text at the given point
+	 */
+	private boolean moveCaretTo(int x, int y) {
+		if (paintedRows == 0)
+			return false;
+		Insets in = canvas.getInsets();
+		FontMetrics fm = canvas.getFontMetrics(canvas.getFont());
+		int row = rowAt(y);
+		long line = rowLines[row];
+		if (line < store.getFirstLine())
+			return false;
+		int column = rowColumns[row] + Math.max(0, Math.min(visibleColumns(), (x - in.left + fm.charWidth('m') / 2) / fm.charWidth('m')));
+		caretLine = line;
+		caretColumn = Math.min(column, store.getLineLength(line));
+		return true;
+	}
+
+	/**
+	 * Folds or expands the stack trace under the line at the given height,
+	 * keeping that line where it is.
+	 */
+	private void toggleFoldAt(int y) {
+		if (classifier == null || paintedRows == 0)
+			return;
+		long line = rowLines[rowAt(y)];
+		if (line < store.getFirstLine())
+			return;
+		int offset = (int) (positionOf(line) - firstPosition()) - scrollBar.getValue();
+		if (!classifier.toggleFold(line))
+			return;
+		//the double click selected the line, which is not what the user wanted
+		anchorLine = -1;
+		//hold the view like a scroll would, so the trace can be looked at
+		heldByScrollWheel = true;
+		setFilter(classifier.isFiltering() ? classifier : null);
+		scrollBar.setValue(Math.max(0, (int) (positionOf(line) - firstPosition()) - offset));
+		canvas.repaint();
+	}
+
+	/**
+	 * Selects the given range of a line and scrolls it into view. The view
+	 * stops following the end of the output until releaseSearchHold is
+	 * called.
+	 */
+	public void showMatch(long line, int start, int end) {
+		anchorLine = line;
+		anchorColumn = start;
+		caretLine = line;
+		caretColumn = end;
+		heldBySearch = true;
+		int offset = (int) (positionOf(line) - firstPosition());
+		int extent = scrollBar.getVisibleAmount();
+		int value = offset - extent / 2;
+		scrollBar.setValue(Math.max(0, Math.min(scrollBar.getMaximum() - extent, value)));
+		canvas.repaint();
+	}
+
+	/**
+	 * Lets the view follow the end of the output again after showMatch.
+	 */
+	public void releaseSearchHold() {
+		heldBySearch = false;
+		syncScrollBar();
+		canvas.repaint();
+	}
+
+	@Override
+	public boolean requestFocusInWindow() {
+		return canvas.requestFocusInWindow();
+	}
+
+	public void selectAll() {
+		if (endPosition() == firstPosition())
+			return;
+		anchorLine = lineAt(firstPosition());
+		anchorColumn = 0;
+		caretLine = lineAt(endPosition() - 1);
+		caretColumn = store.getLineLength(caretLine);
+		canvas.repaint();
+	}
+
+	/**
+	 * @return the selected text, or null if nothing is selected
+	 */
+	public String getSelectedText() {
+		if (anchorLine == -1 || anchorLine < store.getFirstLine())
+			return null;
+		long startLine = Math.min(anchorLine, caretLine), endLine = Math.max(anchorLine, caretLine);
+		int startCol, endCol;
+		if (anchorLine < caretLine || anchorLine == caretLine && anchorColumn <= caretColumn) {
+			startCol = anchorColumn;
+			endCol = caretColumn;
+		} else {
+			startCol = caretColumn;
+			endCol = anchorColumn;
+		}
+		StringBuilder sb = new StringBuilder();
+		for (long position = positionOf(startLine), end = endPosition(); position < end; position++) {
+			long line = lineAt(position);
+			if (line > endLine)
+				break;
+			if (line != startLine)
+				sb.append('\n');
+			int length = fetch(line);
+			int from = line == startLine ? Math.min(startCol, length) : 0;
+			int to = line == endLine ? Math.min(endCol, length) : length;
+			sb.append(lineBuffer, from, Math.max(0, to - from));
+		}
+		return sb.toString();
+	}
+
+	public void copySelection() {
+		String text = getSelectedText();
+		if (text != null && !text.isEmpty())
+			Toolkit.getDefaultToolkit().getSystemClipboard().setContents(new StringSelection(text), null);
+	}
+}
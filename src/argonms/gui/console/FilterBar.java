@@ -0,0 +1,122 @@
+/*
+ * ArgonMS Server Manager - a process launcher and organizer utilizing Swing.
+ * Copyright (C) 2011-2013  GoldenKevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package argonms.gui.console;
+
+import java.awt.Dimension;
+import java.awt.FlowLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+import javax.swing.Box;
+import javax.swing.DefaultComboBoxModel;
+import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+
+/**
+ * Lets the user pick which levels and which logger a ConsoleView should show
+ * the lines of.
+ *
+ * This class is not thread-safe. It must only be used from the Swing EDT.
+ * @author GoldenKevin
+ */
+@SuppressWarnings("serial")
+public class FilterBar extends JPanel {
+	private static final String ALL_LOGGERS = "All loggers";
+
+	private final LineClassifier classifier;
+	private final ConsoleView view;
+	private final JCheckBox[] levels;
+	private final DefaultComboBoxModel loggers;
+	private final JComboBox loggerChoice;
+	private final JCheckBox fold;
+
+	public FilterBar(LineClassifier classifier, ConsoleView view) {
+		this.classifier = classifier;
+		this.view = view;
+		setOpaque(false);
+
+		ActionListener refilter = new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				applyFilter();
+			}
+		};
+		setLayout(new FlowLayout(FlowLayout.LEADING, 0, 0));
+		add(new JLabel("Show:"));
+		add(Box.createRigidArea(new Dimension(5, 0)));
+		LineClassifier.Level[] values = LineClassifier.Level.values();
+		levels = new JCheckBox[values.length];
+		for (int i = 0; i < values.length; i++) {
+			String name = values[i].name();
+			levels[i] = new JCheckBox(name.charAt(0) + name.substring(1).toLowerCase(), true);
+			levels[i].setOpaque(false);
+			levels[i].addActionListener(refilter);
+			add(levels[i]);
+		}
+		add(Box.createRigidArea(new Dimension(5, 0)));
+		loggers = new DefaultComboBoxModel();
+		loggers.addElement(ALL_LOGGERS);
+		loggerChoice = new JComboBox(loggers);
+		loggerChoice.setPrototypeDisplayValue("argonms.common.net.external.ClientSession");
+		loggerChoice.addActionListener(refilter);
+		add(loggerChoice);
+		add(Box.createRigidArea(new Dimension(5, 0)));
+		fold = new JCheckBox("Fold stack traces", classifier.isFolding());
+		fold.setOpaque(false);
+		fold.setToolTipText("Double click the first line of a throwable to fold or expand its stack trace");
+		fold.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				applyFolding();
+			}
+		});
+		add(fold);
+		view.setFilter(classifier.isFiltering() ? classifier : null);
+	}
+
+	@Override
+	public Dimension getMaximumSize() {
+		return new Dimension(Integer.MAX_VALUE, getPreferredSize().height);
+	}
+
+	private void applyFilter() {
+		int mask = 0;
+		for (int i = 0; i < levels.length; i++)
+			if (levels[i].isSelected())
+				mask |= 1 << i;
+		classifier.setFilter(mask, loggerChoice.getSelectedIndex());
+		view.setFilter(classifier.isFiltering() ? classifier : null);
+	}
+
+	private void applyFolding() {
+		classifier.setFolding(fold.isSelected());
+		view.setFilter(classifier.isFiltering() ? classifier : null);
+	}
+
+	/**
+	 * Must be called after the classifier is updated, so that any loggers
+	 * that were newly seen can be picked.
+	 */
+	public void loggersUpdated() {
+		for (int id = loggers.getSize(); id <= classifier.getLoggerCount(); id++)
+			loggers.addElement(classifier.getLoggerName(id));
+	}
+}
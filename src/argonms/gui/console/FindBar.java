@@ -0,0 +1,216 @@
+/*
+ * ArgonMS Server Manager - a process launcher and organizer utilizing Swing.
+ * Copyright (C) 2011-2013  GoldenKevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package argonms.gui.console;
+
+import java.awt.Dimension;
+import java.awt.FlowLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.util.regex.PatternSyntaxException;
+
+import javax.swing.Box;
+import javax.swing.JButton;
+import javax.swing.JCheckBox;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JTextField;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+
+/**
+ * A bar for finding text in a ConsoleView. Matches are looked up as the query
+ * is typed, and Enter and Shift+Enter go to the next and previous match.
+ *
+ * This class is not thread-safe. It must only be used from the Swing EDT.
+ * @author GoldenKevin
+ */
+@SuppressWarnings("serial")
+public class FindBar extends JPanel {
+	private final SearchIndex index;
+	private final LineStore store;
+	private final ConsoleView view;
+	private final JTextField query;
+	private final JCheckBox matchCase;
+	private final JCheckBox regex;
+	private final JLabel status;
+	private SearchIndex.Match current;
+
+	public FindBar(LineStore store, SearchIndex index, ConsoleView view) {
+		this.store = store;
+		this.index = index;
+		this.view = view;
+		setOpaque(false);
+
+		query = new JTextField(30);
+		query.getDocument().addDocumentListener(new DocumentListener() {
+			@Override
+			public void insertUpdate(DocumentEvent e) {
+				find(true, true);
+			}
+
+			@Override
+			public void removeUpdate(DocumentEvent e) {
+				find(true, true);
+			}
+
+			@Override
+			public void changedUpdate(DocumentEvent e) {
+			}
+		});
+		query.addKeyListener(new KeyAdapter() {
+			@Override
+			public void keyPressed(KeyEvent e) {
+				switch (e.getKeyCode()) {
+					case KeyEvent.VK_ENTER:
+						find(!e.isShiftDown(), false);
+						break;
+					case KeyEvent.VK_ESCAPE:
+						close();
+						break;
+				}
+			}
+		});
+		ActionListener refind = new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				find(true, true);
+			}
+		};
+		matchCase = new JCheckBox("Match case");
+		matchCase.setOpaque(false);
+		matchCase.addActionListener(refind);
+		regex = new JCheckBox("Regex");
+		regex.setOpaque(false);
+		regex.addActionListener(refind);
+		JButton previous = new JButton("Previous");
+		previous.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				find(false, false);
+			}
+		});
+		JButton next = new JButton("Next");
+		next.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				find(true, false);
+			}
+		});
+		JButton close = new JButton("Close");
+		close.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				close();
+			}
+		});
+		status = new JLabel();
+
+		setLayout(new FlowLayout(FlowLayout.LEADING, 0, 0));
+		add(new JLabel("Find:"));
+		add(Box.createRigidArea(new Dimension(5, 0)));
+		add(query);
+		add(Box.createRigidArea(new Dimension(5, 0)));
+		add(matchCase);
+		add(regex);
+		add(previous);
+		add(next);
+		add(close);
+		add(Box.createRigidArea(new Dimension(5, 0)));
+		add(status);
+	}
+
+	@Override
+	public Dimension getMaximumSize() {
+		return new Dimension(Integer.MAX_VALUE, getPreferredSize().height);
+	}
+
+	/**
+	 * @param forward whether to look for the next match or the previous one
+	 * @param again whether the current match may be found again, for when the
+	 * query has changed
+	 */
+	private void find(boolean forward, boolean again) {
+		String text = query.getText();
+		status.setText("");
+		status.setToolTipText(null);
+		if (text.isEmpty()) {
+			current = null;
+			return;
+		}
+		if (current != null && current.line < store.getFirstLine())
+			current = null;
+
+		long line;
+		int column;
+		if (current == null) {
+			//start with the most recent output
+			forward = false;
+			line = store.getEndLine() - 1;
+			column = Integer.MAX_VALUE;
+		} else {
+			line = current.line;
+			column = forward && !again ? current.start + 1 : current.start;
+		}
+		SearchIndex.Match match, firstHidden = null;
+		try {
+			match = index.find(text, matchCase.isSelected(), regex.isSelected(), line, column, forward);
+			//skip over matches in lines that are filtered out, until we come
+			//back around to the first one that we skipped
+			while (match != null && !view.isShown(match.line)) {
+				if (firstHidden == null)
+					firstHidden = match;
+				match = index.find(text, matchCase.isSelected(), regex.isSelected(), match.line, forward ? match.start + 1 : match.start, forward);
+				if (match != null && match.line == firstHidden.line && match.start == firstHidden.start)
+					match = null;
+			}
+		} catch (PatternSyntaxException e) {
+			status.setText("Invalid regular expression");
+			status.setToolTipText(e.getDescription());
+			return;
+		}
+		if (match == null) {
+			status.setText(firstHidden == null ? "Not found" : "Only found in hidden lines");
+			return;
+		}
+		if (current != null) {
+			if (forward && (match.line < line || match.line == line && match.start < column))
+				status.setText("Wrapped to the top");
+			else if (!forward && (match.line > line || match.line == line && match.start >= column))
+				status.setText("Wrapped to the bottom");
+		}
+		current = match;
+		view.showMatch(match.line, match.start, match.end);
+	}
+
+	public void open() {
+		setVisible(true);
+		query.requestFocusInWindow();
+		query.selectAll();
+	}
+
+	public void close() {
+		setVisible(false);
+		current = null;
+		status.setText("");
+		view.releaseSearchHold();
+		view.requestFocusInWindow();
+	}
+}
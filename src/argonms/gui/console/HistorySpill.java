@@ -0,0 +1,238 @@
+/*
+ * ArgonMS Server Manager - a process launcher and organizer utilizing Swing.
+ * Copyright (C) 2011-2013  GoldenKevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package argonms.gui.console;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Keeps the lines that were trimmed off the head of a LineStore in memory
+ * mapped temporary files, so that old console output can still be scrolled
+ * through without keeping it on the Java heap. The text of the lines goes in
+ * one file and the offset of each line goes in another, and both are mapped
+ * in fixed size segments as they grow. Pages are only read back in by the OS
+ * when a line is actually looked at.
+ *
+ * Both files are rings of segments that together stay within the size
+ * limit. Once they are full, the segment with the oldest lines is reused, so
+ * only the lines in it are discarded.
+ *
+ * This class is not thread-safe. All instances are meant to only be used on
+ * the Swing EDT.
+ * @author GoldenKevin
+ */
+public class HistorySpill {
+	private static final int MIN_SEGMENT_SIZE = 64 * 1024; //in bytes
+	private static final int MAX_SEGMENT_SIZE = 16 * 1024 * 1024; //in bytes
+	//how many segments the size limit is split into, unless that would make
+	//them too large. a line takes 8 bytes of offsets and 2 bytes per char of
+	//text, so a 16th of them holding offsets suits lines of about 60 chars
+	private static final int SEGMENT_COUNT = 32;
+	private static final int MIN_OFFSET_SEGMENTS = 2;
+
+	private final File textFile, offsetsFile;
+	private final RandomAccessFile text, offsets;
+	private final int segmentSize, charsPerSegment, offsetsPerSegment;
+	private final CharBuffer[] textSegments;
+	private final MappedByteBuffer[] offsetSegments;
+	//so that a line fits in the ring no matter where it starts
+	private final int maxLineLength;
+
+	//line number that the offsets are indexed from
+	private long origin;
+	//line number of the first spilled line
+	private long firstLine;
+	private int lineCount;
+	//position of the end of the text of the last line
+	private long charCount;
+
+	/**
+	 * @param name used to make the temporary files easier to identify
+	 * @param maxBytes the maximum amount of disk space the text and the
+	 * offsets may take up together
+	 */
+	public HistorySpill(String name, long maxBytes) throws IOException {
+		textFile = File.createTempFile("argonms-" + name + "-", ".history");
+		offsetsFile = File.createTempFile("argonms-" + name + "-", ".offsets");
+		textFile.deleteOnExit();
+		offsetsFile.deleteOnExit();
+		text = new RandomAccessFile(textFile, "rw");
+		offsets = new RandomAccessFile(offsetsFile, "rw");
+		//a whole number of pages
+		segmentSize = (int) Math.max(MIN_SEGMENT_SIZE, Math.min(MAX_SEGMENT_SIZE, maxBytes / SEGMENT_COUNT)) & ~4095;
+		charsPerSegment = segmentSize / 2;
+		offsetsPerSegment = segmentSize / 8;
+		int segments = (int) Math.min(Integer.MAX_VALUE, Math.max(MIN_OFFSET_SEGMENTS + 2, maxBytes / segmentSize));
+		int offsetSegmentCount = Math.max(MIN_OFFSET_SEGMENTS, segments / 16);
+		textSegments = new CharBuffer[segments - offsetSegmentCount];
+		offsetSegments = new MappedByteBuffer[offsetSegmentCount];
+		maxLineLength = (int) Math.min(Integer.MAX_VALUE, (long) (textSegments.length - 1) * charsPerSegment);
+	}
+
+	private MappedByteBuffer map(RandomAccessFile file, int slot) throws IOException {
+		return file.getChannel().map(FileChannel.MapMode.READ_WRITE, (long) slot * segmentSize, segmentSize);
+	}
+
+	private CharBuffer textSegment(long pos) throws IOException {
+		int slot = (int) (pos / charsPerSegment % textSegments.length);
+		if (textSegments[slot] == null)
+			textSegments[slot] = map(text, slot).asCharBuffer();
+		return textSegments[slot];
+	}
+
+	private void putOffset(long index, long value) throws IOException {
+		int slot = (int) (index / offsetsPerSegment % offsetSegments.length);
+		if (offsetSegments[slot] == null)
+			offsetSegments[slot] = map(offsets, slot);
+		offsetSegments[slot].putLong((int) (index % offsetsPerSegment) * 8, value);
+	}
+
+	private long getOffset(long index) {
+		return offsetSegments[(int) (index / offsetsPerSegment % offsetSegments.length)].getLong((int) (index % offsetsPerSegment) * 8);
+	}
+
+	/**
+	 * Discard every spilled line. The next line that is spilled will have the
+	 * given line number.
+	 */
+	public void reset(long nextLine) {
+		origin = nextLine;
+		firstLine = nextLine;
+		lineCount = 0;
+		charCount = 0;
+	}
+
+	/**
+	 * Discards the oldest lines whose text or offsets are in a segment that is
+	 * about to be reused.
+	 * @param index the index of the offset that is about to be written
+	 * @param end the position after the text that is about to be written
+	 */
+	private void dropOverwritten(long index, long end) {
+		long keepIndex = (index / offsetsPerSegment - offsetSegments.length + 1) * offsetsPerSegment;
+		long keepChars = ((end - 1) / charsPerSegment - textSegments.length + 1) * charsPerSegment;
+		while (lineCount > 0 && (firstLine - origin < keepIndex || getOffset(firstLine - origin) < keepChars)) {
+			firstLine++;
+			lineCount--;
+		}
+	}
+
+	/**
+	 * Start spilling a line that follows the previously spilled line. The text
+	 * of the line must then be added with appendText before the next line is
+	 * started.
+	 * @return false if the line could not be spilled
+	 */
+	public boolean beginLine(long line, int length) {
+		if (line != firstLine + lineCount || lineCount == Integer.MAX_VALUE - 1)
+			reset(line);
+		if (length > maxLineLength) {
+			//would overwrite its own start
+			reset(line + 1);
+			return false;
+		}
+		long index = line - origin;
+		try {
+			dropOverwritten(index + 1, charCount + length);
+			if (lineCount == 0)
+				putOffset(index, charCount);
+			putOffset(index + 1, charCount + length);
+			lineCount++;
+			return true;
+		} catch (IOException e) {
+			System.err.println("Error in spilling console history");
+			e.printStackTrace();
+			reset(line + 1);
+			return false;
+		}
+	}
+
+	/**
+	 * Writes part of the text of the line that was last begun.
+	 */
+	public void appendText(char[] buf, int offset, int length) throws IOException {
+		while (length > 0) {
+			CharBuffer segment = textSegment(charCount);
+			segment.position((int) (charCount % charsPerSegment));
+			int count = Math.min(length, segment.remaining());
+			segment.put(buf, offset, count);
+			charCount += count;
+			offset += count;
+			length -= count;
+		}
+	}
+
+	public long getFirstLine() {
+		return firstLine;
+	}
+
+	public long getEndLine() {
+		return firstLine + lineCount;
+	}
+
+	public int getLineLength(long line) {
+		long index = line - origin;
+		return (int) (getOffset(index + 1) - getOffset(index));
+	}
+
+	/**
+	 * Copies the text of a spilled line into dest.
+	 * @param dest must be at least getLineLength(line) long
+	 * @return the length of the line
+	 */
+	public int getLine(long line, char[] dest) {
+		long index = line - origin;
+		long pos = getOffset(index);
+		int length = (int) (getOffset(index + 1) - pos);
+		int copied = 0;
+		while (copied < length) {
+			CharBuffer segment = textSegments[(int) (pos / charsPerSegment % textSegments.length)];
+			segment.position((int) (pos % charsPerSegment));
+			int count = Math.min(length - copied, segment.remaining());
+			segment.get(dest, copied, count);
+			pos += count;
+			copied += count;
+		}
+		return length;
+	}
+
+	/**
+	 * Releases the files. The mappings themselves are released once they are
+	 * garbage collected.
+	 */
+	public void close() {
+		for (int i = 0; i < textSegments.length; i++)
+			textSegments[i] = null;
+		for (int i = 0; i < offsetSegments.length; i++)
+			offsetSegments[i] = null;
+		try {
+			text.close();
+			offsets.close();
+		} catch (IOException e) {
+			System.err.println("Error in closing console history");
+			e.printStackTrace();
+		}
+		textFile.delete();
+		offsetsFile.delete();
+	}
+}
@@ -0,0 +1,148 @@
+/*
+ * ArgonMS Server Manager - a process launcher and organizer utilizing Swing.
+ * Copyright (C) 2011-2013  GoldenKevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package argonms.gui.console;
+
+/**
+ * A growable list of primitive ints that is cheap to add to at the end and to
+ * drop from at the front. Most methods assume that the list is sorted.
+ * @author GoldenKevin
+ */
+final class IntList {
+	private int[] data;
+	private int head;
+	private int size;
+
+	public IntList() {
+		data = new int[16];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int get(int index) {
+		return data[head + index];
+	}
+
+	public void set(int index, int value) {
+		data[head + index] = value;
+	}
+
+	private void makeRoom(int count) {
+		if (head + size + count <= data.length)
+			return;
+		if (head > data.length / 2 && size + count <= data.length) {
+			System.arraycopy(data, head, data, 0, size);
+		} else {
+			int[] grown = new int[Math.max(data.length * 2, size + count)];
+			System.arraycopy(data, head, grown, 0, size);
+			data = grown;
+		}
+		head = 0;
+	}
+
+	public void add(int value) {
+		makeRoom(1);
+		data[head + size++] = value;
+	}
+
+	/**
+	 * Inserts a value into a sorted list, assuming that it belongs close to
+	 * the end.
+	 */
+	public void insertSorted(int value) {
+		makeRoom(1);
+		int i = head + size;
+		for (; i > head && data[i - 1] > value; --i)
+			data[i] = data[i - 1];
+		data[i] = value;
+		size++;
+	}
+
+	/**
+	 * Removes a value from a sorted list, assuming that it is close to the
+	 * end.
+	 * @return false if the value is not in the list
+	 */
+	public boolean removeSorted(int value) {
+		int end = head + size;
+		for (int i = end - 1; i >= head && data[i] >= value; --i) {
+			if (data[i] == value) {
+				System.arraycopy(data, i + 1, data, i, end - i - 1);
+				size--;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Replaces the elements from index from up to but not including index to
+	 * with every element of values.
+	 */
+	public void replace(int from, int to, IntList values) {
+		int growth = values.size - (to - from);
+		if (growth > 0)
+			makeRoom(growth);
+		System.arraycopy(data, head + to, data, head + from + values.size, size - to);
+		System.arraycopy(values.data, values.head, data, head + from, values.size);
+		size += growth;
+	}
+
+	/**
+	 * @return the index of the first element that is not less than value
+	 */
+	public int lowerBound(int value) {
+		int low = 0, high = size;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (data[head + mid] < value)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return low;
+	}
+
+	public void dropFirst(int count) {
+		head += count;
+		size -= count;
+		if (size == 0)
+			head = 0;
+	}
+
+	/**
+	 * @return the number of elements that were dropped
+	 */
+	public int dropBelow(int value) {
+		int count = lowerBound(value);
+		dropFirst(count);
+		return count;
+	}
+
+	public void subtract(int delta) {
+		for (int i = head; i < head + size; i++)
+			data[i] -= delta;
+	}
+
+	public void clear() {
+		head = 0;
+		size = 0;
+	}
+}
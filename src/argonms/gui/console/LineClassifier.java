@@ -0,0 +1,647 @@
+/*
+ * ArgonMS Server Manager - a process launcher and organizer utilizing Swing.
+ * Copyright (C) 2011-2013  GoldenKevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package argonms.gui.console;
+
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tags each line of a LineStore with the level and the logger of the
+ * java.util.logging record it belongs to, as lines are completed, and filters
+ * the lines by their tags.
+ *
+ * Records are recognized in the two line format of SimpleFormatter - a header
+ * line with the time and the source of the record, followed by a line that
+ * starts with the level - as well as single lines that contain the level
+ * followed by a colon. Lines that look like the continuation of a record,
+ * such as stack traces, get the tags of the record they follow. Everything
+ * else is tagged with Level.OTHER.
+ *
+ * The body of a stack trace - the "at", "... n more", and "Caused by:" lines
+ * that follow the first line of a throwable - is folded away under that first
+ * line while folding is on, unless the trace was expanded with toggleFold.
+ *
+ * For every level and every logger, the lines that have it are kept in a
+ * sorted list, so changing the filter only has to go through the lines that
+ * are shown rather than through all of the text. While a filter is set, lines
+ * that pass it are added to the filtered list as they are classified. The line
+ * that is still being written to is always shown, since it can't be
+ * classified yet.
+ *
+ * This class is not thread-safe. All instances are meant to only be used on
+ * the Swing EDT.
+ * @author GoldenKevin
+ */
+public class LineClassifier implements LineFilter {
+	public enum Level { SEVERE, WARNING, INFO, CONFIG, FINE, FINER, FINEST, OTHER }
+
+	/**
+	 * What we know about the record that is currently being written by one
+	 * source.
+	 */
+	private static class RecordState {
+		//tag of the record that continuation lines belong to, or -1
+		public int recordTag = -1;
+		public long lastLine = -1;
+		//a line that may be the header of the next record, or -1
+		public long headerLine = -1;
+		public int headerLogger;
+		//first line of the throwable whose trace is being written, or -1
+		public long traceHeader = -1;
+	}
+
+	private static class Trace {
+		public int bodyLines;
+		public boolean expanded;
+	}
+
+	private static final Level[] LEVELS = Level.values();
+	//a tag is the level, the logger, and for lines in the body of a stack
+	//trace, how many lines back the first line of the throwable is
+	private static final int LEVEL_BITS = 3, LEVEL_MASK = (1 << LEVEL_BITS) - 1;
+	private static final int LOGGER_BITS = 11, LOGGER_MASK = (1 << LOGGER_BITS) - 1;
+	private static final int DISTANCE_SHIFT = LEVEL_BITS + LOGGER_BITS;
+	private static final int MAX_DISTANCE = (1 << (32 - DISTANCE_SHIFT)) - 1;
+	public static final int ALL_LEVELS = (1 << LEVELS.length) - 1;
+	private static final int MAX_LOGGERS = 1024;
+	//how far into a line to look for the level of a single line record
+	private static final int MAX_LEVEL_OFFSET = 256;
+	private static final int MAX_LABEL_LENGTH = 64;
+
+	private final LineStore store;
+	private final boolean labeled;
+	private char[] lineBuffer;
+	//lineBuffer up to the length of the fetched line
+	private CharBuffer lineText;
+
+	//offsets in every list are relative to this line number
+	private long base;
+	//tag of every classified line, starting at tagsFirst
+	private final IntList tags;
+	private long tagsFirst;
+	private final IntList[] levelLines;
+	private final List<IntList> loggerLines;
+	private final List<String> loggerNames;
+	private final Map<String, Integer> loggerIds;
+	private long postings;
+	private final Map<String, RecordState> states;
+	//stack traces by the line number of the first line of their throwable
+	private final Map<Long, Trace> traces;
+
+	private int shownLevels;
+	private int shownLogger;
+	private boolean folding;
+	//null if every line is shown
+	private IntList filtered;
+	private long filteredFirst;
+
+	/**
+	 * @param labeled whether lines start with the label of the source they
+	 * came from in square brackets, in which case records are tracked for
+	 * each source separately
+	 */
+	public LineClassifier(LineStore store, boolean labeled) {
+		this.store = store;
+		this.labeled = labeled;
+		lineBuffer = new char[256];
+		lineText = CharBuffer.wrap(lineBuffer);
+		tags = new IntList();
+		levelLines = new IntList[LEVELS.length];
+		for (int i = 0; i < levelLines.length; i++)
+			levelLines[i] = new IntList();
+		loggerLines = new ArrayList<IntList>();
+		loggerNames = new ArrayList<String>();
+		loggerIds = new HashMap<String, Integer>();
+		states = new HashMap<String, RecordState>();
+		traces = new LinkedHashMap<Long, Trace>();
+		folding = true;
+		clear();
+		setFilter(ALL_LEVELS, 0);
+	}
+
+	/**
+	 * Forget the tags of every line. Must be called after the store is
+	 * cleared.
+	 */
+	public final void clear() {
+		tagsFirst = base = store.getFirstLine();
+		tags.clear();
+		for (IntList list : levelLines)
+			list.clear();
+		for (IntList list : loggerLines)
+			list.clear();
+		postings = 0;
+		states.clear();
+		traces.clear();
+		if (filtered != null) {
+			//positions must not be reused
+			filteredFirst += filtered.size();
+			filtered.clear();
+		}
+	}
+
+	private static int tagOf(Level level, int logger) {
+		return level.ordinal() | logger << LEVEL_BITS;
+	}
+
+	private static int loggerOf(int tag) {
+		return tag >>> LEVEL_BITS & LOGGER_MASK;
+	}
+
+	private int fetch(long line) {
+		int length = store.getLineLength(line);
+		if (lineBuffer.length < length) {
+			lineBuffer = new char[Math.max(length, lineBuffer.length * 2)];
+			lineText = CharBuffer.wrap(lineBuffer);
+		}
+		length = store.getLine(line, lineBuffer);
+		lineText.limit(length);
+		return length;
+	}
+
+	private boolean startsWith(int start, int length, String prefix) {
+		if (length - start < prefix.length())
+			return false;
+		for (int i = 0; i < prefix.length(); i++)
+			if (lineBuffer[start + i] != prefix.charAt(i))
+				return false;
+		return true;
+	}
+
+	/**
+	 * @return the level if the text at start is a level followed by a colon
+	 */
+	private Level levelAt(int start, int length) {
+		for (int i = 0; i < LEVELS.length - 1; i++) {
+			String name = LEVELS[i].name();
+			if (startsWith(start, length, name) && start + name.length() < length && lineBuffer[start + name.length()] == ':')
+				return LEVELS[i];
+		}
+		return null;
+	}
+
+	private int loggerId(int start, int end) {
+		String name = new String(lineBuffer, start, end - start);
+		Integer id = loggerIds.get(name);
+		if (id != null)
+			return id.intValue();
+		if (loggerNames.size() >= MAX_LOGGERS)
+			return 0;
+		loggerNames.add(name);
+		loggerLines.add(new IntList());
+		loggerIds.put(name, Integer.valueOf(loggerNames.size()));
+		return loggerNames.size();
+	}
+
+	private boolean containsDot(int start, int end) {
+		for (int i = start; i < end; i++)
+			if (lineBuffer[i] == '.')
+				return true;
+		return false;
+	}
+
+	/**
+	 * @return the logger of the last token before end that contains a dot,
+	 * looking at no more than the given number of tokens
+	 */
+	private int loggerBefore(int start, int end, int maxTokens) {
+		int tokenEnd = end;
+		for (int i = end - 1; i >= start - 1 && maxTokens > 0; --i) {
+			if (i == start - 1 || lineBuffer[i] == ' ') {
+				if (tokenEnd > i + 1) {
+					if (containsDot(i + 1, tokenEnd))
+						return loggerId(i + 1, tokenEnd);
+					maxTokens--;
+				}
+				tokenEnd = i;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * SimpleFormatter headers contain the time of the record followed by the
+	 * class and method that logged it.
+	 */
+	private boolean looksLikeHeader(int start, int length) {
+		for (int i = start + 1; i + 2 < length; i++)
+			if (lineBuffer[i] == ':' && Character.isDigit(lineBuffer[i - 1]) && Character.isDigit(lineBuffer[i + 1]) && Character.isDigit(lineBuffer[i + 2]))
+				return true;
+		return false;
+	}
+
+	private boolean isContinuation(int start, int length) {
+		if (start == length)
+			return false;
+		if (StackTraceLines.isIndent(lineBuffer[start]) || isTraceBody(start, true))
+			return true;
+		//the first line of a throwable, e.g. java.lang.NullPointerException
+		int end = start;
+		while (end < length && lineBuffer[end] != ':' && lineBuffer[end] != ' ')
+			end++;
+		return containsDot(start, end) && (endsWith(start, end, "Exception") || endsWith(start, end, "Error") || endsWith(start, end, "Throwable"));
+	}
+
+	/**
+	 * @param inTrace whether the line before was part of a stack trace
+	 */
+	private boolean isTraceBody(int start, boolean inTrace) {
+		return StackTraceLines.classify(lineText, start, true, inTrace) == StackTraceLines.BODY;
+	}
+
+	private boolean endsWith(int start, int end, String suffix) {
+		return end - start >= suffix.length() && startsWith(end - suffix.length(), end, suffix);
+	}
+
+	/**
+	 * @return the tag of a record that fits on one line, or -1
+	 */
+	private int singleLineTag(int start, int length) {
+		int limit = Math.min(length, start + MAX_LEVEL_OFFSET);
+		for (int i = start + 1; i < limit; i++) {
+			if (lineBuffer[i - 1] != ' ')
+				continue;
+			Level level = levelAt(i, length);
+			if (level != null)
+				return tagOf(level, loggerBefore(start, i - 1, 4));
+		}
+		return -1;
+	}
+
+	private boolean isShown(long line, int tag) {
+		if ((shownLevels & 1 << (tag & LEVEL_MASK)) == 0 || shownLogger != 0 && loggerOf(tag) != shownLogger)
+			return false;
+		int distance = tag >>> DISTANCE_SHIFT;
+		if (!folding || distance == 0)
+			return true;
+		Trace trace = traces.get(Long.valueOf(line - distance));
+		return trace != null && trace.expanded;
+	}
+
+	/**
+	 * Makes sure that offsets of lines up to the given line fit in an int.
+	 */
+	private void rebaseFor(long line) {
+		if (line - base < Integer.MAX_VALUE)
+			return;
+		int delta = (int) (tagsFirst - base);
+		for (IntList list : levelLines) {
+			list.dropBelow(delta);
+			list.subtract(delta);
+		}
+		for (IntList list : loggerLines) {
+			list.dropBelow(delta);
+			list.subtract(delta);
+		}
+		if (filtered != null) {
+			filteredFirst += filtered.dropBelow(delta);
+			filtered.subtract(delta);
+		}
+		base = tagsFirst;
+	}
+
+	private void add(long line, int tag) {
+		rebaseFor(line);
+		int offset = (int) (line - base);
+		tags.add(tag);
+		levelLines[tag & LEVEL_MASK].add(offset);
+		postings++;
+		int logger = loggerOf(tag);
+		if (logger != 0) {
+			loggerLines.get(logger - 1).add(offset);
+			postings++;
+		}
+		if (filtered != null && isShown(line, tag))
+			filtered.add(offset);
+	}
+
+	/**
+	 * Changes the tag of a line that was already classified.
+	 */
+	private void retag(long line, int tag) {
+		if (line < tagsFirst)
+			return;
+		int index = (int) (line - tagsFirst);
+		int old = tags.get(index);
+		if (old == tag)
+			return;
+		tags.set(index, tag);
+		int offset = (int) (line - base);
+		levelLines[old & LEVEL_MASK].removeSorted(offset);
+		levelLines[tag & LEVEL_MASK].insertSorted(offset);
+		if (loggerOf(old) != 0 && loggerLines.get(loggerOf(old) - 1).removeSorted(offset))
+			postings--;
+		if (loggerOf(tag) != 0) {
+			loggerLines.get(loggerOf(tag) - 1).insertSorted(offset);
+			postings++;
+		}
+		if (filtered != null) {
+			if (isShown(line, old))
+				filtered.removeSorted(offset);
+			if (isShown(line, tag))
+				filtered.insertSorted(offset);
+		}
+	}
+
+	private void classify(long line) {
+		int length = fetch(line);
+		int start = 0;
+		String label = null;
+		if (labeled && length > 0 && lineBuffer[0] == '[') {
+			for (int i = 1; i + 1 < length && i < MAX_LABEL_LENGTH; i++) {
+				if (lineBuffer[i] == ']' && lineBuffer[i + 1] == ' ') {
+					label = new String(lineBuffer, 1, i - 1);
+					start = i + 2;
+					break;
+				}
+			}
+		}
+		RecordState state = states.get(label);
+		if (state == null) {
+			state = new RecordState();
+			states.put(label, state);
+		}
+
+		int tag;
+		Level level = levelAt(start, length);
+		if (level != null) {
+			int logger = 0;
+			//the line before was the header of this record
+			if (state.headerLine != -1 && state.headerLine == state.lastLine) {
+				logger = state.headerLogger;
+				retag(state.headerLine, tagOf(level, logger));
+			}
+			tag = tagOf(level, logger);
+			state.recordTag = tag;
+		} else if (state.recordTag != -1 && isContinuation(start, length)) {
+			tag = state.recordTag;
+		} else {
+			tag = singleLineTag(start, length);
+			state.recordTag = tag;
+			if (tag == -1)
+				tag = tagOf(Level.OTHER, 0);
+		}
+		state.headerLine = -1;
+		if ((tag & LEVEL_MASK) == Level.OTHER.ordinal() && looksLikeHeader(start, length)) {
+			state.headerLine = line;
+			state.headerLogger = loggerBefore(start, length, 2);
+		}
+		if (isTraceBody(start, state.traceHeader != -1)) {
+			if (state.traceHeader == -1 && state.lastLine >= tagsFirst)
+				state.traceHeader = state.lastLine;
+			if (state.traceHeader != -1 && line - state.traceHeader <= MAX_DISTANCE) {
+				Long key = Long.valueOf(state.traceHeader);
+				Trace trace = traces.get(key);
+				if (trace == null) {
+					trace = new Trace();
+					traces.put(key, trace);
+				}
+				trace.bodyLines++;
+				tag |= (int) (line - state.traceHeader) << DISTANCE_SHIFT;
+			}
+		} else {
+			state.traceHeader = -1;
+		}
+		state.lastLine = line;
+		add(line, tag);
+	}
+
+	/**
+	 * Physically remove lines that were trimmed from the store from every
+	 * list.
+	 */
+	private void prune() {
+		int first = (int) (tagsFirst - base);
+		postings = 0;
+		for (IntList list : levelLines) {
+			list.dropBelow(first);
+			postings += list.size();
+		}
+		for (IntList list : loggerLines) {
+			list.dropBelow(first);
+			postings += list.size();
+		}
+		//traces are in about the order of their lines
+		for (Iterator<Long> iter = traces.keySet().iterator(); iter.hasNext() && iter.next().longValue() < tagsFirst; )
+			iter.remove();
+	}
+
+	/**
+	 * Classify any lines that were completed since the last update, and
+	 * forget about lines that were trimmed from the store.
+	 */
+	public void update() {
+		long first = store.getFirstLine();
+		//the last line is still being written to
+		long end = store.getEndLine() - 1;
+		long classifiedEnd = tagsFirst + tags.size();
+		if (first < tagsFirst || first > classifiedEnd) {
+			clear();
+			classifiedEnd = tagsFirst;
+		} else if (first > tagsFirst) {
+			tags.dropFirst((int) (first - tagsFirst));
+			tagsFirst = first;
+			if (filtered != null)
+				filteredFirst += filtered.dropBelow((int) (first - base));
+		}
+		for (long line = classifiedEnd; line < end; line++)
+			classify(line);
+		if (postings > 2L * tags.size() + 4096)
+			prune();
+	}
+
+	/**
+	 * Only show lines that have one of the given levels and, if logger is not
+	 * 0, the given logger. Positions start over whenever the filter changes.
+	 * @param levels a bit for each ordinal of Level
+	 * @param logger the id of the logger to show, or 0 for all loggers
+	 */
+	public void setFilter(int levels, int logger) {
+		shownLevels = levels;
+		shownLogger = logger;
+		if (levels == ALL_LEVELS && logger == 0 && !folding) {
+			filtered = null;
+			return;
+		}
+		prune();
+		IntList result = new IntList();
+		if (logger != 0) {
+			IntList list = loggerLines.get(logger - 1);
+			for (int i = 0; i < list.size(); i++)
+				if (isShownOffset(list.get(i)))
+					result.add(list.get(i));
+		} else {
+			//merge the sorted lists of every level that is shown
+			int[] next = new int[LEVELS.length];
+			while (true) {
+				int min = -1;
+				for (int i = 0; i < LEVELS.length; i++)
+					if ((levels & 1 << i) != 0 && next[i] < levelLines[i].size()
+							&& (min == -1 || levelLines[i].get(next[i]) < levelLines[min].get(next[min])))
+						min = i;
+				if (min == -1)
+					break;
+				int offset = levelLines[min].get(next[min]++);
+				if (isShownOffset(offset))
+					result.add(offset);
+			}
+		}
+		filtered = result;
+		filteredFirst = 0;
+	}
+
+	private boolean isShownOffset(int offset) {
+		long line = base + offset;
+		return isShown(line, tags.get((int) (line - tagsFirst)));
+	}
+
+	/**
+	 * Fold the body of every stack trace that was not expanded, or show every
+	 * line of every trace.
+	 */
+	public void setFolding(boolean folding) {
+		this.folding = folding;
+		setFilter(shownLevels, shownLogger);
+	}
+
+	public boolean isFolding() {
+		return folding;
+	}
+
+	/**
+	 * Expands the stack trace of the throwable on the given line if it is
+	 * folded, or folds it if it is expanded.
+	 * @return false if there is no stack trace under the given line
+	 */
+	public boolean toggleFold(long line) {
+		Trace trace = traces.get(Long.valueOf(line));
+		if (trace == null || !folding)
+			return false;
+		trace.expanded = !trace.expanded;
+		refilterBody(line, trace);
+		return true;
+	}
+
+	/**
+	 * Brings the lines of a single trace in the filtered list up to date,
+	 * instead of going through every line like setFilter does.
+	 */
+	private void refilterBody(long header, Trace trace) {
+		//the body can be interleaved with lines of other sources
+		long end = tagsFirst + tags.size();
+		long first = -1, last = -1;
+		int found = 0;
+		for (long line = Math.max(header + 1, tagsFirst); line < end && line - header <= MAX_DISTANCE && found < trace.bodyLines; line++) {
+			if (tags.get((int) (line - tagsFirst)) >>> DISTANCE_SHIFT == line - header) {
+				if (first == -1)
+					first = line;
+				last = line;
+				found++;
+			}
+		}
+		if (first == -1)
+			return;
+		IntList shown = new IntList();
+		for (long line = first; line <= last; line++)
+			if (isShown(line, tags.get((int) (line - tagsFirst))))
+				shown.add((int) (line - base));
+		int from = filtered.lowerBound((int) (first - base));
+		int to = filtered.lowerBound((int) (last - base) + 1);
+		filtered.replace(from, to, shown);
+	}
+
+	/**
+	 * @return how many lines of stack trace are folded away under the given
+	 * line, or 0 if there are none
+	 */
+	public int getFoldedLines(long line) {
+		Trace trace = folding ? traces.get(Long.valueOf(line)) : null;
+		return trace == null || trace.expanded ? 0 : trace.bodyLines;
+	}
+
+	/**
+	 * @return whether there is an expanded stack trace under the given line
+	 */
+	public boolean isExpanded(long line) {
+		Trace trace = folding ? traces.get(Long.valueOf(line)) : null;
+		return trace != null && trace.expanded;
+	}
+
+	public boolean isFiltering() {
+		return filtered != null;
+	}
+
+	/**
+	 * @return the level of a line, or null if it was not classified yet
+	 */
+	public Level getLevel(long line) {
+		if (line < tagsFirst || line >= tagsFirst + tags.size())
+			return null;
+		return LEVELS[tags.get((int) (line - tagsFirst)) & LEVEL_MASK];
+	}
+
+	/**
+	 * @return the number of loggers that were seen so far. Loggers have ids
+	 * from 1 up to and including this number
+	 */
+	public int getLoggerCount() {
+		return loggerNames.size();
+	}
+
+	public String getLoggerName(int id) {
+		return loggerNames.get(id - 1);
+	}
+
+	@Override
+	public long getFirstPosition() {
+		return filteredFirst;
+	}
+
+	/**
+	 * @return whether there is a line that is still being written to
+	 */
+	private boolean hasTail() {
+		long end = store.getEndLine();
+		return end - 1 >= tagsFirst + tags.size() && store.getLineLength(end - 1) > 0;
+	}
+
+	@Override
+	public long getEndPosition() {
+		return filteredFirst + filtered.size() + (hasTail() ? 1 : 0);
+	}
+
+	@Override
+	public long getLine(long position) {
+		int index = (int) (position - filteredFirst);
+		if (index == filtered.size())
+			return store.getEndLine() - 1;
+		return base + filtered.get(index);
+	}
+
+	@Override
+	public long getPosition(long line) {
+		long offset = Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, line - base));
+		return filteredFirst + filtered.lowerBound((int) offset);
+	}
+}
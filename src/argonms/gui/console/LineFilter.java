@@ -0,0 +1,49 @@
+/*
+ * ArgonMS Server Manager - a process launcher and organizer utilizing Swing.
+ * Copyright (C) 2011-2013  GoldenKevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package argonms.gui.console;
+
+/**
+ * A subset of the lines of a LineStore for a ConsoleView to show. The lines
+ * that are shown are addressed by a position, which, like line numbers, is
+ * never reused while the filter stays the same - lines that are trimmed off
+ * the head do not change the positions of the lines that remain.
+ * @author GoldenKevin
+ */
+public interface LineFilter {
+	/**
+	 * @return the position of the first line that is shown
+	 */
+	public long getFirstPosition();
+
+	/**
+	 * @return one more than the position of the last line that is shown
+	 */
+	public long getEndPosition();
+
+	/**
+	 * @return the line number of the line shown at the given position
+	 */
+	public long getLine(long position);
+
+	/**
+	 * @return the position of the first line that is shown at or after the
+	 * given line number
+	 */
+	public long getPosition(long line);
+}
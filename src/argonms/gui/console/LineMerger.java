@@ -0,0 +1,225 @@
+/*
+ * ArgonMS Server Manager - a process launcher and organizer utilizing Swing.
+ * Copyright (C) 2011-2013  GoldenKevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package argonms.gui.console;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Merges the lines of several output streams into one, in the order that the
+ * lines were received in.
+ *
+ * Every stream writes to its own Source from its reader thread, which splits
+ * the output into lines and stamps them with the time they arrived. Each
+ * Source only holds a bounded number of lines - once it is full, lines are
+ * dropped and a note is merged in their place. The merge itself is a k-way
+ * merge of the sources, and only lines that are older than a watermark are
+ * merged. A source that is still open may receive a line that is stamped
+ * with any time after its queue was last looked at, so the watermark is the
+ * earliest such time over all open sources. Any lines that are newer than the
+ * watermark are held back until the next merge.
+ *
+ * Sources may be written to from any thread, but everything else must be done
+ * from the Swing EDT.
+ * @author GoldenKevin
+ */
+public class LineMerger {
+	private static class Line {
+		public final long stamp;
+		public final String text;
+
+		public Line(long stamp, String text) {
+			this.stamp = stamp;
+			this.text = text;
+		}
+	}
+
+	public class Source {
+		private final String label;
+		private final int order;
+		//guarded by this
+		private final Deque<Line> queue;
+		private int dropped;
+		private boolean ended;
+
+		//only used by the reader thread
+		private final StringBuilder partial;
+		private final List<String> complete;
+
+		//only used by the merging thread
+		private final Deque<Line> held;
+		private boolean drained;
+
+		private Source(String label, int order) {
+			this.label = label;
+			this.order = order;
+			queue = new ArrayDeque<Line>();
+			partial = new StringBuilder();
+			complete = new ArrayList<String>();
+			held = new ArrayDeque<Line>();
+		}
+
+		private void enqueue(boolean last) {
+			synchronized (this) {
+				//take the stamp while we have the lock so that the merger can
+				//rely on every line it has not seen yet being newer than the
+				//last time it looked at our queue
+				long stamp = System.nanoTime();
+				for (String line : complete) {
+					if (queue.size() < capacity)
+						queue.add(new Line(stamp, line));
+					else
+						dropped++;
+				}
+				if (last)
+					ended = true;
+			}
+			complete.clear();
+			notifier.run();
+		}
+
+		/**
+		 * Must only be called from the one thread that reads the stream.
+		 */
+		public void write(char[] buf, int offset, int length) {
+			int end = offset + length;
+			int start = offset;
+			for (int i = offset; i < end; i++) {
+				if (buf[i] == '\n' || partial.length() + i - start >= MAX_LINE_LENGTH) {
+					partial.append(buf, start, i - start);
+					complete.add(partial.toString());
+					partial.setLength(0);
+					start = buf[i] == '\n' ? i + 1 : i;
+				}
+			}
+			partial.append(buf, start, end - start);
+			if (!complete.isEmpty())
+				enqueue(false);
+		}
+
+		/**
+		 * Must be called from the thread that reads the stream once it is done
+		 * reading.
+		 */
+		public void end() {
+			if (partial.length() != 0) {
+				complete.add(partial.toString());
+				partial.setLength(0);
+			}
+			enqueue(true);
+		}
+	}
+
+	//lines without a line break that are longer than this are split
+	private static final int MAX_LINE_LENGTH = 64 * 1024;
+
+	private final int capacity;
+	private final Runnable notifier;
+	private final List<Source> sources;
+	private final PriorityQueue<Source> heads;
+	private int nextOrder;
+
+	/**
+	 * @param capacity the number of lines that each source may be holding
+	 * before lines are dropped
+	 * @param notifier called by reader threads whenever lines are available
+	 */
+	public LineMerger(int capacity, Runnable notifier) {
+		this.capacity = capacity;
+		this.notifier = notifier;
+		sources = new ArrayList<Source>();
+		heads = new PriorityQueue<Source>(11, new Comparator<Source>() {
+			@Override
+			public int compare(Source a, Source b) {
+				long diff = a.held.peekFirst().stamp - b.held.peekFirst().stamp;
+				if (diff != 0)
+					return diff < 0 ? -1 : 1;
+				return a.order < b.order ? -1 : a.order > b.order ? 1 : 0;
+			}
+		});
+	}
+
+	public Source addSource(String label) {
+		Source s = new Source(label, nextOrder++);
+		sources.add(s);
+		return s;
+	}
+
+	/**
+	 * Merges the lines of every source that can be merged so far, and appends
+	 * them to out with the label of the source they came from.
+	 */
+	public void merge(StringBuilder out) {
+		long watermark = 0;
+		boolean anyOpen = false;
+		for (Source s : sources) {
+			synchronized (s) {
+				s.held.addAll(s.queue);
+				s.queue.clear();
+				if (s.dropped != 0) {
+					s.held.add(new Line(System.nanoTime(), "[" + s.dropped + " lines were dropped]"));
+					s.dropped = 0;
+				}
+				if (s.ended) {
+					s.drained = true;
+				} else {
+					long now = System.nanoTime();
+					if (!anyOpen || now - watermark < 0)
+						watermark = now;
+					anyOpen = true;
+				}
+			}
+			if (!s.held.isEmpty())
+				heads.add(s);
+		}
+
+		while (!heads.isEmpty()) {
+			Source s = heads.poll();
+			Line line = s.held.peekFirst();
+			if (anyOpen && line.stamp - watermark > 0)
+				break;
+			s.held.removeFirst();
+			out.append('[').append(s.label).append("] ").append(line.text).append('\n');
+			if (!s.held.isEmpty())
+				heads.add(s);
+		}
+		heads.clear();
+
+		for (Iterator<Source> iter = sources.iterator(); iter.hasNext(); ) {
+			Source s = iter.next();
+			if (s.drained && s.held.isEmpty())
+				iter.remove();
+		}
+	}
+
+	/**
+	 * @return true if some lines were held back in the last merge
+	 */
+	public boolean hasHeldLines() {
+		for (Source s : sources)
+			if (!s.held.isEmpty())
+				return true;
+		return false;
+	}
+}
@@ -0,0 +1,333 @@
+/*
+ * ArgonMS Server Manager - a process launcher and organizer utilizing Swing.
+ * Copyright (C) 2011-2013  GoldenKevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package argonms.gui.console;
+
+import java.io.IOException;
+
+/**
+ * Compact storage for the lines of a console. Characters are packed into
+ * fixed size chunks of a char arena without any per-line objects, and lines
+ * are located through a ring of start offsets. Lines are addressed by a line
+ * number that is never reused, so trimming lines off the head does not change
+ * the numbers of the lines that remain.
+ *
+ * There is always at least one line - the last line is the one that is still
+ * being written to, and it is empty right after a line break.
+ *
+ * If a HistorySpill is attached, lines that are trimmed are moved into it
+ * instead of being discarded, and they can still be read back as if they
+ * were still in the store.
+ *
+ * This class is not thread-safe. All instances are meant to only be used on
+ * the Swing EDT.
+ * @author GoldenKevin
+ */
+public class LineStore {
+	private static final int CHUNK_SIZE = 8192;
+	private static final int INITIAL_LINE_CAPACITY = 1024;
+	private static final int TAB_SIZE = 8;
+	private static final char[] SPACES = "        ".toCharArray();
+
+	//ring of chunks. chunkBase is the offset of the first char in chunks[chunkHead]
+	private char[][] chunks;
+	private int chunkHead;
+	private int chunkCount;
+	private long chunkBase;
+	private char[] spareChunk;
+	//offset of the next char to be written
+	private long writeOffset;
+	//display column of the next char in the last line, for expanding tabs
+	private int column;
+
+	//ring of line start offsets, starting at the first line that is kept on
+	//the heap
+	private long[] starts;
+	private int startsHead;
+	private int lineCount;
+	private long firstLine;
+
+	private HistorySpill spill;
+
+	private int maxLines;
+	private int maxChars;
+
+	/**
+	 * @param maxLines the maximum number of lines to keep, or 0 if unbounded
+	 * @param maxChars the maximum number of characters to keep, or 0 if
+	 * unbounded
+	 */
+	public LineStore(int maxLines, int maxChars) {
+		chunks = new char[4][];
+		starts = new long[INITIAL_LINE_CAPACITY];
+		setLimits(maxLines, maxChars);
+		clear();
+	}
+
+	/**
+	 * @param maxLines the maximum number of lines to keep, or 0 if unbounded
+	 * @param maxChars the maximum number of characters to keep, or 0 if
+	 * unbounded
+	 */
+	public final void setLimits(int maxLines, int maxChars) {
+		this.maxLines = maxLines;
+		this.maxChars = maxChars;
+		trim();
+	}
+
+	/**
+	 * Attach a spill that all lines will be moved into once they are trimmed,
+	 * or detach the current one if spill is null.
+	 */
+	public void setSpill(HistorySpill spill) {
+		this.spill = spill;
+		if (spill != null)
+			spill.reset(firstLine);
+	}
+
+	/**
+	 * Discard all lines. Line numbers keep increasing from where they left
+	 * off, so that line numbers that were handed out before are never reused.
+	 */
+	public final void clear() {
+		long next = firstLine + lineCount;
+		for (int i = 0; i < chunkCount; i++)
+			chunks[(chunkHead + i) % chunks.length] = null;
+		chunkHead = 0;
+		chunkCount = 0;
+		chunkBase = writeOffset;
+		column = 0;
+		startsHead = 0;
+		starts[0] = writeOffset;
+		lineCount = 1;
+		firstLine = next;
+		if (spill != null)
+			spill.reset(firstLine);
+	}
+
+	private char[] allocateChunk() {
+		char[] chunk = spareChunk;
+		if (chunk != null)
+			spareChunk = null;
+		else
+			chunk = new char[CHUNK_SIZE];
+		if (chunkCount == chunks.length) {
+			char[][] grown = new char[chunks.length * 2][];
+			for (int i = 0; i < chunkCount; i++)
+				grown[i] = chunks[(chunkHead + i) % chunks.length];
+			chunks = grown;
+			chunkHead = 0;
+		}
+		chunks[(chunkHead + chunkCount++) % chunks.length] = chunk;
+		return chunk;
+	}
+
+	private char[] chunkAt(long offset) {
+		return chunks[(chunkHead + (int) ((offset - chunkBase) / CHUNK_SIZE)) % chunks.length];
+	}
+
+	/**
+	 * Copy a run of characters that contains no line breaks and no tabs.
+	 */
+	private void put(char[] buf, int offset, int length) {
+		while (length > 0) {
+			int inChunk = (int) ((writeOffset - chunkBase) % CHUNK_SIZE);
+			char[] chunk;
+			if (inChunk == 0 && writeOffset - chunkBase == (long) chunkCount * CHUNK_SIZE)
+				chunk = allocateChunk();
+			else
+				chunk = chunkAt(writeOffset);
+			int count = Math.min(length, CHUNK_SIZE - inChunk);
+			System.arraycopy(buf, offset, chunk, inChunk, count);
+			writeOffset += count;
+			column += count;
+			offset += count;
+			length -= count;
+		}
+	}
+
+	private void newLine() {
+		if (lineCount == starts.length) {
+			long[] grown = new long[starts.length * 2];
+			for (int i = 0; i < lineCount; i++)
+				grown[i] = starts[(startsHead + i) % starts.length];
+			starts = grown;
+			startsHead = 0;
+		}
+		starts[(startsHead + lineCount++) % starts.length] = writeOffset;
+		column = 0;
+		trim();
+	}
+
+	/**
+	 * Appends output to the last line, starting a new line for every line
+	 * feed. Carriage returns are dropped and tabs are expanded to spaces.
+	 */
+	public void append(char[] buf, int offset, int length) {
+		int end = offset + length;
+		int runStart = offset;
+		for (int i = offset; i < end; i++) {
+			char c = buf[i];
+			if (c != '\n' && c != '\r' && c != '\t')
+				continue;
+			put(buf, runStart, i - runStart);
+			runStart = i + 1;
+			switch (c) {
+				case '\n':
+					newLine();
+					break;
+				case '\t':
+					put(SPACES, 0, TAB_SIZE - column % TAB_SIZE);
+					break;
+			}
+		}
+		put(buf, runStart, end - runStart);
+		if (maxChars > 0)
+			trim();
+	}
+
+	private void spillLine(long line) {
+		long start = startOf(line);
+		int length = (int) (startOf(line + 1) - start);
+		if (!spill.beginLine(line, length))
+			return;
+		try {
+			int copied = 0;
+			while (copied < length) {
+				long offset = start + copied;
+				int inChunk = (int) ((offset - chunkBase) % CHUNK_SIZE);
+				int count = Math.min(length - copied, CHUNK_SIZE - inChunk);
+				spill.appendText(chunkAt(offset), inChunk, count);
+				copied += count;
+			}
+		} catch (IOException e) {
+			System.err.println("Error in spilling console history");
+			e.printStackTrace();
+			spill.reset(line + 1);
+		}
+	}
+
+	private void dropFirstLine() {
+		if (spill != null)
+			spillLine(firstLine);
+		startsHead = (startsHead + 1) % starts.length;
+		lineCount--;
+		firstLine++;
+		long keepFrom = starts[startsHead];
+		while (chunkCount > 1 && chunkBase + CHUNK_SIZE <= keepFrom) {
+			spareChunk = chunks[chunkHead];
+			chunks[chunkHead] = null;
+			chunkHead = (chunkHead + 1) % chunks.length;
+			chunkCount--;
+			chunkBase += CHUNK_SIZE;
+		}
+	}
+
+	private void trim() {
+		while (maxLines > 0 && lineCount > maxLines)
+			dropFirstLine();
+		while (maxChars > 0 && lineCount > 1 && writeOffset - starts[startsHead] > maxChars)
+			dropFirstLine();
+	}
+
+	/**
+	 * @return the line number of the oldest line that can still be read,
+	 * including lines that were spilled
+	 */
+	public long getFirstLine() {
+		if (spill != null && spill.getEndLine() == firstLine)
+			return spill.getFirstLine();
+		return firstLine;
+	}
+
+	/**
+	 * @return the line number of the oldest line that is still kept on the
+	 * heap
+	 */
+	public long getFirstHeapLine() {
+		return firstLine;
+	}
+
+	/**
+	 * @return one more than the line number of the last line
+	 */
+	public long getEndLine() {
+		return firstLine + lineCount;
+	}
+
+	/**
+	 * @return the number of lines that can be read, including lines that were
+	 * spilled
+	 */
+	public int getLineCount() {
+		return (int) (getEndLine() - getFirstLine());
+	}
+
+	private long startOf(long line) {
+		return starts[(startsHead + (int) (line - firstLine)) % starts.length];
+	}
+
+	private long endOf(long line) {
+		if (line == firstLine + lineCount - 1)
+			return writeOffset;
+		return startOf(line + 1);
+	}
+
+	/**
+	 * @return true if the line was spilled
+	 */
+	private boolean checkLine(long line) {
+		long first = getFirstLine();
+		if (line < first || line >= firstLine + lineCount)
+			throw new IndexOutOfBoundsException("Line " + line + " is not in [" + first + ", " + (firstLine + lineCount) + ")");
+		return line < firstLine;
+	}
+
+	public int getLineLength(long line) {
+		if (checkLine(line))
+			return spill.getLineLength(line);
+		return (int) (endOf(line) - startOf(line));
+	}
+
+	/**
+	 * Copies the text of a line, without its line break, into dest.
+	 * @param dest must be at least getLineLength(line) long
+	 * @return the length of the line
+	 */
+	public int getLine(long line, char[] dest) {
+		if (checkLine(line))
+			return spill.getLine(line, dest);
+		long start = startOf(line);
+		int length = (int) (endOf(line) - start);
+		int copied = 0;
+		while (copied < length) {
+			long offset = start + copied;
+			int inChunk = (int) ((offset - chunkBase) % CHUNK_SIZE);
+			int count = Math.min(length - copied, CHUNK_SIZE - inChunk);
+			System.arraycopy(chunkAt(offset), inChunk, dest, copied, count);
+			copied += count;
+		}
+		return length;
+	}
+
+	public String getLineString(long line) {
+		char[] dest = new char[getLineLength(line)];
+		getLine(line, dest);
+		return new String(dest);
+	}
+}
@@ -0,0 +1,351 @@
+/*
+ * ArgonMS Server Manager - a process launcher and organizer utilizing Swing.
+ * Copyright (C) 2011-2013  GoldenKevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package argonms.gui.console;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Saves the output of a process to rotating log files. The reader thread only
+ * ever copies chunks into a queue, and a dedicated writer thread appends them
+ * to the file in batches, so a slow disk can never hold up the reader thread
+ * or the Swing EDT. If the writer falls too far behind, chunks are dropped
+ * instead of queued and a marker is written in their place.
+ *
+ * The current log is named after the process, and a new one is started on
+ * every run and whenever the current one gets too large. Older logs are
+ * numbered, with 1 being the most recent, and can optionally be compressed.
+ *
+ * All methods of this class are thread-safe.
+ * @author GoldenKevin
+ */
+public class LogCapture {
+	//markers that are queued in between chunks so that they are processed in
+	//order with the output
+	private static final char[] ROTATE = new char[0];
+	private static final char[] CLOSE = new char[0];
+	private static final int MAX_BATCH = 64; //in chunks
+
+	private final File dir;
+	private final String name;
+	private final long maxFileSize;
+	private final int keep;
+	private final boolean compress;
+	private final long maxPending;
+
+	private final BlockingQueue<char[]> queue;
+	private final AtomicLong pendingChars;
+	private final AtomicLong peakPendingChars;
+	private final AtomicLong droppedChunks;
+	private final AtomicLong droppedChars;
+	private final AtomicLong writtenChars;
+	private final AtomicLong batches;
+	//dropped characters that a marker has not been written for yet
+	private final AtomicLong unmarkedDrops;
+	private final CountDownLatch closed;
+
+	//only touched by the writer thread
+	private FileOutputStream stream;
+	private Writer out;
+	private boolean failed;
+
+	/**
+	 * @param dir the directory to keep the logs in
+	 * @param name the base name of the log files
+	 * @param maxFileSize the size in bytes at which a log is rotated, or 0 to
+	 * only rotate when a new run starts
+	 * @param keep the number of old logs to keep
+	 * @param compress whether to gzip old logs
+	 * @param maxPending the maximum number of characters that may be waiting
+	 * to be written before output is dropped
+	 */
+	public LogCapture(File dir, String name, long maxFileSize, int keep, boolean compress, long maxPending) {
+		this.dir = dir;
+		this.name = name;
+		this.maxFileSize = maxFileSize;
+		this.keep = keep;
+		this.compress = compress;
+		this.maxPending = maxPending;
+		queue = new LinkedBlockingQueue<char[]>();
+		pendingChars = new AtomicLong();
+		peakPendingChars = new AtomicLong();
+		droppedChunks = new AtomicLong();
+		droppedChars = new AtomicLong();
+		writtenChars = new AtomicLong();
+		batches = new AtomicLong();
+		unmarkedDrops = new AtomicLong();
+		closed = new CountDownLatch(1);
+
+		Thread writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				writeLoop();
+			}
+		}, "log-writer-" + name);
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * Queue a chunk of output to be written. Never blocks - if too much output
+	 * is already waiting to be written, the chunk is dropped.
+	 */
+	public void offer(char[] buf, int offset, int length) {
+		if (pendingChars.get() + length > maxPending) {
+			droppedChunks.incrementAndGet();
+			droppedChars.addAndGet(length);
+			unmarkedDrops.addAndGet(length);
+			return;
+		}
+		long pending = pendingChars.addAndGet(length);
+		long peak;
+		while (pending > (peak = peakPendingChars.get()) && !peakPendingChars.compareAndSet(peak, pending));
+		queue.add(Arrays.copyOfRange(buf, offset, offset + length));
+	}
+
+	/**
+	 * Start a new log for the output that is offered after this call.
+	 */
+	public void startRun() {
+		queue.add(ROTATE);
+	}
+
+	/**
+	 * Write out everything that is queued and then stop the writer thread.
+	 */
+	public void close() {
+		queue.add(CLOSE);
+	}
+
+	/**
+	 * Waits for everything that was queued before close was called to be
+	 * written, e.g. before the JVM exits and takes the writer thread with it.
+	 * @return false if it was not written within the timeout
+	 */
+	public boolean awaitClose(long timeout, TimeUnit unit) throws InterruptedException {
+		return closed.await(timeout, unit);
+	}
+
+	public File getCurrentFile() {
+		return new File(dir, name + ".log");
+	}
+
+	/**
+	 * @return the number of characters that are waiting to be written
+	 */
+	public long getPendingChars() {
+		return pendingChars.get();
+	}
+
+	/**
+	 * @return the largest number of characters that were ever waiting to be
+	 * written at once
+	 */
+	public long getPeakPendingChars() {
+		return peakPendingChars.get();
+	}
+
+	public long getDroppedChunks() {
+		return droppedChunks.get();
+	}
+
+	public long getDroppedChars() {
+		return droppedChars.get();
+	}
+
+	public long getWrittenChars() {
+		return writtenChars.get();
+	}
+
+	public long getBatches() {
+		return batches.get();
+	}
+
+	private File numbered(int index, boolean compressed) {
+		return new File(dir, name + "." + index + (compressed ? ".log.gz" : ".log"));
+	}
+
+	private static void gzip(File from, File to) throws IOException {
+		InputStream in = new FileInputStream(from);
+		try {
+			OutputStream gz = new GZIPOutputStream(new FileOutputStream(to));
+			try {
+				byte[] buf = new byte[8192];
+				int read;
+				while ((read = in.read(buf)) != -1)
+					gz.write(buf, 0, read);
+			} finally {
+				gz.close();
+			}
+		} finally {
+			in.close();
+		}
+		from.delete();
+	}
+
+	private void closeFile() throws IOException {
+		if (out != null) {
+			markDrops();
+			Writer w = out;
+			out = null;
+			stream = null;
+			w.close();
+		}
+	}
+
+	/**
+	 * Shifts the current log to the front of the old logs.
+	 */
+	private void rotate() throws IOException {
+		closeFile();
+		File current = getCurrentFile();
+		if (!current.isFile() || current.length() == 0)
+			return;
+		if (keep == 0) {
+			current.delete();
+			return;
+		}
+		//old logs may have been left behind with either extension if the
+		//compress setting was changed in between sessions
+		numbered(keep, false).delete();
+		numbered(keep, true).delete();
+		for (int i = keep - 1; i >= 1; --i) {
+			numbered(i, false).renameTo(numbered(i + 1, false));
+			numbered(i, true).renameTo(numbered(i + 1, true));
+		}
+		File first = numbered(1, false);
+		if (!current.renameTo(first))
+			throw new IOException("Could not rename " + current);
+		if (compress)
+			gzip(first, numbered(1, true));
+	}
+
+	private void openFile() throws IOException {
+		if (!dir.isDirectory() && !dir.mkdirs())
+			throw new IOException("Could not create " + dir);
+		stream = new FileOutputStream(getCurrentFile(), true);
+		out = new BufferedWriter(new OutputStreamWriter(stream));
+	}
+
+	private void markDrops() throws IOException {
+		long dropped = unmarkedDrops.getAndSet(0);
+		if (dropped != 0)
+			out.write("[" + dropped + " characters of output were not logged]\n");
+	}
+
+	private void write(char[] chunk) throws IOException {
+		if (failed) {
+			droppedChunks.incrementAndGet();
+			droppedChars.addAndGet(chunk.length);
+			return;
+		}
+		if (out == null)
+			openFile();
+		markDrops();
+		out.write(chunk);
+		writtenChars.addAndGet(chunk.length);
+	}
+
+	private void failed(IOException e) {
+		System.err.println("Error in writing log of " + name);
+		e.printStackTrace();
+		failed = true;
+		try {
+			closeFile();
+		} catch (IOException ex) {
+			//we already logged the first error, so don't bother
+		}
+	}
+
+	private void writeLoop() {
+		List<char[]> batch = new ArrayList<char[]>(MAX_BATCH);
+		try {
+			writeBatches(batch);
+		} finally {
+			closed.countDown();
+		}
+	}
+
+	private void writeBatches(List<char[]> batch) {
+		try {
+			while (true) {
+				batch.add(queue.take());
+				queue.drainTo(batch, MAX_BATCH - 1);
+				for (char[] chunk : batch) {
+					if (chunk == ROTATE) {
+						//every run gets another chance at the file
+						failed = false;
+						try {
+							rotate();
+							openFile();
+							out.write("==== " + name + " started at " + new Date() + " ====\n");
+						} catch (IOException e) {
+							failed(e);
+						}
+					} else if (chunk == CLOSE) {
+						try {
+							closeFile();
+						} catch (IOException e) {
+							failed(e);
+						}
+						return;
+					} else {
+						pendingChars.addAndGet(-chunk.length);
+						try {
+							write(chunk);
+						} catch (IOException e) {
+							failed(e);
+						}
+					}
+				}
+				batch.clear();
+				batches.incrementAndGet();
+				if (out != null) {
+					try {
+						markDrops();
+						out.flush();
+						if (maxFileSize > 0 && stream.getChannel().position() >= maxFileSize)
+							rotate();
+					} catch (IOException e) {
+						failed(e);
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			//nobody should be interrupting us, but bail out if they do
+		}
+	}
+}
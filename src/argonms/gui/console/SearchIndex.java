@@ -0,0 +1,564 @@
+/*
+ * ArgonMS Server Manager - a process launcher and organizer utilizing Swing.
+ * Copyright (C) 2011-2013  GoldenKevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package argonms.gui.console;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An incrementally built trigram index over the lines of a LineStore, for
+ * finding text without having to look at every line.
+ *
+ * Lines are grouped into blocks, and for every trigram (case-insensitively)
+ * the index keeps a sorted list of the blocks that contain it. Trigrams are
+ * hashed into a fixed number of buckets, so a list may contain blocks that
+ * merely contain a trigram with the same hash - the lists only narrow down
+ * which blocks have to be looked at, and every candidate line is checked
+ * against the actual query. Regular expressions are narrowed down by the
+ * literal text that every match of them must contain. Queries that have no
+ * trigrams to go by fall back to looking at every line.
+ *
+ * Only lines that are complete are indexed. Lines that are not indexed, either
+ * because they are still being written to or because they are older than
+ * what the index has room for, are also looked at one by one.
+ *
+ * This class is not thread-safe. All instances are meant to only be used on
+ * the Swing EDT.
+ * @author GoldenKevin
+ */
+public class SearchIndex {
+	public static class Match {
+		public final long line;
+		public final int start, end;
+
+		public Match(long line, int start, int end) {
+			this.line = line;
+			this.start = start;
+			this.end = end;
+		}
+	}
+
+	/**
+	 * Lets a Matcher look at the line buffer without copying it.
+	 */
+	private class LineChars implements CharSequence {
+		private int length;
+
+		@Override
+		public int length() {
+			return length;
+		}
+
+		@Override
+		public char charAt(int index) {
+			return lineBuffer[index];
+		}
+
+		@Override
+		public CharSequence subSequence(int start, int end) {
+			return new String(lineBuffer, start, end - start);
+		}
+
+		@Override
+		public String toString() {
+			return new String(lineBuffer, 0, length);
+		}
+	}
+
+	private static final int BLOCK_SHIFT = 5; //32 lines per block
+	private static final int BUCKET_BITS = 16;
+	//upper bound on the size of the index. once it is reached, the oldest
+	//blocks are dropped from the index
+	private static final int MAX_POSTINGS = 4 * 1024 * 1024;
+
+	private final LineStore store;
+	private final LineChars lineChars;
+	private char[] lineBuffer;
+
+	//buckets are only allocated once anything is indexed
+	private int[][] postings;
+	private int[] postingsSize;
+	//block numbers in postings are relative to this
+	private long blockBase;
+	//blocks before this are no longer indexed, but may still be in postings
+	private int minBlock;
+	//number of postings of each block, starting at countsBase
+	private int[] blockCounts;
+	private int countsBase;
+	private long totalPostings;
+	private long livePostings;
+	//lines in [indexedFirst, indexedEnd) are indexed
+	private long indexedFirst;
+	private long indexedEnd;
+
+	public SearchIndex(LineStore store) {
+		this.store = store;
+		lineChars = new LineChars();
+		lineBuffer = new char[256];
+		clear();
+	}
+
+	/**
+	 * Drop everything from the index. Must be called after the store is
+	 * cleared.
+	 */
+	public final void clear() {
+		postings = null;
+		postingsSize = null;
+		blockCounts = new int[64];
+		countsBase = 0;
+		minBlock = 0;
+		totalPostings = 0;
+		livePostings = 0;
+		indexedFirst = indexedEnd = store.getFirstLine();
+		blockBase = indexedFirst >> BLOCK_SHIFT;
+	}
+
+	private int blockOf(long line) {
+		return (int) ((line >> BLOCK_SHIFT) - blockBase);
+	}
+
+	private long firstLineOf(int block) {
+		return (block + blockBase) << BLOCK_SHIFT;
+	}
+
+	private static int hash(char a, char b, char c) {
+		return ((Character.toLowerCase(a) * 31 + Character.toLowerCase(b)) * 31 + Character.toLowerCase(c)) * 0x9E3779B9 >>> (32 - BUCKET_BITS);
+	}
+
+	private int fetch(long line) {
+		int length = store.getLineLength(line);
+		if (lineBuffer.length < length)
+			lineBuffer = new char[Math.max(length, lineBuffer.length * 2)];
+		return store.getLine(line, lineBuffer);
+	}
+
+	private void indexLine(long line) {
+		int length = fetch(line);
+		int block = blockOf(line);
+		if (block - countsBase >= blockCounts.length) {
+			int[] grown = new int[blockCounts.length * 2];
+			System.arraycopy(blockCounts, 0, grown, 0, blockCounts.length);
+			blockCounts = grown;
+		}
+		for (int i = 2; i < length; i++) {
+			int bucket = hash(lineBuffer[i - 2], lineBuffer[i - 1], lineBuffer[i]);
+			int[] list = postings[bucket];
+			int size = postingsSize[bucket];
+			//blocks are indexed in order, so the block can only already be in
+			//the list if it is the last element
+			if (size != 0 && list[size - 1] == block)
+				continue;
+			if (list == null) {
+				list = postings[bucket] = new int[4];
+			} else if (size == list.length) {
+				int[] grown = new int[size * 2];
+				System.arraycopy(list, 0, grown, 0, size);
+				list = postings[bucket] = grown;
+			}
+			list[size] = block;
+			postingsSize[bucket] = size + 1;
+			blockCounts[block - countsBase]++;
+			totalPostings++;
+			livePostings++;
+		}
+	}
+
+	private void dropBlocksBefore(int block) {
+		for (; minBlock < block; minBlock++)
+			if (minBlock - countsBase < blockCounts.length)
+				livePostings -= blockCounts[minBlock - countsBase];
+		indexedFirst = Math.max(indexedFirst, firstLineOf(minBlock));
+	}
+
+	/**
+	 * Physically remove the postings of blocks that were dropped.
+	 */
+	private void compact() {
+		for (int i = 0; i < postings.length; i++) {
+			int[] list = postings[i];
+			if (list == null)
+				continue;
+			int from = lowerBound(list, postingsSize[i], minBlock);
+			if (from == 0)
+				continue;
+			int size = postingsSize[i] - from;
+			if (size == 0) {
+				postings[i] = null;
+			} else {
+				System.arraycopy(list, from, list, 0, size);
+				if (size < list.length / 4) {
+					int[] shrunk = new int[size * 2];
+					System.arraycopy(list, 0, shrunk, 0, size);
+					postings[i] = shrunk;
+				}
+			}
+			postingsSize[i] = size;
+		}
+		totalPostings = livePostings;
+		int shift = minBlock - countsBase;
+		System.arraycopy(blockCounts, shift, blockCounts, 0, blockCounts.length - shift);
+		Arrays.fill(blockCounts, blockCounts.length - shift, blockCounts.length, 0);
+		countsBase = minBlock;
+	}
+
+	/**
+	 * Index any lines that were completed since the last update, and forget
+	 * about lines that were trimmed from the store.
+	 */
+	public void update() {
+		long first = store.getFirstLine();
+		//the last line is still being written to
+		long end = store.getEndLine() - 1;
+		if (first >= indexedEnd) {
+			//everything we indexed is gone
+			clear();
+		} else if (first > indexedFirst) {
+			indexedFirst = first;
+			dropBlocksBefore(blockOf(first));
+		}
+		if (indexedEnd >= end)
+			return;
+		if (postings == null) {
+			postings = new int[1 << BUCKET_BITS][];
+			postingsSize = new int[1 << BUCKET_BITS];
+		}
+		for (; indexedEnd < end; indexedEnd++)
+			indexLine(indexedEnd);
+		if (livePostings > MAX_POSTINGS) {
+			int block = minBlock;
+			long remaining = livePostings;
+			while (remaining > MAX_POSTINGS / 2 && block < blockOf(indexedEnd))
+				remaining -= blockCounts[block++ - countsBase];
+			dropBlocksBefore(block);
+		}
+		if (totalPostings > 2 * livePostings + (1 << BUCKET_BITS))
+			compact();
+	}
+
+	private static int lowerBound(int[] list, int size, int key) {
+		int low = 0, high = size;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (list[mid] < key)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return low;
+	}
+
+	/**
+	 * @return the index after the bracket that closes the class at start
+	 */
+	private static int skipClass(String regex, int start) {
+		int depth = 0;
+		for (int i = start; i < regex.length(); i++) {
+			char c = regex.charAt(i);
+			if (c == '\\') {
+				i++;
+			} else if (c == '[') {
+				depth++;
+				//a bracket right at the start of a class does not close it
+				if (i + 1 < regex.length() && regex.charAt(i + 1) == '^')
+					i++;
+				if (i + 1 < regex.length() && regex.charAt(i + 1) == ']')
+					i++;
+			} else if (c == ']' && --depth == 0) {
+				return i + 1;
+			}
+		}
+		return regex.length();
+	}
+
+	/**
+	 * @return the index after the parenthesis that closes the group at start
+	 */
+	private static int skipGroup(String regex, int start) {
+		int depth = 0;
+		for (int i = start; i < regex.length(); i++) {
+			char c = regex.charAt(i);
+			if (c == '\\')
+				i++;
+			else if (c == '[')
+				i = skipClass(regex, i) - 1;
+			else if (c == '(')
+				depth++;
+			else if (c == ')' && --depth == 0)
+				return i + 1;
+		}
+		return regex.length();
+	}
+
+	private static void endRun(StringBuilder run, List<String> literals) {
+		if (run.length() >= 3)
+			literals.add(run.toString());
+		run.setLength(0);
+	}
+
+	/**
+	 * Conservatively finds strings that every match of the regular expression
+	 * must contain. Groups and classes are skipped entirely, and anything with
+	 * an alternation gives up.
+	 * @return the strings, or null if none could be found
+	 */
+	private static List<String> requiredLiterals(String regex) {
+		if (regex.indexOf('|') != -1 || regex.contains("\\Q"))
+			return null;
+		List<String> literals = new ArrayList<String>();
+		StringBuilder run = new StringBuilder();
+		for (int i = 0; i < regex.length(); ) {
+			char c = regex.charAt(i);
+			switch (c) {
+				case '\\':
+					if (i + 1 < regex.length() && !Character.isLetterOrDigit(regex.charAt(i + 1))) {
+						run.append(regex.charAt(i + 1));
+					} else {
+						//character classes and back references
+						endRun(run, literals);
+					}
+					i += 2;
+					break;
+				case '[':
+					endRun(run, literals);
+					i = skipClass(regex, i);
+					break;
+				case '(':
+					endRun(run, literals);
+					i = skipGroup(regex, i);
+					break;
+				case '?':
+				case '*':
+				case '{':
+					//the previous character is optional
+					if (run.length() != 0)
+						run.setLength(run.length() - 1);
+					endRun(run, literals);
+					i = c == '{' ? Math.max(regex.indexOf('}', i), i) + 1 : i + 1;
+					break;
+				case '+':
+				case '.':
+				case '^':
+				case '$':
+					endRun(run, literals);
+					i++;
+					break;
+				default:
+					run.append(c);
+					i++;
+					break;
+			}
+		}
+		endRun(run, literals);
+		return literals.isEmpty() ? null : literals;
+	}
+
+	/**
+	 * @return the blocks that may contain all of the given strings in
+	 * ascending order, or null if the index can't narrow it down
+	 */
+	private int[] candidateBlocks(List<String> literals) {
+		if (literals == null || postings == null)
+			return null;
+		int[] result = null;
+		int resultSize = 0;
+		for (String literal : literals) {
+			for (int i = 2; i < literal.length(); i++) {
+				int bucket = hash(literal.charAt(i - 2), literal.charAt(i - 1), literal.charAt(i));
+				int[] list = postings[bucket];
+				int size = postingsSize[bucket];
+				if (list == null)
+					return new int[0];
+				int from = lowerBound(list, size, minBlock);
+				if (result == null) {
+					result = new int[size - from];
+					System.arraycopy(list, from, result, 0, size - from);
+					resultSize = result.length;
+				} else {
+					//intersect the two sorted lists in place
+					int kept = 0;
+					for (int a = 0, b = from; a < resultSize && b < size; ) {
+						if (result[a] < list[b]) {
+							a++;
+						} else if (result[a] > list[b]) {
+							b++;
+						} else {
+							result[kept++] = result[a];
+							a++;
+							b++;
+						}
+					}
+					resultSize = kept;
+				}
+				if (resultSize == 0)
+					return new int[0];
+			}
+		}
+		if (result == null)
+			return null;
+		if (resultSize == result.length)
+			return result;
+		int[] trimmed = new int[resultSize];
+		System.arraycopy(result, 0, trimmed, 0, resultSize);
+		return trimmed;
+	}
+
+	/**
+	 * Finds the first match in the line that starts at or after from if
+	 * forward, or the last match that starts before from if not.
+	 */
+	private Match matchLine(Matcher m, long line, int from, boolean forward) {
+		lineChars.length = fetch(line);
+		m.reset(lineChars);
+		if (forward) {
+			if (from > lineChars.length || !m.find(from))
+				return null;
+			return new Match(line, m.start(), m.end());
+		}
+		Match last = null;
+		while (m.find() && m.start() < from)
+			last = new Match(line, m.start(), m.end());
+		return last;
+	}
+
+	private Match scanLinear(Matcher m, long from, long to, boolean forward) {
+		if (forward) {
+			for (long line = from; line < to; line++) {
+				Match match = matchLine(m, line, 0, true);
+				if (match != null)
+					return match;
+			}
+		} else {
+			for (long line = to - 1; line >= from; --line) {
+				Match match = matchLine(m, line, Integer.MAX_VALUE, false);
+				if (match != null)
+					return match;
+			}
+		}
+		return null;
+	}
+
+	private Match scanIndexed(Matcher m, int[] blocks, long from, long to, boolean forward) {
+		if (from >= to)
+			return null;
+		if (forward) {
+			for (int i = lowerBound(blocks, blocks.length, blockOf(from)); i < blocks.length; i++) {
+				long start = Math.max(from, firstLineOf(blocks[i]));
+				long end = Math.min(to, firstLineOf(blocks[i] + 1));
+				if (start >= to)
+					break;
+				Match match = scanLinear(m, start, end, true);
+				if (match != null)
+					return match;
+			}
+		} else {
+			for (int i = lowerBound(blocks, blocks.length, blockOf(to - 1) + 1) - 1; i >= 0; --i) {
+				long start = Math.max(from, firstLineOf(blocks[i]));
+				long end = Math.min(to, firstLineOf(blocks[i] + 1));
+				if (end <= from)
+					break;
+				Match match = scanLinear(m, start, end, false);
+				if (match != null)
+					return match;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Searches all of the lines in [from, to).
+	 */
+	private Match scan(Matcher m, int[] blocks, long from, long to, boolean forward) {
+		if (blocks == null)
+			return scanLinear(m, from, to, forward);
+		long indexedFrom = Math.max(from, indexedFirst), indexedTo = Math.min(to, indexedEnd);
+		//lines older than the index, then the indexed lines, then lines newer
+		//than the index - or the other way around if going backwards
+		if (forward) {
+			Match match = scanLinear(m, from, Math.min(to, indexedFirst), true);
+			if (match == null)
+				match = scanIndexed(m, blocks, indexedFrom, indexedTo, true);
+			if (match == null)
+				match = scanLinear(m, Math.max(from, indexedEnd), to, true);
+			return match;
+		} else {
+			Match match = scanLinear(m, Math.max(from, indexedEnd), to, false);
+			if (match == null)
+				match = scanIndexed(m, blocks, indexedFrom, indexedTo, false);
+			if (match == null)
+				match = scanLinear(m, from, Math.min(to, indexedFirst), false);
+			return match;
+		}
+	}
+
+	/**
+	 * Finds the next match after, or the previous match before, the given
+	 * position, wrapping around if the end or start of the store is reached.
+	 * @param query the text or regular expression to look for
+	 * @param matchCase whether the case of letters matters
+	 * @param regex whether query is a regular expression
+	 * @param line the line to start from
+	 * @param column the column to start from. Matches at the column are
+	 * included when going forward, but not when going backward
+	 * @param forward whether to search towards the end of the store
+	 * @return the match, or null if there is no match anywhere
+	 * @throws java.util.regex.PatternSyntaxException if regex is true and
+	 * query is not a valid regular expression
+	 */
+	public Match find(String query, boolean matchCase, boolean regex, long line, int column, boolean forward) {
+		update();
+		if (query.isEmpty())
+			return null;
+		int flags = 0;
+		if (!regex)
+			flags |= Pattern.LITERAL;
+		if (!matchCase)
+			flags |= Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE;
+		Matcher m = Pattern.compile(query, flags).matcher("");
+		List<String> literals;
+		if (regex) {
+			literals = requiredLiterals(query);
+		} else if (query.length() >= 3) {
+			literals = new ArrayList<String>();
+			literals.add(query);
+		} else {
+			literals = null;
+		}
+		int[] blocks = candidateBlocks(literals);
+
+		long first = store.getFirstLine(), end = store.getEndLine();
+		line = Math.max(first, Math.min(end - 1, line));
+		Match match = matchLine(m, line, column, forward);
+		if (match != null)
+			return match;
+		if (forward) {
+			match = scan(m, blocks, line + 1, end, true);
+			if (match == null)
+				match = scan(m, blocks, first, line + 1, true);
+		} else {
+			match = scan(m, blocks, first, line, false);
+			if (match == null)
+				match = scan(m, blocks, line, end, false);
+		}
+		return match;
+	}
+}
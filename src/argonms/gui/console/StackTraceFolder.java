@@ -0,0 +1,231 @@
+/*
+ * ArgonMS Server Manager - a process launcher and organizer utilizing Swing.
+ * Copyright (C) 2011-2013  GoldenKevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package argonms.gui.console;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Recognizes Java stack traces in output as it is read, and replaces every
+ * trace that is identical to one that was recently seen with a single line
+ * that counts how many times it was repeated.
+ *
+ * The body of a trace is made up of the lines that follow the first line of a
+ * throwable and that, after their indentation, start with "at" or
+ * "... n more", as well as any "Caused by:" and "Suppressed:" lines between
+ * them. Lines that are not part of a body are passed through as soon as they
+ * are read, but a body is held back until the first line that does not belong
+ * to it, or until flush is called, so that it can be compared as a whole.
+ *
+ * This class is not thread-safe. Each instance is meant to only be used by the
+ * thread that reads the output.
+ * @author GoldenKevin
+ */
+public class StackTraceFolder {
+	private static class Trace {
+		public int seen = 1;
+	}
+
+	private static final int MAX_TRACES = 32;
+	//in chars. longer bodies are passed through without being compared
+	private static final int MAX_BODY_LENGTH = 64 * 1024;
+	//in chars. only this much of the first line of a throwable is compared
+	private static final int MAX_HEADER_LENGTH = 1024;
+
+	private static final int UNDECIDED = StackTraceLines.UNDECIDED, TEXT = StackTraceLines.TEXT, BODY = StackTraceLines.BODY;
+
+	private final Map<String, Trace> recent;
+	//the line before the current one, and the current one
+	private StringBuilder previousLine, currentLine;
+	//how the current line was classified, and the start of it if UNDECIDED
+	private int lineKind;
+	private final StringBuilder undecided;
+	private final StringBuilder body;
+	private boolean inBody, bodyOverflowed;
+	private String header;
+
+	private char[] out;
+	private int outLength;
+
+	public StackTraceFolder() {
+		recent = new LinkedHashMap<String, Trace>(MAX_TRACES, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Trace> eldest) {
+				return size() > MAX_TRACES;
+			}
+		};
+		previousLine = new StringBuilder();
+		currentLine = new StringBuilder();
+		undecided = new StringBuilder();
+		body = new StringBuilder();
+		out = new char[8192];
+	}
+
+	private void emit(char c) {
+		if (outLength == out.length) {
+			char[] grown = new char[out.length * 2];
+			System.arraycopy(out, 0, grown, 0, outLength);
+			out = grown;
+		}
+		out[outLength++] = c;
+	}
+
+	private void emit(CharSequence s) {
+		for (int i = 0; i < s.length(); i++)
+			emit(s.charAt(i));
+	}
+
+	private void endBody() {
+		if (!inBody)
+			return;
+		inBody = false;
+		if (bodyOverflowed) {
+			bodyOverflowed = false;
+			return;
+		}
+		String key = header + '\n' + body;
+		Trace trace = recent.get(key);
+		if (trace == null) {
+			trace = new Trace();
+			recent.put(key, trace);
+			emit(body);
+		} else {
+			emit("\t(identical stack trace omitted, seen ");
+			emit(Integer.toString(++trace.seen));
+			emit(" times)\n");
+		}
+		body.setLength(0);
+	}
+
+	private void bodyChar(char c) {
+		if (bodyOverflowed) {
+			emit(c);
+			return;
+		}
+		body.append(c);
+		if (body.length() > MAX_BODY_LENGTH) {
+			//too big to be worth comparing - just let the rest of it through
+			bodyOverflowed = true;
+			emit(body);
+			body.setLength(0);
+		}
+	}
+
+	private void textChar(char c) {
+		emit(c);
+		if (currentLine.length() < MAX_HEADER_LENGTH)
+			currentLine.append(c);
+	}
+
+	private void decided(int kind) {
+		lineKind = kind;
+		if (kind == BODY) {
+			if (!inBody) {
+				inBody = true;
+				header = previousLine.toString();
+			}
+		} else {
+			endBody();
+		}
+		for (int i = 0; i < undecided.length(); i++)
+			lineChar(undecided.charAt(i));
+		undecided.setLength(0);
+	}
+
+	private void lineChar(char c) {
+		if (lineKind == BODY)
+			bodyChar(c);
+		else
+			textChar(c);
+	}
+
+	private void endLine() {
+		if (lineKind == UNDECIDED)
+			decided(StackTraceLines.classify(undecided, 0, true, inBody));
+		lineChar('\n');
+		if (lineKind == TEXT) {
+			StringBuilder swap = previousLine;
+			previousLine = currentLine;
+			currentLine = swap;
+		}
+		currentLine.setLength(0);
+		lineKind = UNDECIDED;
+	}
+
+	/**
+	 * Folds the given output. The result can be read from getBuffer.
+	 * @return the number of chars at the start of getBuffer that are output
+	 */
+	public int fold(char[] buf, int offset, int length) {
+		outLength = 0;
+		for (int i = offset; i < offset + length; i++) {
+			char c = buf[i];
+			if (c == '\n') {
+				endLine();
+			} else if (lineKind == UNDECIDED) {
+				undecided.append(c);
+				int kind = StackTraceLines.classify(undecided, 0, false, inBody);
+				if (kind != UNDECIDED)
+					decided(kind);
+			} else {
+				lineChar(c);
+			}
+		}
+		return outLength;
+	}
+
+	/**
+	 * Passes through anything that is held back, for when no more output is
+	 * expected for a while. The result can be read from getBuffer.
+	 * @return the number of chars at the start of getBuffer that are output
+	 */
+	public int flush() {
+		outLength = 0;
+		if (lineKind == UNDECIDED && undecided.length() > 0)
+			decided(TEXT);
+		else if (lineKind == BODY)
+			//a partial line of a body - it can't be compared anymore
+			bodyOverflowed = true;
+		if (bodyOverflowed) {
+			emit(body);
+			body.setLength(0);
+		} else {
+			endBody();
+		}
+		return outLength;
+	}
+
+	/**
+	 * @return whether any output is held back until more is read or until
+	 * flush is called
+	 */
+	public boolean isHolding() {
+		return inBody && !bodyOverflowed || lineKind == UNDECIDED && undecided.length() > 0;
+	}
+
+	/**
+	 * The chars returned by fold and flush, which are only valid until the
+	 * next time either is called.
+	 */
+	public char[] getBuffer() {
+		return out;
+	}
+}
@@ -0,0 +1,101 @@
+/*
+ * ArgonMS Server Manager - a process launcher and organizer utilizing Swing.
+ * Copyright (C) 2011-2013  GoldenKevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package argonms.gui.console;
+
+/**
+ * Decides whether a line belongs to the body of a Java stack trace, so that
+ * the output that is folded as it is read and the lines that are folded in a
+ * console agree on what a trace is.
+ *
+ * The body of a trace is made up of the lines that, after up to MAX_INDENT
+ * spaces or tabs, start with "at " or "... " followed by a digit, as well as
+ * any "Caused by: " and "Suppressed: " lines that follow them.
+ * @author GoldenKevin
+ */
+final class StackTraceLines {
+	public static final int UNDECIDED = 0, TEXT = 1, BODY = 2;
+
+	private static final int MAX_INDENT = 16;
+	private static final String[] PREFIXES = { "at ", "... ", "Caused by: ", "Suppressed: " };
+
+	private StackTraceLines() {
+		//uninstantiable
+	}
+
+	public static boolean isIndent(char c) {
+		return c == ' ' || c == '\t';
+	}
+
+	private static boolean regionMatches(CharSequence s, int start, String prefix) {
+		if (s.length() - start < prefix.length())
+			return false;
+		for (int i = 0; i < prefix.length(); i++)
+			if (s.charAt(start + i) != prefix.charAt(i))
+				return false;
+		return true;
+	}
+
+	/**
+	 * @return whether the text from start is shorter than prefix and is the
+	 * start of it
+	 */
+	private static boolean couldStartWith(CharSequence s, int start, String prefix) {
+		if (s.length() - start >= prefix.length())
+			return false;
+		for (int i = start; i < s.length(); i++)
+			if (s.charAt(i) != prefix.charAt(i - start))
+				return false;
+		return true;
+	}
+
+	/**
+	 * @param s the line, or as much of the start of it as was read
+	 * @param start where the line starts in s
+	 * @param complete whether the whole line is in s
+	 * @param inTrace whether the line before was part of the body of a trace
+	 * @return BODY if the line belongs to the body of a trace, TEXT if it does
+	 * not, or UNDECIDED if more of the line has to be read first
+	 */
+	public static int classify(CharSequence s, int start, boolean complete, boolean inTrace) {
+		int indent = start;
+		while (indent < s.length() && isIndent(s.charAt(indent)))
+			indent++;
+		if (indent - start > MAX_INDENT)
+			return TEXT;
+		if (indent == s.length())
+			return complete ? TEXT : UNDECIDED;
+		if (indent > start) {
+			if (regionMatches(s, indent, "at "))
+				return BODY;
+			if (regionMatches(s, indent, "... ")) {
+				if (s.length() > indent + 4)
+					return Character.isDigit(s.charAt(indent + 4)) ? BODY : TEXT;
+				return complete ? TEXT : UNDECIDED;
+			}
+		}
+		if (inTrace && (regionMatches(s, indent, "Caused by: ") || regionMatches(s, indent, "Suppressed: ")))
+			return BODY;
+		//could still turn out to be one of the prefixes above
+		if (!complete)
+			for (int i = 0; i < PREFIXES.length; i++)
+				if (couldStartWith(s, indent, PREFIXES[i]))
+					return UNDECIDED;
+		return TEXT;
+	}
+}
@@ -0,0 +1,78 @@
+/*
+ * ArgonMS Server Manager - a process launcher and organizer utilizing Swing.
+ * Copyright (C) 2011-2013  GoldenKevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package argonms.gui.daemon;
+
+import java.io.File;
+import java.util.List;
+
+import argonms.gui.model.Configuration;
+import argonms.gui.model.Environment;
+import argonms.gui.model.PathValidator;
+
+/**
+ * Runs the servers without a display, e.g. as a service on a headless host.
+ * launcher.properties is read the same way as by the manager, but nothing is
+ * prompted for, so every path has to be set in it already. Every enabled
+ * server is started, supervised and restarted on crash, and its output is
+ * saved to its log, until the launcher is terminated, at which point the
+ * servers are shut down in order before it exits.
+ *
+ * Nothing in here touches AWT or Swing, so it can be run with
+ * java -Djava.awt.headless=true argonms.gui.daemon.Daemon [launcher.properties]
+ * or through argonms.gui.Main with --headless as the first argument.
+ * @author GoldenKevin
+ */
+public class Daemon {
+	//on top of the shutdown timeouts, for the logs to be written
+	private static final long EXIT_GRACE = 5000; //in ms
+
+	public static void main(String[] args) {
+		System.setProperty("java.awt.headless", "true");
+		String propsFile = args.length > 0 ? args[0] : Environment.DEFAULT_PROPS_FILE;
+		Configuration config = new Configuration(propsFile, true);
+		config.initialize(null);
+		List<String> missing = config.getMissingProperties();
+		if (!missing.isEmpty()) {
+			System.err.println("These properties have to be set in " + propsFile + " before the servers can be started headless:");
+			for (String key : missing)
+				System.err.println("  " + key);
+			System.exit(1);
+			return;
+		}
+		//warn about what can't be used, but start anyway - there's nobody to
+		//ask, and the servers may cope
+		PathValidator validator = new PathValidator(new File(Environment.VALIDATION_CACHE_FILE), config.isPathHashingEnabled());
+		for (PathValidator.Problem problem : validator.validate(config))
+			System.err.println("Warning: " + problem);
+
+		final Supervisor supervisor = new Supervisor(config);
+		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					if (!supervisor.stopAllAndWait(supervisor.getLongestShutdown() + EXIT_GRACE))
+						System.err.println("Not every server was stopped and logged in time");
+				} catch (InterruptedException e) {
+					//we're exiting either way
+				}
+			}
+		}, "daemon-shutdown"));
+		supervisor.startAll();
+	}
+}
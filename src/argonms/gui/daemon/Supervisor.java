@@ -0,0 +1,318 @@
+/*
+ * ArgonMS Server Manager - a process launcher and organizer utilizing Swing.
+ * Copyright (C) 2011-2013  GoldenKevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package argonms.gui.daemon;
+
+import java.io.IOException;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import argonms.gui.console.LogCapture;
+import argonms.gui.model.Configuration;
+import argonms.gui.model.EventLoop;
+import argonms.gui.model.ServerGroup;
+import argonms.gui.model.ServerProcess;
+import argonms.gui.model.ServerRole;
+import argonms.gui.model.ShutdownCoordinator;
+import argonms.gui.model.StartupScheduler;
+
+/**
+ * Runs every enabled server without a user interface, through the same
+ * ServerProcess, StartupScheduler and ShutdownCoordinator that the tabs use.
+ *
+ * All of the state of the servers is confined to a single thread, which
+ * plays the part that the Swing EDT plays for the tabs, and every step is
+ * logged to the standard output stream.
+ *
+ * All public methods of this class are thread-safe.
+ * @author GoldenKevin
+ */
+public class Supervisor implements ServerGroup, EventLoop {
+	/**
+	 * Logs what a server does, and passes on its output a line at a time if
+	 * it has no log.
+	 */
+	private class Reporter implements ServerProcess.Listener, ServerProcess.OutputSink {
+		private final String description;
+		//only touched by the thread that reads the output
+		private final StringBuilder line;
+
+		public Reporter(String description) {
+			this.description = description;
+			line = new StringBuilder();
+		}
+
+		@Override
+		public List<String> launching(ServerProcess p) {
+			return Collections.emptyList();
+		}
+
+		@Override
+		public void launchFailed(ServerProcess p, IOException e) {
+			log(p.getDescription() + " could not be started: " + e);
+			startup.processEnded(p);
+			shutdown.processEnded(p);
+		}
+
+		@Override
+		public void processStarted(ServerProcess p) {
+			running.add(p);
+			startup.processStarted(p);
+		}
+
+		@Override
+		public void processReady(ServerProcess p, boolean timedOut) {
+			startup.processReady(p);
+		}
+
+		@Override
+		public void processEnded(ServerProcess p, int exitValue) {
+			running.remove(p);
+			startup.processEnded(p);
+			shutdown.processEnded(p);
+		}
+
+		@Override
+		public void statusChanged(ServerProcess p, String status) {
+			log(p.getDescription() + ": " + status);
+		}
+
+		@Override
+		public void outputRead(char[] buf, int offset, int length) {
+			if (config.getLogDirectory() != null)
+				//the log keeps all of it
+				return;
+			for (int i = offset; i < offset + length; i++) {
+				char c = buf[i];
+				if (c == '\n') {
+					echo(description, line);
+					line.setLength(0);
+				} else if (c != '\r') {
+					line.append(c);
+				}
+			}
+		}
+
+		@Override
+		public boolean isHolding() {
+			return false;
+		}
+
+		@Override
+		public void outputQuiet() {
+		}
+
+		@Override
+		public void outputEnded() {
+			if (line.length() > 0) {
+				echo(description, line);
+				line.setLength(0);
+			}
+		}
+	}
+
+	private final Configuration config;
+	private final ScheduledExecutorService executor;
+	private final DateFormat timeFormat;
+	private final List<ServerProcess> servers;
+	private final Set<ServerProcess> running;
+	private final StartupScheduler startup;
+	private final ShutdownCoordinator shutdown;
+	private boolean shuttingDown;
+
+	/**
+	 * @param config must not be changed anymore once it is passed in
+	 */
+	public Supervisor(Configuration config) {
+		this.config = config;
+		executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				return new Thread(r, "supervisor");
+			}
+		});
+		timeFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+		running = new LinkedHashSet<ServerProcess>();
+		startup = new StartupScheduler(this);
+		shutdown = new ShutdownCoordinator(this);
+		servers = new ArrayList<ServerProcess>();
+		addServer(ServerRole.CENTER, (byte) 0, "Center");
+		addServer(ServerRole.LOGIN, (byte) 0, "Login");
+		for (byte serverId : config.getEnabledGameServers())
+			addServer(ServerRole.GAME, serverId, "Game" + serverId);
+		if (config.isShopEnabled())
+			addServer(ServerRole.SHOP, (byte) 0, "Shop");
+	}
+
+	private void addServer(ServerRole role, byte serverId, String description) {
+		Reporter reporter = new Reporter(description);
+		servers.add(new ServerProcess(this, role, serverId, description, reporter, reporter));
+	}
+
+	@Override
+	public Configuration getConfig() {
+		return config;
+	}
+
+	@Override
+	public EventLoop getEventLoop() {
+		return this;
+	}
+
+	@Override
+	public Collection<ServerProcess> getRunningProcesses() {
+		return running;
+	}
+
+	@Override
+	public void execute(Runnable r) {
+		executor.execute(r);
+	}
+
+	@Override
+	public Task schedule(Runnable r, long delay) {
+		final ScheduledFuture<?> future = executor.schedule(r, delay, TimeUnit.MILLISECONDS);
+		return new Task() {
+			@Override
+			public void cancel() {
+				future.cancel(false);
+			}
+		};
+	}
+
+	/**
+	 * This method is thread-safe.
+	 */
+	private void log(String message) {
+		String line = timeFormat.format(new Date()) + "  " + message;
+		synchronized (System.out) {
+			System.out.println(line);
+		}
+	}
+
+	@Override
+	public void logShutdownEvent(String message) {
+		log(message);
+	}
+
+	/**
+	 * Passes on a line of output of a server that has no log. This method is
+	 * thread-safe.
+	 */
+	private void echo(String server, CharSequence line) {
+		synchronized (System.out) {
+			System.out.print('[');
+			System.out.print(server);
+			System.out.print("] ");
+			System.out.println(line);
+		}
+	}
+
+	/**
+	 * Starts every server that is not running, each one as soon as the
+	 * servers that it depends on are ready.
+	 */
+	public void startAll() {
+		execute(new Runnable() {
+			@Override
+			public void run() {
+				if (shuttingDown)
+					return;
+				List<ServerProcess> idle = new ArrayList<ServerProcess>();
+				for (ServerProcess server : servers)
+					if (!server.isRunning() && !server.isRestartPending())
+						idle.add(server);
+				startup.start(idle);
+			}
+		});
+	}
+
+	/**
+	 * Shuts down every running server, the servers that depend on others
+	 * first, and does not start or restart any server after that.
+	 * @param whenDone run on the supervisor thread once every server has
+	 * exited, or null
+	 */
+	public void stopAll(final Runnable whenDone) {
+		execute(new Runnable() {
+			@Override
+			public void run() {
+				shuttingDown = true;
+				startup.cancel();
+				for (ServerProcess server : servers)
+					server.setRestartOnCrash(false);
+				shutdown.stop(new ArrayList<ServerProcess>(running), whenDone);
+			}
+		});
+	}
+
+	/**
+	 * Stops every server and waits for them to exit and for their logs to be
+	 * written, e.g. from a shutdown hook. The supervisor can't be used again
+	 * after this.
+	 * @param timeout the longest to wait, in milliseconds
+	 * @return false if not everything was done within the timeout
+	 */
+	public boolean stopAllAndWait(long timeout) throws InterruptedException {
+		final List<LogCapture> logs = new ArrayList<LogCapture>();
+		final CountDownLatch stopped = new CountDownLatch(1);
+		stopAll(new Runnable() {
+			@Override
+			public void run() {
+				for (ServerProcess server : servers) {
+					LogCapture log = server.dispose();
+					if (log != null)
+						logs.add(log);
+				}
+				stopped.countDown();
+			}
+		});
+		long deadline = System.currentTimeMillis() + timeout;
+		if (!stopped.await(timeout, TimeUnit.MILLISECONDS))
+			return false;
+		executor.shutdownNow();
+		for (LogCapture log : logs)
+			if (!log.awaitClose(Math.max(1, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS))
+				return false;
+		return true;
+	}
+
+	/**
+	 * @return the longest that stopAll may take if every server has to be
+	 * killed, in milliseconds
+	 */
+	public long getLongestShutdown() {
+		long total = 0;
+		for (ServerRole role : ServerRole.values())
+			total += config.getShutdownTimeout(role) * 1000L;
+		return total;
+	}
+}
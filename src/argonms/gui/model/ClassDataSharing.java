@@ -0,0 +1,412 @@
+/*
+ * ArgonMS Server Manager - a process launcher and organizer utilizing Swing.
+ * Copyright (C) 2011-2013  GoldenKevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package argonms.gui.model;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps a class data sharing archive for each server role, so that servers
+ * can map the classes that they load at startup straight out of the archive
+ * instead of loading them from the classpath one by one.
+ *
+ * An archive is created by the first run of a server of its role, which dumps
+ * the classes that it loaded when it exits, and is used by every run after
+ * that. Each archive is stored with a fingerprint of the classpath and the JVM
+ * that it was created from, and is thrown away as soon as either changes.
+ * Walking the classpath for the fingerprint may take a while, so it is only
+ * done in the background, and a launch uses the last fingerprint that was
+ * found.
+ *
+ * The time each server takes to become ready is measured, so that the time
+ * that the archives save can be reported for each role.
+ *
+ * This class is not thread-safe. All instances are meant to only be used on
+ * the Swing EDT.
+ * @author GoldenKevin
+ */
+public class ClassDataSharing {
+	//archives that are dumped at exit are only supported from Java 13 on
+	private static final int MIN_JAVA_VERSION = 13;
+
+	/**
+	 * How one run of a server uses the archive of its role.
+	 */
+	public static class Launch {
+		private final ServerRole role;
+		private final List<String> options;
+		private final boolean usingArchive;
+		//where the archive is dumped to, if this run creates it
+		private final File dumpFile;
+		private final String fingerprint;
+
+		private Launch(ServerRole role, List<String> options, boolean usingArchive, File dumpFile, String fingerprint) {
+			this.role = role;
+			this.options = options;
+			this.usingArchive = usingArchive;
+			this.dumpFile = dumpFile;
+			this.fingerprint = fingerprint;
+		}
+
+		/**
+		 * @return the JVM options that make the server use or create the
+		 * archive
+		 */
+		public List<String> getOptions() {
+			return options;
+		}
+
+		public boolean isUsingArchive() {
+			return usingArchive;
+		}
+	}
+
+	private static class Timings {
+		public int warmStarts, coldStarts;
+		public long warmMillis, coldMillis;
+	}
+
+	private final Model model;
+	private final int javaVersion;
+	//roles that have a server running or exited that will create their
+	//archive, until it is put in place
+	private final Set<ServerRole> creating;
+	private final Map<ServerRole, Timings> timings;
+	//as of the last time that it was computed, or null if it wasn't yet
+	private String fingerprint;
+	private boolean refreshing, refreshAgain;
+	//launches that dumped an archive, to be put in place once the classpath
+	//is fingerprinted again
+	private final List<Launch> dumped;
+
+	public ClassDataSharing(Model model) {
+		this.model = model;
+		javaVersion = parseJavaVersion(System.getProperty("java.specification.version"));
+		creating = EnumSet.noneOf(ServerRole.class);
+		timings = new EnumMap<ServerRole, Timings>(ServerRole.class);
+		dumped = new ArrayList<Launch>();
+	}
+
+	/**
+	 * @return the major version, e.g. 7 for "1.7" and 17 for "17"
+	 */
+	private static int parseJavaVersion(String version) {
+		try {
+			if (version.startsWith("1."))
+				version = version.substring(2);
+			int dot = version.indexOf('.');
+			return Integer.parseInt(dot == -1 ? version : version.substring(0, dot));
+		} catch (RuntimeException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * @return whether the JVM that servers are started with supports the
+	 * archives
+	 */
+	public boolean isSupported() {
+		//servers are started with the same JVM as the launcher
+		return javaVersion >= MIN_JAVA_VERSION;
+	}
+
+	private File getDirectory() {
+		String directory = model.getConfig().getClassDataSharingDirectory();
+		return directory == null ? null : new File(directory);
+	}
+
+	private static void addTo(MessageDigest digest, String s) {
+		try {
+			digest.update(s.getBytes("UTF-8"));
+		} catch (UnsupportedEncodingException e) {
+			//UTF-8 is always supported
+			throw new RuntimeException(e);
+		}
+		digest.update((byte) 0);
+	}
+
+	private static void addTo(MessageDigest digest, File file) {
+		addTo(digest, file.getPath() + ' ' + file.length() + ' ' + file.lastModified());
+		File[] children = file.listFiles();
+		if (children != null) {
+			//listFiles is not guaranteed to be in any order
+			List<File> sorted = new ArrayList<File>();
+			Collections.addAll(sorted, children);
+			Collections.sort(sorted);
+			for (File child : sorted)
+				addTo(digest, child);
+		}
+	}
+
+	/**
+	 * This method is thread-safe.
+	 * @return a digest of everything that an archive has to be created again
+	 * for if it changes: the JVM, and every jar and class on the classpath
+	 */
+	private static String getFingerprint(String[] classpath) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("MD5");
+		} catch (NoSuchAlgorithmException e) {
+			//every JVM has to support MD5
+			throw new RuntimeException(e);
+		}
+		addTo(digest, System.getProperty("java.home"));
+		addTo(digest, System.getProperty("java.vm.version"));
+		if (classpath != null)
+			for (String element : classpath)
+				addTo(digest, new File(element).getAbsoluteFile());
+		StringBuilder sb = new StringBuilder();
+		for (byte b : digest.digest())
+			sb.append(String.format("%02x", b & 0xFF));
+		return sb.toString();
+	}
+
+	private static String readFile(File file) {
+		if (!file.isFile())
+			return null;
+		Reader in = null;
+		try {
+			in = new InputStreamReader(new FileInputStream(file), "UTF-8");
+			StringBuilder sb = new StringBuilder();
+			char[] buf = new char[256];
+			int read;
+			while ((read = in.read(buf)) != -1)
+				sb.append(buf, 0, read);
+			return sb.toString().trim();
+		} catch (IOException e) {
+			System.err.println("Error reading " + file.getPath());
+			e.printStackTrace();
+			return null;
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	private static boolean writeFile(File file, String contents) {
+		Writer out = null;
+		try {
+			out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+			out.write(contents);
+			return true;
+		} catch (IOException e) {
+			System.err.println("Error writing " + file.getPath());
+			e.printStackTrace();
+			return false;
+		} finally {
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	private static File getArchive(File directory, ServerRole role) {
+		return new File(directory, role.getKey() + ".jsa");
+	}
+
+	private static File getFingerprintFile(File directory, ServerRole role) {
+		return new File(directory, role.getKey() + ".fingerprint");
+	}
+
+	/**
+	 * Fingerprints the classpath again in the background, e.g. after it
+	 * changed, and puts archives that were dumped in the meantime in place
+	 * once it is done.
+	 */
+	public void refreshFingerprint() {
+		if (refreshing) {
+			//the files may change after the walk that is running saw them
+			refreshAgain = true;
+			return;
+		}
+		if (getDirectory() == null || !isSupported())
+			return;
+		refreshing = true;
+		final String[] classpath = model.getConfig().getClasspathElements();
+		final List<Launch> finished = new ArrayList<Launch>(dumped);
+		dumped.clear();
+		Thread t = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				final String computed = getFingerprint(classpath);
+				model.getEventLoop().execute(new Runnable() {
+					@Override
+					public void run() {
+						fingerprint = computed;
+						refreshing = false;
+						for (Launch launch : finished)
+							install(launch);
+						if (refreshAgain) {
+							refreshAgain = false;
+							refreshFingerprint();
+						}
+					}
+				});
+			}
+		}, "cds-fingerprint");
+		t.setDaemon(true);
+		t.start();
+	}
+
+	/**
+	 * Decides how the next run of a server of the given role should use the
+	 * archive of its role, and throws the archive away if it is out of date.
+	 */
+	public Launch prepare(ServerRole role) {
+		List<String> options = new ArrayList<String>();
+		File directory = getDirectory();
+		if (directory == null || !isSupported())
+			return new Launch(role, options, false, null, null);
+		//the jars may have been rebuilt since the last run, so that the run
+		//after this one knows
+		refreshFingerprint();
+		if (fingerprint == null)
+			//not fingerprinted yet, so there's no telling if the archive is
+			//still good
+			return new Launch(role, options, false, null, null);
+
+		File archive = getArchive(directory, role);
+		File fingerprintFile = getFingerprintFile(directory, role);
+		if (archive.isFile() && fingerprint.equals(readFile(fingerprintFile))) {
+			options.add("-XX:SharedArchiveFile=" + archive.getAbsolutePath());
+			return new Launch(role, options, true, null, fingerprint);
+		}
+		if (archive.exists() && !creating.contains(role)) {
+			//the classpath or the JVM changed since it was created
+			archive.delete();
+			fingerprintFile.delete();
+		}
+		if (creating.contains(role) || !directory.isDirectory() && !directory.mkdirs())
+			return new Launch(role, options, false, null, fingerprint);
+		creating.add(role);
+		File dumpFile = new File(directory, role.getKey() + ".jsa.tmp");
+		dumpFile.delete();
+		options.add("-XX:ArchiveClassesAtExit=" + dumpFile.getAbsolutePath());
+		return new Launch(role, options, false, dumpFile, fingerprint);
+	}
+
+	/**
+	 * Must be called once the server of the given launch is ready to accept
+	 * connections.
+	 * @param millis how long the server took to become ready
+	 */
+	public void recordStartup(Launch launch, long millis) {
+		if (launch.fingerprint == null)
+			return;
+		Timings t = timings.get(launch.role);
+		if (t == null) {
+			t = new Timings();
+			timings.put(launch.role, t);
+		}
+		if (launch.usingArchive) {
+			t.warmStarts++;
+			t.warmMillis += millis;
+		} else {
+			t.coldStarts++;
+			t.coldMillis += millis;
+		}
+		model.showClassDataSharingReport(getReport());
+	}
+
+	/**
+	 * Must be called once the server of the given launch has exited, so that
+	 * the archive that it created, if any, can be put in place.
+	 */
+	public void processEnded(Launch launch) {
+		if (launch.dumpFile == null)
+			return;
+		//the classpath may have changed while the server was running
+		dumped.add(launch);
+		refreshFingerprint();
+	}
+
+	/**
+	 * Puts the archive that the given launch dumped in place, if the
+	 * classpath did not change since it was launched.
+	 */
+	private void install(Launch launch) {
+		creating.remove(launch.role);
+		File directory = launch.dumpFile.getParentFile();
+		if (launch.dumpFile.length() > 0 && launch.fingerprint.equals(fingerprint)) {
+			File archive = getArchive(directory, launch.role);
+			archive.delete();
+			if (launch.dumpFile.renameTo(archive)
+					&& writeFile(getFingerprintFile(directory, launch.role), launch.fingerprint)) {
+				model.showClassDataSharingReport(getReport());
+				return;
+			}
+			archive.delete();
+		}
+		launch.dumpFile.delete();
+	}
+
+	/**
+	 * @return an HTML summary of how much time the archives saved for each
+	 * role
+	 */
+	public String getReport() {
+		if (getDirectory() == null)
+			return "Disabled";
+		if (!isSupported())
+			return "Not supported before Java " + MIN_JAVA_VERSION;
+		File directory = getDirectory();
+		StringBuilder sb = new StringBuilder("<html>");
+		for (ServerRole role : ServerRole.values()) {
+			String name = Character.toUpperCase(role.getKey().charAt(0)) + role.getKey().substring(1);
+			sb.append(name).append(": ");
+			sb.append(getArchive(directory, role).isFile() ? "archived" : "no archive yet");
+			Timings t = timings.get(role);
+			if (t != null) {
+				if (t.coldStarts != 0)
+					sb.append(String.format(", %.1fs to start without (%d)", t.coldMillis / 1000.0 / t.coldStarts, t.coldStarts));
+				if (t.warmStarts != 0)
+					sb.append(String.format(", %.1fs with (%d)", t.warmMillis / 1000.0 / t.warmStarts, t.warmStarts));
+				if (t.coldStarts != 0 && t.warmStarts != 0)
+					sb.append(String.format(", <b>%.1fs saved</b> per start",
+							(t.coldMillis / (double) t.coldStarts - t.warmMillis / (double) t.warmStarts) / 1000));
+			}
+			sb.append("<br>");
+		}
+		return sb.append("</html>").toString();
+	}
+}
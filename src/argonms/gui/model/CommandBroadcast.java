@@ -0,0 +1,197 @@
+/*
+ * ArgonMS Server Manager - a process launcher and organizer utilizing Swing.
+ * Copyright (C) 2011-2013  GoldenKevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package argonms.gui.model;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+import argonms.gui.tab.ReplyCollector;
+import argonms.gui.tab.ServerTab;
+
+/**
+ * Sends one console command to several servers at once and collects what
+ * each of them prints back. Every server is written to on a thread of its own,
+ * so a server that does not read its input only holds up its own reply. A
+ * reply is taken to be complete once the server has been quiet for a moment
+ * after it started printing, or once the timeout is up.
+ *
+ * This class is not thread-safe. All instances are meant to only be used on
+ * the Swing EDT, and the listener is only called on the EDT.
+ * @author GoldenKevin
+ */
+public class CommandBroadcast {
+	/**
+	 * Told about the progress of every server that the command is sent to.
+	 */
+	public interface Listener {
+		/**
+		 * @param reply what the server printed so far
+		 * @param status how far along the server is
+		 * @param finished whether nothing more is collected from the server
+		 */
+		public void replyUpdated(ServerTab tab, String reply, String status, boolean finished);
+
+		public void broadcastFinished();
+	}
+
+	private static final int POLL_INTERVAL = 100; //in ms
+	//how long a server has to be quiet for its reply to count as complete
+	private static final int QUIET_TIME = 500; //in ms
+
+	private static final ExecutorService writers = Executors.newCachedThreadPool(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "broadcast-writer");
+			t.setDaemon(true);
+			return t;
+		}
+	});
+
+	private class Target {
+		public final ServerTab tab;
+		public final ReplyCollector collector;
+		//0 while it is still being written to, 1 once it was, -1 if it failed
+		public int sent;
+		public boolean finished;
+		public int shownLength = -1;
+
+		public Target(ServerTab tab) {
+			this.tab = tab;
+			collector = new ReplyCollector();
+		}
+
+		public void finish(String status) {
+			finished = true;
+			tab.removeReplyCollector(collector);
+			listener.replyUpdated(tab, collector.getReply(), status, true);
+		}
+	}
+
+	private final List<Target> targets;
+	private final String command;
+	private final int timeout;
+	private final Listener listener;
+	private final Timer timer;
+	private long startTime;
+
+	/**
+	 * @param timeout how long to wait for each reply, in seconds
+	 */
+	public CommandBroadcast(Collection<ServerTab> tabs, String command, int timeout, Listener listener) {
+		targets = new ArrayList<Target>(tabs.size());
+		for (ServerTab tab : tabs)
+			targets.add(new Target(tab));
+		this.command = command;
+		this.timeout = timeout;
+		this.listener = listener;
+		timer = new Timer(POLL_INTERVAL, new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				poll();
+			}
+		});
+	}
+
+	private void send(final Target target) {
+		//collect from before it is sent, so that nothing is missed
+		target.tab.addReplyCollector(target.collector);
+		writers.execute(new Runnable() {
+			@Override
+			public void run() {
+				final boolean ok = target.tab.sendCommand(command);
+				SwingUtilities.invokeLater(new Runnable() {
+					@Override
+					public void run() {
+						if (target.finished)
+							return;
+						target.sent = ok ? 1 : -1;
+						if (!ok)
+							target.finish("Could not be sent - the server is not running");
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * Sends the command to every server.
+	 */
+	public void start() {
+		startTime = System.currentTimeMillis();
+		for (Target target : targets) {
+			listener.replyUpdated(target.tab, "", "Sending", false);
+			send(target);
+		}
+		timer.start();
+	}
+
+	private void poll() {
+		long now = System.currentTimeMillis();
+		boolean done = true;
+		for (Target target : targets) {
+			if (target.finished)
+				continue;
+			long lastOutput = target.collector.getLastOutputTime();
+			if (target.sent == 1 && lastOutput != 0 && now - lastOutput >= QUIET_TIME) {
+				target.finish("Replied in " + (lastOutput - startTime) + "ms");
+			} else if (now - startTime >= timeout * 1000L) {
+				if (target.sent == 0)
+					target.finish("Could not be sent within " + timeout + "s - the server is not reading its input");
+				else if (lastOutput == 0)
+					target.finish("No reply within " + timeout + "s");
+				else
+					target.finish("Still replying after " + timeout + "s - the rest is not shown");
+			} else {
+				done = false;
+				int length = target.collector.getLength();
+				if (length != target.shownLength) {
+					target.shownLength = length;
+					listener.replyUpdated(target.tab, target.collector.getReply(), target.sent == 0 ? "Sending" : "Waiting for a reply", false);
+				}
+			}
+		}
+		if (done) {
+			timer.stop();
+			listener.broadcastFinished();
+		}
+	}
+
+	/**
+	 * Stops collecting replies. Commands that are still being written are
+	 * sent anyway.
+	 */
+	public void cancel() {
+		if (!timer.isRunning())
+			return;
+		for (Target target : targets)
+			if (!target.finished)
+				target.finish("Cancelled");
+		timer.stop();
+		listener.broadcastFinished();
+	}
+}
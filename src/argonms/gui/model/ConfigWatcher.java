@@ -0,0 +1,110 @@
+/*
+ * ArgonMS Server Manager - a process launcher and organizer utilizing Swing.
+ * Copyright (C) 2011-2013  GoldenKevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package argonms.gui.model;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * Watches launcher.properties for changes that are made by other programs,
+ * and applies only the properties that changed without restarting the
+ * launcher. The folder that holds the file is watched rather than the file
+ * itself, so that files that are replaced by renaming another one over them
+ * are noticed as well.
+ *
+ * @author GoldenKevin
+ */
+public class ConfigWatcher implements Runnable {
+	//how long to wait for more events after a change, in milliseconds, so
+	//that a file that is written in several steps is only read once
+	private static final int SETTLE_TIME = 500;
+
+	private final Model model;
+	private final Path file;
+	private WatchService watcher;
+
+	public ConfigWatcher(Model model) {
+		this.model = model;
+		file = Paths.get(model.getConfig().getPropertiesPath()).toAbsolutePath();
+	}
+
+	/**
+	 * Starts watching the file on a new daemon thread.
+	 */
+	public void start() {
+		try {
+			watcher = FileSystems.getDefault().newWatchService();
+			file.getParent().register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+		} catch (IOException e) {
+			System.err.println("Could not watch " + file + " for changes");
+			e.printStackTrace();
+			return;
+		}
+		Thread t = new Thread(this, "config-watcher");
+		t.setDaemon(true);
+		t.start();
+	}
+
+	/**
+	 * @return whether any of the events of the given key are about our file
+	 */
+	private boolean concernsFile(WatchKey key) {
+		boolean concerned = false;
+		for (WatchEvent<?> event : key.pollEvents())
+			//if events were lost, one of them might have been ours
+			if (event.kind() == StandardWatchEventKinds.OVERFLOW || file.getFileName().equals(event.context()))
+				concerned = true;
+		key.reset();
+		return concerned;
+	}
+
+	@Override
+	public void run() {
+		try {
+			while (true) {
+				if (!concernsFile(watcher.take()))
+					continue;
+				//let the writer finish before we read it
+				WatchKey key;
+				while ((key = watcher.poll(SETTLE_TIME, TimeUnit.MILLISECONDS)) != null)
+					concernsFile(key);
+				SwingUtilities.invokeLater(new Runnable() {
+					@Override
+					public void run() {
+						model.getConfig().reload(model, model.getFrame());
+					}
+				});
+			}
+		} catch (InterruptedException e) {
+			//stop watching
+		} catch (ClosedWatchServiceException e) {
+			//stop watching
+		}
+	}
+}
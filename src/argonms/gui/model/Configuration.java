@@ -29,14 +29,22 @@ import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Map.Entry;
 import java.util.Properties;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 import javax.swing.DefaultListModel;
 import javax.swing.JButton;
@@ -112,6 +120,8 @@ public class Configuration {
 	}
 
 	private final String propsFileName;
+	//whether there is no display, so that nothing may be prompted for
+	private final boolean headless;
 	private final JFileChooser fChoose;
 	private final FileFilter propsFilter;
 	private final FileFilter textFileFilter;
@@ -134,18 +144,99 @@ public class Configuration {
 	private String csLimitedCommoditiesPath;
 	private String centerPropPath;
 	private String lookAndFeel;
+	private int scrollbackLines;
+	private int scrollbackChars;
+	private int historyLimit;
+	private String logDirectory;
+	private int logMaxSize;
+	private int logKeep;
+	private boolean logCompress;
+	private final Map<ServerRole, Pattern> readyPatterns;
+	private final Map<ServerRole, Integer> readyPorts;
+	private final Map<Byte, Integer> gameReadyPorts;
+	private int startupTimeout;
+	private final Map<ServerRole, String> shutdownCommands;
+	private final Map<ServerRole, Integer> shutdownTimeouts;
+	private int killTimeout;
+	private boolean restartEnabled;
+	private int restartMax;
+	private int restartWindow;
+	private int restartMaxDelay;
+	private boolean launchThroughShell;
+	private String cdsDirectory;
+	private boolean hashPaths;
+	private final Map<String, ScheduledJob> jobs;
+	//jobs that one of the properties of was changed since they were parsed
+	private final Set<String> changedJobs;
+	private String telnetHost;
+	private int telnetPort;
+	private final Map<ServerRole, JvmProfile> jvmProfiles;
+	private final Map<Byte, JvmProfile> gameJvmProfiles;
 
 	/**
 	 * This method is not thread-safe. It must be called from the Swing EDT.
 	 */
 	public Configuration(String propsFile) {
+		this(propsFile, false);
+	}
+
+	/**
+	 * @param headless whether to never create any Swing components or prompt
+	 * for anything, and to only report problems to the standard error stream.
+	 * If false, this method is not thread-safe and must be called from the
+	 * Swing EDT.
+	 */
+	public Configuration(String propsFile, boolean headless) {
 		propsFileName = propsFile;
-		fChoose = new JFileChooser();
-		propsFilter = new FileNameExtensionFilter("Java Properties Files (.properties)", "properties");
-		textFileFilter = new FileNameExtensionFilter("Plain text file (.txt)", "txt");
-		classPathFilter = new FileNameExtensionFilter("Java Archives (.jar) and class folders", "jar");
+		this.headless = headless;
+		if (headless) {
+			fChoose = null;
+			propsFilter = null;
+			textFileFilter = null;
+			classPathFilter = null;
+		} else {
+			fChoose = new JFileChooser();
+			propsFilter = new FileNameExtensionFilter("Java Properties Files (.properties)", "properties");
+			textFileFilter = new FileNameExtensionFilter("Plain text file (.txt)", "txt");
+			classPathFilter = new FileNameExtensionFilter("Java Archives (.jar) and class folders", "jar");
+		}
 		props = new Properties();
 		gamePropPaths = new HashMap<Byte, String>();
+		scrollbackLines = Environment.DEFAULT_SCROLLBACK_LINES;
+		scrollbackChars = Environment.DEFAULT_SCROLLBACK_CHARS;
+		historyLimit = Environment.DEFAULT_HISTORY_LIMIT;
+		logDirectory = Environment.DEFAULT_LOG_DIRECTORY;
+		logMaxSize = Environment.DEFAULT_LOG_MAX_SIZE;
+		logKeep = Environment.DEFAULT_LOG_KEEP;
+		logCompress = true;
+		readyPatterns = new EnumMap<ServerRole, Pattern>(ServerRole.class);
+		readyPorts = new EnumMap<ServerRole, Integer>(ServerRole.class);
+		gameReadyPorts = new HashMap<Byte, Integer>();
+		for (ServerRole role : ServerRole.values())
+			readyPatterns.put(role, Pattern.compile(Environment.DEFAULT_READY_PATTERN));
+		startupTimeout = Environment.DEFAULT_STARTUP_TIMEOUT;
+		shutdownCommands = new EnumMap<ServerRole, String>(ServerRole.class);
+		shutdownTimeouts = new EnumMap<ServerRole, Integer>(ServerRole.class);
+		killTimeout = Environment.DEFAULT_KILL_TIMEOUT;
+		restartEnabled = true;
+		restartMax = Environment.DEFAULT_RESTART_MAX;
+		restartWindow = Environment.DEFAULT_RESTART_WINDOW;
+		restartMaxDelay = Environment.DEFAULT_RESTART_MAX_DELAY;
+		cdsDirectory = Environment.DEFAULT_CDS_DIRECTORY;
+		jobs = new TreeMap<String, ScheduledJob>();
+		changedJobs = new HashSet<String>();
+		telnetHost = Environment.DEFAULT_TELNET_HOST;
+		telnetPort = Environment.DEFAULT_TELNET_PORT;
+		jvmProfiles = new EnumMap<ServerRole, JvmProfile>(ServerRole.class);
+		for (ServerRole role : ServerRole.values()) {
+			JvmProfile profile = new JvmProfile();
+			if (role == ServerRole.CENTER || role == ServerRole.LOGIN)
+				profile.setHeapSize(Integer.valueOf(Environment.DEFAULT_HUB_HEAP_SIZE));
+			else
+				profile.setHeapSize(Integer.valueOf(Environment.DEFAULT_HEAP_SIZE));
+			jvmProfiles.put(role, profile);
+		}
+		gameJvmProfiles = new HashMap<Byte, JvmProfile>();
 	}
 
 	private boolean is7bitUnsignedNumber(String decimal) {
@@ -169,11 +260,62 @@ public class Configuration {
 		return true;
 	}
 
+	private static int parseNonNegativeInt(String key, String value, int defaultValue) {
+		try {
+			int parsed = Integer.parseInt(value.trim());
+			if (parsed >= 0)
+				return parsed;
+		} catch (NumberFormatException e) {
+			//fall through
+		}
+		System.err.println("Invalid value for " + key + ": " + value);
+		return defaultValue;
+	}
+
+	private static Pattern parsePattern(String key, String value) {
+		if (value.isEmpty())
+			return null;
+		try {
+			return Pattern.compile(value);
+		} catch (PatternSyntaxException e) {
+			System.err.println("Invalid value for " + key + ": " + e.getMessage());
+			return Pattern.compile(Environment.DEFAULT_READY_PATTERN);
+		}
+	}
+
+	/**
+	 * Sets one setting of a JVM profile. An empty value unsets it.
+	 */
+	private static void parseJvmSetting(String key, String setting, String value, JvmProfile profile) {
+		value = value.trim();
+		if (setting.equals("heap")) {
+			Integer heapSize = null;
+			if (!value.isEmpty()) {
+				try {
+					heapSize = Integer.valueOf(value);
+				} catch (NumberFormatException e) {
+					System.err.println("Invalid value for " + key + ": " + value);
+				}
+			}
+			profile.setHeapSize(heapSize);
+		} else if (setting.equals("gc")) {
+			JvmProfile.GarbageCollector gc = JvmProfile.GarbageCollector.forKey(value);
+			if (gc == null && !value.isEmpty())
+				System.err.println("Invalid value for " + key + ": " + value);
+			profile.setGarbageCollector(gc);
+		} else if (setting.equals("flags")) {
+			profile.setFlags(value.isEmpty() ? null : value);
+		} else if (setting.equals("properties")) {
+			profile.setProperties(value.isEmpty() ? null : value);
+		}
+	}
+
 	/**
 	 * This method is not thread-safe. It must be called from the Swing EDT.
 	 */
 	public void lookAndFeelUpdated() {
-		SwingUtilities.updateComponentTreeUI(fChoose);
+		if (fChoose != null)
+			SwingUtilities.updateComponentTreeUI(fChoose);
 	}
 
 	public void initialize(final Container parent) {
@@ -184,90 +326,202 @@ public class Configuration {
 		} catch (IOException e) {
 			System.err.println("Error reading " + propsFileName);
 			e.printStackTrace();
-			SwingUtilities.invokeLater(new Runnable() {
-				@Override
-				public void run() {
-					JOptionPane.showMessageDialog(parent, "Could not load from properties file.", "Error", JOptionPane.ERROR_MESSAGE);
-				}
-			});
+			if (!headless)
+				SwingUtilities.invokeLater(new Runnable() {
+					@Override
+					public void run() {
+						JOptionPane.showMessageDialog(parent, "Could not load from properties file.", "Error", JOptionPane.ERROR_MESSAGE);
+					}
+				});
 		}
-		for (Entry<Object, Object> prop : props.entrySet()) {
-			String key = (String) prop.getKey();
-			if (!key.startsWith("argonms.gui"))
+		for (Entry<Object, Object> prop : props.entrySet())
+			applyProperty((String) prop.getKey(), (String) prop.getValue(), parent);
+		parseChangedJobs();
+	}
+
+	/**
+	 * Parses every job that one of the properties of was changed again, from
+	 * all of its properties.
+	 * @return whether any job was parsed
+	 */
+	private boolean parseChangedJobs() {
+		if (changedJobs.isEmpty())
+			return false;
+		for (String name : changedJobs) {
+			String prefix = ScheduledJob.KEY_PREFIX + name + '.';
+			Map<String, String> settings = new HashMap<String, String>();
+			for (String key : props.stringPropertyNames())
+				if (key.startsWith(prefix))
+					settings.put(key.substring(prefix.length()), props.getProperty(key));
+			jobs.remove(name);
+			if (settings.isEmpty())
 				continue;
-			String[] splittedKey = key.split("\\.");
-			if (splittedKey[2].equals("bin")) {
-				if (splittedKey[3].equals("classpath"))
-					classPath = ((String) prop.getValue()).split(",");
-			} else if (splittedKey[2].equals("database")) {
-				if (splittedKey[3].equals("properties"))
-					dbPropPath = (String) prop.getValue();
-			} else if (splittedKey[2].equals("logger")) {
-				if (splittedKey[3].equals("properties"))
-					loggerPropPath = (String) prop.getValue();
-			} else if (splittedKey[2].equals("cheattracker")) {
-				if (splittedKey[3].equals("macbanblacklist"))
-					macBanBlacklistPath = (String) prop.getValue();
-			} else if (splittedKey[2].equals("wz")) {
-				if (splittedKey[3].equals("location"))
-					wzPath = (String) prop.getValue();
-			} else if (splittedKey[2].equals("scripts")) {
-				if (splittedKey[3].equals("location"))
-					scriptsPath = (String) prop.getValue();
-			} else if (splittedKey[2].equals("game")) {
-				if (splittedKey[3].equals("run")) {
-					String value = ((String) prop.getValue());
-					if (!value.isEmpty()) {
-						String[] serverIds = value.split(",");
-						enabledGameServers = new byte[serverIds.length];
-						for (byte i = 0; i < serverIds.length; i++)
-							enabledGameServers[i] = Byte.parseByte(serverIds[i]);
-					} else {
-						enabledGameServers = new byte[0];
-					}
-				} else if (is7bitUnsignedNumber(splittedKey[3])){
-					byte serverId = Byte.parseByte(splittedKey[3]);
-					if (splittedKey[4].equals("properties"))
-						gamePropPaths.put(Byte.valueOf(serverId), (String) prop.getValue());
+			try {
+				jobs.put(name, ScheduledJob.parse(name, settings));
+			} catch (IllegalArgumentException e) {
+				System.err.println("Invalid scheduled job " + name + ": " + e.getMessage());
+			}
+		}
+		changedJobs.clear();
+		return true;
+	}
+
+	/**
+	 * Parses a single property of launcher.properties.
+	 */
+	private void applyProperty(String key, String value, final Container parent) {
+		if (!key.startsWith("argonms.gui"))
+			return;
+		String[] splittedKey = key.split("\\.");
+		if (splittedKey[2].equals("bin")) {
+			if (splittedKey[3].equals("classpath"))
+				classPath = value.split(",");
+		} else if (splittedKey[2].equals("database")) {
+			if (splittedKey[3].equals("properties"))
+				dbPropPath = value;
+		} else if (splittedKey[2].equals("logger")) {
+			if (splittedKey[3].equals("properties"))
+				loggerPropPath = value;
+		} else if (splittedKey[2].equals("cheattracker")) {
+			if (splittedKey[3].equals("macbanblacklist"))
+				macBanBlacklistPath = value;
+		} else if (splittedKey[2].equals("wz")) {
+			if (splittedKey[3].equals("location"))
+				wzPath = value;
+		} else if (splittedKey[2].equals("scripts")) {
+			if (splittedKey[3].equals("location"))
+				scriptsPath = value;
+		} else if (splittedKey[2].equals("game")) {
+			if (splittedKey[3].equals("run")) {
+				if (!value.isEmpty()) {
+					String[] serverIds = value.split(",");
+					enabledGameServers = new byte[serverIds.length];
+					for (byte i = 0; i < serverIds.length; i++)
+						enabledGameServers[i] = Byte.parseByte(serverIds[i]);
+				} else {
+					enabledGameServers = new byte[0];
 				}
-			} else if (splittedKey[2].equals("login")) {
-				if (splittedKey[3].equals("properties"))
-					loginPropPath = (String) prop.getValue();
-			} else if (splittedKey[2].equals("shop")) {
-				if (splittedKey[3].equals("run"))
-					shopEnabled = Boolean.parseBoolean((String) prop.getValue());
-				else if (splittedKey[3].equals("properties"))
-					shopPropPath = (String) prop.getValue();
-				else if (splittedKey[3].equals("blockedserials"))
-					csBlockedSnsPath = (String) prop.getValue();
-				else if (splittedKey[3].equals("commodityoverride"))
-					csCommodityOverridesPath = (String) prop.getValue();
-				else if (splittedKey[3].equals("limitedcommodity"))
-					csLimitedCommoditiesPath = (String) prop.getValue();
-			} else if (splittedKey[2].equals("center")) {
-				if (splittedKey[3].equals("properties"))
-					centerPropPath = (String) prop.getValue();
-			} else if (splittedKey[2].equals("plaf")) {
-				lookAndFeel = (String) prop.getValue();
-				try {
-					UIManager.setLookAndFeel(lookAndFeel);
-					SwingUtilities.invokeLater(new Runnable() {
-						@Override
-						public void run() {
-							lookAndFeelUpdated();
-						}
-					});
-				} catch (Exception e) {
-					System.err.println("Error setting look and feel");
-					e.printStackTrace();
-					SwingUtilities.invokeLater(new Runnable() {
-						@Override
-						public void run() {
-							JOptionPane.showMessageDialog(parent, "Look and feel saved in properties file could not be found.\nUsing default instead.", "Invalid PLAF", JOptionPane.WARNING_MESSAGE);
-						}
-					});
+			} else if (is7bitUnsignedNumber(splittedKey[3])){
+				Byte serverId = Byte.valueOf(splittedKey[3]);
+				if (splittedKey.length < 5) {
+					//not a setting of a game server
+				} else if (splittedKey[4].equals("properties")) {
+					gamePropPaths.put(serverId, value);
+				} else if (splittedKey[4].equals("jvm") && splittedKey.length > 5) {
+					JvmProfile overrides = gameJvmProfiles.get(serverId);
+					if (overrides == null) {
+						overrides = new JvmProfile();
+						gameJvmProfiles.put(serverId, overrides);
+					}
+					parseJvmSetting(key, splittedKey[5], value, overrides);
 				}
 			}
+		} else if (splittedKey[2].equals("login")) {
+			if (splittedKey[3].equals("properties"))
+				loginPropPath = value;
+		} else if (splittedKey[2].equals("shop")) {
+			if (splittedKey[3].equals("run"))
+				shopEnabled = Boolean.parseBoolean(value);
+			else if (splittedKey[3].equals("properties"))
+				shopPropPath = value;
+			else if (splittedKey[3].equals("blockedserials"))
+				csBlockedSnsPath = value;
+			else if (splittedKey[3].equals("commodityoverride"))
+				csCommodityOverridesPath = value;
+			else if (splittedKey[3].equals("limitedcommodity"))
+				csLimitedCommoditiesPath = value;
+		} else if (splittedKey[2].equals("center")) {
+			if (splittedKey[3].equals("properties"))
+				centerPropPath = value;
+		} else if (splittedKey[2].equals("console")) {
+			if (splittedKey[3].equals("scrollbacklines"))
+				scrollbackLines = parseNonNegativeInt(key, value, Environment.DEFAULT_SCROLLBACK_LINES);
+			else if (splittedKey[3].equals("scrollbackchars"))
+				scrollbackChars = parseNonNegativeInt(key, value, Environment.DEFAULT_SCROLLBACK_CHARS);
+			else if (splittedKey[3].equals("historylimit"))
+				historyLimit = parseNonNegativeInt(key, value, Environment.DEFAULT_HISTORY_LIMIT);
+		} else if (splittedKey[2].equals("log")) {
+			if (splittedKey[3].equals("directory"))
+				logDirectory = value.trim();
+			else if (splittedKey[3].equals("maxsize"))
+				logMaxSize = parseNonNegativeInt(key, value, Environment.DEFAULT_LOG_MAX_SIZE);
+			else if (splittedKey[3].equals("keep"))
+				logKeep = parseNonNegativeInt(key, value, Environment.DEFAULT_LOG_KEEP);
+			else if (splittedKey[3].equals("compress"))
+				logCompress = Boolean.parseBoolean(value);
+		} else if (splittedKey[2].equals("startup")) {
+			ServerRole role = ServerRole.forKey(splittedKey[3]);
+			if (splittedKey[3].equals("timeout"))
+				startupTimeout = parseNonNegativeInt(key, value, Environment.DEFAULT_STARTUP_TIMEOUT);
+			else if (role != null && splittedKey.length > 4 && splittedKey[4].equals("ready"))
+				readyPatterns.put(role, parsePattern(key, value));
+			else if (role != null && splittedKey.length > 4 && splittedKey[4].equals("port"))
+				readyPorts.put(role, Integer.valueOf(parseNonNegativeInt(key, value, 0)));
+			else if (role == ServerRole.GAME && splittedKey.length > 5 && is7bitUnsignedNumber(splittedKey[4]) && splittedKey[5].equals("port"))
+				gameReadyPorts.put(Byte.valueOf(splittedKey[4]), Integer.valueOf(parseNonNegativeInt(key, value, 0)));
+		} else if (splittedKey[2].equals("shutdown")) {
+			ServerRole role = ServerRole.forKey(splittedKey[3]);
+			if (splittedKey[3].equals("killtimeout"))
+				killTimeout = parseNonNegativeInt(key, value, Environment.DEFAULT_KILL_TIMEOUT);
+			else if (role != null && splittedKey.length > 4 && splittedKey[4].equals("command"))
+				shutdownCommands.put(role, value.trim());
+			else if (role != null && splittedKey.length > 4 && splittedKey[4].equals("timeout"))
+				shutdownTimeouts.put(role, Integer.valueOf(parseNonNegativeInt(key, value, Environment.DEFAULT_SHUTDOWN_TIMEOUT)));
+		} else if (splittedKey[2].equals("restart")) {
+			if (splittedKey[3].equals("enabled"))
+				restartEnabled = Boolean.parseBoolean(value);
+			else if (splittedKey[3].equals("max"))
+				restartMax = parseNonNegativeInt(key, value, Environment.DEFAULT_RESTART_MAX);
+			else if (splittedKey[3].equals("window"))
+				restartWindow = parseNonNegativeInt(key, value, Environment.DEFAULT_RESTART_WINDOW);
+			else if (splittedKey[3].equals("maxdelay"))
+				restartMaxDelay = parseNonNegativeInt(key, value, Environment.DEFAULT_RESTART_MAX_DELAY);
+		} else if (splittedKey[2].equals("launch")) {
+			if (splittedKey[3].equals("shell"))
+				launchThroughShell = Boolean.parseBoolean(value);
+		} else if (splittedKey[2].equals("validate")) {
+			if (splittedKey[3].equals("hash"))
+				hashPaths = Boolean.parseBoolean(value);
+		} else if (splittedKey[2].equals("cds")) {
+			if (splittedKey[3].equals("directory"))
+				cdsDirectory = value.trim();
+		} else if (splittedKey[2].equals("schedule")) {
+			//a job is made up of several properties, so it is parsed once
+			//all of them are in
+			if (splittedKey.length > 4)
+				changedJobs.add(splittedKey[3]);
+		} else if (splittedKey[2].equals("telnet")) {
+			if (splittedKey[3].equals("host"))
+				telnetHost = value.trim();
+			else if (splittedKey[3].equals("port"))
+				telnetPort = parseNonNegativeInt(key, value, Environment.DEFAULT_TELNET_PORT);
+		} else if (splittedKey[2].equals("jvm")) {
+			ServerRole role = ServerRole.forKey(splittedKey[3]);
+			if (role != null && splittedKey.length > 4)
+				parseJvmSetting(key, splittedKey[4], value, jvmProfiles.get(role));
+		} else if (splittedKey[2].equals("plaf")) {
+			lookAndFeel = value;
+			if (headless)
+				//there is nothing to look at
+				return;
+			try {
+				UIManager.setLookAndFeel(lookAndFeel);
+				SwingUtilities.invokeLater(new Runnable() {
+					@Override
+					public void run() {
+						lookAndFeelUpdated();
+					}
+				});
+			} catch (Exception e) {
+				System.err.println("Error setting look and feel");
+				e.printStackTrace();
+				SwingUtilities.invokeLater(new Runnable() {
+					@Override
+					public void run() {
+						JOptionPane.showMessageDialog(parent, "Look and feel saved in properties file could not be found.\nUsing default instead.", "Invalid PLAF", JOptionPane.WARNING_MESSAGE);
+					}
+				});
+			}
 		}
 	}
 
@@ -610,6 +864,48 @@ public class Configuration {
 		}
 	}
 
+	/**
+	 * Finds the properties that checkUnsetProperties would prompt for, for when
+	 * there is nobody to prompt. If no game servers are enabled, Game0 is
+	 * assumed to be, like checkUnsetProperties would, but the properties file
+	 * is not changed.
+	 * @return the keys of the properties that have to be set before any
+	 * server can be started
+	 */
+	public List<String> getMissingProperties() {
+		if (enabledGameServers == null)
+			enabledGameServers = new byte[] { 0 };
+		List<String> missing = new ArrayList<String>();
+		if (classPath == null)
+			missing.add("argonms.gui.bin.classpath");
+		if (wzPath == null)
+			missing.add("argonms.gui.wz.location");
+		if (scriptsPath == null)
+			missing.add("argonms.gui.scripts.location");
+		if (dbPropPath == null)
+			missing.add("argonms.gui.database.properties");
+		if (loggerPropPath == null)
+			missing.add("argonms.gui.logger.properties");
+		if (macBanBlacklistPath == null)
+			missing.add("argonms.gui.cheattracker.macbanblacklist");
+		for (byte serverId : enabledGameServers)
+			if (!gamePropPaths.containsKey(Byte.valueOf(serverId)))
+				missing.add("argonms.gui.game." + serverId + ".properties");
+		if (loginPropPath == null)
+			missing.add("argonms.gui.login.properties");
+		if (shopEnabled && shopPropPath == null)
+			missing.add("argonms.gui.shop.properties");
+		if (shopEnabled && csBlockedSnsPath == null)
+			missing.add("argonms.gui.shop.blockedserials");
+		if (shopEnabled && csCommodityOverridesPath == null)
+			missing.add("argonms.gui.shop.commodityoverride");
+		if (shopEnabled && csLimitedCommoditiesPath == null)
+			missing.add("argonms.gui.shop.limitedcommodity");
+		if (centerPropPath == null)
+			missing.add("argonms.gui.center.properties");
+		return missing;
+	}
+
 	/**
 	 * This method is not thread-safe. It must be called from the Swing EDT.
 	 */
@@ -622,6 +918,8 @@ public class Configuration {
 		if (shopEnabled)
 			m.addShopTab();
 		m.addTelnetTab();
+		m.addMergedTab();
+		m.scheduledJobsChanged();
 	}
 
 	/**
@@ -641,6 +939,118 @@ public class Configuration {
 		}
 	}
 
+	/**
+	 * Parses only the given properties, which were changed since the last time
+	 * they were parsed, and adds or removes the tabs of the model to match.
+	 *
+	 * This method is not thread-safe. It must be called from the Swing EDT.
+	 */
+	public void applyChanges(Map<String, String> changedProps, Model m, Container parent) {
+		byte[] oldGameServers = enabledGameServers;
+		boolean shopWasEnabled = shopEnabled;
+		for (Entry<String, String> entry : changedProps.entrySet()) {
+			props.setProperty(entry.getKey(), entry.getValue());
+			applyProperty(entry.getKey(), entry.getValue(), parent);
+		}
+		m.reconcileServerTabs(oldGameServers, shopWasEnabled);
+		if (parseChangedJobs())
+			m.scheduledJobsChanged();
+		if (changedProps.containsKey("argonms.gui.plaf"))
+			m.updateLookAndFeel(lookAndFeel);
+		if (changedProps.containsKey("argonms.gui.bin.classpath") || changedProps.containsKey("argonms.gui.cds.directory"))
+			m.getClassDataSharing().refreshFingerprint();
+	}
+
+	/**
+	 * Reads the properties file again, for when it was changed by another
+	 * program, and applies only the properties that differ from the ones that
+	 * were last loaded or saved. Properties that were removed from the file
+	 * keep their current values until the launcher is restarted.
+	 *
+	 * This method is not thread-safe. It must be called from the Swing EDT.
+	 */
+	public void reload(Model m, Container parent) {
+		Properties loaded = new Properties();
+		try {
+			FileReader reader = new FileReader(propsFileName);
+			try {
+				loaded.load(reader);
+			} finally {
+				reader.close();
+			}
+		} catch (FileNotFoundException e) {
+			//moved away for the moment. we'll be told when it comes back
+			return;
+		} catch (IOException e) {
+			System.err.println("Error reloading " + propsFileName);
+			e.printStackTrace();
+			return;
+		}
+		Map<String, String> changed = new HashMap<String, String>();
+		for (String key : loaded.stringPropertyNames()) {
+			String value = loaded.getProperty(key);
+			if (!value.equals(props.getProperty(key)))
+				changed.put(key, value);
+		}
+		for (String key : props.stringPropertyNames()) {
+			if (!loaded.containsKey(key) && key.startsWith(ScheduledJob.KEY_PREFIX)) {
+				//unlike other settings, jobs can go away
+				props.remove(key);
+				applyProperty(key, "", parent);
+			} else if (!loaded.containsKey(key)) {
+				System.err.println(key + " was removed from " + propsFileName + ". Its current value is kept until the launcher is restarted");
+				props.remove(key);
+			}
+		}
+		if (!changed.isEmpty() || !changedJobs.isEmpty())
+			applyChanges(changed, m, parent);
+	}
+
+	/**
+	 * @return the path of launcher.properties, as it was given
+	 */
+	public String getPropertiesPath() {
+		return propsFileName;
+	}
+
+	/**
+	 * Removes the given properties, and saves the rest.
+	 *
+	 * This method is not thread-safe. It must be called from the Swing EDT.
+	 */
+	public void removeProps(Collection<String> keys, Model m, Container parent) {
+		if (keys.isEmpty())
+			return;
+		for (String key : keys) {
+			props.remove(key);
+			if (key.startsWith(ScheduledJob.KEY_PREFIX))
+				applyProperty(key, "", parent);
+		}
+		try {
+			props.store(new FileWriter(propsFileName), null);
+		} catch (IOException e) {
+			System.err.println("Error updating properties");
+			e.printStackTrace();
+			JOptionPane.showMessageDialog(parent, "Could not remove properties: " + e.getMessage(), "Could not update properties", JOptionPane.ERROR_MESSAGE);
+		}
+		if (parseChangedJobs())
+			m.scheduledJobsChanged();
+	}
+
+	/**
+	 * Removes every property of the given scheduled job.
+	 *
+	 * This method is not thread-safe. It must be called from the Swing EDT.
+	 */
+	public void removeScheduledJob(String name, Model m, Container parent) {
+		String prefix = ScheduledJob.KEY_PREFIX + name + '.';
+		List<String> keys = new ArrayList<String>();
+		for (String key : props.stringPropertyNames())
+			if (key.startsWith(prefix))
+				keys.add(key);
+		removeProps(keys, m, parent);
+	}
+
 	public byte[] getEnabledGameServers() {
 		return enabledGameServers;
 	}
@@ -705,6 +1115,227 @@ public class Configuration {
 		return centerPropPath;
 	}
 
+	/**
+	 * @return the maximum number of lines to keep in each console, or 0 if
+	 * unbounded
+	 */
+	public int getConsoleScrollbackLines() {
+		return scrollbackLines;
+	}
+
+	/**
+	 * @return the maximum number of characters to keep in each console, or 0
+	 * if unbounded
+	 */
+	public int getConsoleScrollbackChars() {
+		return scrollbackChars;
+	}
+
+	/**
+	 * @return the maximum size in megabytes of the history that is kept on
+	 * disk for each server console once output falls out of the scrollback,
+	 * or 0 if no history should be kept
+	 */
+	public int getConsoleHistoryLimit() {
+		return historyLimit;
+	}
+
+	/**
+	 * @return the directory that the output of each server is saved to, or
+	 * null if output should not be saved
+	 */
+	public String getLogDirectory() {
+		return logDirectory.isEmpty() ? null : logDirectory;
+	}
+
+	/**
+	 * @return the size in megabytes at which a server log is rotated, or 0 if
+	 * logs should only be rotated when the server is restarted
+	 */
+	public int getLogMaxSize() {
+		return logMaxSize;
+	}
+
+	/**
+	 * @return the number of old logs to keep for each server
+	 */
+	public int getLogKeep() {
+		return logKeep;
+	}
+
+	public boolean isLogCompressed() {
+		return logCompress;
+	}
+
+	/**
+	 * @return the pattern that a line of output of a server of the given role
+	 * matches once the server is ready to accept connections, or null if the
+	 * output should not be used to tell
+	 */
+	public Pattern getReadyPattern(ServerRole role) {
+		return readyPatterns.get(role);
+	}
+
+	/**
+	 * Every game server listens on its own port, so game servers are checked
+	 * on argonms.gui.startup.game.<id>.port. argonms.gui.startup.game.port is
+	 * only used while a single game server is enabled, since otherwise every
+	 * game server would be ready as soon as the first one is.
+	 * @param serverId the id of the server if it is a game server, otherwise
+	 * ignored
+	 * @return the local port that the given server accepts connections on
+	 * once it is ready, or 0 if the port should not be used to tell
+	 */
+	public int getReadyPort(ServerRole role, byte serverId) {
+		Integer port;
+		if (role == ServerRole.GAME) {
+			port = gameReadyPorts.get(Byte.valueOf(serverId));
+			if (port == null && enabledGameServers != null && enabledGameServers.length == 1)
+				port = readyPorts.get(role);
+		} else {
+			port = readyPorts.get(role);
+		}
+		return port == null ? 0 : port.intValue();
+	}
+
+	/**
+	 * @return the number of seconds that servers waiting on another server to
+	 * become ready will wait before they are started anyway, or 0 to wait
+	 * indefinitely
+	 */
+	public int getStartupTimeout() {
+		return startupTimeout;
+	}
+
+	/**
+	 * @return the console command that makes a server of the given role shut
+	 * itself down, or an empty string if it has to be killed instead
+	 */
+	public String getShutdownCommand(ServerRole role) {
+		String command = shutdownCommands.get(role);
+		return command == null ? Environment.DEFAULT_SHUTDOWN_COMMAND : command;
+	}
+
+	/**
+	 * @return the number of seconds that a server of the given role has to
+	 * exit after it is sent its shutdown command before it is killed
+	 */
+	public int getShutdownTimeout(ServerRole role) {
+		Integer timeout = shutdownTimeouts.get(role);
+		return timeout == null ? Environment.DEFAULT_SHUTDOWN_TIMEOUT : timeout.intValue();
+	}
+
+	/**
+	 * @return the number of seconds that a server has to exit after it is
+	 * killed before it is forcibly killed, e.g. if it hangs in a shutdown
+	 * hook
+	 */
+	public int getKillTimeout() {
+		return killTimeout;
+	}
+
+	/**
+	 * @return whether servers that crash are restarted by default
+	 */
+	public boolean isRestartEnabled() {
+		return restartEnabled;
+	}
+
+	/**
+	 * @return the number of times a server may be restarted within the
+	 * restart window before it is left alone
+	 */
+	public int getRestartMax() {
+		return restartMax;
+	}
+
+	/**
+	 * @return the length in minutes of the window that restarts are counted
+	 * in to tell whether a server keeps crashing
+	 */
+	public int getRestartWindow() {
+		return restartWindow;
+	}
+
+	/**
+	 * @return the longest number of seconds that a restart will be put off
+	 */
+	public int getRestartMaxDelay() {
+		return restartMaxDelay;
+	}
+
+	/**
+	 * @return whether servers are started through a shell instead of being
+	 * executed directly
+	 */
+	public boolean isLaunchedThroughShell() {
+		return launchThroughShell;
+	}
+
+	/**
+	 * @return whether the contents of files are hashed when the paths in the
+	 * configuration are checked, on top of their size and modification time
+	 */
+	public boolean isPathHashingEnabled() {
+		return hashPaths;
+	}
+
+	/**
+	 * @return the directory that class data sharing archives are kept in, or
+	 * null if servers should not use them
+	 */
+	public String getClassDataSharingDirectory() {
+		return cdsDirectory.isEmpty() ? null : cdsDirectory;
+	}
+
+	/**
+	 * @return every job that is run on a schedule, by name
+	 */
+	public Collection<ScheduledJob> getScheduledJobs() {
+		return Collections.unmodifiableCollection(jobs.values());
+	}
+
+	/**
+	 * @return the job with the given name, or null if there is none
+	 */
+	public ScheduledJob getScheduledJob(String name) {
+		return jobs.get(name);
+	}
+
+	/**
+	 * @return the host of the admin console that the telnet tab connects to
+	 */
+	public String getTelnetHost() {
+		return telnetHost;
+	}
+
+	public int getTelnetPort() {
+		return telnetPort;
+	}
+
+	/**
+	 * @return the JVM options that servers of the given role are started with
+	 */
+	public JvmProfile getJvmProfile(ServerRole role) {
+		return jvmProfiles.get(role);
+	}
+
+	/**
+	 * @return the JVM options that only the given game server is started
+	 * with, each of which overrides the one of every game server if it is set
+	 */
+	public JvmProfile getGameServerJvmOverrides(byte serverId) {
+		JvmProfile profile = gameJvmProfiles.get(Byte.valueOf(serverId));
+		return profile == null ? new JvmProfile() : profile;
+	}
+
+	/**
+	 * @return the JVM options that the given game server is started with
+	 */
+	public JvmProfile getGameServerJvmProfile(byte serverId) {
+		return getGameServerJvmOverrides(serverId).inherit(jvmProfiles.get(ServerRole.GAME));
+	}
+
 	public String getLookAndFeelClass() {
 		return lookAndFeel;
 	}
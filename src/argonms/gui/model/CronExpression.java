@@ -0,0 +1,157 @@
+/*
+ * ArgonMS Server Manager - a process launcher and organizer utilizing Swing.
+ * Copyright (C) 2011-2013  GoldenKevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package argonms.gui.model;
+
+import java.util.BitSet;
+import java.util.Calendar;
+
+/**
+ * A schedule in the format of a crontab line: minute, hour, day of month,
+ * month and day of week, separated by spaces. Each field is *, a number, a
+ * range a-b, or a list of those separated by commas, and any of them but a
+ * number may be followed by /step. Days of the week go from 0 (Sunday) to 7
+ * (Sunday again). As in cron, when both the day of the month and the day of
+ * the week are restricted, a day that matches either one of them matches.
+ *
+ * Instances are immutable.
+ * @author GoldenKevin
+ */
+public final class CronExpression {
+	//how far ahead to look for a time that matches, e.g. for February 30
+	private static final int MAX_YEARS = 5;
+
+	private final String text;
+	private final BitSet minutes, hours, days, months, weekdays;
+	private final boolean anyDay, anyWeekday;
+
+	private CronExpression(String text, String[] fields) {
+		this.text = text;
+		minutes = parseField(fields[0], 0, 59);
+		hours = parseField(fields[1], 0, 23);
+		days = parseField(fields[2], 1, 31);
+		months = parseField(fields[3], 1, 12);
+		weekdays = parseField(fields[4], 0, 7);
+		if (weekdays.get(7))
+			weekdays.set(0);
+		anyDay = fields[2].startsWith("*");
+		anyWeekday = fields[4].startsWith("*");
+	}
+
+	private static int parseNumber(String field, String number, int min, int max) {
+		int parsed;
+		try {
+			parsed = Integer.parseInt(number);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Not a number in " + field + ": " + number);
+		}
+		if (parsed < min || parsed > max)
+			throw new IllegalArgumentException(number + " is not from " + min + " to " + max + " in " + field);
+		return parsed;
+	}
+
+	private static BitSet parseField(String field, int min, int max) {
+		BitSet set = new BitSet(max + 1);
+		for (String part : field.split(",")) {
+			int step = 1;
+			int slash = part.indexOf('/');
+			if (slash != -1) {
+				step = parseNumber(field, part.substring(slash + 1), 1, max);
+				part = part.substring(0, slash);
+			}
+			int from, to;
+			if (part.equals("*")) {
+				from = min;
+				to = max;
+			} else {
+				int dash = part.indexOf('-');
+				if (dash != -1) {
+					from = parseNumber(field, part.substring(0, dash), min, max);
+					to = parseNumber(field, part.substring(dash + 1), min, max);
+				} else {
+					from = parseNumber(field, part, min, max);
+					to = slash != -1 ? max : from;
+				}
+			}
+			for (int i = from; i <= to; i += step)
+				set.set(i);
+		}
+		return set;
+	}
+
+	/**
+	 * @throws IllegalArgumentException if the given text is not a valid
+	 * schedule
+	 */
+	public static CronExpression parse(String text) {
+		String[] fields = text.trim().split("\\s+");
+		if (fields.length != 5)
+			throw new IllegalArgumentException("Expected 5 fields but found " + fields.length + ": " + text);
+		return new CronExpression(text.trim(), fields);
+	}
+
+	private boolean matchesDay(Calendar c) {
+		boolean day = days.get(c.get(Calendar.DAY_OF_MONTH));
+		boolean weekday = weekdays.get(c.get(Calendar.DAY_OF_WEEK) - Calendar.SUNDAY);
+		if (anyDay && anyWeekday)
+			return true;
+		if (anyDay)
+			return weekday;
+		if (anyWeekday)
+			return day;
+		return day || weekday;
+	}
+
+	/**
+	 * @return the first time after the given one that matches, in
+	 * milliseconds since the epoch, or -1 if there is none
+	 */
+	public long nextAfter(long time) {
+		Calendar c = Calendar.getInstance();
+		c.setTimeInMillis(time);
+		c.set(Calendar.SECOND, 0);
+		c.set(Calendar.MILLISECOND, 0);
+		c.add(Calendar.MINUTE, 1);
+		int lastYear = c.get(Calendar.YEAR) + MAX_YEARS;
+		while (c.get(Calendar.YEAR) <= lastYear) {
+			if (!months.get(c.get(Calendar.MONTH) - Calendar.JANUARY + 1)) {
+				c.set(Calendar.DAY_OF_MONTH, 1);
+				c.set(Calendar.HOUR_OF_DAY, 0);
+				c.set(Calendar.MINUTE, 0);
+				c.add(Calendar.MONTH, 1);
+			} else if (!matchesDay(c)) {
+				c.set(Calendar.HOUR_OF_DAY, 0);
+				c.set(Calendar.MINUTE, 0);
+				c.add(Calendar.DAY_OF_MONTH, 1);
+			} else if (!hours.get(c.get(Calendar.HOUR_OF_DAY))) {
+				c.set(Calendar.MINUTE, 0);
+				c.add(Calendar.HOUR_OF_DAY, 1);
+			} else if (!minutes.get(c.get(Calendar.MINUTE))) {
+				c.add(Calendar.MINUTE, 1);
+			} else {
+				return c.getTimeInMillis();
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public String toString() {
+		return text;
+	}
+}
@@ -19,6 +19,9 @@
 package argonms.gui.model;
 
 import java.awt.Font;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
 
 /**
  *
@@ -28,14 +31,35 @@ public class Environment {
 	public enum OperatingSystem { WINDOWS, LINUX, MAC_OS_X, UNIX }
 
 	public static final String DEFAULT_PROPS_FILE = "launcher.properties";
-	public static final Font CONSOLE_FONT = new Font(Font.MONOSPACED, Font.PLAIN, 12);
+	public static final String VALIDATION_CACHE_FILE = "launcher.cache";
 
-	public static final int MAX_HEAP_SIZE = 600; //in mb
+	public static final int DEFAULT_HEAP_SIZE = 600; //in mb
+	//the center and login servers keep far less in memory than the others
+	public static final int DEFAULT_HUB_HEAP_SIZE = 256; //in mb
+	public static final int DEFAULT_SCROLLBACK_LINES = 10000;
+	public static final int DEFAULT_SCROLLBACK_CHARS = 0; //unbounded
+	public static final int DEFAULT_HISTORY_LIMIT = 256; //in mb
+	public static final String DEFAULT_LOG_DIRECTORY = "logs";
+	public static final int DEFAULT_LOG_MAX_SIZE = 10; //in mb
+	public static final int DEFAULT_LOG_KEEP = 5;
+	public static final String DEFAULT_READY_PATTERN = "(?i)\\b(online|listening|ready)\\b";
+	public static final int DEFAULT_STARTUP_TIMEOUT = 60; //in seconds
+	public static final String DEFAULT_SHUTDOWN_COMMAND = "shutdown";
+	public static final int DEFAULT_SHUTDOWN_TIMEOUT = 30; //in seconds
+	public static final int DEFAULT_KILL_TIMEOUT = 10; //in seconds
+	public static final int DEFAULT_RESTART_MAX = 5;
+	public static final int DEFAULT_RESTART_WINDOW = 10; //in minutes
+	public static final int DEFAULT_RESTART_MAX_DELAY = 60; //in seconds
+	public static final String DEFAULT_CDS_DIRECTORY = "cds";
+	public static final String DEFAULT_TELNET_HOST = "localhost";
+	public static final int DEFAULT_TELNET_PORT = 23;
+	public static final int DEFAULT_BROADCAST_TIMEOUT = 10; //in seconds
 	public static final String DIR_DELIMIT;
 	public static final String LIST_DELIMIT;
 	public static final String JAVA_DIR;
 	private static final OperatingSystem os;
-	private static final String[] commandTemplate;
+	//the shell and its option to run a command line, never handed out
+	private static final String[] shell;
 
 	static {
 		DIR_DELIMIT = System.getProperty("file.separator");
@@ -58,34 +82,132 @@ public class Environment {
 			case WINDOWS:
 				// { "cmd.exe", "/C" } doesn't work because cmd is quite stupid in dealing with spaces
 				//we will have to perform different behavior for Windows and Unix-like OSes...
-				commandTemplate = new String[0];
+				shell = null;
 				break;
 			case LINUX:
 			case UNIX:
-				commandTemplate = new String[] { "/bin/bash", "-c", null };
+				shell = new String[] { "/bin/bash", "-c" };
 				break;
 			case MAC_OS_X:
-				commandTemplate = new String[] { "/bin/tcsh", "-c", null };
+				shell = new String[] { "/bin/tcsh", "-c" };
 				break;
 			default:
-				commandTemplate = null;
+				shell = null;
 		}
 	}
 
+	//only made once it is needed, so that the headless launcher never touches
+	//AWT just by using the other constants
+	private static class ConsoleFontHolder {
+		public static final Font FONT = new Font(Font.MONOSPACED, Font.PLAIN, 12);
+	}
+
+	public static Font getConsoleFont() {
+		return ConsoleFontHolder.FONT;
+	}
+
 	public static OperatingSystem getOs() {
 		return os;
 	}
 
-	public static String[] buildCommand(String[] args) {
-		switch (os) {
-			case WINDOWS:
-				return args;
-			default:
-				StringBuilder progParams = new StringBuilder(args[0]);
-				for (int i = 1; i < args.length; i++)
-					progParams.append(' ').append(args[i]);
-				commandTemplate[commandTemplate.length - 1] = progParams.toString();
-				return commandTemplate;
+	/**
+	 * Quotes the given argument for a Unix shell, so that spaces and other
+	 * special characters in it are taken literally.
+	 */
+	private static void appendQuoted(StringBuilder sb, String arg) {
+		sb.append('\'');
+		for (int i = 0; i < arg.length(); i++) {
+			char c = arg.charAt(i);
+			if (c == '\'')
+				//end the quote, add an escaped quote, and start a new quote
+				sb.append("'\\''");
+			else
+				sb.append(c);
+		}
+		sb.append('\'');
+	}
+
+	/**
+	 * This method is thread-safe. It does not touch any shared state.
+	 * @param args the program to run and its arguments
+	 * @param throughShell whether to run the program through a shell on
+	 * platforms that have one, rather than to run it directly
+	 * @return the command to pass to a ProcessBuilder
+	 */
+	public static String[] buildCommand(String[] args, boolean throughShell) {
+		if (!throughShell || shell == null)
+			return args;
+
+		int length = 0;
+		for (String arg : args)
+			length += arg.length() + 3;
+		//exec, so that the shell is replaced by the program instead of
+		//waiting on it, and destroying the process ends the program itself
+		StringBuilder commandLine = new StringBuilder(length + 5).append("exec");
+		for (int i = 0; i < args.length; i++) {
+			commandLine.append(' ');
+			appendQuoted(commandLine, args[i]);
+		}
+		String[] command = new String[shell.length + 1];
+		System.arraycopy(shell, 0, command, 0, shell.length);
+		command[shell.length] = commandLine.toString();
+		return command;
+	}
+
+	/**
+	 * This method is thread-safe.
+	 * @return the operating system's id for the given process, or -1 if it
+	 * can't be found out
+	 */
+	public static int getPid(Process p) {
+		try {
+			//Java 9 and later. looked up on Process itself, since the class
+			//of p is not public and can't be invoked through
+			Method m = Process.class.getMethod("pid");
+			return ((Number) m.invoke(p)).intValue();
+		} catch (Exception e) {
+			//fall back to the private field of UNIXProcess
+		}
+		try {
+			Field f = p.getClass().getDeclaredField("pid");
+			f.setAccessible(true);
+			return f.getInt(p);
+		} catch (Exception e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Ends the given process without giving it a chance to clean up. On most
+	 * platforms, Process.destroy only asks the process to end itself (i.e.
+	 * SIGTERM), which a process that hangs may never get around to.
+	 *
+	 * This method is thread-safe.
+	 */
+	public static void destroyForcibly(Process p) {
+		try {
+			//Java 8 and later
+			Method m = Process.class.getMethod("destroyForcibly");
+			m.invoke(p);
+			return;
+		} catch (NoSuchMethodException e) {
+			//fall back to the kill command
+		} catch (Exception e) {
+			System.err.println("Error in forcibly ending process");
+			e.printStackTrace();
+		}
+		int pid = getPid(p);
+		if (pid <= 0 || getOs() == OperatingSystem.WINDOWS) {
+			//TerminateProcess is already as forcible as it gets
+			p.destroy();
+			return;
+		}
+		try {
+			new ProcessBuilder("kill", "-9", String.valueOf(pid)).start();
+		} catch (IOException e) {
+			System.err.println("Error in forcibly ending process " + pid);
+			e.printStackTrace();
+			p.destroy();
 		}
 	}
 }
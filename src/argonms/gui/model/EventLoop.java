@@ -0,0 +1,51 @@
+/*
+ * ArgonMS Server Manager - a process launcher and organizer utilizing Swing.
+ * Copyright (C) 2011-2013  GoldenKevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package argonms.gui.model;
+
+/**
+ * The thread that the lifecycle of the servers is confined to, and the timers
+ * that run on it: the Swing EDT when there is a user interface, or the
+ * supervisor thread of the headless launcher when there is not.
+ * @author GoldenKevin
+ */
+public interface EventLoop {
+	/**
+	 * A pending call of schedule.
+	 */
+	public interface Task {
+		/**
+		 * Does nothing if the task already ran. Must be called on the event
+		 * loop, so that a task that was cancelled is guaranteed to never run.
+		 */
+		public void cancel();
+	}
+
+	/**
+	 * Runs the given task on the event loop, after every task that was
+	 * already passed to it. This method is thread-safe.
+	 */
+	public void execute(Runnable r);
+
+	/**
+	 * Runs the given task on the event loop once the given delay passed. This
+	 * method is thread-safe.
+	 * @param delay in milliseconds
+	 */
+	public Task schedule(Runnable r, long delay);
+}
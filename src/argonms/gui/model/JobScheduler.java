@@ -0,0 +1,259 @@
+/*
+ * ArgonMS Server Manager - a process launcher and organizer utilizing Swing.
+ * Copyright (C) 2011-2013  GoldenKevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package argonms.gui.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.SwingUtilities;
+
+import argonms.gui.tab.ServerTab;
+
+/**
+ * Runs the scheduled jobs of the configuration at the times that they are
+ * due, and keeps a history of the recent runs. All jobs share a single
+ * scheduled thread, which only waits for them to be due - the jobs
+ * themselves are run on the Swing EDT, the same way that they would be if
+ * they were started by hand.
+ *
+ * This class is not thread-safe. All instances are meant to only be used on
+ * the Swing EDT.
+ * @author GoldenKevin
+ */
+public class JobScheduler {
+	/**
+	 * One time that a job was run.
+	 */
+	public static class Run {
+		private final long time;
+		private final String job;
+		private String outcome;
+
+		public Run(long time, String job) {
+			this.time = time;
+			this.job = job;
+		}
+
+		public long getTime() {
+			return time;
+		}
+
+		public String getJob() {
+			return job;
+		}
+
+		/**
+		 * @return what came of the run. may change while a command is waiting
+		 * for replies
+		 */
+		public String getOutcome() {
+			return outcome;
+		}
+	}
+
+	private static final int HISTORY_LENGTH = 200;
+	//how much earlier than it is due a job may wake up before it is run
+	private static final int EARLY_TOLERANCE = 1000; //in ms
+
+	private final Model model;
+	private final ScheduledExecutorService executor;
+	private final Map<String, ScheduledFuture<?>> pending;
+	private final Map<String, Long> nextRuns;
+	private final LinkedList<Run> history;
+
+	public JobScheduler(Model model) {
+		this.model = model;
+		executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "job-scheduler");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		pending = new HashMap<String, ScheduledFuture<?>>();
+		nextRuns = new HashMap<String, Long>();
+		history = new LinkedList<Run>();
+	}
+
+	private void schedule(final ScheduledJob job, final long due) {
+		nextRuns.put(job.getName(), Long.valueOf(due));
+		pending.put(job.getName(), executor.schedule(new Runnable() {
+			@Override
+			public void run() {
+				SwingUtilities.invokeLater(new Runnable() {
+					@Override
+					public void run() {
+						due(job, due);
+					}
+				});
+			}
+		}, Math.max(0, due - System.currentTimeMillis()), TimeUnit.MILLISECONDS));
+	}
+
+	private void scheduleNext(ScheduledJob job, long after) {
+		long next = job.getSchedule().nextAfter(after);
+		if (next == -1) {
+			nextRuns.remove(job.getName());
+			pending.remove(job.getName());
+			System.err.println("Scheduled job " + job.getName() + " will never run: " + job.getSchedule());
+			return;
+		}
+		schedule(job, next);
+	}
+
+	private void due(ScheduledJob job, long due) {
+		if (model.getConfig().getScheduledJob(job.getName()) != job)
+			//changed since it was scheduled
+			return;
+		long now = System.currentTimeMillis();
+		if (now < due - EARLY_TOLERANCE) {
+			//e.g. the clock was set back since it was scheduled
+			schedule(job, due);
+			return;
+		}
+		run(job);
+		scheduleNext(job, Math.max(now, due));
+	}
+
+	/**
+	 * Schedules every job of the configuration again, after they changed.
+	 */
+	public void reschedule() {
+		for (ScheduledFuture<?> future : pending.values())
+			future.cancel(false);
+		pending.clear();
+		nextRuns.clear();
+		long now = System.currentTimeMillis();
+		for (ScheduledJob job : model.getConfig().getScheduledJobs())
+			scheduleNext(job, now);
+	}
+
+	private static String describe(List<ServerTab> tabs) {
+		StringBuilder sb = new StringBuilder();
+		for (ServerTab tab : tabs) {
+			if (sb.length() != 0)
+				sb.append(", ");
+			sb.append(tab.getDescription());
+		}
+		return sb.toString();
+	}
+
+	private void sendCommand(final Run run, ScheduledJob job, final List<ServerTab> running) {
+		run.outcome = "Sent \"" + job.getCommand() + "\" to " + describe(running) + " - waiting for replies";
+		final String sent = "Sent \"" + job.getCommand() + "\" to " + running.size() + " servers: ";
+		new CommandBroadcast(running, job.getCommand(), Environment.DEFAULT_BROADCAST_TIMEOUT, new CommandBroadcast.Listener() {
+			private final List<String> results = new ArrayList<String>();
+
+			@Override
+			public void replyUpdated(ServerTab tab, String reply, String status, boolean finished) {
+				if (finished)
+					results.add(tab.getDescription() + " " + status.toLowerCase());
+			}
+
+			@Override
+			public void broadcastFinished() {
+				StringBuilder sb = new StringBuilder(sent);
+				for (int i = 0; i < results.size(); i++) {
+					if (i != 0)
+						sb.append("; ");
+					sb.append(results.get(i));
+				}
+				run.outcome = sb.toString();
+			}
+		}).start();
+	}
+
+	/**
+	 * Runs the given job right away, whether or not it is due.
+	 */
+	public void run(ScheduledJob job) {
+		Run run = new Run(System.currentTimeMillis(), job.getName());
+		history.addFirst(run);
+		if (history.size() > HISTORY_LENGTH)
+			history.removeLast();
+
+		List<ServerTab> tabs = model.findServers(job.getServers());
+		List<ServerTab> running = new ArrayList<ServerTab>(), idle = new ArrayList<ServerTab>();
+		for (ServerTab tab : tabs) {
+			if (model.getRunningServers().contains(tab))
+				running.add(tab);
+			else
+				idle.add(tab);
+		}
+		switch (job.getAction()) {
+			case COMMAND:
+				if (running.isEmpty())
+					run.outcome = "Not sent - none of " + job.getServers() + " is running";
+				else
+					sendCommand(run, job, running);
+				break;
+			case START:
+				if (idle.isEmpty()) {
+					run.outcome = "Nothing to start - all of " + job.getServers() + " are running";
+				} else {
+					run.outcome = "Starting " + describe(idle);
+					model.scheduleStart(idle);
+				}
+				break;
+			case STOP:
+				if (running.isEmpty()) {
+					run.outcome = "Nothing to stop - none of " + job.getServers() + " is running";
+				} else {
+					run.outcome = "Stopping " + describe(running);
+					for (ServerTab tab : running)
+						model.stopProcess(tab);
+				}
+				break;
+			case RESTART:
+				if (model.isRollingRestartActive()) {
+					run.outcome = "Not restarted - a rolling restart is already in progress";
+				} else if (running.isEmpty()) {
+					run.outcome = "Nothing to restart - none of " + job.getServers() + " is running";
+				} else {
+					run.outcome = "Restarting " + describe(running) + ", " + job.getBatchSize() + " at a time";
+					model.rollingRestart(running, job.getBatchSize());
+				}
+				break;
+		}
+	}
+
+	/**
+	 * @return when the given job is next due, or -1 if it is not scheduled
+	 */
+	public long getNextRun(String job) {
+		Long next = nextRuns.get(job);
+		return next == null ? -1 : next.longValue();
+	}
+
+	/**
+	 * @return the recent runs, the most recent first
+	 */
+	public List<Run> getHistory() {
+		return new ArrayList<Run>(history);
+	}
+}
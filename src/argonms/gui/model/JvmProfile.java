@@ -0,0 +1,166 @@
+/*
+ * ArgonMS Server Manager - a process launcher and organizer utilizing Swing.
+ * Copyright (C) 2011-2013  GoldenKevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package argonms.gui.model;
+
+import java.util.List;
+
+/**
+ * The options that a server JVM is started with on top of the ones that the
+ * launcher always passes it: the maximum heap size, the garbage collector,
+ * any other flags, and any extra system properties. A setting that is null is
+ * not set in this profile, so that a game server profile can override only
+ * some of the settings of the profile of every game server.
+ * @author GoldenKevin
+ */
+public class JvmProfile {
+	public enum GarbageCollector {
+		SERIAL("serial", "Serial", "-XX:+UseSerialGC"),
+		PARALLEL("parallel", "Parallel", "-XX:+UseParallelGC"),
+		CMS("cms", "Concurrent Mark Sweep", "-XX:+UseConcMarkSweepGC"),
+		G1("g1", "Garbage First", "-XX:+UseG1GC");
+
+		private final String key;
+		private final String name;
+		private final String flag;
+
+		private GarbageCollector(String key, String name, String flag) {
+			this.key = key;
+			this.name = name;
+			this.flag = flag;
+		}
+
+		public String getKey() {
+			return key;
+		}
+
+		public String getFlag() {
+			return flag;
+		}
+
+		@Override
+		public String toString() {
+			return name;
+		}
+
+		/**
+		 * @return the collector with the given key in launcher.properties, or
+		 * null if there is none
+		 */
+		public static GarbageCollector forKey(String key) {
+			for (GarbageCollector gc : values())
+				if (gc.key.equals(key))
+					return gc;
+			return null;
+		}
+	}
+
+	private Integer heapSize;
+	private GarbageCollector gc;
+	private String flags;
+	private String properties;
+
+	/**
+	 * @return the maximum heap size in megabytes, or null if not set
+	 */
+	public Integer getHeapSize() {
+		return heapSize;
+	}
+
+	public void setHeapSize(Integer heapSize) {
+		this.heapSize = heapSize;
+	}
+
+	/**
+	 * @return the garbage collector to use, or null to leave the choice to the
+	 * JVM
+	 */
+	public GarbageCollector getGarbageCollector() {
+		return gc;
+	}
+
+	public void setGarbageCollector(GarbageCollector gc) {
+		this.gc = gc;
+	}
+
+	/**
+	 * @return the other JVM options, separated by whitespace, where "-XX:" may
+	 * be left out from the start of each one, or null if not set
+	 */
+	public String getFlags() {
+		return flags;
+	}
+
+	public void setFlags(String flags) {
+		this.flags = flags;
+	}
+
+	/**
+	 * @return the extra system properties as "name=value" pairs separated by
+	 * whitespace, or null if not set
+	 */
+	public String getProperties() {
+		return properties;
+	}
+
+	public void setProperties(String properties) {
+		this.properties = properties;
+	}
+
+	/**
+	 * @return a profile with the settings of this one, and the settings of the
+	 * given one where this one does not set them
+	 */
+	public JvmProfile inherit(JvmProfile base) {
+		JvmProfile merged = new JvmProfile();
+		merged.heapSize = heapSize != null ? heapSize : base.heapSize;
+		merged.gc = gc != null ? gc : base.gc;
+		merged.flags = flags != null ? flags : base.flags;
+		merged.properties = properties != null ? properties : base.properties;
+		return merged;
+	}
+
+	private static String[] split(String list) {
+		list = list.trim();
+		return list.isEmpty() ? new String[0] : list.split("\\s+");
+	}
+
+	/**
+	 * Adds the heap size, garbage collector and other flags of this profile to
+	 * the arguments of a java command.
+	 */
+	public void addOptions(List<String> args) {
+		if (heapSize != null && heapSize.intValue() > 0)
+			args.add("-Xmx" + heapSize + "m");
+		if (gc != null)
+			args.add(gc.getFlag());
+		if (flags != null)
+			for (String flag : split(flags))
+				args.add(flag.startsWith("-") ? flag : "-XX:" + flag);
+	}
+
+	/**
+	 * Adds the extra system properties of this profile to the arguments of a
+	 * java command.
+	 */
+	public void addProperties(List<String> args) {
+		if (properties != null)
+			for (String property : split(properties))
+				args.add(property.startsWith("-D") ? property : "-D" + property);
+	}
+}
@@ -19,7 +19,10 @@
 package argonms.gui.model;
 
 import java.awt.Window;
-import java.util.Iterator;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.SortedMap;
 import java.util.TreeMap;
 
@@ -35,10 +38,12 @@ import argonms.gui.tab.ConsoleTab;
 import argonms.gui.tab.GameServerTab;
 import argonms.gui.tab.LoginServerTab;
 import argonms.gui.tab.MainTab;
+import argonms.gui.tab.MergedConsoleTab;
 import argonms.gui.tab.ServerTab;
 import argonms.gui.tab.ShopServerTab;
 import argonms.gui.tab.TelnetTab;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -46,8 +51,9 @@ import java.util.concurrent.ConcurrentHashMap;
  * 
  * @author GoldenKevin
  */
-public class Model {
+public class Model implements ServerGroup {
 	private final Configuration config;
+	private final EventLoop loop;
 	private JTabbedPane view;
 	private JFrame frame;
 	private final Set<ServerTab> runningServers;
@@ -58,14 +64,28 @@ public class Model {
 	private ShopServerTab shopTab;
 	private CenterServerTab centerTab;
 	private TelnetTab telnetTab;
+	private MergedConsoleTab mergedTab;
+	private final StartupScheduler startup;
+	private final ShutdownCoordinator shutdown;
+	private final RollingRestart rolling;
+	private final JobScheduler scheduler;
+	private final ClassDataSharing classDataSharing;
+	private final PathValidator validator;
 
 	public Model(Configuration cfg) {
 		config = cfg;
+		loop = new SwingEventLoop();
 		//not for thread safety, but for the weakly consistent iterators
 		//(we may remove an element while iterating over it on the same thread)
 		runningServers = Collections.newSetFromMap(new ConcurrentHashMap<ServerTab, Boolean>());
 		idleServers = Collections.newSetFromMap(new ConcurrentHashMap<ServerTab, Boolean>());
 		gameTabs = new TreeMap<Byte, GameServerTab>();
+		startup = new StartupScheduler(this);
+		shutdown = new ShutdownCoordinator(this);
+		rolling = new RollingRestart(this, startup, shutdown);
+		scheduler = new JobScheduler(this);
+		classDataSharing = new ClassDataSharing(this);
+		validator = new PathValidator(new File(Environment.VALIDATION_CACHE_FILE), cfg.isPathHashingEnabled());
 	}
 
 	public void setView(JTabbedPane pane) {
@@ -94,6 +114,7 @@ public class Model {
 			for (ConsoleTab tab : runningServers)
 				tab.onLookAndFeelChanged();
 			telnetTab.onLookAndFeelChanged();
+			mergedTab.onLookAndFeelChanged();
 		} catch (ClassNotFoundException e) {
 			System.err.println("Error refreshing look and feel");
 			e.printStackTrace();
@@ -125,16 +146,32 @@ public class Model {
 		return frame;
 	}
 
+	@Override
 	public Configuration getConfig() {
 		return config;
 	}
 
+	@Override
+	public EventLoop getEventLoop() {
+		return loop;
+	}
+
 	/**
 	 * This method is not thread-safe. It must be called from the Swing EDT.
 	 */
 	public void addMainTab() {
 		startTab = new MainTab(this);
 		view.insertTab("Main", null, startTab, null, 0);
+		startTab.showClassDataSharingReport(classDataSharing.getReport());
+	}
+
+	/**
+	 * This method is not thread-safe. It must be called from the Swing EDT.
+	 */
+	private void insertServerTab(String title, ServerTab tab, int index) {
+		view.insertTab(title, null, tab, "Not running", index);
+		view.setTabComponentAt(index, tab.createTabHeader(title));
+		idleServers.add(tab);
 	}
 
 	/**
@@ -142,8 +179,7 @@ public class Model {
 	 */
 	public void addCenterTab() {
 		centerTab = new CenterServerTab(this);
-		view.insertTab("Center", null, centerTab, "Not running", 1);
-		idleServers.add(centerTab);
+		insertServerTab("Center", centerTab, 1);
 	}
 
 	/**
@@ -151,56 +187,125 @@ public class Model {
 	 */
 	public void addLoginTab() {
 		loginTab = new LoginServerTab(this);
-		view.insertTab("Login", null, loginTab, "Not running", 2);
-		idleServers.add(loginTab);
+		insertServerTab("Login", loginTab, 2);
 	}
 
 	/**
 	 * This method is not thread-safe. It must be called from the Swing EDT.
 	 */
 	public void addGameTab(byte serverId) {
+		if (gameTabs.containsKey(Byte.valueOf(serverId)))
+			//still shutting down after it was removed
+			return;
 		GameServerTab tab = new GameServerTab(this, serverId);
 		gameTabs.put(Byte.valueOf(serverId), tab);
 		int index = 3 + gameTabs.headMap(Byte.valueOf(serverId)).size();
-		view.insertTab("Game" + serverId, null, tab, "Not running", index);
-		idleServers.add(tab);
+		insertServerTab("Game" + serverId, tab, index);
 	}
 
 	/**
 	 * This method is not thread-safe. It must be called from the Swing EDT.
 	 */
-	public void removeGameTab(byte serverId) {
-		idleServers.remove(gameTabs.remove(Byte.valueOf(serverId)));
+	public void removeGameTab(final byte serverId) {
+		final GameServerTab tab = gameTabs.get(Byte.valueOf(serverId));
+		if (tab == null)
+			return;
+		rolling.remove(tab.getServerProcess());
+		if (runningServers.contains(tab)) {
+			//shut it down first, unless it was enabled again in the meantime
+			shutdown.stop(Collections.singleton(tab.getServerProcess()), new Runnable() {
+				@Override
+				public void run() {
+					if (gameTabs.get(Byte.valueOf(serverId)) == tab && !isEnabled(config.getEnabledGameServers(), serverId))
+						removeGameTab(serverId);
+				}
+			});
+			return;
+		}
+		gameTabs.remove(Byte.valueOf(serverId));
+		startup.remove(tab.getServerProcess());
+		idleServers.remove(tab);
 		int index = 3 + gameTabs.headMap(Byte.valueOf(serverId)).size();
 		view.removeTabAt(index);
+		tab.dispose();
 	}
 
 	/**
 	 * This method is not thread-safe. It must be called from the Swing EDT.
 	 */
 	public void addShopTab() {
+		if (shopTab != null)
+			//still shutting down after it was removed
+			return;
 		shopTab = new ShopServerTab(this);
 		int index = 3 + gameTabs.size();
-		view.insertTab("Shop", null, shopTab, "Not running", index);
-		idleServers.add(shopTab);
+		insertServerTab("Shop", shopTab, index);
 	}
 
 	/**
 	 * This method is not thread-safe. It must be called from the Swing EDT.
 	 */
 	public void removeShopTab() {
+		if (shopTab == null)
+			return;
+		if (runningServers.contains(shopTab)) {
+			//shut it down first, unless it was enabled again in the meantime
+			shutdown.stop(Collections.singleton(shopTab.getServerProcess()), new Runnable() {
+				@Override
+				public void run() {
+					if (!config.isShopEnabled())
+						removeShopTab();
+				}
+			});
+			return;
+		}
+		startup.remove(shopTab.getServerProcess());
 		idleServers.remove(shopTab);
+		shopTab.dispose();
 		shopTab = null;
 		int index = 3 + gameTabs.size();
 		view.removeTabAt(index);
 	}
 
+	private static boolean isEnabled(byte[] serverIds, byte search) {
+		for (byte b : serverIds)
+			if (b == search)
+				return true;
+		return false;
+	}
+
+	/**
+	 * Adds and removes the tabs of game servers and the shop server so that
+	 * they match the configuration, after it was changed from the given
+	 * values. Servers whose tabs are removed while they are running are shut
+	 * down first.
+	 *
+	 * This method is not thread-safe. It must be called from the Swing EDT.
+	 */
+	void reconcileServerTabs(byte[] oldGameServers, boolean shopWasEnabled) {
+		byte[] newGameServers = config.getEnabledGameServers();
+		//perform a set difference on enabled game servers
+		//(new list - old list) to find tabs to add
+		for (byte serverId : newGameServers)
+			if (!isEnabled(oldGameServers, serverId))
+				addGameTab(serverId);
+		//perform a set difference on enabled game servers
+		//(old list - new list) to find tabs to remove
+		for (byte serverId : oldGameServers)
+			if (!isEnabled(newGameServers, serverId))
+				removeGameTab(serverId);
+		if (config.isShopEnabled() && !shopWasEnabled)
+			addShopTab();
+		else if (!config.isShopEnabled() && shopWasEnabled)
+			removeShopTab();
+	}
+
 	/**
 	 * This method is not thread-safe. It must be called from the Swing EDT.
 	 */
 	public void addTelnetTab() {
 		telnetTab = new TelnetTab(this);
-		int index = 3 + gameTabs.size() + (config.isShopEnabled() ? 1 : 0);
+		int index = 3 + gameTabs.size() + (shopTab != null ? 1 : 0);
 		view.insertTab("Telnet", null, telnetTab, "Not connected", index);
 	}
 
@@ -208,26 +313,323 @@ public class Model {
 	 * This method is not thread-safe. It must be called from the Swing EDT.
 	 */
 	public void removeTelnetTab() {
+		telnetTab.dispose();
 		telnetTab = null;
-		int index = 3 + gameTabs.size() + (config.isShopEnabled() ? 1 : 0);
+		int index = 3 + gameTabs.size() + (shopTab != null ? 1 : 0);
 		view.removeTabAt(index);
 	}
 
 	/**
 	 * This method is not thread-safe. It must be called from the Swing EDT.
 	 */
+	public void addMergedTab() {
+		mergedTab = new MergedConsoleTab(this);
+		view.addTab("All servers", null, mergedTab, "Output of every running server");
+	}
+
+	public MergedConsoleTab getMergedTab() {
+		return mergedTab;
+	}
+
+	/**
+	 * Starts every server that is not running, each one as soon as the
+	 * servers that it depends on are ready.
+	 *
+	 * This method is not thread-safe. It must be called from the Swing EDT.
+	 */
 	public void startAllProcesses() {
-		for (Iterator<ServerTab> iter = idleServers.iterator(); iter.hasNext(); ) {
-			ServerTab tab = iter.next();
-			tab.startProcess();
+		final List<ServerTab> tabs = new ArrayList<ServerTab>(idleServers);
+		confirmPaths(tabs, new Runnable() {
+			@Override
+			public void run() {
+				//leave out what was started or removed while we checked
+				List<ServerProcess> idle = new ArrayList<ServerProcess>();
+				for (ServerTab tab : tabs)
+					if (idleServers.contains(tab) && !startup.isPending(tab.getServerProcess()))
+						idle.add(tab.getServerProcess());
+				startup.start(idle);
+			}
+		});
+	}
+
+	private static String describe(List<PathValidator.Problem> problems) {
+		final int maxShown = 10;
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < problems.size() && i < maxShown; i++)
+			sb.append(problems.get(i)).append('\n');
+		if (problems.size() > maxShown)
+			sb.append("...and ").append(problems.size() - maxShown).append(" more\n");
+		return sb.toString();
+	}
+
+	/**
+	 * Checks the paths in the configuration in the background, and warns the
+	 * user if any of them can't be used, so that the problems can be fixed
+	 * before any server is started.
+	 *
+	 * This method is not thread-safe. It must be called from the Swing EDT.
+	 */
+	public void validatePathsInBackground() {
+		//the configuration may only be read on the EDT
+		final PathValidator.Snapshot paths = PathValidator.snapshot(config);
+		Thread t = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				final List<PathValidator.Problem> problems = validator.validate(paths);
+				if (problems.isEmpty())
+					return;
+				SwingUtilities.invokeLater(new Runnable() {
+					@Override
+					public void run() {
+						JOptionPane.showMessageDialog(frame,
+								"Some paths in the launch configuration can't be used:\n" + describe(problems),
+								"Configuration Problems", JOptionPane.WARNING_MESSAGE);
+					}
+				});
+			}
+		}, "path-validator");
+		t.setDaemon(true);
+		t.start();
+	}
+
+	/**
+	 * Checks the paths that the given servers need in the background, and
+	 * runs whenConfirmed on the Swing EDT once they are checked, unless any
+	 * of them can't be used and the user chooses to not start the servers
+	 * anyway.
+	 *
+	 * This method is not thread-safe. It must be called from the Swing EDT.
+	 */
+	public void confirmPaths(Collection<ServerTab> tabs, final Runnable whenConfirmed) {
+		final List<String> servers = new ArrayList<String>(tabs.size());
+		for (ServerTab tab : tabs)
+			servers.add(tab.getDescription());
+		//the configuration may only be read on the EDT
+		final PathValidator.Snapshot paths = PathValidator.snapshot(config);
+		Thread t = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				final List<PathValidator.Problem> relevant = new ArrayList<PathValidator.Problem>();
+				for (PathValidator.Problem problem : validator.validate(paths)) {
+					for (String server : servers) {
+						if (problem.affects(server)) {
+							relevant.add(problem);
+							break;
+						}
+					}
+				}
+				SwingUtilities.invokeLater(new Runnable() {
+					@Override
+					public void run() {
+						if (relevant.isEmpty() || JOptionPane.showConfirmDialog(frame,
+								"Some paths that the servers need can't be used:\n" + describe(relevant) + "\nStart anyway?",
+								"Configuration Problems", JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE) == JOptionPane.YES_OPTION)
+							whenConfirmed.run();
+					}
+				});
+			}
+		}, "path-validator");
+		t.setDaemon(true);
+		t.start();
+	}
+
+	Set<ServerTab> getRunningServers() {
+		return runningServers;
+	}
+
+	private static List<ServerProcess> processesOf(Collection<? extends ServerTab> tabs) {
+		List<ServerProcess> processes = new ArrayList<ServerProcess>(tabs.size());
+		for (ServerTab tab : tabs)
+			processes.add(tab.getServerProcess());
+		return processes;
+	}
+
+	/**
+	 * This method is not thread-safe. It must be called from the Swing EDT.
+	 */
+	@Override
+	public Collection<ServerProcess> getRunningProcesses() {
+		return processesOf(runningServers);
+	}
+
+	/**
+	 * This method is not thread-safe. It must be called from the Swing EDT.
+	 * @param servers a comma separated list of all, center, login, shop,
+	 * game (every game server) and game[id]
+	 * @return the servers that match the given list, in the order of their
+	 * tabs
+	 */
+	public List<ServerTab> findServers(String servers) {
+		Set<ServerTab> found = new HashSet<ServerTab>();
+		for (String name : servers.split(",")) {
+			name = name.trim().toLowerCase();
+			if (name.equals("all")) {
+				found.addAll(idleServers);
+				found.addAll(runningServers);
+			} else if (name.equals("center")) {
+				found.add(centerTab);
+			} else if (name.equals("login")) {
+				found.add(loginTab);
+			} else if (name.equals("shop")) {
+				if (shopTab != null)
+					found.add(shopTab);
+			} else if (name.equals("game")) {
+				found.addAll(gameTabs.values());
+			} else if (name.startsWith("game")) {
+				GameServerTab tab = null;
+				try {
+					tab = gameTabs.get(Byte.valueOf(name.substring(4)));
+				} catch (NumberFormatException e) {
+					//fall through
+				}
+				if (tab != null)
+					found.add(tab);
+				else
+					System.err.println("No such server: " + name);
+			} else if (!name.isEmpty()) {
+				System.err.println("No such server: " + name);
+			}
 		}
+		List<ServerTab> tabs = new ArrayList<ServerTab>();
+		for (int i = 0; i < view.getTabCount(); i++)
+			if (found.contains(view.getComponentAt(i)))
+				tabs.add((ServerTab) view.getComponentAt(i));
+		return tabs;
+	}
+
+	public JobScheduler getJobScheduler() {
+		return scheduler;
+	}
+
+	/**
+	 * This method is not thread-safe. It must be called from the Swing EDT.
+	 */
+	void scheduledJobsChanged() {
+		scheduler.reschedule();
+	}
+
+	/**
+	 * This method is not thread-safe. It must be called from the Swing EDT.
+	 * @return the servers that are running, in the order of their tabs
+	 */
+	public List<ServerTab> getRunningServerTabs() {
+		List<ServerTab> tabs = new ArrayList<ServerTab>();
+		for (int i = 0; i < view.getTabCount(); i++)
+			if (runningServers.contains(view.getComponentAt(i)))
+				tabs.add((ServerTab) view.getComponentAt(i));
+		return tabs;
 	}
 
+	/**
+	 * This method is not thread-safe. It must be called from the Swing EDT.
+	 */
 	public void stopAllProcesses() {
-		for (Iterator<ServerTab> iter = runningServers.iterator(); iter.hasNext(); ) {
-			ServerTab tab = iter.next();
-			tab.stopProcess();
-		}
+		stopAllProcesses(null);
+	}
+
+	/**
+	 * Shuts down every running server, the servers that depend on others
+	 * first.
+	 *
+	 * This method is not thread-safe. It must be called from the Swing EDT.
+	 * @param whenDone run once every server has exited, or null
+	 */
+	public void stopAllProcesses(Runnable whenDone) {
+		rolling.cancel();
+		startup.cancel();
+		for (ServerTab tab : idleServers)
+			tab.cancelRestart();
+		shutdown.stop(processesOf(runningServers), whenDone);
+	}
+
+	/**
+	 * Restarts every running game server, batchSize of them at a time, while
+	 * the others keep serving players.
+	 *
+	 * This method is not thread-safe. It must be called from the Swing EDT.
+	 * @see RollingRestart
+	 */
+	public void rollingRestart(int batchSize) {
+		rollingRestart(gameTabs.values(), batchSize);
+	}
+
+	/**
+	 * Restarts the given running servers, batchSize of them at a time.
+	 *
+	 * This method is not thread-safe. It must be called from the Swing EDT.
+	 * @see RollingRestart
+	 */
+	public void rollingRestart(Collection<? extends ServerTab> tabs, int batchSize) {
+		startTab.rollingRestartStarted();
+		rolling.start(processesOf(tabs), batchSize, new Runnable() {
+			@Override
+			public void run() {
+				startTab.rollingRestartEnded();
+			}
+		});
+	}
+
+	/**
+	 * Stops taking down more game servers in a rolling restart.
+	 *
+	 * This method is not thread-safe. It must be called from the Swing EDT.
+	 */
+	public void cancelRollingRestart() {
+		rolling.cancel();
+	}
+
+	/**
+	 * This method is not thread-safe. It must be called from the Swing EDT.
+	 */
+	public boolean isRollingRestartActive() {
+		return rolling.isActive();
+	}
+
+	/**
+	 * Starts the given servers as soon as the servers that they depend on
+	 * are ready.
+	 *
+	 * This method is not thread-safe. It must be called from the Swing EDT.
+	 */
+	void scheduleStart(Collection<ServerTab> tabs) {
+		startup.start(processesOf(tabs));
+	}
+
+	/**
+	 * Asks a running server to shut itself down.
+	 *
+	 * This method is not thread-safe. It must be called from the Swing EDT.
+	 */
+	public void stopProcess(ServerTab tab) {
+		shutdown.stop(Collections.singleton(tab.getServerProcess()), null);
+	}
+
+	/**
+	 * This method is not thread-safe. It must be called from the Swing EDT.
+	 * @return whether the given server was asked to shut down and did not
+	 * exit yet
+	 */
+	public boolean isStopping(ServerTab tab) {
+		return shutdown.isStopping(tab.getServerProcess());
+	}
+
+	public ClassDataSharing getClassDataSharing() {
+		return classDataSharing;
+	}
+
+	/**
+	 * This method is not thread-safe. It must be called from the Swing EDT.
+	 */
+	void showClassDataSharingReport(String report) {
+		startTab.showClassDataSharingReport(report);
+	}
+
+	/**
+	 * This method is not thread-safe. It must be called from the Swing EDT.
+	 */
+	@Override
+	public void logShutdownEvent(String message) {
+		startTab.logShutdownEvent(message);
 	}
 
 	public boolean allOffline() {
@@ -238,6 +640,7 @@ public class Model {
 	 * This method is not thread-safe. It must be called from the Swing EDT.
 	 */
 	public void processStarted(ServerTab tab) {
+		startup.processStarted(tab.getServerProcess());
 		idleServers.remove(tab);
 		runningServers.add(tab);
 		view.setToolTipTextAt(view.indexOfComponent(tab), "Running");
@@ -245,6 +648,18 @@ public class Model {
 		startTab.disableSettings();
 		if (idleServers.isEmpty())
 			startTab.disableStartAllButton();
+		startTab.runningServersChanged();
+	}
+
+	/**
+	 * Must be called once a server that was started is ready to accept
+	 * connections.
+	 *
+	 * This method is not thread-safe. It must be called from the Swing EDT.
+	 */
+	public void processReady(ServerTab tab) {
+		startup.processReady(tab.getServerProcess());
+		rolling.processReady(tab.getServerProcess());
 	}
 
 	/**
@@ -259,5 +674,9 @@ public class Model {
 			startTab.disableStopAllButton();
 			startTab.enableSettings();
 		}
+		startTab.runningServersChanged();
+		startup.processEnded(tab.getServerProcess());
+		shutdown.processEnded(tab.getServerProcess());
+		rolling.processEnded(tab.getServerProcess());
 	}
 }
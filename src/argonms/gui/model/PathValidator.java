@@ -0,0 +1,389 @@
+/*
+ * ArgonMS Server Manager - a process launcher and organizer utilizing Swing.
+ * Copyright (C) 2011-2013  GoldenKevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package argonms.gui.model;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.ZipFile;
+
+/**
+ * Checks that every path in the configuration points to something that a
+ * server can use, so that mistakes are found before a server is started
+ * instead of when it crashes. The paths are checked in parallel.
+ *
+ * Every path that passes is fingerprinted by its size and modification time,
+ * and optionally by a hash of its contents, and the fingerprints are cached
+ * in a file between runs. A path whose fingerprint did not change is only
+ * looked up, instead of being opened and read again.
+ * @author GoldenKevin
+ */
+public class PathValidator {
+	private enum Kind { CLASSPATH, DIRECTORY, PROPERTIES, TEXT }
+
+	private static class Check {
+		public final String description;
+		public final String path;
+		public final Kind kind;
+		//the servers that need the path, or null if every server does
+		public final Collection<String> servers;
+
+		public Check(String description, String path, Kind kind, Collection<String> servers) {
+			this.description = description;
+			this.path = path;
+			this.kind = kind;
+			this.servers = servers;
+		}
+	}
+
+	/**
+	 * The paths to check in a configuration, as they were when the snapshot
+	 * was taken. Snapshots are immutable, so they can be validated on any
+	 * thread while the configuration goes on to be changed.
+	 */
+	public static class Snapshot {
+		private final List<Check> checks;
+
+		private Snapshot(List<Check> checks) {
+			this.checks = Collections.unmodifiableList(checks);
+		}
+	}
+
+	/**
+	 * A path that a server can't use.
+	 */
+	public static class Problem {
+		private final Check check;
+		private final String message;
+
+		private Problem(Check check, String message) {
+			this.check = check;
+			this.message = message;
+		}
+
+		/**
+		 * @param server the description of a server, e.g. "Game1"
+		 * @return whether the given server needs the path
+		 */
+		public boolean affects(String server) {
+			return check.servers == null || check.servers.contains(server);
+		}
+
+		@Override
+		public String toString() {
+			return check.description + " (" + check.path + "): " + message;
+		}
+	}
+
+	private static final int MAX_THREADS = 8;
+
+	private final File cacheFile;
+	private final boolean hash;
+	private final Properties cache;
+
+	/**
+	 * @param hash whether to also fingerprint the contents of files, so that
+	 * a file that was only touched or copied over with the same contents is
+	 * not checked again
+	 */
+	public PathValidator(File cacheFile, boolean hash) {
+		this.cacheFile = cacheFile;
+		this.hash = hash;
+		cache = new Properties();
+		if (cacheFile.isFile()) {
+			InputStream in = null;
+			try {
+				in = new FileInputStream(cacheFile);
+				cache.load(in);
+			} catch (IOException e) {
+				System.err.println("Error reading " + cacheFile.getPath());
+				e.printStackTrace();
+			} finally {
+				if (in != null) {
+					try {
+						in.close();
+					} catch (IOException e) {
+					}
+				}
+			}
+		}
+	}
+
+	private static void add(List<Check> checks, String description, String path, Kind kind, String server) {
+		if (path != null)
+			checks.add(new Check(description, path, kind, server == null ? null : Collections.singleton(server)));
+	}
+
+	private static List<Check> getChecks(Configuration config) {
+		List<Check> checks = new ArrayList<Check>();
+		if (config.getClasspathElements() != null)
+			for (String element : config.getClasspathElements())
+				add(checks, "Classpath entry", element, Kind.CLASSPATH, null);
+		add(checks, "WZ data folder", config.getWzPath(), Kind.DIRECTORY, null);
+		add(checks, "Database properties", config.getDatabasePropertiesPath(), Kind.PROPERTIES, null);
+		add(checks, "Logging properties", config.getLoggerPropertiesPath(), Kind.PROPERTIES, null);
+		add(checks, "MAC ban blacklist", config.getMacBanBlacklistPath(), Kind.TEXT, null);
+		add(checks, "Center properties", config.getCenterServerPropertiesPath(), Kind.PROPERTIES, "Center");
+		add(checks, "Login properties", config.getLoginServerPropertiesPath(), Kind.PROPERTIES, "Login");
+		if (config.getEnabledGameServers() != null && config.getEnabledGameServers().length != 0) {
+			//every game server shares the scripts, so only check them once
+			List<String> gameServers = new ArrayList<String>();
+			for (byte serverId : config.getEnabledGameServers()) {
+				gameServers.add("Game" + serverId);
+				add(checks, "Game" + serverId + " properties", config.getGameServerPropertiesPath(serverId), Kind.PROPERTIES, "Game" + serverId);
+			}
+			if (config.getScriptsPath() != null)
+				checks.add(new Check("Scripts folder", config.getScriptsPath(), Kind.DIRECTORY, Collections.unmodifiableList(gameServers)));
+		}
+		if (config.isShopEnabled()) {
+			add(checks, "Shop properties", config.getShopServerPropertiesPath(), Kind.PROPERTIES, "Shop");
+			add(checks, "Blocked serial numbers", config.getCashShopBlockedSerialsPath(), Kind.TEXT, "Shop");
+			add(checks, "Commodity overrides", config.getCashShopCommodityOverridesPath(), Kind.TEXT, "Shop");
+			add(checks, "Limited commodities", config.getCashShopLimitedCommoditiesPath(), Kind.TEXT, "Shop");
+		}
+		return checks;
+	}
+
+	private static String hashContents(File file) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			//every JVM has to support SHA-1
+			throw new RuntimeException(e);
+		}
+		InputStream in = new FileInputStream(file);
+		try {
+			byte[] buf = new byte[64 * 1024];
+			int read;
+			while ((read = in.read(buf)) != -1)
+				digest.update(buf, 0, read);
+		} finally {
+			in.close();
+		}
+		StringBuilder sb = new StringBuilder();
+		for (byte b : digest.digest())
+			sb.append(String.format("%02x", b & 0xFF));
+		return sb.toString();
+	}
+
+	/**
+	 * Opens and reads the path to make sure that it is usable.
+	 * @return a description of the problem, or null if there is none
+	 */
+	private static String inspect(File file, Kind kind) {
+		switch (kind) {
+			case CLASSPATH:
+				if (file.isDirectory())
+					return null;
+				try {
+					new ZipFile(file).close();
+					return null;
+				} catch (IOException e) {
+					return "not a valid jar (" + e.getMessage() + ")";
+				}
+			case DIRECTORY: {
+				String[] children = file.list();
+				if (children == null)
+					return "could not be read";
+				if (children.length == 0)
+					return "is empty";
+				return null;
+			}
+			case PROPERTIES: {
+				InputStream in = null;
+				try {
+					in = new FileInputStream(file);
+					new Properties().load(in);
+					return null;
+				} catch (IOException e) {
+					return "could not be read (" + e.getMessage() + ")";
+				} catch (IllegalArgumentException e) {
+					return "is malformed (" + e.getMessage() + ")";
+				} finally {
+					if (in != null) {
+						try {
+							in.close();
+						} catch (IOException e) {
+						}
+					}
+				}
+			}
+			default:
+				return file.canRead() ? null : "could not be read";
+		}
+	}
+
+	/**
+	 * This method is thread-safe.
+	 * @return a description of the problem, or null if there is none
+	 */
+	private String check(Check check) {
+		File file = new File(check.path);
+		if (!file.exists())
+			return "does not exist";
+		boolean directory = check.kind == Kind.DIRECTORY;
+		if (directory && !file.isDirectory())
+			return "is not a folder";
+		if (!directory && check.kind != Kind.CLASSPATH && !file.isFile())
+			return "is not a file";
+
+		//a folder's size and modification time change when its entries do
+		String fingerprint = check.kind + " " + file.length() + " " + file.lastModified();
+		String cached;
+		synchronized (cache) {
+			cached = cache.getProperty(file.getAbsolutePath());
+		}
+		if (cached != null && cached.startsWith(fingerprint + " "))
+			return null;
+
+		String contents = "";
+		if (hash && file.isFile()) {
+			try {
+				contents = hashContents(file);
+			} catch (IOException e) {
+				return "could not be read (" + e.getMessage() + ")";
+			}
+			//only the modification time changed
+			if (cached != null && cached.startsWith(check.kind + " ") && cached.endsWith(" " + contents)) {
+				synchronized (cache) {
+					cache.setProperty(file.getAbsolutePath(), fingerprint + " " + contents);
+				}
+				return null;
+			}
+		}
+		String problem = inspect(file, check.kind);
+		synchronized (cache) {
+			if (problem == null)
+				cache.setProperty(file.getAbsolutePath(), fingerprint + " " + contents);
+			else
+				cache.remove(file.getAbsolutePath());
+		}
+		return problem;
+	}
+
+	private void saveCache() {
+		OutputStream out = null;
+		try {
+			out = new FileOutputStream(cacheFile);
+			synchronized (cache) {
+				cache.store(out, "Fingerprints of paths that were found to be valid");
+			}
+		} catch (IOException e) {
+			System.err.println("Error writing " + cacheFile.getPath());
+			e.printStackTrace();
+		} finally {
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	/**
+	 * Copies the paths to check out of the given configuration. This is cheap
+	 * and does not touch the file system.
+	 *
+	 * This method is not thread-safe. It must be called from the thread that
+	 * changes the configuration, i.e. the Swing EDT unless the launcher is
+	 * headless.
+	 */
+	public static Snapshot snapshot(Configuration config) {
+		return new Snapshot(getChecks(config));
+	}
+
+	/**
+	 * Checks every path in the given configuration. Blocks until they are all
+	 * checked.
+	 *
+	 * This method is not thread-safe. It must be called from the thread that
+	 * changes the configuration, i.e. the Swing EDT unless the launcher is
+	 * headless.
+	 * @return the paths that servers can't use
+	 */
+	public List<Problem> validate(Configuration config) {
+		return validate(snapshot(config));
+	}
+
+	/**
+	 * Checks every path in the given snapshot. Blocks until they are all
+	 * checked.
+	 *
+	 * This method is thread-safe.
+	 * @return the paths that servers can't use
+	 */
+	public List<Problem> validate(Snapshot paths) {
+		final List<Check> checks = paths.checks;
+		List<Problem> problems = new ArrayList<Problem>();
+		if (checks.isEmpty())
+			return problems;
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(checks.size(), MAX_THREADS), new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "path-validator");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		List<Future<String>> results = new ArrayList<Future<String>>(checks.size());
+		for (final Check check : checks) {
+			results.add(executor.submit(new Callable<String>() {
+				@Override
+				public String call() {
+					return check(check);
+				}
+			}));
+		}
+		executor.shutdown();
+		for (int i = 0; i < checks.size(); i++) {
+			try {
+				String problem = results.get(i).get();
+				if (problem != null)
+					problems.add(new Problem(checks.get(i), problem));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				executor.shutdownNow();
+				return problems;
+			} catch (ExecutionException e) {
+				problems.add(new Problem(checks.get(i), "could not be checked (" + e.getCause() + ")"));
+			}
+		}
+		saveCache();
+		return problems;
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ * ArgonMS Server Manager - a process launcher and organizer utilizing Swing.
+ * Copyright (C) 2011-2013  GoldenKevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package argonms.gui.model;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+
+/**
+ * Tells when a server that was just started is ready to accept connections,
+ * either because a line of its output matched a pattern or because a port
+ * that it listens on accepted a connection, whichever comes first.
+ *
+ * feed must only be called by the thread that reads the output of the server.
+ * The callback is run at most once, on whichever thread noticed first.
+ * @author GoldenKevin
+ */
+public final class ReadinessProbe {
+	private static final int MAX_LINE_LENGTH = 4096;
+	private static final int PROBE_INTERVAL_MILLIS = 250;
+
+	private final Pattern pattern;
+	private final int port;
+	private final Runnable callback;
+	private final AtomicBoolean done;
+	private final StringBuilder line;
+
+	/**
+	 * @param pattern matched against each line of output, or null
+	 * @param port a local port to try to connect to, or 0
+	 * @param callback what to run once the server is ready
+	 */
+	public ReadinessProbe(Pattern pattern, int port, Runnable callback) {
+		this.pattern = pattern;
+		this.port = port;
+		this.callback = callback;
+		done = new AtomicBoolean(false);
+		line = new StringBuilder();
+	}
+
+	/**
+	 * @return true if there is no way to tell when the server is ready
+	 */
+	public boolean isBlind() {
+		return pattern == null && port == 0;
+	}
+
+	private void fire() {
+		if (done.compareAndSet(false, true))
+			callback.run();
+	}
+
+	/**
+	 * Starts trying to connect to the port in the background, if there is
+	 * one.
+	 */
+	public void start() {
+		if (port == 0)
+			return;
+		Thread t = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				while (!done.get()) {
+					Socket s = new Socket();
+					try {
+						s.connect(new InetSocketAddress("localhost", port), PROBE_INTERVAL_MILLIS);
+						fire();
+					} catch (IOException e) {
+						//not listening yet
+						try {
+							Thread.sleep(PROBE_INTERVAL_MILLIS);
+						} catch (InterruptedException ex) {
+							return;
+						}
+					} finally {
+						try {
+							s.close();
+						} catch (IOException e) {
+							//nothing we can do about it
+						}
+					}
+				}
+			}
+		}, "readiness-probe-" + port);
+		t.setDaemon(true);
+		t.start();
+	}
+
+	/**
+	 * Stops looking, e.g. because the server exited.
+	 */
+	public void cancel() {
+		done.set(true);
+	}
+
+	public void feed(char[] buf, int offset, int length) {
+		if (pattern == null || done.get())
+			return;
+		for (int i = offset; i < offset + length; i++) {
+			char c = buf[i];
+			if (c == '\n' || c == '\r') {
+				if (line.length() > 0 && pattern.matcher(line).find()) {
+					fire();
+					return;
+				}
+				line.setLength(0);
+			} else if (line.length() < MAX_LINE_LENGTH) {
+				line.append(c);
+			}
+		}
+	}
+}
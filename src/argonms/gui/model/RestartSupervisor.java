@@ -0,0 +1,134 @@
+/*
+ * ArgonMS Server Manager - a process launcher and organizer utilizing Swing.
+ * Copyright (C) 2011-2013  GoldenKevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package argonms.gui.model;
+
+import java.util.LinkedList;
+import java.util.Random;
+
+/**
+ * Decides whether and when a server that crashed should be restarted. Delays
+ * grow exponentially with every crash in a row, with random jitter so that
+ * servers that crashed together don't all restart at the same moment, and
+ * the supervisor gives up once the server was restarted too many times in a
+ * short period, since it will most likely just keep crashing.
+ *
+ * This class is not thread-safe. All instances are meant to only be used on
+ * the event loop of the ServerProcess that they belong to.
+ * @author GoldenKevin
+ */
+public final class RestartSupervisor {
+	private static final long BASE_DELAY = 1000; //in ms
+
+	private final Random random;
+	//times of the restarts that are still within the window
+	private final LinkedList<Long> recent;
+	private int maxRestarts;
+	private long window;
+	private long maxDelay;
+	private int crashesInARow;
+	private int totalRestarts;
+	private boolean gaveUp;
+
+	public RestartSupervisor() {
+		random = new Random();
+		recent = new LinkedList<Long>();
+	}
+
+	/**
+	 * @param maxRestarts the number of restarts that may happen within the
+	 * window before giving up
+	 * @param window in milliseconds
+	 * @param maxDelay the longest that a restart will be put off, in
+	 * milliseconds
+	 */
+	public void setLimits(int maxRestarts, long window, long maxDelay) {
+		this.maxRestarts = maxRestarts;
+		this.window = window;
+		this.maxDelay = Math.max(BASE_DELAY, maxDelay);
+	}
+
+	private void forgetOld(long now) {
+		while (!recent.isEmpty() && now - recent.getFirst().longValue() > window)
+			recent.removeFirst();
+	}
+
+	/**
+	 * Must be called whenever the server exits.
+	 * @param ranFor how long the server was running, in milliseconds
+	 * @param crashed whether it exited on its own with a non-zero status
+	 * @return how long to wait before restarting the server in milliseconds,
+	 * or -1 if it should not be restarted
+	 */
+	public long processEnded(long ranFor, boolean crashed) {
+		gaveUp = false;
+		if (!crashed) {
+			crashesInARow = 0;
+			return -1;
+		}
+		//it stayed up for a while, so this is a new problem
+		if (ranFor > window)
+			crashesInARow = 0;
+		forgetOld(System.currentTimeMillis());
+		if (recent.size() >= maxRestarts) {
+			gaveUp = true;
+			return -1;
+		}
+		long delay = Math.min(maxDelay, BASE_DELAY << Math.min(crashesInARow, 30));
+		crashesInARow++;
+		//keep at least half of the delay, and randomize the rest
+		return delay / 2 + (long) (random.nextDouble() * (delay - delay / 2));
+	}
+
+	/**
+	 * Must be called when the server is restarted after a crash.
+	 */
+	public void restarted() {
+		recent.addLast(Long.valueOf(System.currentTimeMillis()));
+		totalRestarts++;
+	}
+
+	/**
+	 * @return whether processEnded last returned -1 because the server was
+	 * already restarted too many times within the window
+	 */
+	public boolean isCrashLooping() {
+		return gaveUp;
+	}
+
+	/**
+	 * @return the number of restarts within the window
+	 */
+	public int getRecentRestarts() {
+		return recent.size();
+	}
+
+	public int getTotalRestarts() {
+		return totalRestarts;
+	}
+
+	/**
+	 * Forget about earlier crashes, e.g. because the user started the server
+	 * again by hand.
+	 */
+	public void reset() {
+		recent.clear();
+		crashesInARow = 0;
+		gaveUp = false;
+	}
+}
@@ -0,0 +1,235 @@
+/*
+ * ArgonMS Server Manager - a process launcher and organizer utilizing Swing.
+ * Copyright (C) 2011-2013  GoldenKevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package argonms.gui.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Restarts a set of game servers a batch at a time, so that the others keep
+ * serving players. Each server in a batch is shut down the same way that Stop
+ * does it and started again once it exited, and the next batch is only taken
+ * down once every server in the current one is ready to accept connections.
+ *
+ * As a guard on capacity, a server is only taken down while at least as many
+ * of the others are ready as there were when the restart began, less the
+ * batch size. If a server crashes during the restart, the next one waits for
+ * it to come back. If a restarted server exits before it is ready, the
+ * restart is abandoned so that no more of the servers are taken down.
+ *
+ * This class is not thread-safe. All instances are meant to only be used on
+ * the event loop of their group.
+ * @author GoldenKevin
+ */
+public class RollingRestart {
+	private final ServerGroup group;
+	private final StartupScheduler startup;
+	private final ShutdownCoordinator shutdown;
+	private final LinkedList<ServerProcess> queue;
+	//servers of the current batch that are shutting down, and that are
+	//starting up again
+	private final Set<ServerProcess> stopping, starting;
+	private final List<ServerProcess> servers;
+	private Runnable whenDone;
+	private int batchSize, minimumReady;
+	private boolean waitingForCapacity;
+	private long startTime;
+
+	/**
+	 * @param startup the scheduler that restarted servers are started with,
+	 * so that they still wait on the servers that they depend on
+	 * @param shutdown the coordinator that servers are stopped with
+	 */
+	public RollingRestart(ServerGroup group, StartupScheduler startup, ShutdownCoordinator shutdown) {
+		this.group = group;
+		this.startup = startup;
+		this.shutdown = shutdown;
+		queue = new LinkedList<ServerProcess>();
+		stopping = new LinkedHashSet<ServerProcess>();
+		starting = new LinkedHashSet<ServerProcess>();
+		servers = new ArrayList<ServerProcess>();
+	}
+
+	private void log(String message) {
+		group.logShutdownEvent(String.format("%6.1fs  Rolling restart: %s", (System.currentTimeMillis() - startTime) / 1000.0, message));
+	}
+
+	private boolean isReady(ServerProcess p) {
+		return p.isRunning() && !p.isAwaitingReady() && !shutdown.isStopping(p);
+	}
+
+	private int countReady() {
+		int count = 0;
+		for (ServerProcess p : servers)
+			if (isReady(p))
+				count++;
+		return count;
+	}
+
+	/**
+	 * Takes down as many more servers as the batch size and the capacity guard
+	 * allow, and finishes once there are none left.
+	 */
+	private void takeDownNext() {
+		while (!queue.isEmpty() && stopping.size() + starting.size() < batchSize) {
+			ServerProcess p = queue.getFirst();
+			if (!p.isRunning() || shutdown.isStopping(p)) {
+				//stopped by someone else in the meantime, so leave it be
+				queue.removeFirst();
+				log(p.getDescription() + " is not running anymore - skipping it");
+				continue;
+			}
+			int readyAfter = countReady() - (isReady(p) ? 1 : 0);
+			if (readyAfter < minimumReady) {
+				if (!waitingForCapacity)
+					log("only " + countReady() + " servers are ready - waiting before taking down " + p.getDescription());
+				waitingForCapacity = true;
+				return;
+			}
+			waitingForCapacity = false;
+			queue.removeFirst();
+			stopping.add(p);
+			p.showPendingStatus("Restarting");
+			shutdown.stop(Collections.singleton(p), null);
+		}
+		if (queue.isEmpty() && stopping.isEmpty() && starting.isEmpty() && isActive()) {
+			log("done");
+			end();
+		}
+	}
+
+	private void ended() {
+		Runnable r = whenDone;
+		whenDone = null;
+		if (r != null)
+			r.run();
+	}
+
+	private void end() {
+		queue.clear();
+		stopping.clear();
+		starting.clear();
+		servers.clear();
+		waitingForCapacity = false;
+		ended();
+	}
+
+	/**
+	 * Restarts the given servers that are running, batchSize of them at a
+	 * time.
+	 * @param whenDone run once the restart is done, cancelled, or abandoned,
+	 * or null
+	 */
+	public void start(Collection<ServerProcess> processes, int batchSize, Runnable whenDone) {
+		if (isActive())
+			return;
+		this.whenDone = whenDone;
+		startTime = System.currentTimeMillis();
+		for (ServerProcess p : processes) {
+			if (p.isRunning() && !shutdown.isStopping(p)) {
+				servers.add(p);
+				queue.add(p);
+			}
+		}
+		if (queue.isEmpty()) {
+			log("no game servers are running");
+			ended();
+			return;
+		}
+		this.batchSize = Math.max(1, batchSize);
+		minimumReady = Math.max(0, countReady() - this.batchSize);
+		log("restarting " + queue.size() + " servers, " + this.batchSize + " at a time, keeping at least " + minimumReady + " ready");
+		takeDownNext();
+	}
+
+	/**
+	 * Stops taking down more servers. Servers that are already restarting are
+	 * still started again.
+	 */
+	public void cancel() {
+		if (queue.isEmpty())
+			//not running, or only waiting on the last batch
+			return;
+		log("cancelled with " + queue.size() + " servers left");
+		queue.clear();
+		if (stopping.isEmpty() && starting.isEmpty())
+			end();
+	}
+
+	/**
+	 * @return whether a rolling restart is in progress
+	 */
+	public boolean isActive() {
+		return !servers.isEmpty();
+	}
+
+	/**
+	 * Leaves out a server that is taken out of the group.
+	 */
+	public void remove(ServerProcess p) {
+		if (!isActive())
+			return;
+		queue.remove(p);
+		servers.remove(p);
+		stopping.remove(p);
+		starting.remove(p);
+		if (isActive())
+			takeDownNext();
+		else
+			end();
+	}
+
+	/**
+	 * Must be called whenever a server becomes ready to accept connections.
+	 */
+	public void processReady(ServerProcess p) {
+		if (starting.remove(p))
+			log(p.getDescription() + " is ready again");
+		if (isActive())
+			takeDownNext();
+	}
+
+	/**
+	 * Must be called whenever a server exits.
+	 */
+	public void processEnded(final ServerProcess p) {
+		if (stopping.remove(p)) {
+			starting.add(p);
+			log(p.getDescription() + " exited - starting it again");
+			//not right away - the server is still handling its own exit
+			group.getEventLoop().execute(new Runnable() {
+				@Override
+				public void run() {
+					if (starting.contains(p))
+						startup.start(Collections.singleton(p));
+				}
+			});
+		} else if (starting.remove(p)) {
+			log(p.getDescription() + " exited before it was ready - abandoning the restart with " + queue.size() + " servers left");
+			queue.clear();
+			if (stopping.isEmpty() && starting.isEmpty())
+				end();
+		}
+	}
+}
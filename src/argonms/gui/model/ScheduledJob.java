@@ -0,0 +1,192 @@
+/*
+ * ArgonMS Server Manager - a process launcher and organizer utilizing Swing.
+ * Copyright (C) 2011-2013  GoldenKevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package argonms.gui.model;
+
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * A job that is run on a schedule. It is kept in launcher.properties as
+ * argonms.gui.schedule.[name].[setting], where the settings are:
+ *   cron     - when to run it, as in a crontab line (see CronExpression)
+ *   action   - command, start, stop or restart
+ *   servers  - which servers to act on: a comma separated list of all,
+ *              center, login, shop, game (every game server) and game[id].
+ *              defaults to all, or to game for restart
+ *   command  - the console command to send, for the command action
+ *   batch    - how many game servers to restart at a time, for the restart
+ *              action. defaults to 1
+ *
+ * Instances are immutable.
+ * @author GoldenKevin
+ */
+public final class ScheduledJob {
+	public enum Action {
+		/**
+		 * Sends a console command to the servers that are running.
+		 */
+		COMMAND,
+		/**
+		 * Starts the servers that are not running.
+		 */
+		START,
+		/**
+		 * Shuts down the servers that are running.
+		 */
+		STOP,
+		/**
+		 * Restarts the game servers that are running a batch at a time.
+		 */
+		RESTART;
+
+		public String getKey() {
+			return name().toLowerCase();
+		}
+
+		public static Action forKey(String key) {
+			for (Action action : values())
+				if (action.getKey().equals(key))
+					return action;
+			return null;
+		}
+	}
+
+	public static final String KEY_PREFIX = "argonms.gui.schedule.";
+	private static final Pattern NAME = Pattern.compile("[A-Za-z0-9_-]+");
+
+	private final String name;
+	private final CronExpression schedule;
+	private final Action action;
+	private final String servers;
+	private final String command;
+	private final int batchSize;
+
+	public ScheduledJob(String name, CronExpression schedule, Action action, String servers, String command, int batchSize) {
+		this.name = name;
+		this.schedule = schedule;
+		this.action = action;
+		this.servers = servers;
+		this.command = command;
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * @return whether the given name can be used in a property key
+	 */
+	public static boolean isValidName(String name) {
+		return NAME.matcher(name).matches();
+	}
+
+	/**
+	 * @param settings the value of every setting of the job, by the part of
+	 * the key that comes after the name
+	 * @throws IllegalArgumentException if a setting is missing or invalid
+	 */
+	public static ScheduledJob parse(String name, Map<String, String> settings) {
+		String cron = settings.get("cron");
+		if (cron == null)
+			throw new IllegalArgumentException("No cron schedule");
+		CronExpression schedule = CronExpression.parse(cron);
+		String actionKey = settings.get("action");
+		Action action = actionKey == null ? null : Action.forKey(actionKey.trim().toLowerCase());
+		if (action == null)
+			throw new IllegalArgumentException("Unknown action: " + actionKey);
+		String servers = settings.get("servers");
+		if (servers == null || servers.trim().isEmpty())
+			servers = action == Action.RESTART ? "game" : "all";
+		String command = settings.get("command");
+		if (action == Action.COMMAND && (command == null || command.trim().isEmpty()))
+			throw new IllegalArgumentException("No command to send");
+		int batchSize = 1;
+		if (settings.get("batch") != null) {
+			try {
+				batchSize = Integer.parseInt(settings.get("batch").trim());
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Batch size is not a number: " + settings.get("batch"));
+			}
+			if (batchSize < 1)
+				throw new IllegalArgumentException("Batch size must be at least 1");
+		}
+		return new ScheduledJob(name, schedule, action, servers.trim(), command == null ? null : command.trim(), batchSize);
+	}
+
+	/**
+	 * Puts the properties that the job is kept as into the given map, by
+	 * their full keys.
+	 */
+	public void toProperties(Map<String, String> props) {
+		String prefix = KEY_PREFIX + name + '.';
+		props.put(prefix + "cron", schedule.toString());
+		props.put(prefix + "action", action.getKey());
+		props.put(prefix + "servers", servers);
+		if (command != null)
+			props.put(prefix + "command", command);
+		if (action == Action.RESTART)
+			props.put(prefix + "batch", Integer.toString(batchSize));
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public CronExpression getSchedule() {
+		return schedule;
+	}
+
+	public Action getAction() {
+		return action;
+	}
+
+	/**
+	 * @return which servers to act on, as described above
+	 */
+	public String getServers() {
+		return servers;
+	}
+
+	/**
+	 * @return the console command to send, or null if the action is not
+	 * COMMAND
+	 */
+	public String getCommand() {
+		return command;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * @return what the job does, in words
+	 */
+	public String describe() {
+		switch (action) {
+			case COMMAND:
+				return "Send \"" + command + "\" to " + servers;
+			case START:
+				return "Start " + servers;
+			case STOP:
+				return "Stop " + servers;
+			case RESTART:
+				return "Restart " + servers + ", " + batchSize + " at a time";
+			default:
+				return action.getKey();
+		}
+	}
+}
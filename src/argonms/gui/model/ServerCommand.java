@@ -0,0 +1,100 @@
+/*
+ * ArgonMS Server Manager - a process launcher and organizer utilizing Swing.
+ * Copyright (C) 2011-2013  GoldenKevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package argonms.gui.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Builds the command lines that the servers are launched with, from the
+ * configuration alone, so that they are the same whether a server is run
+ * from its tab or by the headless launcher.
+ * @author GoldenKevin
+ */
+public class ServerCommand {
+	/**
+	 * @param properties the system properties that tell the server where to
+	 * find its configuration, as -D options
+	 * @return the arguments of a java command that runs the given main class
+	 * with the classpath and the JVM options of the given profile
+	 */
+	private static String[] buildJavaCommand(Configuration config, JvmProfile profile, List<String> extraOptions, String mainClass, String... properties) {
+		List<String> args = new ArrayList<String>();
+		args.add(Environment.JAVA_DIR);
+		args.add("-classpath");
+		args.add(config.getClasspath());
+		profile.addOptions(args);
+		args.addAll(extraOptions);
+		args.addAll(Arrays.asList(properties));
+		//the user's properties go after ours so that they can override them
+		profile.addProperties(args);
+		args.add(mainClass);
+		return args.toArray(new String[args.size()]);
+	}
+
+	/**
+	 * This method is not thread-safe. It must be called from the thread that
+	 * the configuration is confined to.
+	 * @param serverId the id of the server if it is a game server, otherwise
+	 * ignored
+	 * @param extraOptions more JVM options to launch the server with, e.g. for
+	 * class data sharing
+	 * @return the arguments of the java command that runs the given server,
+	 * not yet passed through Environment.buildCommand
+	 */
+	public static String[] build(Configuration config, ServerRole role, byte serverId, List<String> extraOptions) {
+		switch (role) {
+			case CENTER:
+				return buildJavaCommand(config, config.getJvmProfile(role), extraOptions, "argonms.center.CenterServer",
+					"-Dargonms.center.config.file=" + config.getCenterServerPropertiesPath(),
+					"-Djava.util.logging.config.file=" + config.getLoggerPropertiesPath(),
+					"-Dargonms.db.config.file=" + config.getDatabasePropertiesPath(),
+					"-Dargonms.ct.macbanblacklist.file=" + config.getMacBanBlacklistPath());
+			case LOGIN:
+				return buildJavaCommand(config, config.getJvmProfile(role), extraOptions, "argonms.login.LoginServer",
+					"-Dargonms.login.config.file=" + config.getLoginServerPropertiesPath(),
+					"-Djava.util.logging.config.file=" + config.getLoggerPropertiesPath(),
+					"-Dargonms.db.config.file=" + config.getDatabasePropertiesPath(),
+					"-Dargonms.ct.macbanblacklist.file=" + config.getMacBanBlacklistPath(),
+					"-Dargonms.data.dir=" + config.getWzPath());
+			case GAME:
+				return buildJavaCommand(config, config.getGameServerJvmProfile(serverId), extraOptions, "argonms.game.GameServer",
+					"-Dargonms.game.serverid=" + serverId,
+					"-Dargonms.game.config.file=" + config.getGameServerPropertiesPath(serverId),
+					"-Djava.util.logging.config.file=" + config.getLoggerPropertiesPath(),
+					"-Dargonms.db.config.file=" + config.getDatabasePropertiesPath(),
+					"-Dargonms.ct.macbanblacklist.file=" + config.getMacBanBlacklistPath(),
+					"-Dargonms.data.dir=" + config.getWzPath(),
+					"-Dargonms.scripts.dir=" + config.getScriptsPath());
+			case SHOP:
+				return buildJavaCommand(config, config.getJvmProfile(role), extraOptions, "argonms.shop.ShopServer",
+					"-Dargonms.shop.config.file=" + config.getShopServerPropertiesPath(),
+					"-Djava.util.logging.config.file=" + config.getLoggerPropertiesPath(),
+					"-Dargonms.db.config.file=" + config.getDatabasePropertiesPath(),
+					"-Dargonms.ct.macbanblacklist.file=" + config.getMacBanBlacklistPath(),
+					"-Dargonms.shop.blockedserials.file=" + config.getCashShopBlockedSerialsPath(),
+					"-Dargonms.shop.commodityoverride.file=" + config.getCashShopCommodityOverridesPath(),
+					"-Dargonms.shop.limitedcommodity.file=" + config.getCashShopLimitedCommoditiesPath(),
+					"-Dargonms.data.dir=" + config.getWzPath());
+			default:
+				throw new IllegalArgumentException("Unknown role " + role);
+		}
+	}
+}
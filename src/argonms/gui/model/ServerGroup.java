@@ -0,0 +1,49 @@
+/*
+ * ArgonMS Server Manager - a process launcher and organizer utilizing Swing.
+ * Copyright (C) 2011-2013  GoldenKevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package argonms.gui.model;
+
+import java.util.Collection;
+
+/**
+ * What StartupScheduler, ShutdownCoordinator and RollingRestart need from
+ * whatever runs a set of servers - the model when there is a user interface,
+ * or the supervisor of the headless launcher when there is not.
+ * @author GoldenKevin
+ */
+public interface ServerGroup {
+	public Configuration getConfig();
+
+	/**
+	 * @return the thread that the servers of this group are confined to
+	 */
+	public EventLoop getEventLoop();
+
+	/**
+	 * This method is not thread-safe. It must be called from the event loop.
+	 * @return the servers that were started and did not exit yet
+	 */
+	public Collection<ServerProcess> getRunningProcesses();
+
+	/**
+	 * Reports a step of stopping servers, e.g. so that it can be shown as a
+	 * timeline. This method is not thread-safe. It must be called from the
+	 * event loop.
+	 */
+	public void logShutdownEvent(String message);
+}
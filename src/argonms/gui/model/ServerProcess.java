@@ -0,0 +1,602 @@
+/*
+ * ArgonMS Server Manager - a process launcher and organizer utilizing Swing.
+ * Copyright (C) 2011-2013  GoldenKevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package argonms.gui.model;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import argonms.gui.console.LogCapture;
+
+/**
+ * The lifecycle of one server process, whether it is run from a tab or by the
+ * headless launcher: launching it, reading its output and saving it to its
+ * log, telling when it is ready to accept connections, asking it to shut
+ * down or killing it, and restarting it if it crashed.
+ *
+ * This class is not thread-safe. Except where noted, all instances are meant
+ * to only be used on the event loop that they were created with, which is
+ * also where every Listener method is called.
+ * @author GoldenKevin
+ */
+public class ServerProcess {
+	/**
+	 * Is told about every step of the lifecycle, on the event loop.
+	 */
+	public interface Listener {
+		/**
+		 * Called right before the server is launched, whether it is started
+		 * or restarted after a crash.
+		 * @return more JVM options to launch the server with
+		 */
+		public List<String> launching(ServerProcess p);
+
+		/**
+		 * Called instead of processStarted and processEnded if the server
+		 * could not be launched at all.
+		 */
+		public void launchFailed(ServerProcess p, IOException e);
+
+		public void processStarted(ServerProcess p);
+
+		/**
+		 * @param timedOut whether we gave up on waiting for the server to
+		 * signal that it is ready
+		 */
+		public void processReady(ServerProcess p, boolean timedOut);
+
+		/**
+		 * Called before the server is restarted if it crashed, so the server
+		 * may be started again from here instead.
+		 */
+		public void processEnded(ServerProcess p, int exitValue);
+
+		/**
+		 * @param status what the server is doing now, in a few words
+		 */
+		public void statusChanged(ServerProcess p, String status);
+	}
+
+	/**
+	 * Is handed the output of the server, on the thread that reads it.
+	 */
+	public interface OutputSink {
+		/**
+		 * The contents of buf may be overwritten as soon as this method
+		 * returns.
+		 */
+		public void outputRead(char[] buf, int offset, int length);
+
+		/**
+		 * @return whether some output is held back until more is read, in
+		 * which case outputQuiet is called if nothing more is read for a
+		 * moment
+		 */
+		public boolean isHolding();
+
+		public void outputQuiet();
+
+		/**
+		 * Called once the output of a run of the server ended.
+		 */
+		public void outputEnded();
+	}
+
+	private static final int READ_BUFFER_SIZE = 8192;
+	//how long output that is held back may wait for the rest of it
+	private static final int QUIET_MILLIS = 50;
+	private static final int QUIET_POLL_MILLIS = 5;
+	//how much output may be waiting to be saved before it is dropped
+	private static final int LOG_PENDING_CAPACITY = 4 * 1024 * 1024; //in chars
+
+	private final Configuration config;
+	private final EventLoop loop;
+	private final ServerRole role;
+	private final byte serverId;
+	private final String description;
+	private final Listener listener;
+	private final OutputSink sink;
+	private final RestartSupervisor restarts;
+	private final AtomicReference<Writer> input;
+	private LogCapture capture;
+	private boolean restartOnCrash;
+
+	private Process proc;
+	private volatile ReadinessProbe readiness;
+	private boolean awaitingReady;
+	private EventLoop.Task readyTimeout, restartTimer, killTimer;
+	//distinguishes runs so that a late signal from an old one is ignored
+	private int startCount;
+	private boolean stopRequested;
+	private long startTime;
+
+	/**
+	 * @param serverId the id of the server if it is a game server, otherwise
+	 * ignored
+	 */
+	public ServerProcess(ServerGroup group, ServerRole role, byte serverId, String description, Listener listener, OutputSink sink) {
+		config = group.getConfig();
+		loop = group.getEventLoop();
+		this.role = role;
+		this.serverId = serverId;
+		this.description = description;
+		this.listener = listener;
+		this.sink = sink;
+		restarts = new RestartSupervisor();
+		restarts.setLimits(config.getRestartMax(), config.getRestartWindow() * 60L * 1000L, config.getRestartMaxDelay() * 1000L);
+		input = new AtomicReference<Writer>(null);
+		restartOnCrash = config.isRestartEnabled();
+	}
+
+	public ServerRole getRole() {
+		return role;
+	}
+
+	public byte getServerId() {
+		return serverId;
+	}
+
+	public String getDescription() {
+		return description;
+	}
+
+	private void status(String status) {
+		listener.statusChanged(this, status);
+	}
+
+	/**
+	 * Shows why the server is not started or stopped yet while it is waiting
+	 * on another one.
+	 */
+	public void showPendingStatus(String status) {
+		status(status);
+	}
+
+	/**
+	 * @return the process of the current run, or null if it is not running
+	 */
+	public Process getProcess() {
+		return proc;
+	}
+
+	public boolean isRunning() {
+		return proc != null;
+	}
+
+	/**
+	 * @return whether the server was started but did not signal that it is
+	 * ready to accept connections yet
+	 */
+	public boolean isAwaitingReady() {
+		return awaitingReady;
+	}
+
+	/**
+	 * @return whether the server was asked to stop since it was last started
+	 */
+	public boolean isStopRequested() {
+		return stopRequested;
+	}
+
+	/**
+	 * @return when the current run was started
+	 */
+	public long getStartTime() {
+		return startTime;
+	}
+
+	public int getRecentRestarts() {
+		return restarts.getRecentRestarts();
+	}
+
+	public int getTotalRestarts() {
+		return restarts.getTotalRestarts();
+	}
+
+	/**
+	 * @return whether the server kept crashing and will not be restarted
+	 * again until it is started by hand
+	 */
+	public boolean isCrashLooping() {
+		return restarts.isCrashLooping();
+	}
+
+	/**
+	 * @param restart whether to restart the server when it exits on its own
+	 * with a non-zero status. Cancels a pending restart if false.
+	 */
+	public void setRestartOnCrash(boolean restart) {
+		restartOnCrash = restart;
+		if (!restart && restartTimer != null) {
+			cancelRestart();
+			status("Restart cancelled");
+		}
+	}
+
+	/**
+	 * @return the log that the output is saved to, or null if it isn't
+	 */
+	public LogCapture getLogCapture() {
+		return capture;
+	}
+
+	private void startLogCapture() {
+		if (capture == null) {
+			if (config.getLogDirectory() == null)
+				return;
+			capture = new LogCapture(new File(config.getLogDirectory()), description,
+					config.getLogMaxSize() * 1024L * 1024L, config.getLogKeep(),
+					config.isLogCompressed(), LOG_PENDING_CAPACITY);
+		}
+		capture.startRun();
+	}
+
+	/**
+	 * Stops saving output and restarting the server, once it is not going to
+	 * be started again.
+	 * @return the log that is being closed, to wait on, or null
+	 */
+	public LogCapture dispose() {
+		cancelRestart();
+		LogCapture c = capture;
+		if (c != null) {
+			capture = null;
+			c.close();
+		}
+		return c;
+	}
+
+	/**
+	 * Starts the server on purpose, as opposed to restarting it after a
+	 * crash, so earlier crashes are forgotten.
+	 */
+	public void start() {
+		cancelRestart();
+		restarts.reset();
+		launch();
+	}
+
+	private void launch() {
+		stopRequested = false;
+		startCount++;
+		startTime = System.currentTimeMillis();
+		startLogCapture();
+		List<String> extraOptions = listener.launching(this);
+		try {
+			ProcessBuilder pb = new ProcessBuilder(Environment.buildCommand(
+					ServerCommand.build(config, role, serverId, extraOptions),
+					config.isLaunchedThroughShell()));
+			pb.redirectErrorStream(true);
+			proc = pb.start();
+		} catch (IOException e) {
+			System.err.println("Error starting up " + description + " server");
+			e.printStackTrace();
+			status("Could not be started");
+			listener.launchFailed(this, e);
+			return;
+		}
+		input.set(new BufferedWriter(new OutputStreamWriter(proc.getOutputStream())));
+		startReadinessProbe();
+		if (!awaitingReady)
+			status("Running");
+		listener.processStarted(this);
+
+		final int thisRun = startCount;
+		final Process p = proc;
+		final LogCapture c = capture;
+		new Thread(new Runnable() {
+			@Override
+			public void run() {
+				readOutput(p, c);
+				int exitValue;
+				try {
+					exitValue = p.waitFor();
+				} catch (InterruptedException e) {
+					//nobody should be interrupting us, but bail out if they do
+					return;
+				}
+				final int status = exitValue;
+				loop.execute(new Runnable() {
+					@Override
+					public void run() {
+						if (thisRun == startCount)
+							ended(status);
+					}
+				});
+			}
+		}, "stream-reader-" + description).start();
+
+		if (!awaitingReady)
+			//there is no way to tell when it is ready, so assume it is now
+			listener.processReady(this, false);
+	}
+
+	/**
+	 * Stack traces are usually printed one line at a time, so the rest of
+	 * output that is held back may not be ready yet when the start of it is
+	 * read.
+	 * @return true if more input became ready within QUIET_MILLIS
+	 */
+	private static boolean awaitInput(Reader in) throws IOException {
+		for (int waited = 0; waited < QUIET_MILLIS; waited += QUIET_POLL_MILLIS) {
+			if (in.ready())
+				return true;
+			try {
+				Thread.sleep(QUIET_POLL_MILLIS);
+			} catch (InterruptedException e) {
+				//propagate it further upwards
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+		return in.ready();
+	}
+
+	/**
+	 * Runs on the thread that reads the output of the server until the end of
+	 * it.
+	 */
+	private void readOutput(Process p, LogCapture c) {
+		Reader in = new BufferedReader(new InputStreamReader(p.getInputStream()));
+		//reused for the lifetime of the stream so that the steady state of the
+		//read loop does not allocate anything on its own
+		char[] buf = new char[READ_BUFFER_SIZE];
+		int length;
+		try {
+			while ((length = in.read(buf, 0, buf.length)) != -1) {
+				//coalesce everything that is already available so that bursts
+				//of output (e.g. stack traces) are handed on in one go
+				while (length < buf.length && in.ready()) {
+					int read = in.read(buf, length, buf.length - length);
+					if (read == -1)
+						break;
+					length += read;
+				}
+				if (length > 0) {
+					//hand it off to the log first - the sink may block if it is
+					//falling behind, but the log never does
+					if (c != null)
+						c.offer(buf, 0, length);
+					ReadinessProbe probe = readiness;
+					if (probe != null)
+						probe.feed(buf, 0, length);
+					sink.outputRead(buf, 0, length);
+				}
+				if (sink.isHolding() && !awaitInput(in))
+					sink.outputQuiet();
+			}
+		} catch (IOException e) {
+			//most likely just that the stream is closed
+			System.err.println("Error in reading output of " + description);
+			e.printStackTrace();
+		} finally {
+			sink.outputEnded();
+			try {
+				in.close();
+			} catch (IOException e) {
+				System.err.println("Error in closing output of " + description);
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Writes the given text to the console of the server. This method is
+	 * thread-safe, but it blocks for as long as the server does not read its
+	 * input, so it is best not called from the Swing EDT.
+	 * @return false if the server is not running or could not be written to
+	 */
+	public boolean sendInput(String text) {
+		Writer w = input.get();
+		if (w == null)
+			return false;
+		try {
+			w.write(text);
+			w.flush();
+			return true;
+		} catch (IOException e) {
+			//most likely just that the stream is closed
+			System.err.println("Error in writing to " + description);
+			e.printStackTrace();
+			closeInput(w);
+			return false;
+		}
+	}
+
+	private void closeInput(Writer w) {
+		if (input.compareAndSet(w, null)) {
+			try {
+				w.close();
+			} catch (IOException e) {
+				//it's gone either way
+			}
+		}
+	}
+
+	private void startReadinessProbe() {
+		final int thisRun = startCount;
+		ReadinessProbe probe = new ReadinessProbe(config.getReadyPattern(role), config.getReadyPort(role, serverId), new Runnable() {
+			@Override
+			public void run() {
+				loop.execute(new Runnable() {
+					@Override
+					public void run() {
+						if (thisRun == startCount)
+							becameReady(false);
+					}
+				});
+			}
+		});
+		if (probe.isBlind())
+			return;
+		awaitingReady = true;
+		status("Starting");
+		readiness = probe;
+		probe.start();
+		if (config.getStartupTimeout() > 0) {
+			readyTimeout = loop.schedule(new Runnable() {
+				@Override
+				public void run() {
+					if (thisRun == startCount)
+						becameReady(true);
+				}
+			}, config.getStartupTimeout() * 1000L);
+		}
+	}
+
+	private void stopReadinessProbe() {
+		ReadinessProbe probe = readiness;
+		if (probe != null) {
+			readiness = null;
+			probe.cancel();
+		}
+		if (readyTimeout != null) {
+			readyTimeout.cancel();
+			readyTimeout = null;
+		}
+		awaitingReady = false;
+	}
+
+	/**
+	 * @param timedOut whether we gave up on waiting for the server to signal
+	 * that it is ready
+	 */
+	private void becameReady(boolean timedOut) {
+		if (!awaitingReady)
+			return;
+		stopReadinessProbe();
+		status(timedOut ? "Running (did not signal that it is ready)" : "Running");
+		listener.processReady(this, timedOut);
+	}
+
+	/**
+	 * Marks the server as stopping on purpose, e.g. while it waits for the
+	 * servers that depend on it to stop first, so that it is not restarted
+	 * if it exits in the meantime.
+	 */
+	public void markStopRequested() {
+		stopRequested = true;
+	}
+
+	/**
+	 * Asks the server to shut itself down by sending it the given console
+	 * command.
+	 * @return false if the command is empty or could not be sent
+	 */
+	public boolean requestShutdown(String command) {
+		stopRequested = true;
+		status("Shutting down");
+		return !command.isEmpty() && sendInput(command + '\n');
+	}
+
+	/**
+	 * Ends the server, as a last resort when it does not shut itself down.
+	 * The server is only asked to end itself at first, and it is forcibly
+	 * ended if it still did not exit once the kill timeout passed or if it is
+	 * killed again.
+	 */
+	public void kill() {
+		stopRequested = true;
+		if (proc == null)
+			return;
+		if (killTimer != null) {
+			forceKill();
+			return;
+		}
+		status("Killed");
+		proc.destroy();
+		final int thisRun = startCount;
+		killTimer = loop.schedule(new Runnable() {
+			@Override
+			public void run() {
+				if (thisRun == startCount && proc != null)
+					forceKill();
+			}
+		}, config.getKillTimeout() * 1000L);
+	}
+
+	private void forceKill() {
+		status("Forcibly killed");
+		Environment.destroyForcibly(proc);
+	}
+
+	/**
+	 * Do not restart the server if it is waiting to be restarted after a
+	 * crash.
+	 */
+	public void cancelRestart() {
+		if (restartTimer != null) {
+			restartTimer.cancel();
+			restartTimer = null;
+		}
+	}
+
+	/**
+	 * @return whether the server exited and is waiting to be restarted
+	 */
+	public boolean isRestartPending() {
+		return restartTimer != null;
+	}
+
+	private void ended(int exitValue) {
+		stopReadinessProbe();
+		if (killTimer != null) {
+			killTimer.cancel();
+			killTimer = null;
+		}
+		proc = null;
+		Writer w = input.get();
+		if (w != null)
+			closeInput(w);
+		status("Exited with status code " + exitValue);
+
+		//decide before the listener hears of it, since it may start this
+		//server again right away
+		boolean crashed = exitValue != 0 && !stopRequested && restartOnCrash;
+		long delay = restarts.processEnded(System.currentTimeMillis() - startTime, crashed);
+		int endedRun = startCount;
+		listener.processEnded(this, exitValue);
+		if (startCount != endedRun)
+			//already started again - don't start a second process
+			return;
+
+		if (delay >= 0) {
+			status("Exited with status code " + exitValue + " - restarting in " + (delay + 500) / 1000 + "s");
+			restartTimer = loop.schedule(new Runnable() {
+				@Override
+				public void run() {
+					restartTimer = null;
+					restarts.restarted();
+					launch();
+				}
+			}, delay);
+		} else if (crashed) {
+			status("Exited with status code " + exitValue + " - gave up after "
+					+ restarts.getRecentRestarts() + " restarts in "
+					+ config.getRestartWindow() + " minutes");
+		}
+	}
+}
@@ -0,0 +1,67 @@
+/*
+ * ArgonMS Server Manager - a process launcher and organizer utilizing Swing.
+ * Copyright (C) 2011-2013  GoldenKevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package argonms.gui.model;
+
+/**
+ * The kinds of servers that make up a cluster, and which of them have to be
+ * accepting connections before the others can start.
+ * @author GoldenKevin
+ */
+public enum ServerRole {
+	CENTER("center"),
+	LOGIN("login", CENTER),
+	GAME("game", CENTER),
+	SHOP("shop", CENTER);
+
+	private final String key;
+	private final ServerRole[] dependencies;
+
+	private ServerRole(String key, ServerRole... dependencies) {
+		this.key = key;
+		this.dependencies = dependencies;
+	}
+
+	/**
+	 * @return the name of this role in launcher.properties keys
+	 */
+	public String getKey() {
+		return key;
+	}
+
+	/**
+	 * @return whether a server of this role can only be started once the
+	 * servers of the given role are ready
+	 */
+	public boolean dependsOn(ServerRole role) {
+		for (ServerRole dependency : dependencies)
+			if (dependency == role)
+				return true;
+		return false;
+	}
+
+	/**
+	 * @return the role with the given key, or null if there is none
+	 */
+	public static ServerRole forKey(String key) {
+		for (ServerRole role : values())
+			if (role.key.equals(key))
+				return role;
+		return null;
+	}
+}
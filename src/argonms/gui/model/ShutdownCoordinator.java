@@ -0,0 +1,180 @@
+/*
+ * ArgonMS Server Manager - a process launcher and organizer utilizing Swing.
+ * Copyright (C) 2011-2013  GoldenKevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package argonms.gui.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Stops a set of servers in the reverse of the order that their roles depend
+ * on each other. Each server is asked to shut itself down with its own console
+ * command, and is only killed if it does not exit within the timeout of its
+ * role. A server is only asked to stop once every server in the set that
+ * depends on it has exited, e.g. Center is stopped after its clients.
+ *
+ * Every step is reported to the group so that it can be shown as a timeline.
+ *
+ * This class is not thread-safe. All instances are meant to only be used on
+ * the event loop of their group.
+ * @author GoldenKevin
+ */
+public class ShutdownCoordinator {
+	private final ServerGroup group;
+	private final Set<ServerProcess> pending;
+	//servers that were asked to stop, and the timers that will kill them
+	private final Map<ServerProcess, EventLoop.Task> stopping;
+	private final List<Runnable> whenDone;
+	private long startTime;
+
+	public ShutdownCoordinator(ServerGroup group) {
+		this.group = group;
+		pending = new LinkedHashSet<ServerProcess>();
+		stopping = new HashMap<ServerProcess, EventLoop.Task>();
+		whenDone = new ArrayList<Runnable>();
+	}
+
+	private void log(String message) {
+		group.logShutdownEvent(String.format("%6.1fs  %s", (System.currentTimeMillis() - startTime) / 1000.0, message));
+	}
+
+	/**
+	 * @return a server that has to exit before the given one can be stopped,
+	 * or null if it can be stopped now
+	 */
+	private ServerProcess blockerOf(ServerProcess p) {
+		ServerRole role = p.getRole();
+		for (ServerProcess other : pending)
+			if (other.getRole().dependsOn(role))
+				return other;
+		for (ServerProcess other : stopping.keySet())
+			if (other.getRole().dependsOn(role))
+				return other;
+		return null;
+	}
+
+	private void stopUnblocked() {
+		List<ServerProcess> unblocked = new ArrayList<ServerProcess>();
+		for (ServerProcess p : pending)
+			if (blockerOf(p) == null)
+				unblocked.add(p);
+		for (ServerProcess p : unblocked) {
+			pending.remove(p);
+			beginStopping(p);
+		}
+	}
+
+	private void beginStopping(final ServerProcess p) {
+		Configuration config = group.getConfig();
+		String command = config.getShutdownCommand(p.getRole());
+		final int timeout = config.getShutdownTimeout(p.getRole());
+		if (!p.requestShutdown(command)) {
+			log(p.getDescription() + " can't be asked to shut down - killing it");
+			stopping.put(p, null);
+			p.kill();
+			return;
+		}
+		log("Sent \"" + command + "\" to " + p.getDescription() + ", waiting up to " + timeout + "s for it to exit");
+		EventLoop.Task timer = group.getEventLoop().schedule(new Runnable() {
+			@Override
+			public void run() {
+				if (!stopping.containsKey(p))
+					return;
+				log(p.getDescription() + " did not exit within " + timeout + "s - killing it");
+				p.kill();
+			}
+		}, timeout * 1000L);
+		stopping.put(p, timer);
+	}
+
+	/**
+	 * Stops the given running servers, and runs whenDone once every server
+	 * that is being stopped has exited.
+	 * @param whenDone may be null
+	 */
+	public void stop(Collection<ServerProcess> servers, Runnable whenDone) {
+		if (pending.isEmpty() && stopping.isEmpty())
+			startTime = System.currentTimeMillis();
+		List<ServerProcess> added = new ArrayList<ServerProcess>();
+		for (ServerProcess p : servers)
+			if (!pending.contains(p) && !stopping.containsKey(p))
+				added.add(p);
+		if (whenDone != null)
+			this.whenDone.add(whenDone);
+		if (added.isEmpty()) {
+			checkDone();
+			return;
+		}
+		StringBuilder names = new StringBuilder();
+		for (ServerProcess p : added) {
+			if (names.length() != 0)
+				names.append(", ");
+			names.append(p.getDescription());
+		}
+		log("Stopping " + names);
+		pending.addAll(added);
+		for (ServerProcess p : added) {
+			//so that it is not restarted if it exits while it waits
+			p.markStopRequested();
+			if (blockerOf(p) != null)
+				p.showPendingStatus("Waiting for " + blockerOf(p).getDescription() + " to stop");
+		}
+		stopUnblocked();
+	}
+
+	/**
+	 * @return whether the given server was asked to stop and did not exit yet
+	 */
+	public boolean isStopping(ServerProcess p) {
+		return pending.contains(p) || stopping.containsKey(p);
+	}
+
+	private void checkDone() {
+		if (!pending.isEmpty() || !stopping.isEmpty())
+			return;
+		List<Runnable> callbacks = new ArrayList<Runnable>(whenDone);
+		whenDone.clear();
+		for (Runnable r : callbacks)
+			r.run();
+	}
+
+	/**
+	 * Must be called whenever a server exits.
+	 */
+	public void processEnded(ServerProcess p) {
+		if (stopping.containsKey(p)) {
+			EventLoop.Task timer = stopping.remove(p);
+			if (timer != null)
+				timer.cancel();
+			log(p.getDescription() + " exited");
+		} else if (pending.remove(p)) {
+			log(p.getDescription() + " exited before it was asked to");
+		} else {
+			return;
+		}
+		stopUnblocked();
+		if (pending.isEmpty() && stopping.isEmpty())
+			log("All servers stopped");
+		checkDone();
+	}
+}
@@ -0,0 +1,157 @@
+/*
+ * ArgonMS Server Manager - a process launcher and organizer utilizing Swing.
+ * Copyright (C) 2011-2013  GoldenKevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package argonms.gui.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Starts a set of servers in the order that their roles depend on each other.
+ * A server is started as soon as every running server that it depends on is
+ * ready to accept connections, so servers that don't depend on each other
+ * start in parallel and the whole cluster is up after the longest chain of
+ * dependencies rather than after every server in turn.
+ *
+ * This class is not thread-safe. All instances are meant to only be used on
+ * the event loop of their group.
+ * @author GoldenKevin
+ */
+public class StartupScheduler {
+	private final ServerGroup group;
+	private final Set<ServerProcess> pending;
+
+	public StartupScheduler(ServerGroup group) {
+		this.group = group;
+		pending = new LinkedHashSet<ServerProcess>();
+	}
+
+	/**
+	 * @return a server that the given server has to wait for, or null if it
+	 * can be started now
+	 */
+	private ServerProcess blockerOf(ServerProcess p) {
+		ServerRole role = p.getRole();
+		for (ServerProcess other : pending)
+			if (role.dependsOn(other.getRole()))
+				return other;
+		for (ServerProcess other : group.getRunningProcesses())
+			if (role.dependsOn(other.getRole()) && other.isAwaitingReady())
+				return other;
+		return null;
+	}
+
+	private boolean isRunning(ServerRole role) {
+		for (ServerProcess other : group.getRunningProcesses())
+			if (other.getRole() == role)
+				return true;
+		return false;
+	}
+
+	/**
+	 * Start every server whose dependencies are ready, and let the others
+	 * know what they are waiting for.
+	 */
+	private void startUnblocked() {
+		List<ServerProcess> unblocked = new ArrayList<ServerProcess>();
+		for (ServerProcess p : pending) {
+			ServerProcess blocker = blockerOf(p);
+			if (blocker == null)
+				unblocked.add(p);
+			else
+				p.showPendingStatus("Waiting for " + blocker.getDescription() + " to be ready");
+		}
+		for (ServerProcess p : unblocked) {
+			pending.remove(p);
+			p.start();
+		}
+	}
+
+	/**
+	 * Schedules the given servers to be started.
+	 */
+	public void start(Collection<ServerProcess> servers) {
+		pending.addAll(servers);
+		startUnblocked();
+	}
+
+	/**
+	 * @return whether the given server is waiting on another one to start
+	 */
+	public boolean isPending(ServerProcess p) {
+		return pending.contains(p);
+	}
+
+	/**
+	 * Must be called whenever a server is started, even if it was not
+	 * started by this scheduler.
+	 */
+	public void processStarted(ServerProcess p) {
+		pending.remove(p);
+	}
+
+	/**
+	 * Must be called whenever a server becomes ready to accept connections.
+	 */
+	public void processReady(ServerProcess p) {
+		startUnblocked();
+	}
+
+	/**
+	 * Must be called whenever a server exits, or could not be launched at all.
+	 * Servers that were waiting on it are not started anymore if there is
+	 * nothing left that could become ready in its place.
+	 */
+	public void processEnded(ServerProcess p) {
+		ServerRole role = p.getRole();
+		if (isRunning(role))
+			return;
+		for (ServerProcess other : pending)
+			if (other.getRole() == role)
+				return;
+		for (Iterator<ServerProcess> iter = pending.iterator(); iter.hasNext(); ) {
+			ServerProcess waiting = iter.next();
+			if (waiting.getRole().dependsOn(role)) {
+				iter.remove();
+				waiting.showPendingStatus("Not started because " + p.getDescription() + " stopped or could not be started before it was ready");
+			}
+		}
+	}
+
+	/**
+	 * Stops waiting to start the given server, for when it is taken out of
+	 * the model. Servers that were only waiting on it are started.
+	 */
+	public void remove(ServerProcess p) {
+		if (pending.remove(p))
+			startUnblocked();
+	}
+
+	/**
+	 * Stops starting any server that is still waiting.
+	 */
+	public void cancel() {
+		for (ServerProcess p : pending)
+			p.showPendingStatus("Ready to start");
+		pending.clear();
+	}
+}
@@ -0,0 +1,54 @@
+/*
+ * ArgonMS Server Manager - a process launcher and organizer utilizing Swing.
+ * Copyright (C) 2011-2013  GoldenKevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package argonms.gui.model;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+/**
+ * Runs tasks on the Swing EDT.
+ * @author GoldenKevin
+ */
+public class SwingEventLoop implements EventLoop {
+	@Override
+	public void execute(Runnable r) {
+		SwingUtilities.invokeLater(r);
+	}
+
+	@Override
+	public Task schedule(final Runnable r, long delay) {
+		final Timer timer = new Timer((int) Math.min(delay, Integer.MAX_VALUE), new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				r.run();
+			}
+		});
+		timer.setRepeats(false);
+		timer.start();
+		return new Task() {
+			@Override
+			public void cancel() {
+				timer.stop();
+			}
+		};
+	}
+}
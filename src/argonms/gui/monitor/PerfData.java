@@ -0,0 +1,170 @@
+/*
+ * ArgonMS Server Manager - a process launcher and organizer utilizing Swing.
+ * Copyright (C) 2011-2013  GoldenKevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package argonms.gui.monitor;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads the garbage collection and heap counters of a HotSpot JVM out of the
+ * performance data file that it shares in hsperfdata_[user]/[pid] under the
+ * temporary directory, the same way that jstat does. The file is mapped into
+ * memory once, so taking a sample only reads a handful of longs out of it.
+ *
+ * This class is not thread-safe. Each instance is meant to only be used by the
+ * sampler thread.
+ * @author GoldenKevin
+ */
+class PerfData {
+	private static final int MAGIC = 0xcafec0c0;
+	private static final int BYTE_ORDER = 4, ACCESSIBLE = 7, ENTRY_OFFSET = 24, NUM_ENTRIES = 28;
+	private static final int ENTRY_LENGTH = 0, NAME_OFFSET = 4, VECTOR_LENGTH = 8, DATA_TYPE = 12, DATA_OFFSET = 16;
+	private static final int MAX_COUNTERS = 16;
+
+	private final File file;
+	private MappedByteBuffer map;
+	private int scannedEntries;
+
+	//offsets of the counters that we add up
+	private final int[] collectorTimes, spaceUsed, generationMax;
+	private int collectors, spaces, generations;
+	private int frequencyOffset;
+
+	//cumulative time spent collecting garbage, in ticks of frequency
+	public long gcTicks;
+	public long frequency;
+	public long heapUsed, heapMax;
+
+	public PerfData(int pid) {
+		//HotSpot always uses /tmp on Linux, regardless of java.io.tmpdir
+		file = new File("/tmp/hsperfdata_" + System.getProperty("user.name"), Integer.toString(pid));
+		collectorTimes = new int[MAX_COUNTERS];
+		spaceUsed = new int[MAX_COUNTERS];
+		generationMax = new int[MAX_COUNTERS];
+		frequencyOffset = -1;
+	}
+
+	/**
+	 * @return whether the file is mapped, or could be mapped now
+	 */
+	private boolean map() {
+		if (map != null)
+			return true;
+		if (!file.isFile() || file.length() < NUM_ENTRIES + 4)
+			return false;
+		RandomAccessFile raf = null;
+		try {
+			raf = new RandomAccessFile(file, "r");
+			MappedByteBuffer mapped = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+			if (mapped.order(ByteOrder.BIG_ENDIAN).getInt(0) != MAGIC)
+				return false;
+			mapped.order(mapped.get(BYTE_ORDER) == 0 ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+			map = mapped;
+			return true;
+		} catch (IOException e) {
+			return false;
+		} finally {
+			if (raf != null) {
+				try {
+					//the mapping stays valid after the file is closed
+					raf.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	private String readName(int offset) {
+		StringBuilder sb = new StringBuilder();
+		byte b;
+		while (offset < map.limit() && (b = map.get(offset++)) != 0)
+			sb.append((char) b);
+		return sb.toString();
+	}
+
+	private void addCounter(String name, int offset) {
+		if (name.equals("sun.os.hrt.frequency")) {
+			frequencyOffset = offset;
+		} else if (name.startsWith("sun.gc.collector.") && name.endsWith(".time")) {
+			if (collectors < MAX_COUNTERS)
+				collectorTimes[collectors++] = offset;
+		} else if (name.startsWith("sun.gc.generation.0.") || name.startsWith("sun.gc.generation.1.")) {
+			//generation 2, when there is one, is the permanent generation -
+			//it is not part of the heap that -Xmx limits
+			if (name.endsWith(".used") && name.indexOf(".space.") != -1) {
+				if (spaces < MAX_COUNTERS)
+					spaceUsed[spaces++] = offset;
+			} else if (name.endsWith(".maxCapacity") && name.indexOf(".space.") == -1) {
+				if (generations < MAX_COUNTERS)
+					generationMax[generations++] = offset;
+			}
+		}
+	}
+
+	/**
+	 * Finds the counters again if the JVM created any since the last time.
+	 */
+	private void scan() {
+		int count = map.getInt(NUM_ENTRIES);
+		if (count == scannedEntries)
+			return;
+		scannedEntries = count;
+		collectors = spaces = generations = 0;
+		frequencyOffset = -1;
+		int entry = map.getInt(ENTRY_OFFSET);
+		for (int i = 0; i < count && entry > 0 && entry + DATA_OFFSET + 4 <= map.limit(); i++) {
+			int length = map.getInt(entry + ENTRY_LENGTH);
+			if (length <= 0)
+				break;
+			//we only want scalar longs
+			if (map.getInt(entry + VECTOR_LENGTH) == 0 && map.get(entry + DATA_TYPE) == 'J') {
+				int data = entry + map.getInt(entry + DATA_OFFSET);
+				if (data + 8 <= map.limit())
+					addCounter(readName(entry + map.getInt(entry + NAME_OFFSET)), data);
+			}
+			entry += length;
+		}
+	}
+
+	/**
+	 * @return whether the counters could be read
+	 */
+	public boolean read() {
+		if (!map() || map.get(ACCESSIBLE) == 0)
+			return false;
+		scan();
+		if (frequencyOffset == -1 || collectors == 0)
+			return false;
+		frequency = map.getLong(frequencyOffset);
+		gcTicks = 0;
+		for (int i = 0; i < collectors; i++)
+			gcTicks += map.getLong(collectorTimes[i]);
+		heapUsed = 0;
+		for (int i = 0; i < spaces; i++)
+			heapUsed += map.getLong(spaceUsed[i]);
+		heapMax = 0;
+		for (int i = 0; i < generations; i++)
+			heapMax += map.getLong(generationMax[i]);
+		return frequency > 0;
+	}
+}
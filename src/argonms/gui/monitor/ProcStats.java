@@ -0,0 +1,159 @@
+/*
+ * ArgonMS Server Manager - a process launcher and organizer utilizing Swing.
+ * Copyright (C) 2011-2013  GoldenKevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package argonms.gui.monitor;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * Reads the counters of a process that Linux exposes in /proc/[pid]/stat,
+ * /proc/[pid]/status and /proc/[pid]/io. The files are parsed straight out of
+ * a reused byte array, so that taking a sample does not create any garbage
+ * besides the streams themselves.
+ *
+ * This class is not thread-safe. Each instance is meant to only be used by the
+ * sampler thread.
+ * @author GoldenKevin
+ */
+class ProcStats {
+	//the kernel reports CPU time in USER_HZ, which is 100 on every platform
+	//that Linux runs on that we care about
+	public static final int TICKS_PER_SECOND = 100;
+
+	private final byte[] buf;
+
+	//cumulative user and system time, in ticks
+	public long cpuTicks;
+	public long rssBytes;
+	public int threads;
+	//cumulative bytes read and written, sockets and pipes included
+	public long readBytes, writeBytes;
+	public boolean hasIo;
+
+	public ProcStats() {
+		buf = new byte[8192];
+	}
+
+	/**
+	 * @return the number of bytes read into buf, or -1 if the file could not
+	 * be read (which is the case when the process is gone)
+	 */
+	private int readFile(String path) {
+		FileInputStream in = null;
+		try {
+			in = new FileInputStream(path);
+			int length = 0, read;
+			while (length < buf.length && (read = in.read(buf, length, buf.length - length)) != -1)
+				length += read;
+			return length;
+		} catch (IOException e) {
+			return -1;
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the decimal number that starts at or after the given index, or
+	 * -1 if there is none before the end of the line
+	 */
+	private long parseNumber(int index, int length) {
+		while (index < length && buf[index] != '\n' && (buf[index] < '0' || buf[index] > '9'))
+			index++;
+		if (index == length || buf[index] == '\n')
+			return -1;
+		long value = 0;
+		while (index < length && buf[index] >= '0' && buf[index] <= '9')
+			value = value * 10 + (buf[index++] - '0');
+		return value;
+	}
+
+	/**
+	 * @return the number on the line that starts with the given key, or -1 if
+	 * there is no such line
+	 */
+	private long parseField(String key, int length) {
+		int lineStart = 0;
+		while (lineStart < length) {
+			boolean matches = lineStart + key.length() <= length;
+			for (int i = 0; matches && i < key.length(); i++)
+				matches = buf[lineStart + i] == key.charAt(i);
+			if (matches)
+				return parseNumber(lineStart + key.length(), length);
+			while (lineStart < length && buf[lineStart] != '\n')
+				lineStart++;
+			lineStart++;
+		}
+		return -1;
+	}
+
+	/**
+	 * @return false if the process is gone
+	 */
+	public boolean read(int pid) {
+		String dir = "/proc/" + pid + "/";
+		int length = readFile(dir + "stat");
+		if (length <= 0)
+			return false;
+		//the command name is in parentheses and may itself contain spaces and
+		//parentheses, so count the fields from the last closing one
+		int index = length - 1;
+		while (index >= 0 && buf[index] != ')')
+			index--;
+		if (index < 0)
+			return false;
+		//utime and stime are the 12th and 13th fields after the name
+		for (int field = 0; field < 12; field++) {
+			index++;
+			while (index < length && buf[index] != ' ')
+				index++;
+		}
+		long utime = parseNumber(index, length);
+		index++;
+		while (index < length && buf[index] != ' ')
+			index++;
+		long stime = parseNumber(index, length);
+		if (utime < 0 || stime < 0)
+			return false;
+		cpuTicks = utime + stime;
+
+		length = readFile(dir + "status");
+		if (length <= 0)
+			return false;
+		long rss = parseField("VmRSS:", length);
+		rssBytes = rss < 0 ? 0 : rss * 1024;
+		threads = (int) Math.max(parseField("Threads:", length), 0);
+
+		//only readable by the owner of the process, and not every kernel
+		//is built with I/O accounting
+		length = readFile(dir + "io");
+		hasIo = length > 0;
+		if (hasIo) {
+			readBytes = parseField("rchar:", length);
+			writeBytes = parseField("wchar:", length);
+			hasIo = readBytes >= 0 && writeBytes >= 0;
+		}
+		return true;
+	}
+}
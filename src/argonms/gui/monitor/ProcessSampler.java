@@ -0,0 +1,116 @@
+/*
+ * ArgonMS Server Manager - a process launcher and organizer utilizing Swing.
+ * Copyright (C) 2011-2013  GoldenKevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package argonms.gui.monitor;
+
+import java.io.File;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import argonms.gui.model.Environment;
+
+/**
+ * Samples the resource use of every watched process on a single scheduled
+ * thread, no matter how many processes are watched. Only Linux is supported,
+ * since the counters are read out of /proc.
+ * @author GoldenKevin
+ */
+public final class ProcessSampler implements Runnable {
+	public static final int SAMPLE_INTERVAL = 2000; //in ms
+
+	private static final ProcessSampler instance = new ProcessSampler();
+
+	private final boolean supported;
+	private final Queue<ResourceHistory> watched;
+	private final ScheduledExecutorService executor;
+	private ScheduledFuture<?> task;
+
+	private ProcessSampler() {
+		supported = new File("/proc/self/stat").isFile();
+		watched = new ConcurrentLinkedQueue<ResourceHistory>();
+		executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "resource-sampler");
+				t.setDaemon(true);
+				t.setPriority(Thread.MIN_PRIORITY);
+				return t;
+			}
+		});
+	}
+
+	public boolean isSupported() {
+		return supported;
+	}
+
+	/**
+	 * Starts sampling the given process until it ends or until unwatch is
+	 * called.
+	 * @return the samples that will be taken, or null if the process can't be
+	 * sampled on this platform
+	 */
+	public ResourceHistory watch(Process p) {
+		if (!supported)
+			return null;
+		int pid = Environment.getPid(p);
+		if (pid <= 0)
+			return null;
+		ResourceHistory history = new ResourceHistory(pid);
+		watched.add(history);
+		synchronized (this) {
+			if (task == null)
+				task = executor.scheduleWithFixedDelay(this, 0, SAMPLE_INTERVAL, TimeUnit.MILLISECONDS);
+		}
+		return history;
+	}
+
+	/**
+	 * Stops sampling the process of the given history.
+	 */
+	public void unwatch(ResourceHistory history) {
+		watched.remove(history);
+	}
+
+	@Override
+	public void run() {
+		try {
+			for (ResourceHistory history : watched)
+				if (!history.sample())
+					watched.remove(history);
+		} catch (RuntimeException e) {
+			//an exception would cancel every sample after this one
+			System.err.println("Error sampling resource use");
+			e.printStackTrace();
+		}
+		synchronized (this) {
+			if (watched.isEmpty()) {
+				task.cancel(false);
+				task = null;
+			}
+		}
+	}
+
+	public static ProcessSampler getInstance() {
+		return instance;
+	}
+}
@@ -0,0 +1,143 @@
+/*
+ * ArgonMS Server Manager - a process launcher and organizer utilizing Swing.
+ * Copyright (C) 2011-2013  GoldenKevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package argonms.gui.monitor;
+
+/**
+ * The recent resource use of one process, as recorded by ProcessSampler.
+ * Samples are written by the sampler thread and may be read from any other.
+ * @author GoldenKevin
+ */
+public class ResourceHistory {
+	public enum Metric {
+		//percent of one core
+		CPU,
+		//resident set size, in bytes
+		RSS,
+		//used and maximum size of the Java heap, in bytes
+		HEAP_USED, HEAP_MAX,
+		THREADS,
+		//percent of the time spent collecting garbage
+		GC,
+		//in bytes per second
+		READ_RATE, WRITE_RATE
+	}
+
+	//at the default interval, about 10 minutes
+	public static final int CAPACITY = 300;
+
+	private final int pid;
+	private final ProcStats proc;
+	private final PerfData perf;
+	private final SampleRing[] rings;
+
+	//the counters as of the last sample, to take the rates from
+	private boolean sampled, perfSampled;
+	private long lastTime, lastCpuTicks, lastReadBytes, lastWriteBytes, lastGcTicks;
+	private boolean hasJvmData, hasIoData;
+
+	ResourceHistory(int pid) {
+		this.pid = pid;
+		proc = new ProcStats();
+		perf = new PerfData(pid);
+		Metric[] metrics = Metric.values();
+		rings = new SampleRing[metrics.length];
+		for (int i = 0; i < metrics.length; i++)
+			rings[i] = new SampleRing(CAPACITY);
+	}
+
+	public int getPid() {
+		return pid;
+	}
+
+	/**
+	 * Takes one sample. Must only be called by the sampler thread.
+	 * @return false if the process is gone
+	 */
+	boolean sample() {
+		long now = System.nanoTime();
+		if (!proc.read(pid))
+			return false;
+		boolean jvm = perf.read();
+		synchronized (this) {
+			if (sampled) {
+				double seconds = (now - lastTime) / 1e9;
+				rings[Metric.CPU.ordinal()].add((proc.cpuTicks - lastCpuTicks) * 100.0 / ProcStats.TICKS_PER_SECOND / seconds);
+				rings[Metric.RSS.ordinal()].add(proc.rssBytes);
+				rings[Metric.THREADS.ordinal()].add(proc.threads);
+				hasIoData = proc.hasIo;
+				rings[Metric.READ_RATE.ordinal()].add(proc.hasIo ? (proc.readBytes - lastReadBytes) / seconds : 0);
+				rings[Metric.WRITE_RATE.ordinal()].add(proc.hasIo ? (proc.writeBytes - lastWriteBytes) / seconds : 0);
+				//the JVM only creates its performance data a while after it
+				//starts, so there may be some samples missing at the start
+				hasJvmData = jvm;
+				if (jvm && perfSampled) {
+					rings[Metric.GC.ordinal()].add((perf.gcTicks - lastGcTicks) * 100.0 / perf.frequency / seconds);
+					rings[Metric.HEAP_USED.ordinal()].add(perf.heapUsed);
+					rings[Metric.HEAP_MAX.ordinal()].add(perf.heapMax);
+				}
+			}
+			sampled = true;
+			perfSampled = jvm;
+			lastTime = now;
+			lastCpuTicks = proc.cpuTicks;
+			lastReadBytes = proc.readBytes;
+			lastWriteBytes = proc.writeBytes;
+			lastGcTicks = perf.gcTicks;
+		}
+		return true;
+	}
+
+	/**
+	 * @return whether the process is a JVM whose heap and garbage collection
+	 * counters could be read in the last sample
+	 */
+	public synchronized boolean hasJvmData() {
+		return hasJvmData;
+	}
+
+	/**
+	 * @return whether the I/O counters of the process could be read in the
+	 * last sample
+	 */
+	public synchronized boolean hasIoData() {
+		return hasIoData;
+	}
+
+	public synchronized int getSampleCount(Metric metric) {
+		return rings[metric.ordinal()].size();
+	}
+
+	/**
+	 * @return the most recent sample of the given metric, or 0 if there is
+	 * none yet
+	 */
+	public synchronized double getLatest(Metric metric) {
+		return rings[metric.ordinal()].latest();
+	}
+
+	/**
+	 * Copies the samples of the given metric, oldest first, to the given
+	 * array. If it is too small to hold every sample, only the most recent
+	 * ones are copied.
+	 * @return the number of samples that were copied
+	 */
+	public synchronized int copySamples(Metric metric, double[] dest) {
+		return rings[metric.ordinal()].copyTo(dest);
+	}
+}
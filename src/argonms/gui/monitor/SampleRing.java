@@ -0,0 +1,76 @@
+/*
+ * ArgonMS Server Manager - a process launcher and organizer utilizing Swing.
+ * Copyright (C) 2011-2013  GoldenKevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package argonms.gui.monitor;
+
+/**
+ * A fixed number of the most recent samples of one measurement, kept in a
+ * primitive array that is allocated once and then written over in a circle.
+ *
+ * This class is not thread-safe. ResourceHistory guards each instance.
+ * @author GoldenKevin
+ */
+class SampleRing {
+	private final double[] samples;
+	//index of the next sample to write
+	private int head;
+	private int size;
+
+	public SampleRing(int capacity) {
+		samples = new double[capacity];
+	}
+
+	public void add(double sample) {
+		samples[head] = sample;
+		head = (head + 1) % samples.length;
+		if (size < samples.length)
+			size++;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return the most recent sample, or 0 if none were added yet
+	 */
+	public double latest() {
+		if (size == 0)
+			return 0;
+		return samples[(head + samples.length - 1) % samples.length];
+	}
+
+	/**
+	 * Copies the samples, oldest first, to the given array. If it is too small
+	 * to hold every sample, only the most recent ones are copied.
+	 * @return the number of samples that were copied
+	 */
+	public int copyTo(double[] dest) {
+		int count = Math.min(size, dest.length);
+		int start = (head + samples.length - count) % samples.length;
+		int firstPart = Math.min(count, samples.length - start);
+		System.arraycopy(samples, start, dest, 0, firstPart);
+		System.arraycopy(samples, 0, dest, firstPart, count - firstPart);
+		return count;
+	}
+
+	public void clear() {
+		head = 0;
+		size = 0;
+	}
+}
@@ -0,0 +1,108 @@
+/*
+ * ArgonMS Server Manager - a process launcher and organizer utilizing Swing.
+ * Copyright (C) 2011-2013  GoldenKevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package argonms.gui.monitor;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+
+import javax.swing.JComponent;
+
+/**
+ * A small line chart of the recent samples of one metric, without any axes or
+ * labels, that is meant to fit in a tab header. Each column of pixels shows
+ * the highest of the samples that it covers, so that short spikes are not
+ * lost, and the chart is scaled to the highest sample that is shown, or to
+ * the latest sample of a second metric that bounds the first one, such as the
+ * maximum size of the heap.
+ *
+ * This class is not thread-safe. It must only be used from the Swing EDT.
+ * @author GoldenKevin
+ */
+@SuppressWarnings("serial")
+public class Sparkline extends JComponent {
+	private static final int WIDTH = 60, HEIGHT = 14;
+	private static final int SAMPLES_PER_COLUMN = ResourceHistory.CAPACITY / WIDTH;
+
+	private ResourceHistory.Metric metric, bound;
+	//the chart is never scaled to less than this
+	private final double minScale;
+	private final double[] samples;
+	private final int[] columns;
+	private ResourceHistory history;
+
+	public Sparkline(ResourceHistory.Metric metric, double minScale, Color color) {
+		this.metric = metric;
+		this.minScale = minScale;
+		samples = new double[ResourceHistory.CAPACITY];
+		columns = new int[WIDTH];
+		setForeground(color);
+		Dimension size = new Dimension(WIDTH, HEIGHT);
+		setPreferredSize(size);
+		setMinimumSize(size);
+		setMaximumSize(size);
+	}
+
+	/**
+	 * @param bound the metric to scale the chart to, or null to scale it to
+	 * the highest sample that is shown
+	 */
+	public void setMetric(ResourceHistory.Metric metric, ResourceHistory.Metric bound) {
+		if (this.metric == metric && this.bound == bound)
+			return;
+		this.metric = metric;
+		this.bound = bound;
+		repaint();
+	}
+
+	public void setHistory(ResourceHistory history) {
+		this.history = history;
+		repaint();
+	}
+
+	@Override
+	protected void paintComponent(Graphics g) {
+		if (history == null)
+			return;
+		int count = history.copySamples(metric, samples);
+		if (count < 2)
+			return;
+		//the most recent samples are on the right edge
+		int width = (count + SAMPLES_PER_COLUMN - 1) / SAMPLES_PER_COLUMN;
+		double max = minScale;
+		if (bound != null)
+			max = Math.max(max, history.getLatest(bound));
+		for (int x = 0; x < width; x++) {
+			int end = count - (width - 1 - x) * SAMPLES_PER_COLUMN;
+			double peak = 0;
+			for (int i = Math.max(end - SAMPLES_PER_COLUMN, 0); i < end; i++)
+				peak = Math.max(peak, samples[i]);
+			samples[x] = peak;
+			max = Math.max(max, peak);
+		}
+		int height = getHeight() - 1;
+		for (int x = 0; x < width; x++)
+			columns[x] = height - (int) Math.round(samples[x] / max * height);
+
+		int left = getWidth() - width;
+		g.setColor(getForeground());
+		for (int x = 1; x < width; x++)
+			g.drawLine(left + x - 1, columns[x - 1], left + x, columns[x]);
+	}
+}
@@ -0,0 +1,210 @@
+/*
+ * ArgonMS Server Manager - a process launcher and organizer utilizing Swing.
+ * Copyright (C) 2011-2013  GoldenKevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package argonms.gui.tab;
+
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.FlowLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.swing.BorderFactory;
+import javax.swing.Box;
+import javax.swing.BoxLayout;
+import javax.swing.DefaultListModel;
+import javax.swing.JButton;
+import javax.swing.JLabel;
+import javax.swing.JList;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JSpinner;
+import javax.swing.JTextArea;
+import javax.swing.JTextField;
+import javax.swing.SpinnerNumberModel;
+
+import argonms.gui.model.CommandBroadcast;
+import argonms.gui.model.Environment;
+import argonms.gui.model.Model;
+
+/**
+ * Sends a console command to every running server, or to the ones that are
+ * selected, and shows what each of them replied.
+ *
+ * This class is not thread-safe. It must only be used from the Swing EDT.
+ * @author GoldenKevin
+ */
+@SuppressWarnings("serial")
+public class BroadcastPanel extends JPanel {
+	private class ResultView extends JPanel {
+		private final JLabel status;
+		private final JTextArea reply;
+
+		public ResultView(String description) {
+			setOpaque(false);
+			setLayout(new BorderLayout());
+			setBorder(BorderFactory.createTitledBorder(
+					BorderFactory.createLineBorder(Color.black), description));
+			status = new JLabel();
+			reply = new JTextArea(4, 60);
+			reply.setEditable(false);
+			reply.setFont(Environment.getConsoleFont());
+			add(status, BorderLayout.PAGE_START);
+			add(new JScrollPane(reply), BorderLayout.CENTER);
+		}
+
+		@Override
+		public Dimension getMaximumSize() {
+			return new Dimension(Integer.MAX_VALUE, getPreferredSize().height);
+		}
+
+		public void update(String text, String message) {
+			status.setText(message);
+			if (!text.equals(reply.getText()))
+				reply.setText(text);
+		}
+	}
+
+	private final Model m;
+	private final List<ServerTab> listed;
+	private final DefaultListModel targetNames;
+	private final JList targets;
+	private final JTextField command;
+	private final JSpinner timeout;
+	private final JButton send;
+	private final JPanel results;
+	private final Map<ServerTab, ResultView> views;
+	private CommandBroadcast current;
+
+	public BroadcastPanel(Model state) {
+		m = state;
+		listed = new ArrayList<ServerTab>();
+		views = new HashMap<ServerTab, ResultView>();
+		setOpaque(false);
+		setLayout(new BorderLayout(5, 5));
+		setBorder(BorderFactory.createTitledBorder(
+				BorderFactory.createLineBorder(Color.black), "Broadcast Command"));
+
+		command = new JTextField(40);
+		command.setFont(Environment.getConsoleFont());
+		timeout = new JSpinner(new SpinnerNumberModel(Environment.DEFAULT_BROADCAST_TIMEOUT, 1, 600, 1));
+		send = new JButton("Send");
+		ActionListener doSend = new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				if (current != null)
+					current.cancel();
+				else
+					send();
+			}
+		};
+		send.addActionListener(doSend);
+		command.addActionListener(doSend);
+		JPanel entry = new JPanel(new FlowLayout(FlowLayout.LEADING, 0, 0));
+		entry.setOpaque(false);
+		entry.add(new JLabel("Command:"));
+		entry.add(Box.createRigidArea(new Dimension(5, 0)));
+		entry.add(command);
+		entry.add(Box.createRigidArea(new Dimension(5, 0)));
+		entry.add(new JLabel("Timeout:"));
+		entry.add(Box.createRigidArea(new Dimension(5, 0)));
+		entry.add(timeout);
+		entry.add(new JLabel("s"));
+		entry.add(Box.createRigidArea(new Dimension(5, 0)));
+		entry.add(send);
+		add(entry, BorderLayout.PAGE_START);
+
+		targetNames = new DefaultListModel();
+		targets = new JList(targetNames);
+		targets.setVisibleRowCount(6);
+		targets.setToolTipText("The servers to send to. If none are selected, it is sent to every running server");
+		JScrollPane targetsPane = new JScrollPane(targets);
+		targetsPane.setPreferredSize(new Dimension(120, 0));
+		add(targetsPane, BorderLayout.LINE_START);
+
+		results = new JPanel();
+		results.setOpaque(false);
+		results.setLayout(new BoxLayout(results, BoxLayout.PAGE_AXIS));
+		add(new JScrollPane(results), BorderLayout.CENTER);
+	}
+
+	private void send() {
+		String text = command.getText().trim();
+		if (text.isEmpty())
+			return;
+		List<ServerTab> chosen = new ArrayList<ServerTab>();
+		for (int index : targets.getSelectedIndices())
+			chosen.add(listed.get(index));
+		if (chosen.isEmpty())
+			chosen.addAll(listed);
+		if (chosen.isEmpty())
+			return;
+
+		results.removeAll();
+		views.clear();
+		for (ServerTab tab : chosen) {
+			ResultView view = new ResultView(tab.getDescription());
+			views.put(tab, view);
+			results.add(view);
+		}
+		results.revalidate();
+		results.repaint();
+
+		send.setText("Cancel");
+		current = new CommandBroadcast(chosen, text, ((Number) timeout.getValue()).intValue(), new CommandBroadcast.Listener() {
+			@Override
+			public void replyUpdated(ServerTab tab, String reply, String status, boolean finished) {
+				views.get(tab).update(reply, status);
+			}
+
+			@Override
+			public void broadcastFinished() {
+				current = null;
+				send.setText("Send");
+			}
+		});
+		current.start();
+	}
+
+	/**
+	 * Must be called whenever a server is started or exits.
+	 */
+	public void runningServersChanged() {
+		List<ServerTab> selected = new ArrayList<ServerTab>();
+		for (int index : targets.getSelectedIndices())
+			selected.add(listed.get(index));
+		listed.clear();
+		listed.addAll(m.getRunningServerTabs());
+		targetNames.clear();
+		List<Integer> reselect = new ArrayList<Integer>();
+		for (int i = 0; i < listed.size(); i++) {
+			targetNames.addElement(listed.get(i).getDescription());
+			if (selected.contains(listed.get(i)))
+				reselect.add(Integer.valueOf(i));
+		}
+		int[] indices = new int[reselect.size()];
+		for (int i = 0; i < indices.length; i++)
+			indices[i] = reselect.get(i).intValue();
+		targets.setSelectedIndices(indices);
+	}
+}
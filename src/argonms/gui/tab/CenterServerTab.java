@@ -18,8 +18,8 @@
 
 package argonms.gui.tab;
 
-import argonms.gui.model.Environment;
 import argonms.gui.model.Model;
+import argonms.gui.model.ServerRole;
 
 /**
  * 
@@ -31,25 +31,6 @@ public class CenterServerTab extends ServerTab {
 	 * This method is not thread-safe. It must be called from the Swing EDT.
 	 */
 	public CenterServerTab(Model state) {
-		super(state);
-	}
-
-	@Override
-	protected String getDescription() {
-		return "Center";
-	}
-
-	@Override
-	protected String[] getCommand() {
-		return new String[] {
-			Environment.JAVA_DIR,
-			"-classpath", state.getConfig().getClasspath(),
-			"-Xmx" + Environment.MAX_HEAP_SIZE + "m",
-			"-Dargonms.center.config.file=" + state.getConfig().getCenterServerPropertiesPath(),
-			"-Djava.util.logging.config.file=" + state.getConfig().getLoggerPropertiesPath(),
-			"-Dargonms.db.config.file=" + state.getConfig().getDatabasePropertiesPath(),
-			"-Dargonms.ct.macbanblacklist.file=" + state.getConfig().getMacBanBlacklistPath(),
-			"argonms.center.CenterServer"
-		};
+		super(state, ServerRole.CENTER, (byte) 0, "Center");
 	}
 }
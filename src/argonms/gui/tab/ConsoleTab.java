@@ -19,35 +19,33 @@
 package argonms.gui.tab;
 
 import java.awt.Color;
-import java.awt.Component;
 import java.awt.Dimension;
 import java.awt.FlowLayout;
-import java.awt.event.AdjustmentEvent;
-import java.awt.event.AdjustmentListener;
+import java.awt.event.ActionEvent;
+import java.awt.event.InputEvent;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
-import java.awt.event.MouseAdapter;
-import java.awt.event.MouseEvent;
-import java.awt.event.MouseListener;
-import java.awt.event.MouseWheelEvent;
+import java.io.IOException;
 
+import javax.swing.AbstractAction;
 import javax.swing.BorderFactory;
 import javax.swing.Box;
 import javax.swing.BoxLayout;
+import javax.swing.JComponent;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
-import javax.swing.JScrollBar;
-import javax.swing.JScrollPane;
-import javax.swing.JTextArea;
 import javax.swing.JTextField;
-import javax.swing.ScrollPaneConstants;
+import javax.swing.KeyStroke;
 import javax.swing.SwingUtilities;
 
+import argonms.gui.console.ConsoleView;
+import argonms.gui.console.FilterBar;
+import argonms.gui.console.FindBar;
+import argonms.gui.console.HistorySpill;
+import argonms.gui.console.LineClassifier;
+import argonms.gui.console.LineStore;
+import argonms.gui.console.SearchIndex;
 import argonms.gui.model.Environment;
-import java.awt.event.FocusEvent;
-import java.awt.event.FocusListener;
-import java.util.HashSet;
-import java.util.Set;
 
 /**
  * 
@@ -55,140 +53,6 @@ import java.util.Set;
  */
 @SuppressWarnings("serial")
 public abstract class ConsoleTab extends JPanel {
-	private static class OutputBox extends JTextArea {
-		private final KeyAdapter keyAdapter;
-		private final MouseAdapter mouseAdapter;
-		private JScrollBar scrollBar;
-		private volatile boolean heldByScrollWheel;
-		private boolean heldByClick; //should only be used in EDT, so we're safe
-		private final Set<Integer> heldKeys;
-
-		/**
-		 * This method is not thread-safe. It must be called from the Swing EDT.
-		 */
-		public OutputBox() {
-			super(25, 80);
-			heldKeys = new HashSet<Integer>(); //should only be used in EDT, so we're safe
-
-			setFont(Environment.CONSOLE_FONT);
-			setEditable(false);
-			getCaret().setVisible(true);
-			setLineWrap(true);
-			addFocusListener(new FocusListener() {
-				@Override
-				public void focusGained(FocusEvent e) {
-					getCaret().setVisible(true);
-				}
-
-				@Override
-				public void focusLost(FocusEvent e) {
-					getCaret().setVisible(true);
-					heldKeys.clear();
-				}
-			});
-
-			setBackground(Color.WHITE);
-			setForeground(Color.BLACK);
-			setCaretColor(Color.BLACK);
-
-			mouseAdapter = new MouseAdapter() {
-				@Override
-				public void mousePressed(MouseEvent e) {
-					heldByClick = true;
-				}
-
-				@Override
-				public void mouseReleased(MouseEvent e) {
-					heldByClick = false;
-				}
-
-				@Override
-				public void mouseWheelMoved(MouseWheelEvent e) {
-					heldByScrollWheel = true;
-				}
-			};
-
-			keyAdapter = new KeyAdapter() {
-				private boolean isHandledKey(KeyEvent e) {
-					switch (e.getKeyCode()) {
-						case KeyEvent.VK_LEFT:
-						case KeyEvent.VK_RIGHT:
-						case KeyEvent.VK_UP:
-						case KeyEvent.VK_DOWN:
-							return true;
-						default:
-							return false;
-					}
-				}
-
-				@Override
-				public void keyPressed(KeyEvent e) {
-					if (isHandledKey(e))
-						heldKeys.add(Integer.valueOf(e.getKeyCode()));
-				}
-
-				@Override
-				public void keyReleased(KeyEvent e) {
-					if (isHandledKey(e))
-						heldKeys.remove(Integer.valueOf(e.getKeyCode()));
-				}
-			};
-		}
-
-		private void addFirstMouseListener(Component c) {
-			c.removeMouseListener(mouseAdapter);
-
-			MouseListener[] existingClickListeners = c.getMouseListeners();
-			for (int i = 0; i < existingClickListeners.length; i++)
-				c.removeMouseListener(existingClickListeners[i]);
-
-			c.addMouseListener(mouseAdapter);
-
-			for (int i = 0; i < existingClickListeners.length; i++)
-				c.addMouseListener(existingClickListeners[i]);
-		}
-
-		private void addLastMouseListener(Component c) {
-			c.removeMouseListener(mouseAdapter);
-			c.addMouseListener(mouseAdapter);
-		}
-
-		private void addLastKeyListener(Component c) {
-			c.removeKeyListener(keyAdapter);
-			c.addKeyListener(keyAdapter);
-		}
-
-		public void updateScrollBarInputListeners() {
-			addLastKeyListener(this);
-			addLastMouseListener(this);
-			addLastMouseListener(scrollBar);
-			for (Component c : scrollBar.getComponents())
-				addFirstMouseListener(c);
-		}
-
-		private boolean scrollHold() {
-			return heldByClick || heldByScrollWheel || !heldKeys.isEmpty();
-		}
-
-		public void setScrollBar(JScrollBar sb) {
-			scrollBar = sb;
-			updateScrollBarInputListeners();
-			sb.addAdjustmentListener(new AdjustmentListener() {
-				@Override
-				public void adjustmentValueChanged(AdjustmentEvent e) {
-					if (!scrollHold() && !e.getValueIsAdjusting())
-						scrollBar.setValue(scrollBar.getMaximum());
-				}
-			});
-		}
-
-		@Override
-		public void append(String str) {
-			heldByScrollWheel = false;
-			super.append(str);
-		}
-	}
-
 	private class InputBox extends JPanel {
 		private JTextField textbox;
 
@@ -199,7 +63,7 @@ public abstract class ConsoleTab extends JPanel {
 			setOpaque(false);
 
 			textbox = new JTextField(80);
-			textbox.setFont(Environment.CONSOLE_FONT);
+			textbox.setFont(Environment.getConsoleFont());
 			textbox.addKeyListener(new KeyAdapter() {
 				@Override
 				public void keyTyped(KeyEvent e) {
@@ -224,14 +88,33 @@ public abstract class ConsoleTab extends JPanel {
 		}
 	}
 
+	//in chars. bounds how much output can be waiting for the EDT at once
+	private static final int PENDING_OUTPUT_CAPACITY = 256 * 1024;
+
 	protected final JPanel optionsPane;
-	private final OutputBox output;
+	private final OutputBuffer pending;
+	private final LineStore lines;
+	private final ConsoleView output;
+	private final SearchIndex index;
+	private final FindBar findBar;
+	private final LineClassifier classifier;
+	private final FilterBar filterBar;
 	private final InputBox input;
+	private HistorySpill history;
 
 	/**
 	 * This method is not thread-safe. It must be called from the Swing EDT.
 	 */
 	public ConsoleTab() {
+		this(false);
+	}
+
+	/**
+	 * This method is not thread-safe. It must be called from the Swing EDT.
+	 * @param labeled whether each line of output starts with the name of the
+	 * source that it came from in square brackets
+	 */
+	protected ConsoleTab(boolean labeled) {
 		setLayout(new BoxLayout(this, BoxLayout.PAGE_AXIS));
 		setBorder(BorderFactory.createEmptyBorder(5, 5, 5, 5));
 		setOpaque(false);
@@ -243,31 +126,99 @@ public abstract class ConsoleTab extends JPanel {
 
 		add(Box.createRigidArea(new Dimension(0, 5)));
 
-		output = new OutputBox();
-		JScrollPane outputPane = new JScrollPane(output,
-				ScrollPaneConstants.VERTICAL_SCROLLBAR_ALWAYS,
-				ScrollPaneConstants.HORIZONTAL_SCROLLBAR_NEVER);
-		output.setScrollBar(outputPane.getVerticalScrollBar());
-		outputPane.addMouseWheelListener(output.mouseAdapter);
-		add(outputPane);
+		pending = new OutputBuffer(this, PENDING_OUTPUT_CAPACITY);
+		lines = new LineStore(Environment.DEFAULT_SCROLLBACK_LINES, Environment.DEFAULT_SCROLLBACK_CHARS);
+		output = new ConsoleView(lines);
+		output.setColors(Color.WHITE, Color.BLACK);
+		classifier = new LineClassifier(lines, labeled);
+		output.setClassifier(classifier);
+		filterBar = new FilterBar(classifier, output);
+		add(filterBar);
+		add(Box.createRigidArea(new Dimension(0, 5)));
+		add(output);
+
+		index = new SearchIndex(lines);
+		findBar = new FindBar(lines, index, output);
+		findBar.setVisible(false);
+		add(findBar);
 
 		add(Box.createRigidArea(new Dimension(0, 5)));
 
 		input = new InputBox();
 		add(input);
+
+		getInputMap(JComponent.WHEN_ANCESTOR_OF_FOCUSED_COMPONENT).put(KeyStroke.getKeyStroke(KeyEvent.VK_F, InputEvent.CTRL_DOWN_MASK), "find");
+		getActionMap().put("find", new AbstractAction() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				findBar.open();
+			}
+		});
+	}
+
+	/**
+	 * This method is not thread-safe. It must be called from the Swing EDT.
+	 * @param maxLines the maximum number of lines to keep in the output box, or
+	 * 0 if unbounded
+	 * @param maxChars the maximum number of characters to keep in the output
+	 * box, or 0 if unbounded
+	 */
+	protected void setScrollbackLimit(int maxLines, int maxChars) {
+		lines.setLimits(maxLines, maxChars);
+		output.linesAppended();
 	}
 
+	/**
+	 * Move output that falls out of the scrollback into a memory mapped file
+	 * rather than discarding it, so that it can still be scrolled back to.
+	 * Does nothing if history is already being kept.
+	 *
+	 * This method is not thread-safe. It must be called from the Swing EDT.
+	 * @param name used to identify the history file
+	 * @param maxBytes the maximum size of the history file, or 0 to not keep
+	 * any history
+	 */
+	protected void enableHistorySpill(String name, long maxBytes) {
+		if (history != null || maxBytes <= 0)
+			return;
+		try {
+			history = new HistorySpill(name, maxBytes);
+			lines.setSpill(history);
+		} catch (IOException e) {
+			System.err.println("Error in creating history file for " + name);
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Release the resources held by this tab once it is no longer used.
+	 *
+	 * This method is not thread-safe. It must be called from the Swing EDT.
+	 */
+	public void dispose() {
+		if (history != null) {
+			lines.setSpill(null);
+			history.close();
+			history = null;
+		}
+	}
+
+	/**
+	 * This method is not thread-safe. It must be called from the Swing EDT.
+	 */
 	protected void clearOutput() {
-		output.setText("");
+		pending.clear();
+		lines.clear();
+		index.clear();
+		classifier.clear();
+		output.storeCleared();
 	}
 
 	protected void outputEnabled() {
 		SwingUtilities.invokeLater(new Runnable() {
 			@Override
 			public void run() {
-				output.setBackground(Color.BLACK);
-				output.setForeground(Color.WHITE);
-				output.setCaretColor(Color.WHITE);
+				output.setColors(Color.BLACK, Color.WHITE);
 			}
 		});
 	}
@@ -276,9 +227,7 @@ public abstract class ConsoleTab extends JPanel {
 		SwingUtilities.invokeLater(new Runnable() {
 			@Override
 			public void run() {
-				output.setBackground(Color.WHITE);
-				output.setForeground(Color.BLACK);
-				output.setCaretColor(Color.BLACK);
+				output.setColors(Color.WHITE, Color.BLACK);
 			}
 		});
 	}
@@ -302,7 +251,56 @@ public abstract class ConsoleTab extends JPanel {
 	}
 
 	protected void writeToOutput(String text) {
-		output.append(text);
+		writeToOutput(text.toCharArray(), 0, text.length());
+	}
+
+	/**
+	 * The output is not appended immediately, but is instead batched up with
+	 * any other pending output and then flushed in the Swing EDT. This method
+	 * will block if the EDT is falling too far behind.
+	 *
+	 * The contents of buf may be overwritten by the caller as soon as this
+	 * method returns, so implementations must not hold on to the array.
+	 */
+	protected void writeToOutput(char[] buf, int offset, int length) {
+		try {
+			pending.write(buf, offset, length);
+		} catch (InterruptedException e) {
+			//propagate it further upwards
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Like writeToOutput, but never blocks, for threads that serve more than
+	 * one source of output.
+	 * @return the number of chars that were taken, which is less than length
+	 * if the EDT is falling behind
+	 */
+	protected int offerOutput(char[] buf, int offset, int length) {
+		return pending.offer(buf, offset, length);
+	}
+
+	/**
+	 * This method is not thread-safe. It must be called from the Swing EDT.
+	 * @return true if there is still output pending after this flush.
+	 */
+	boolean flushOutput(char[] scratch) {
+		int length = pending.drainTo(scratch);
+		if (length > 0)
+			appendOutput(scratch, 0, length);
+		return pending.finishFlush();
+	}
+
+	/**
+	 * This method is not thread-safe. It must be called from the Swing EDT.
+	 */
+	void appendOutput(char[] buf, int offset, int length) {
+		lines.append(buf, offset, length);
+		index.update();
+		classifier.update();
+		filterBar.loggersUpdated();
+		output.linesAppended();
 	}
 
 	protected abstract void textEntered(String text);
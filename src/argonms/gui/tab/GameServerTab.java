@@ -18,8 +18,8 @@
 
 package argonms.gui.tab;
 
-import argonms.gui.model.Environment;
 import argonms.gui.model.Model;
+import argonms.gui.model.ServerRole;
 
 /**
  * 
@@ -27,35 +27,10 @@ import argonms.gui.model.Model;
  */
 @SuppressWarnings("serial")
 public class GameServerTab extends ServerTab {
-	private final byte serverId;
-
 	/**
 	 * This method is not thread-safe. It must be called from the Swing EDT.
 	 */
 	public GameServerTab(Model state, byte serverId) {
-		super(state);
-		this.serverId = serverId;
-	}
-
-	@Override
-	protected String getDescription() {
-		return "Game" + serverId;
-	}
-
-	@Override
-	protected String[] getCommand() {
-		return new String[] {
-			Environment.JAVA_DIR,
-			"-classpath", state.getConfig().getClasspath(),
-			"-Xmx" + Environment.MAX_HEAP_SIZE + "m",
-			"-Dargonms.game.serverid=" + serverId,
-			"-Dargonms.game.config.file=" + state.getConfig().getGameServerPropertiesPath(serverId),
-			"-Djava.util.logging.config.file=" + state.getConfig().getLoggerPropertiesPath(),
-			"-Dargonms.db.config.file=" + state.getConfig().getDatabasePropertiesPath(),
-			"-Dargonms.ct.macbanblacklist.file=" + state.getConfig().getMacBanBlacklistPath(),
-			"-Dargonms.data.dir=" + state.getConfig().getWzPath(),
-			"-Dargonms.scripts.dir=" + state.getConfig().getScriptsPath(),
-			"argonms.game.GameServer"
-		};
+		super(state, ServerRole.GAME, serverId, "Game" + serverId);
 	}
 }
@@ -18,8 +18,8 @@
 
 package argonms.gui.tab;
 
-import argonms.gui.model.Environment;
 import argonms.gui.model.Model;
+import argonms.gui.model.ServerRole;
 
 /**
  * 
@@ -31,26 +31,6 @@ public class LoginServerTab extends ServerTab {
 	 * This method is not thread-safe. It must be called from the Swing EDT.
 	 */
 	public LoginServerTab(Model state) {
-		super(state);
-	}
-
-	@Override
-	protected String getDescription() {
-		return "Center";
-	}
-
-	@Override
-	protected String[] getCommand() {
-		return new String[] {
-			Environment.JAVA_DIR,
-			"-classpath", state.getConfig().getClasspath(),
-			"-Xmx" + Environment.MAX_HEAP_SIZE + "m",
-			"-Dargonms.login.config.file=" + state.getConfig().getLoginServerPropertiesPath(),
-			"-Djava.util.logging.config.file=" + state.getConfig().getLoggerPropertiesPath(),
-			"-Dargonms.db.config.file=" + state.getConfig().getDatabasePropertiesPath(),
-			"-Dargonms.ct.macbanblacklist.file=" + state.getConfig().getMacBanBlacklistPath(),
-			"-Dargonms.data.dir=" + state.getConfig().getWzPath(),
-			"argonms.login.LoginServer"
-		};
+		super(state, ServerRole.LOGIN, (byte) 0, "Login");
 	}
 }
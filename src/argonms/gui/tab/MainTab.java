@@ -30,10 +30,18 @@ import java.awt.event.ActionListener;
 import javax.swing.BorderFactory;
 import javax.swing.JButton;
 import javax.swing.JDialog;
+import javax.swing.JLabel;
 import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JSpinner;
+import javax.swing.JSplitPane;
+import javax.swing.JTextArea;
+import javax.swing.SpinnerNumberModel;
 
 import argonms.gui.LaunchConfigDialog;
+import argonms.gui.ScheduleDialog;
 import argonms.gui.WindowSettingsDialog;
+import argonms.gui.model.Environment;
 import argonms.gui.model.Model;
 
 /**
@@ -43,8 +51,13 @@ import argonms.gui.model.Model;
 @SuppressWarnings("serial")
 public class MainTab extends JPanel {
 	private Model m;
-	private JButton startAll, stopAll;
+	private JButton startAll, stopAll, rollingRestart;
+	private JSpinner rollingBatchSize;
 	private JPanel settingsPane;
+	private JTextArea shutdownLog;
+	private JLabel cdsReport;
+	private BroadcastPanel broadcast;
+	private ScheduleDialog scheduleDialog;
 
 	/**
 	 * This method is not thread-safe. It must be called from the Swing EDT.
@@ -59,8 +72,14 @@ public class MainTab extends JPanel {
 		top.setOpaque(false);
 		top.add(constructSwitchPanel());
 		add(top, BorderLayout.PAGE_START);
-
 		m = state;
+		broadcast = new BroadcastPanel(state);
+		JSplitPane center = new JSplitPane(JSplitPane.VERTICAL_SPLIT, constructShutdownPanel(), broadcast);
+		center.setOpaque(false);
+		center.setBorder(null);
+		center.setResizeWeight(0.5);
+		add(center, BorderLayout.CENTER);
+		add(constructClassDataSharingPanel(), BorderLayout.PAGE_END);
 	}
 
 	/**
@@ -131,13 +150,113 @@ public class MainTab extends JPanel {
 			}
 		});
 		stopAll.setEnabled(false);
+		rollingRestart = new JButton("Rolling Restart");
+		rollingRestart.setToolTipText("Restart the running game servers a few at a time, while the others stay online");
+		rollingRestart.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent arg0) {
+				if (m.isRollingRestartActive())
+					m.cancelRollingRestart();
+				else
+					m.rollingRestart(((Number) rollingBatchSize.getValue()).intValue());
+			}
+		});
+		rollingBatchSize = new JSpinner(new SpinnerNumberModel(1, 1, 127, 1));
+		rollingBatchSize.setToolTipText("How many game servers to restart at a time");
+		JButton schedule = new JButton("Scheduled Jobs");
+		schedule.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent arg0) {
+				if (scheduleDialog == null || !scheduleDialog.isDisplayable()) {
+					scheduleDialog = new ScheduleDialog(m);
+					scheduleDialog.pack();
+					scheduleDialog.setLocationRelativeTo(m.getFrame());
+				}
+				scheduleDialog.setVisible(true);
+				scheduleDialog.toFront();
+			}
+		});
 
 		pane.add(startAll);
 		pane.add(stopAll);
+		pane.add(rollingRestart);
+		pane.add(rollingBatchSize);
+		pane.add(new JLabel("at a time"));
+		pane.add(schedule);
+
+		return pane;
+	}
+
+	/**
+	 * This method is not thread-safe. It must be called from the Swing EDT.
+	 */
+	private JPanel constructShutdownPanel() {
+		JPanel pane = new JPanel(new BorderLayout());
+		pane.setOpaque(false);
+		pane.setBorder(BorderFactory.createTitledBorder(
+				BorderFactory.createLineBorder(Color.black), "Shutdown and Restart Timeline"));
+
+		shutdownLog = new JTextArea(8, 50);
+		shutdownLog.setEditable(false);
+		shutdownLog.setFont(Environment.getConsoleFont());
+		pane.add(new JScrollPane(shutdownLog), BorderLayout.CENTER);
+
+		return pane;
+	}
+
+	/**
+	 * This method is not thread-safe. It must be called from the Swing EDT.
+	 */
+	private JPanel constructClassDataSharingPanel() {
+		JPanel pane = new JPanel(new BorderLayout());
+		pane.setOpaque(false);
+		pane.setBorder(BorderFactory.createTitledBorder(
+				BorderFactory.createLineBorder(Color.black), "Class Data Sharing"));
+
+		cdsReport = new JLabel();
+		pane.add(cdsReport, BorderLayout.CENTER);
 
 		return pane;
 	}
 
+	/**
+	 * This method is not thread-safe. It must be called from the Swing EDT.
+	 */
+	public void showClassDataSharingReport(String report) {
+		cdsReport.setText(report);
+	}
+
+	/**
+	 * This method is not thread-safe. It must be called from the Swing EDT.
+	 */
+	public void logShutdownEvent(String message) {
+		shutdownLog.append(message + '\n');
+		shutdownLog.setCaretPosition(shutdownLog.getDocument().getLength());
+	}
+
+	/**
+	 * This method is not thread-safe. It must be called from the Swing EDT.
+	 */
+	public void runningServersChanged() {
+		broadcast.runningServersChanged();
+	}
+
+	/**
+	 * This method is not thread-safe. It must be called from the Swing EDT.
+	 */
+	public void rollingRestartStarted() {
+		rollingRestart.setText("Cancel Rolling Restart");
+		rollingBatchSize.setEnabled(false);
+	}
+
+	/**
+	 * This method is not thread-safe. It must be called from the Swing EDT.
+	 */
+	public void rollingRestartEnded() {
+		rollingRestart.setText("Rolling Restart");
+		rollingBatchSize.setEnabled(true);
+	}
+
 	/**
 	 * This method is not thread-safe. It must be called from the Swing EDT.
 	 */
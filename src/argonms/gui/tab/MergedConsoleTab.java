@@ -0,0 +1,98 @@
+/*
+ * ArgonMS Server Manager - a process launcher and organizer utilizing Swing.
+ * Copyright (C) 2011-2013  GoldenKevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package argonms.gui.tab;
+
+import java.awt.FlowLayout;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.swing.JLabel;
+
+import argonms.gui.console.LineMerger;
+import argonms.gui.model.Model;
+
+/**
+ * Shows the output of every running server in one console, labeled with the
+ * server that each line came from and in the order the lines were received.
+ * @author GoldenKevin
+ */
+@SuppressWarnings("serial")
+public class MergedConsoleTab extends ConsoleTab {
+	//in lines. bounds how much output each server may have waiting for the EDT
+	private static final int SOURCE_CAPACITY = 4096;
+
+	private final LineMerger merger;
+	private final AtomicBoolean scheduled;
+	private final StringBuilder merged;
+	private char[] buffer;
+
+	/**
+	 * This method is not thread-safe. It must be called from the Swing EDT.
+	 */
+	public MergedConsoleTab(Model state) {
+		super(true);
+		setScrollbackLimit(state.getConfig().getConsoleScrollbackLines(), state.getConfig().getConsoleScrollbackChars());
+		scheduled = new AtomicBoolean(false);
+		merged = new StringBuilder();
+		buffer = new char[0];
+		merger = new LineMerger(SOURCE_CAPACITY, new Runnable() {
+			@Override
+			public void run() {
+				if (scheduled.compareAndSet(false, true))
+					OutputFlusher.getInstance().schedule(MergedConsoleTab.this);
+			}
+		});
+
+		optionsPane.setLayout(new FlowLayout(FlowLayout.LEADING));
+		optionsPane.add(new JLabel("Output of all running servers, in the order it was received"));
+		outputEnabled();
+	}
+
+	/**
+	 * This method is not thread-safe. It must be called from the Swing EDT.
+	 */
+	public LineMerger.Source addSource(String label) {
+		return merger.addSource(label);
+	}
+
+	/**
+	 * This method is not thread-safe. It must be called from the Swing EDT.
+	 */
+	@Override
+	boolean flushOutput(char[] scratch) {
+		//anything that arrives from here on has to schedule us again
+		scheduled.set(false);
+		merger.merge(merged);
+		int length = merged.length();
+		if (length > 0) {
+			if (buffer.length < length)
+				buffer = new char[Math.max(length, buffer.length * 2)];
+			merged.getChars(0, length, buffer, 0);
+			merged.setLength(0);
+			appendOutput(buffer, 0, length);
+		}
+		//lines that were held back need another flush, unless a reader thread
+		//already took care of it
+		return merger.hasHeldLines() && scheduled.compareAndSet(false, true);
+	}
+
+	@Override
+	protected void textEntered(String text) {
+		//input is never enabled
+	}
+}
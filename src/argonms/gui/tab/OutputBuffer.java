@@ -0,0 +1,117 @@
+/*
+ * ArgonMS Server Manager - a process launcher and organizer utilizing Swing.
+ * Copyright (C) 2011-2013  GoldenKevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package argonms.gui.tab;
+
+/**
+ * A bounded ring of characters that sits between a thread producing console
+ * output and the Swing EDT that eventually displays it. Producers block when
+ * the ring is full, which pushes back on the child process through its pipe
+ * instead of letting the launcher's heap grow without bound.
+ * @author GoldenKevin
+ */
+class OutputBuffer {
+	private final ConsoleTab owner;
+	private final char[] ring;
+	private int head;
+	private int size;
+	private boolean scheduled;
+
+	public OutputBuffer(ConsoleTab owner, int capacity) {
+		this.owner = owner;
+		ring = new char[capacity];
+	}
+
+	/**
+	 * Copies the given characters into the ring, waiting for the EDT to make
+	 * space if needed.
+	 */
+	public synchronized void write(char[] buf, int offset, int length) throws InterruptedException {
+		while (length > 0) {
+			//the ring can only be full if a flush is already scheduled, so
+			//there is always someone on the EDT that will wake us up
+			while (size == ring.length)
+				wait();
+			int tail = (head + size) % ring.length;
+			int count = Math.min(length, Math.min(ring.length - size, ring.length - tail));
+			System.arraycopy(buf, offset, ring, tail, count);
+			size += count;
+			offset += count;
+			length -= count;
+			if (!scheduled) {
+				scheduled = true;
+				OutputFlusher.getInstance().schedule(owner);
+			}
+		}
+	}
+
+	/**
+	 * Copies as many of the given characters into the ring as there is space
+	 * for, without waiting.
+	 * @return the number of characters copied
+	 */
+	public synchronized int offer(char[] buf, int offset, int length) {
+		int total = 0;
+		while (total < length && size < ring.length) {
+			int tail = (head + size) % ring.length;
+			int count = Math.min(length - total, Math.min(ring.length - size, ring.length - tail));
+			System.arraycopy(buf, offset + total, ring, tail, count);
+			size += count;
+			total += count;
+		}
+		if (total > 0 && !scheduled) {
+			scheduled = true;
+			OutputFlusher.getInstance().schedule(owner);
+		}
+		return total;
+	}
+
+	/**
+	 * Moves up to dest.length characters out of the ring and into dest.
+	 * @return the number of characters copied.
+	 */
+	public synchronized int drainTo(char[] dest) {
+		int total = 0;
+		while (size > 0 && total < dest.length) {
+			int count = Math.min(size, Math.min(dest.length - total, ring.length - head));
+			System.arraycopy(ring, head, dest, total, count);
+			head = (head + count) % ring.length;
+			size -= count;
+			total += count;
+		}
+		if (total > 0)
+			notifyAll();
+		return total;
+	}
+
+	/**
+	 * @return true if there are still characters left to be flushed, in which
+	 * case the buffer stays scheduled and the caller must flush it again.
+	 */
+	public synchronized boolean finishFlush() {
+		if (size == 0)
+			scheduled = false;
+		return scheduled;
+	}
+
+	public synchronized void clear() {
+		head = 0;
+		size = 0;
+		notifyAll();
+	}
+}
@@ -0,0 +1,88 @@
+/*
+ * ArgonMS Server Manager - a process launcher and organizer utilizing Swing.
+ * Copyright (C) 2011-2013  GoldenKevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package argonms.gui.tab;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import javax.swing.Timer;
+
+/**
+ * Drains the pending output of every ConsoleTab on the Swing EDT in a single
+ * pass at a fixed frame rate, so that no matter how many tabs are receiving
+ * output or how fast they are receiving it, the EDT only ever performs one
+ * document edit per tab per frame.
+ * @author GoldenKevin
+ */
+final class OutputFlusher implements ActionListener {
+	private static final int FLUSH_INTERVAL = 33; //in ms
+	//upper bound on the amount of text a single tab may append in one frame
+	private static final int MAX_CHARS_PER_FLUSH = 32 * 1024;
+
+	private static final OutputFlusher instance = new OutputFlusher();
+
+	private final Queue<ConsoleTab> dirty;
+	private final Timer timer;
+	private final char[] scratch; //should only be used in EDT, so we're safe
+
+	private OutputFlusher() {
+		dirty = new ConcurrentLinkedQueue<ConsoleTab>();
+		timer = new Timer(FLUSH_INTERVAL, this);
+		timer.setCoalesce(true);
+		scratch = new char[MAX_CHARS_PER_FLUSH];
+	}
+
+	/**
+	 * Queue the given tab to have its pending output flushed in the next
+	 * frame. A tab must only be queued once until it is done being flushed.
+	 */
+	public void schedule(ConsoleTab tab) {
+		dirty.add(tab);
+		if (!timer.isRunning())
+			timer.start();
+	}
+
+	/**
+	 * This method is not thread-safe. It must be called from the Swing EDT.
+	 */
+	@Override
+	public void actionPerformed(ActionEvent e) {
+		//only go through the tabs that were dirty at the start of the frame -
+		//tabs that still have output left are put back for the next frame
+		for (int i = dirty.size(); i > 0; --i) {
+			ConsoleTab tab = dirty.poll();
+			if (tab == null)
+				break;
+			if (tab.flushOutput(scratch))
+				dirty.add(tab);
+		}
+		if (dirty.isEmpty()) {
+			timer.stop();
+			//a tab may have been queued after we checked but before we stopped
+			if (!dirty.isEmpty())
+				timer.start();
+		}
+	}
+
+	public static OutputFlusher getInstance() {
+		return instance;
+	}
+}
@@ -0,0 +1,67 @@
+/*
+ * ArgonMS Server Manager - a process launcher and organizer utilizing Swing.
+ * Copyright (C) 2011-2013  GoldenKevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package argonms.gui.tab;
+
+/**
+ * Collects the output of a server from the time it was attached, so that the
+ * reply to a command that was sent to it can be shown on its own. Only so
+ * much of it is kept, since a reply is expected to be short.
+ *
+ * feed is only called by the thread that reads the output of the server, but
+ * the rest of the methods may be called from any thread.
+ * @author GoldenKevin
+ */
+public final class ReplyCollector {
+	private static final int MAX_REPLY_LENGTH = 64 * 1024;
+
+	private final StringBuilder reply;
+	private long lastOutputTime;
+	private boolean truncated;
+
+	public ReplyCollector() {
+		reply = new StringBuilder();
+	}
+
+	synchronized void feed(char[] buf, int offset, int length) {
+		lastOutputTime = System.currentTimeMillis();
+		int kept = Math.min(length, MAX_REPLY_LENGTH - reply.length());
+		reply.append(buf, offset, kept);
+		if (kept < length)
+			truncated = true;
+	}
+
+	/**
+	 * @return everything that was collected so far
+	 */
+	public synchronized String getReply() {
+		return truncated ? reply + "\n(cut off)" : reply.toString();
+	}
+
+	public synchronized int getLength() {
+		return reply.length();
+	}
+
+	/**
+	 * @return when the server last printed anything, or 0 if it did not
+	 * print anything yet
+	 */
+	public synchronized long getLastOutputTime() {
+		return lastOutputTime;
+	}
+}
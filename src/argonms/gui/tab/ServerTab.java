@@ -18,28 +18,49 @@
 
 package argonms.gui.tab;
 
+import java.awt.Color;
 import java.awt.Dimension;
+import java.awt.FlowLayout;
 import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.MouseEvent;
 import java.io.IOException;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
+import javax.swing.Box;
 import javax.swing.JButton;
+import javax.swing.JCheckBox;
+import javax.swing.JComponent;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JTabbedPane;
 import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import javax.swing.ToolTipManager;
 
-import argonms.gui.model.Environment;
+import argonms.gui.console.LineMerger;
+import argonms.gui.console.LogCapture;
+import argonms.gui.console.StackTraceFolder;
+import argonms.gui.model.ClassDataSharing;
+import argonms.gui.model.Configuration;
 import argonms.gui.model.Model;
+import argonms.gui.model.ServerProcess;
+import argonms.gui.model.ServerRole;
+import argonms.gui.monitor.ProcessSampler;
+import argonms.gui.monitor.ResourceHistory;
+import argonms.gui.monitor.Sparkline;
 
 /**
  * 
  * @author GoldenKevin
  */
 @SuppressWarnings("serial")
-public abstract class ServerTab extends StreamBasedConsoleTab {
+public abstract class ServerTab extends ConsoleTab {
 	private class StartStopButton extends JButton {
 		private boolean isOn;
 
@@ -51,10 +72,20 @@ public abstract class ServerTab extends StreamBasedConsoleTab {
 			addActionListener(new ActionListener() {
 				@Override
 				public void actionPerformed(ActionEvent arg0) {
-					if (isOn)
-						stopProcess();
+					if (!isOn) {
+						state.confirmPaths(Collections.singleton(ServerTab.this), new Runnable() {
+							@Override
+							public void run() {
+								//unless it was started in the meantime
+								if (!process.isRunning())
+									startProcess();
+							}
+						});
+					}
+					else if (state.isStopping(ServerTab.this))
+						killProcess();
 					else
-						startProcess();
+						state.stopProcess(ServerTab.this);
 				}
 			});
 
@@ -76,24 +107,166 @@ public abstract class ServerTab extends StreamBasedConsoleTab {
 			isOn = true;
 			setText("Stop");
 		}
+
+		/**
+		 * This method is not thread-safe. It must be called from the Swing EDT.
+		 */
+		public final void setStopping() {
+			isOn = true;
+			setText("Kill");
+		}
+	}
+
+	/**
+	 * Shows what the server is doing. Output is handed to it on the thread
+	 * that reads it, and everything else on the Swing EDT.
+	 */
+	private class Lifecycle implements ServerProcess.Listener, ServerProcess.OutputSink {
+		@Override
+		public List<String> launching(ServerProcess p) {
+			enableHistorySpill(getDescription(), state.getConfig().getConsoleHistoryLimit() * 1024L * 1024L);
+			clearOutput();
+			folder = new StackTraceFolder();
+			updateRestartCount();
+			sharing = state.getClassDataSharing().prepare(getRole());
+			return sharing != null ? sharing.getOptions() : Collections.<String>emptyList();
+		}
+
+		@Override
+		public void launchFailed(ServerProcess p, IOException e) {
+			if (sharing != null) {
+				state.getClassDataSharing().processEnded(sharing);
+				sharing = null;
+			}
+			//it never ran, so let the servers that wait on it know that it
+			//won't become ready rather than report it as started
+			state.processEnded(ServerTab.this);
+			JOptionPane.showMessageDialog(
+				ServerTab.this,
+				"Could not start up " + getDescription() + " server: " + e,
+				getDescription() + " server startup failed",
+				JOptionPane.ERROR_MESSAGE
+			);
+		}
+
+		@Override
+		public void processStarted(ServerProcess p) {
+			startSampling();
+			mergeSource = state.getMergedTab().addSource(getDescription());
+			inputEnabled();
+			outputEnabled();
+			state.processStarted(ServerTab.this);
+		}
+
+		@Override
+		public void processReady(ServerProcess p, boolean timedOut) {
+			if (!timedOut && sharing != null)
+				state.getClassDataSharing().recordStartup(sharing, System.currentTimeMillis() - p.getStartTime());
+			state.processReady(ServerTab.this);
+		}
+
+		@Override
+		public void processEnded(ServerProcess p, int exitValue) {
+			inputDisabled();
+			stopSampling();
+			if (sharing != null) {
+				state.getClassDataSharing().processEnded(sharing);
+				sharing = null;
+			}
+			state.processEnded(ServerTab.this);
+			updateRestartCount();
+		}
+
+		@Override
+		public void statusChanged(ServerProcess p, String status) {
+			changeStatus(status);
+			if (!p.isRunning())
+				button.setOff();
+			else if (p.isStopRequested())
+				button.setStopping();
+			else
+				button.setOn();
+		}
+
+		@Override
+		public void outputRead(char[] buf, int offset, int length) {
+			for (ReplyCollector collector : collectors)
+				collector.feed(buf, offset, length);
+			//the log keeps every trace in full
+			forwardOutput(folder.getBuffer(), folder.fold(buf, offset, length));
+		}
+
+		@Override
+		public boolean isHolding() {
+			return folder.isHolding();
+		}
+
+		@Override
+		public void outputQuiet() {
+			forwardOutput(folder.getBuffer(), folder.flush());
+		}
+
+		@Override
+		public void outputEnded() {
+			forwardOutput(folder.getBuffer(), folder.flush());
+			LineMerger.Source m = mergeSource;
+			if (m != null) {
+				mergeSource = null;
+				m.end();
+			}
+			outputDisabled();
+		}
 	}
 
 	protected Model state;
 
-	private final AtomicBoolean alreadyCleanedUp;
+	private final ServerProcess process;
 	private JLabel status;
+	private JLabel restarts;
+	private JCheckBox restartOnCrash;
 	private StartStopButton button;
 
-	private Process proc;
+	private volatile StackTraceFolder folder;
+	private volatile LineMerger.Source mergeSource;
+	private ClassDataSharing.Launch sharing;
+	private ResourceHistory resources;
+	private Timer resourceTimer;
+	private Sparkline cpuLine, memoryLine;
+	private final List<ReplyCollector> collectors;
 
-	protected ServerTab(Model state) {
-		alreadyCleanedUp = new AtomicBoolean(true);
+	/**
+	 * This method is not thread-safe. It must be called from the Swing EDT.
+	 * @param serverId the id of the server if it is a game server, otherwise
+	 * ignored
+	 */
+	protected ServerTab(Model state, ServerRole role, byte serverId, String description) {
+		collectors = new CopyOnWriteArrayList<ReplyCollector>();
+		folder = new StackTraceFolder();
 
 		optionsPane.setLayout(new GridBagLayout());
 
 		this.state = state;
+		setScrollbackLimit(state.getConfig().getConsoleScrollbackLines(), state.getConfig().getConsoleScrollbackChars());
+		Lifecycle lifecycle = new Lifecycle();
+		process = new ServerProcess(state, role, serverId, description, lifecycle, lifecycle);
 
-		status = new JLabel();
+		status = new JLabel() {
+			@Override
+			public String getToolTipText(MouseEvent e) {
+				return getLogStatistics();
+			}
+		};
+		ToolTipManager.sharedInstance().registerComponent(status);
+		Configuration config = state.getConfig();
+		restarts = new JLabel();
+		restartOnCrash = new JCheckBox("Restart on crash", config.isRestartEnabled());
+		restartOnCrash.setOpaque(false);
+		restartOnCrash.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				process.setRestartOnCrash(restartOnCrash.isSelected());
+			}
+		});
 		button = new StartStopButton();
 
 		GridBagConstraints c = new GridBagConstraints();
@@ -101,14 +274,16 @@ public abstract class ServerTab extends StreamBasedConsoleTab {
 		c.gridx = 0;
 		c.gridy = 0;
 		c.weightx = 1.0;
-		c.gridwidth = GridBagConstraints.RELATIVE;
 		optionsPane.add(status, c);
-		c.fill = GridBagConstraints.HORIZONTAL;
 		c.gridx = 1;
-		c.gridy = 0;
 		c.weightx = 0;
+		optionsPane.add(restarts, c);
+		c.gridx = 2;
+		optionsPane.add(restartOnCrash, c);
+		c.gridx = 3;
 		c.gridwidth = GridBagConstraints.REMAINDER;
 		optionsPane.add(button, c);
+		updateRestartCount();
 
 		changeStatus("Ready to start");
 	}
@@ -120,59 +295,252 @@ public abstract class ServerTab extends StreamBasedConsoleTab {
 		status.setText("Server Status: " + message);
 	}
 
-	protected abstract String getDescription();
-	protected abstract String[] getCommand();
+	/**
+	 * This method is not thread-safe. It must be called from the Swing EDT.
+	 */
+	private String getLogStatistics() {
+		LogCapture capture = process.getLogCapture();
+		if (capture == null)
+			return null;
+		return "<html>Log: " + capture.getCurrentFile().getPath()
+				+ "<br>Written: " + capture.getWrittenChars() + " characters in " + capture.getBatches() + " batches"
+				+ "<br>Waiting: " + capture.getPendingChars() + " characters (peak " + capture.getPeakPendingChars() + ")"
+				+ "<br>Dropped: " + capture.getDroppedChars() + " characters in " + capture.getDroppedChunks() + " chunks</html>";
+	}
 
 	/**
 	 * This method is not thread-safe. It must be called from the Swing EDT.
 	 */
-	public void startProcess() {
-		clearOutput();
-		button.setOn();
-		changeStatus("Running");
-
-		try {
-			ProcessBuilder pb = new ProcessBuilder(Environment.buildCommand(getCommand()));
-			pb.redirectErrorStream(true);
-			alreadyCleanedUp.set(false);
-			proc = pb.start();
-			registerReaderStream(proc.getOutputStream());
-			registerWriterStream(proc.getInputStream());
-		} catch (IOException e) {
-			System.err.println("Error starting up " + getDescription() + " server");
-			e.printStackTrace();
-			JOptionPane.showMessageDialog(
-				this,
-				"Could not start up " + getDescription() + " server: " + e,
-				getDescription() + " server startup failed",
-				JOptionPane.ERROR_MESSAGE
-			);
+	@Override
+	public void dispose() {
+		process.dispose();
+		stopSampling();
+		super.dispose();
+	}
+
+	/**
+	 * Creates the component to show in place of the title of this tab, which
+	 * also charts the recent CPU and memory use of the server.
+	 *
+	 * This method is not thread-safe. It must be called from the Swing EDT.
+	 */
+	public JComponent createTabHeader(String title) {
+		cpuLine = new Sparkline(ResourceHistory.Metric.CPU, 100, new Color(0, 128, 0));
+		memoryLine = new Sparkline(ResourceHistory.Metric.HEAP_USED, 0, new Color(0, 0, 192));
+		memoryLine.setMetric(ResourceHistory.Metric.HEAP_USED, ResourceHistory.Metric.HEAP_MAX);
+		//no tool tips on the children - a component that listens to the mouse
+		//would keep clicks from selecting the tab
+		JPanel header = new JPanel(new FlowLayout(FlowLayout.LEADING, 0, 0));
+		header.setOpaque(false);
+		header.add(new JLabel(title));
+		if (ProcessSampler.getInstance().isSupported()) {
+			header.add(Box.createRigidArea(new Dimension(5, 0)));
+			header.add(cpuLine);
+			header.add(Box.createRigidArea(new Dimension(2, 0)));
+			header.add(memoryLine);
 		}
-		state.processStarted(this);
+		return header;
 	}
 
-	public void stopProcess() {
-		proc.destroy();
+	private static String formatBytes(double bytes) {
+		if (bytes >= 1024 * 1024 * 1024)
+			return String.format("%.1f GB", bytes / (1024 * 1024 * 1024));
+		if (bytes >= 1024 * 1024)
+			return String.format("%.1f MB", bytes / (1024 * 1024));
+		return String.format("%.1f KB", bytes / 1024);
 	}
 
-	@Override
-	protected void streamClosed() {
-		if (alreadyCleanedUp.compareAndSet(false, true)) {
-			cleanup();
-			try {
-				proc.waitFor();
-			} catch (InterruptedException e) {
-				//propagate it further upwards
-				Thread.currentThread().interrupt();
+	/**
+	 * This method is not thread-safe. It must be called from the Swing EDT.
+	 */
+	private String getResourceSummary() {
+		StringBuilder sb = new StringBuilder("<html>Running");
+		if (resources.getSampleCount(ResourceHistory.Metric.CPU) == 0)
+			return sb.append("</html>").toString();
+		sb.append(String.format("<br>CPU: %.1f%%", resources.getLatest(ResourceHistory.Metric.CPU)));
+		sb.append("<br>Resident memory: ").append(formatBytes(resources.getLatest(ResourceHistory.Metric.RSS)));
+		if (resources.hasJvmData() && resources.getSampleCount(ResourceHistory.Metric.HEAP_USED) != 0) {
+			sb.append("<br>Heap: ").append(formatBytes(resources.getLatest(ResourceHistory.Metric.HEAP_USED)));
+			sb.append(" of ").append(formatBytes(resources.getLatest(ResourceHistory.Metric.HEAP_MAX)));
+			sb.append(String.format("<br>Garbage collection: %.1f%% of the time", resources.getLatest(ResourceHistory.Metric.GC)));
+		}
+		sb.append("<br>Threads: ").append((int) resources.getLatest(ResourceHistory.Metric.THREADS));
+		if (resources.hasIoData()) {
+			sb.append("<br>I/O: ").append(formatBytes(resources.getLatest(ResourceHistory.Metric.READ_RATE))).append("/s read, ");
+			sb.append(formatBytes(resources.getLatest(ResourceHistory.Metric.WRITE_RATE))).append("/s written");
+		}
+		return sb.append("</html>").toString();
+	}
+
+	/**
+	 * This method is not thread-safe. It must be called from the Swing EDT.
+	 */
+	private void refreshResources() {
+		//fall back to the resident set if the heap can't be looked at
+		if (resources.hasJvmData())
+			memoryLine.setMetric(ResourceHistory.Metric.HEAP_USED, ResourceHistory.Metric.HEAP_MAX);
+		else
+			memoryLine.setMetric(ResourceHistory.Metric.RSS, null);
+		cpuLine.repaint();
+		memoryLine.repaint();
+		JTabbedPane pane = (JTabbedPane) SwingUtilities.getAncestorOfClass(JTabbedPane.class, this);
+		if (pane != null && pane.indexOfComponent(this) != -1)
+			pane.setToolTipTextAt(pane.indexOfComponent(this), getResourceSummary());
+	}
+
+	/**
+	 * This method is not thread-safe. It must be called from the Swing EDT.
+	 */
+	private void startSampling() {
+		resources = ProcessSampler.getInstance().watch(process.getProcess());
+		if (resources == null || cpuLine == null)
+			return;
+		cpuLine.setHistory(resources);
+		memoryLine.setHistory(resources);
+		resourceTimer = new Timer(ProcessSampler.SAMPLE_INTERVAL, new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				refreshResources();
 			}
-			SwingUtilities.invokeLater(new Runnable () {
-				@Override
-				public void run() {
-					button.setOff();
-					changeStatus("Exited with status code " + proc.exitValue());
-					state.processEnded(ServerTab.this);
-				}
-			});
+		});
+		resourceTimer.start();
+	}
+
+	/**
+	 * Stops sampling the resource use of the server. The charts keep showing
+	 * the last samples until the server is started again.
+	 *
+	 * This method is not thread-safe. It must be called from the Swing EDT.
+	 */
+	private void stopSampling() {
+		if (resourceTimer != null) {
+			resourceTimer.stop();
+			resourceTimer = null;
+		}
+		if (resources != null) {
+			ProcessSampler.getInstance().unwatch(resources);
+			resources = null;
 		}
 	}
+
+	/**
+	 * @return the lifecycle of the server that this tab shows
+	 */
+	public ServerProcess getServerProcess() {
+		return process;
+	}
+
+	public ServerRole getRole() {
+		return process.getRole();
+	}
+
+	public String getDescription() {
+		return process.getDescription();
+	}
+
+	/**
+	 * Shows why the server is not started yet while it is waiting on another
+	 * one.
+	 *
+	 * This method is not thread-safe. It must be called from the Swing EDT.
+	 */
+	public void showPendingStatus(String message) {
+		process.showPendingStatus(message);
+	}
+
+	/**
+	 * This method is not thread-safe. It must be called from the Swing EDT.
+	 * @return whether the server was started but did not signal that it is
+	 * ready to accept connections yet
+	 */
+	public boolean isAwaitingReady() {
+		return process.isAwaitingReady();
+	}
+
+	private void forwardOutput(char[] buf, int length) {
+		if (length == 0)
+			return;
+		LineMerger.Source m = mergeSource;
+		if (m != null)
+			m.write(buf, 0, length);
+		writeToOutput(buf, 0, length);
+	}
+
+	@Override
+	protected void textEntered(String text) {
+		process.sendInput(text);
+	}
+
+	/**
+	 * Also hand all output that is read from now on to the given collector,
+	 * until it is removed again. This method is thread-safe.
+	 */
+	public void addReplyCollector(ReplyCollector collector) {
+		collectors.add(collector);
+	}
+
+	/**
+	 * This method is thread-safe.
+	 */
+	public void removeReplyCollector(ReplyCollector collector) {
+		collectors.remove(collector);
+	}
+
+	/**
+	 * Writes the given console command to the server. This method is
+	 * thread-safe, but it blocks for as long as the server does not read its
+	 * input, so it is best not called from the Swing EDT.
+	 * @return false if the server is not running or could not be written to
+	 */
+	public boolean sendCommand(String command) {
+		return process.sendInput(command + '\n');
+	}
+
+	/**
+	 * This method is not thread-safe. It must be called from the Swing EDT.
+	 */
+	private void updateRestartCount() {
+		if (process.isCrashLooping()) {
+			String reason = "Gave up restarting after " + process.getRecentRestarts()
+					+ " restarts in the last " + state.getConfig().getRestartWindow()
+					+ " minutes - start it by hand once the problem is fixed";
+			restarts.setText("Restarts: " + process.getTotalRestarts() + " (gave up)  ");
+			restarts.setToolTipText(reason);
+			JTabbedPane pane = (JTabbedPane) SwingUtilities.getAncestorOfClass(JTabbedPane.class, this);
+			if (pane != null && pane.indexOfComponent(this) != -1)
+				pane.setToolTipTextAt(pane.indexOfComponent(this), "Not running. " + reason);
+		} else {
+			restarts.setText("Restarts: " + process.getTotalRestarts() + "  ");
+			restarts.setToolTipText(process.getRecentRestarts() + " of at most "
+					+ state.getConfig().getRestartMax() + " in the last "
+					+ state.getConfig().getRestartWindow() + " minutes");
+		}
+	}
+
+	/**
+	 * Do not restart the server if it is waiting to be restarted after a
+	 * crash.
+	 *
+	 * This method is not thread-safe. It must be called from the Swing EDT.
+	 */
+	public void cancelRestart() {
+		process.cancelRestart();
+	}
+
+	/**
+	 * This method is not thread-safe. It must be called from the Swing EDT.
+	 */
+	public void startProcess() {
+		process.start();
+	}
+
+	/**
+	 * Forcibly ends the server, as a last resort when it does not shut itself
+	 * down.
+	 *
+	 * This method is not thread-safe. It must be called from the Swing EDT.
+	 */
+	public void killProcess() {
+		process.kill();
+	}
 }
@@ -18,8 +18,8 @@
 
 package argonms.gui.tab;
 
-import argonms.gui.model.Environment;
 import argonms.gui.model.Model;
+import argonms.gui.model.ServerRole;
 
 /**
  * 
@@ -31,29 +31,6 @@ public class ShopServerTab extends ServerTab {
 	 * This method is not thread-safe. It must be called from the Swing EDT.
 	 */
 	public ShopServerTab(Model state) {
-		super(state);
-	}
-
-	@Override
-	protected String getDescription() {
-		return "Center";
-	}
-
-	@Override
-	protected String[] getCommand() {
-		return new String[] {
-			Environment.JAVA_DIR,
-			"-classpath", state.getConfig().getClasspath(),
-			"-Xmx" + Environment.MAX_HEAP_SIZE + "m",
-			"-Dargonms.shop.config.file=" + state.getConfig().getShopServerPropertiesPath(),
-			"-Djava.util.logging.config.file=" + state.getConfig().getLoggerPropertiesPath(),
-			"-Dargonms.db.config.file=" + state.getConfig().getDatabasePropertiesPath(),
-			"-Dargonms.ct.macbanblacklist.file=" + state.getConfig().getMacBanBlacklistPath(),
-			"-Dargonms.shop.blockedserials.file=" + state.getConfig().getCashShopBlockedSerialsPath(),
-			"-Dargonms.shop.commodityoverride.file=" + state.getConfig().getCashShopCommodityOverridesPath(),
-			"-Dargonms.shop.limitedcommodity.file=" + state.getConfig().getCashShopLimitedCommoditiesPath(),
-			"-Dargonms.data.dir=" + state.getConfig().getWzPath(),
-			"argonms.shop.ShopServer"
-		};
+		super(state, ServerRole.SHOP, (byte) 0, "Shop");
 	}
 }
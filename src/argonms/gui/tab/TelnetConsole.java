@@ -0,0 +1,176 @@
+/*
+ * ArgonMS Server Manager - a process launcher and organizer utilizing Swing.
+ * Copyright (C) 2011-2013  GoldenKevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package argonms.gui.tab;
+
+import java.awt.GridBagConstraints;
+import java.awt.GridBagLayout;
+import java.awt.Toolkit;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+import javax.swing.JButton;
+import javax.swing.JLabel;
+import javax.swing.SwingUtilities;
+
+import argonms.gui.telnet.TelnetSession;
+
+/**
+ * The console of a single telnet session in a TelnetTab.
+ * @author GoldenKevin
+ */
+@SuppressWarnings("serial")
+class TelnetConsole extends ConsoleTab {
+	private final TelnetTab owner;
+	private final String host;
+	private final int port;
+	private final TelnetSession session;
+	private boolean connected, wanted;
+	private JLabel status;
+	private JButton toggle;
+
+	/**
+	 * Connects to the given server right away.
+	 *
+	 * This method is not thread-safe. It must be called from the Swing EDT.
+	 */
+	public TelnetConsole(TelnetTab owner, String host, int port, int scrollbackLines, int scrollbackChars) {
+		this.owner = owner;
+		this.host = host;
+		this.port = port;
+		setScrollbackLimit(scrollbackLines, scrollbackChars);
+
+		status = new JLabel();
+		toggle = new JButton("Disconnect");
+		toggle.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				if (wanted)
+					disconnect();
+				else
+					connect();
+			}
+		});
+		JButton close = new JButton("Close");
+		close.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				TelnetConsole.this.owner.closeSession(TelnetConsole.this);
+			}
+		});
+		optionsPane.setLayout(new GridBagLayout());
+		GridBagConstraints c = new GridBagConstraints();
+		c.fill = GridBagConstraints.HORIZONTAL;
+		c.weightx = 1.0;
+		optionsPane.add(status, c);
+		c.weightx = 0;
+		optionsPane.add(toggle, c);
+		optionsPane.add(close, c);
+
+		session = new TelnetSession(new TelnetSession.Listener() {
+			@Override
+			public int output(char[] buf, int offset, int length) {
+				return offerOutput(buf, offset, length);
+			}
+
+			@Override
+			public void statusChanged(final String message, final boolean connected) {
+				SwingUtilities.invokeLater(new Runnable() {
+					@Override
+					public void run() {
+						connectionChanged(message, connected);
+					}
+				});
+			}
+		});
+		connect();
+	}
+
+	/**
+	 * This method is not thread-safe. It must be called from the Swing EDT.
+	 */
+	private void connect() {
+		wanted = true;
+		toggle.setText("Disconnect");
+		clearOutput();
+		changeStatus("Connecting to " + getTarget());
+		session.connect(host, port);
+	}
+
+	/**
+	 * This method is not thread-safe. It must be called from the Swing EDT.
+	 */
+	private void disconnect() {
+		wanted = false;
+		toggle.setText("Reconnect");
+		session.disconnect();
+	}
+
+	/**
+	 * This method is not thread-safe. It must be called from the Swing EDT.
+	 */
+	private void connectionChanged(String message, boolean nowConnected) {
+		changeStatus(message);
+		if (nowConnected != connected) {
+			connected = nowConnected;
+			if (connected) {
+				outputEnabled();
+				inputEnabled();
+			} else {
+				outputDisabled();
+				inputDisabled();
+			}
+			owner.sessionChanged(this);
+		}
+	}
+
+	/**
+	 * This method is not thread-safe. It must be called from the Swing EDT.
+	 */
+	private void changeStatus(String message) {
+		status.setText("Connect Status: " + message);
+	}
+
+	public String getTarget() {
+		return host + ':' + port;
+	}
+
+	/**
+	 * This method is not thread-safe. It must be called from the Swing EDT.
+	 */
+	public boolean isConnected() {
+		return connected;
+	}
+
+	/**
+	 * This method is not thread-safe. It must be called from the Swing EDT.
+	 */
+	@Override
+	public void dispose() {
+		session.close();
+		super.dispose();
+	}
+
+	@Override
+	protected void textEntered(String text) {
+		if (!session.send(text) && connected) {
+			Toolkit.getDefaultToolkit().beep();
+			changeStatus("Input was not sent - " + getTarget() + " is not reading what was sent before");
+		}
+	}
+}
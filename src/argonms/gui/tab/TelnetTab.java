@@ -18,40 +18,55 @@
 
 package argonms.gui.tab;
 
-import java.awt.CardLayout;
+import java.awt.BorderLayout;
+import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
-import java.awt.event.MouseAdapter;
-import java.awt.event.MouseEvent;
+import java.awt.Insets;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
+import javax.swing.BorderFactory;
+import javax.swing.JButton;
 import javax.swing.JLabel;
+import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.JTabbedPane;
+import javax.swing.JTextField;
 
 import argonms.gui.model.Model;
 
-//TODO: implement
 /**
- * 
+ * Consoles for the telnet admin interfaces of the servers, any number of
+ * which can be open at once, e.g. to watch the center server of every world.
+ * Each session is shown in a console of its own, and every session is served
+ * by the one shared TelnetSelector thread, so the number of threads stays the
+ * same no matter how many are open.
  * @author GoldenKevin
  */
 @SuppressWarnings("serial")
-public class TelnetTab extends ConsoleTab {
-	private static final String CONNECT_PANEL_KEY = "off", STATUS_PANEL_KEY = "on";
-
-	private CardLayout layout;
-	private boolean connected;
-	private JLabel status;
+public class TelnetTab extends JPanel {
+	private final Model state;
+	private final JTabbedPane sessions;
+	private final List<TelnetConsole> consoles;
+	private JTextField host, port;
 
 	/**
 	 * This method is not thread-safe. It must be called from the Swing EDT.
 	 */
 	public TelnetTab(Model state) {
-		layout = new CardLayout();
-		optionsPane.setLayout(layout);
-
-		optionsPane.add(constructConnectPanel(), CONNECT_PANEL_KEY);
-		optionsPane.add(constructStatusPanel(), STATUS_PANEL_KEY);
+		this.state = state;
+		consoles = new ArrayList<TelnetConsole>();
+		setOpaque(false);
+		setLayout(new BorderLayout());
+		setBorder(BorderFactory.createEmptyBorder(5, 5, 0, 5));
 
-		layout.show(optionsPane, CONNECT_PANEL_KEY);
+		add(constructConnectPanel(), BorderLayout.PAGE_START);
+		sessions = new JTabbedPane();
+		add(sessions, BorderLayout.CENTER);
 	}
 
 	/**
@@ -61,37 +76,141 @@ public class TelnetTab extends ConsoleTab {
 		JPanel pane = new JPanel();
 		pane.setLayout(new GridBagLayout());
 		pane.setOpaque(false);
+
+		host = new JTextField(state.getConfig().getTelnetHost(), 30);
+		host.setToolTipText("Separate several hosts with commas to connect to all of them. A host may be followed by :port");
+		port = new JTextField(Integer.toString(state.getConfig().getTelnetPort()), 5);
+		JButton connect = new JButton("Connect");
+		ActionListener doConnect = new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				connect();
+			}
+		};
+		connect.addActionListener(doConnect);
+		host.addActionListener(doConnect);
+		port.addActionListener(doConnect);
+
+		GridBagConstraints c = new GridBagConstraints();
+		c.insets = new Insets(0, 5, 5, 5);
+		pane.add(new JLabel("Host:"), c);
+		pane.add(host, c);
+		pane.add(new JLabel("Port:"), c);
+		pane.add(port, c);
+		pane.add(connect, c);
 		return pane;
 	}
 
 	/**
-	 * This method is not thread-safe. It must be called from the Swing EDT.
+	 * @return the port of the given "host" or "host:port", or defaultPort if
+	 * it has none
 	 */
-	private JPanel constructStatusPanel() {
-		JPanel pane = new JPanel();
-		pane.setLayout(new GridBagLayout());
-		pane.setOpaque(false);
+	private static int parsePort(String target, int defaultPort) {
+		int colon = target.lastIndexOf(':');
+		if (colon == -1)
+			return defaultPort;
+		int parsed = Integer.parseInt(target.substring(colon + 1).trim());
+		if (parsed <= 0 || parsed > 0xFFFF)
+			throw new NumberFormatException();
+		return parsed;
+	}
 
-		status = new JLabel();
-		status.addMouseListener(new MouseAdapter() {
-			@Override
-			public void mouseClicked(MouseEvent e) {
-				if (!connected)
-					layout.show(optionsPane, CONNECT_PANEL_KEY);
+	private static String parseHost(String target) {
+		int colon = target.lastIndexOf(':');
+		return (colon == -1 ? target : target.substring(0, colon)).trim();
+	}
+
+	/**
+	 * Opens a session to every host that was entered.
+	 *
+	 * This method is not thread-safe. It must be called from the Swing EDT.
+	 */
+	private void connect() {
+		String hosts = host.getText().trim();
+		int defaultPort;
+		List<String> hostNames = new ArrayList<String>();
+		List<Integer> portNumbers = new ArrayList<Integer>();
+		try {
+			defaultPort = Integer.parseInt(port.getText().trim());
+			if (defaultPort <= 0 || defaultPort > 0xFFFF)
+				throw new NumberFormatException();
+			for (String target : hosts.split(",")) {
+				if (parseHost(target).isEmpty())
+					continue;
+				hostNames.add(parseHost(target));
+				portNumbers.add(Integer.valueOf(parsePort(target, defaultPort)));
 			}
-		});
-		return pane;
+		} catch (NumberFormatException e) {
+			JOptionPane.showMessageDialog(this, "Each port must be a number from 1 to 65535.", "Invalid port", JOptionPane.ERROR_MESSAGE);
+			return;
+		}
+		if (hostNames.isEmpty())
+			return;
+		//remember it for the next time
+		Map<String, String> changes = new HashMap<String, String>();
+		if (!hosts.equals(state.getConfig().getTelnetHost()))
+			changes.put("argonms.gui.telnet.host", hosts);
+		if (defaultPort != state.getConfig().getTelnetPort())
+			changes.put("argonms.gui.telnet.port", Integer.toString(defaultPort));
+		if (!changes.isEmpty()) {
+			state.getConfig().updateProps(changes, this);
+			state.getConfig().applyChanges(changes, state, this);
+		}
+
+		TelnetConsole last = null;
+		for (int i = 0; i < hostNames.size(); i++) {
+			last = new TelnetConsole(this, hostNames.get(i), portNumbers.get(i).intValue(),
+					state.getConfig().getConsoleScrollbackLines(), state.getConfig().getConsoleScrollbackChars());
+			consoles.add(last);
+			sessions.addTab(last.getTarget(), null, last, "Connecting");
+		}
+		sessions.setSelectedComponent(last);
+		sessionChanged(last);
+	}
+
+	/**
+	 * Must be called when a session connects or disconnects.
+	 *
+	 * This method is not thread-safe. It must be called from the Swing EDT.
+	 */
+	void sessionChanged(TelnetConsole console) {
+		int index = sessions.indexOfComponent(console);
+		if (index != -1)
+			sessions.setToolTipTextAt(index, console.isConnected() ? "Connected" : "Not connected");
+		int connected = 0;
+		for (TelnetConsole open : consoles)
+			if (open.isConnected())
+				connected++;
+		index = state.getView().indexOfComponent(this);
+		if (index != -1)
+			state.getView().setToolTipTextAt(index, connected == 0 ? "Not connected"
+					: connected + " of " + consoles.size() + " sessions connected");
+	}
+
+	/**
+	 * This method is not thread-safe. It must be called from the Swing EDT.
+	 */
+	void closeSession(TelnetConsole console) {
+		consoles.remove(console);
+		sessions.remove(console);
+		console.dispose();
+		sessionChanged(console);
 	}
 
 	/**
+	 * Closes every session.
+	 *
 	 * This method is not thread-safe. It must be called from the Swing EDT.
 	 */
-	private void changeStatus(String message) {
-		status.setText("Connect Status: " + message);
+	public void dispose() {
+		for (TelnetConsole console : consoles)
+			console.dispose();
+		consoles.clear();
+		sessions.removeAll();
 	}
 
-	@Override
-	protected void textEntered(String text) {
-		
+	public void onLookAndFeelChanged() {
+		for (TelnetConsole console : consoles)
+			console.onLookAndFeelChanged();
 	}
 }
@@ -0,0 +1,166 @@
+/*
+ * ArgonMS Server Manager - a process launcher and organizer utilizing Swing.
+ * Copyright (C) 2011-2013  GoldenKevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package argonms.gui.telnet;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Separates the data of a telnet stream from the commands that are
+ * interleaved with it (RFC 854), and answers the option negotiations of the
+ * server. Only the server echoing our input and suppressing go ahead are
+ * agreed to, since all we do is send whole lines and show what comes back.
+ * Subnegotiations are skipped over.
+ *
+ * This class is not thread-safe. Each instance is meant to only be used by the
+ * thread that reads the connection.
+ * @author GoldenKevin
+ */
+class TelnetCodec {
+	static final int SE = 240, SB = 250;
+	static final int WILL = 251, WONT = 252, DO = 253, DONT = 254, IAC = 255;
+	static final int OPTION_ECHO = 1, OPTION_SGA = 3;
+
+	private static final int DATA = 0, COMMAND = 1, OPTION = 2, SUBNEGOTIATION = 3, SUBNEGOTIATION_IAC = 4;
+
+	//the options of the server that we agreed to
+	private final boolean[] remoteEnabled;
+	private int state;
+	private int command;
+	//a CR is followed by either LF or NUL, which only leaves LF worth keeping
+	private boolean afterCr;
+
+	public TelnetCodec() {
+		remoteEnabled = new boolean[256];
+	}
+
+	/**
+	 * Forget everything about the previous connection.
+	 */
+	public void reset() {
+		for (int i = 0; i < remoteEnabled.length; i++)
+			remoteEnabled[i] = false;
+		state = DATA;
+		afterCr = false;
+	}
+
+	private static void putCommand(ByteBuffer replies, int command, int option) {
+		replies.put((byte) IAC).put((byte) command).put((byte) option);
+	}
+
+	private void negotiate(int command, int option, ByteBuffer replies) {
+		switch (command) {
+			case WILL:
+				if (option == OPTION_ECHO || option == OPTION_SGA) {
+					//only acknowledge changes, so that we don't loop
+					if (!remoteEnabled[option]) {
+						remoteEnabled[option] = true;
+						putCommand(replies, DO, option);
+					}
+				} else {
+					putCommand(replies, DONT, option);
+				}
+				break;
+			case WONT:
+				if (remoteEnabled[option]) {
+					remoteEnabled[option] = false;
+					putCommand(replies, DONT, option);
+				}
+				break;
+			case DO:
+				//we don't offer any options of our own
+				putCommand(replies, WONT, option);
+				break;
+			case DONT:
+				//already off
+				break;
+		}
+	}
+
+	/**
+	 * Consumes everything in the given buffer.
+	 * @param in what was read from the connection
+	 * @param data receives the data bytes. must have at least as much room as
+	 * is remaining in in
+	 * @param replies receives the answers to negotiations that must be sent
+	 * to the server. must have at least as much room as is remaining in in
+	 */
+	public void receive(ByteBuffer in, ByteBuffer data, ByteBuffer replies) {
+		while (in.hasRemaining()) {
+			int b = in.get() & 0xFF;
+			switch (state) {
+				case DATA:
+					if (b == IAC) {
+						state = COMMAND;
+					} else if (b == '\r') {
+						afterCr = true;
+					} else {
+						if (b != 0 || !afterCr)
+							data.put((byte) b);
+						afterCr = false;
+					}
+					break;
+				case COMMAND:
+					if (b == IAC) {
+						//an escaped 255 data byte
+						data.put((byte) IAC);
+						state = DATA;
+					} else if (b == WILL || b == WONT || b == DO || b == DONT) {
+						command = b;
+						state = OPTION;
+					} else if (b == SB) {
+						state = SUBNEGOTIATION;
+					} else {
+						//GA, NOP, and the rest have nothing for us to do
+						state = DATA;
+					}
+					break;
+				case OPTION:
+					negotiate(command, b, replies);
+					state = DATA;
+					break;
+				case SUBNEGOTIATION:
+					if (b == IAC)
+						state = SUBNEGOTIATION_IAC;
+					break;
+				case SUBNEGOTIATION_IAC:
+					state = b == SE ? DATA : SUBNEGOTIATION;
+					break;
+			}
+		}
+	}
+
+	/**
+	 * @return the given line of input as it has to be sent to the server,
+	 * i.e. with newlines as CR LF and 255 bytes escaped
+	 */
+	public static ByteBuffer encode(String text, Charset charset) {
+		byte[] bytes = text.getBytes(charset);
+		ByteBuffer out = ByteBuffer.allocate(bytes.length * 2);
+		for (byte b : bytes) {
+			if (b == '\n')
+				out.put((byte) '\r');
+			else if ((b & 0xFF) == IAC)
+				out.put((byte) IAC);
+			out.put(b);
+		}
+		out.flip();
+		return out;
+	}
+}
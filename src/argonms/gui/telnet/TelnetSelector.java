@@ -0,0 +1,154 @@
+/*
+ * ArgonMS Server Manager - a process launcher and organizer utilizing Swing.
+ * Copyright (C) 2011-2013  GoldenKevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package argonms.gui.telnet;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Does the I/O of every TelnetSession on a single thread, no matter how many
+ * sessions there are. Sessions are added the first time that they ask for
+ * something, and dropped once they are closed.
+ * @author GoldenKevin
+ */
+public final class TelnetSelector implements Runnable {
+	private static TelnetSelector instance;
+
+	private final Selector selector;
+	//sessions that asked for something since the last select
+	private final Queue<TelnetSession> updated;
+	//only touched by the selector thread
+	private final Set<TelnetSession> sessions;
+
+	private TelnetSelector() throws IOException {
+		selector = Selector.open();
+		updated = new ConcurrentLinkedQueue<TelnetSession>();
+		sessions = new HashSet<TelnetSession>();
+		Thread t = new Thread(this, "telnet-selector");
+		t.setDaemon(true);
+		t.start();
+	}
+
+	/**
+	 * Have the selector thread act on what the given session was asked to do.
+	 */
+	void update(TelnetSession session) {
+		updated.add(session);
+		selector.wakeup();
+	}
+
+	/**
+	 * Disconnects a session that threw, so that one broken session does not
+	 * take down every other one along with the selector thread.
+	 */
+	private void failed(TelnetSession session, RuntimeException e) {
+		System.err.println("Error in telnet session");
+		e.printStackTrace();
+		sessions.remove(session);
+		session.failed(e);
+	}
+
+	private void processUpdates() {
+		TelnetSession session;
+		while ((session = updated.poll()) != null) {
+			sessions.add(session);
+			try {
+				session.update(selector);
+			} catch (RuntimeException e) {
+				failed(session, e);
+				continue;
+			}
+			if (session.isClosed())
+				sessions.remove(session);
+		}
+	}
+
+	private void processSelected() {
+		for (Iterator<SelectionKey> iter = selector.selectedKeys().iterator(); iter.hasNext(); ) {
+			SelectionKey key = iter.next();
+			iter.remove();
+			if (!key.isValid())
+				continue;
+			TelnetSession session = (TelnetSession) key.attachment();
+			try {
+				session.handle(key);
+			} catch (RuntimeException e) {
+				failed(session, e);
+			}
+		}
+	}
+
+	/**
+	 * @return the time at which the sessions should be ticked again at the
+	 * latest, or Long.MAX_VALUE if there is nothing to wait for
+	 */
+	private long tick(long now) {
+		long deadline = Long.MAX_VALUE;
+		//copied, since a session that fails is removed
+		for (TelnetSession session : new ArrayList<TelnetSession>(sessions)) {
+			try {
+				deadline = Math.min(deadline, session.tick(selector, now));
+			} catch (RuntimeException e) {
+				failed(session, e);
+			}
+		}
+		return deadline;
+	}
+
+	@Override
+	public void run() {
+		long deadline = Long.MAX_VALUE;
+		while (true) {
+			try {
+				long now = System.currentTimeMillis();
+				if (deadline == Long.MAX_VALUE)
+					selector.select();
+				else if (deadline > now)
+					selector.select(deadline - now);
+				else
+					selector.selectNow();
+				processUpdates();
+				processSelected();
+				deadline = tick(System.currentTimeMillis());
+			} catch (IOException e) {
+				System.err.println("Error in selecting telnet connections");
+				e.printStackTrace();
+			}
+		}
+	}
+
+	public static synchronized TelnetSelector getInstance() {
+		if (instance == null) {
+			try {
+				instance = new TelnetSelector();
+			} catch (IOException e) {
+				//nothing would work without one
+				throw new IllegalStateException("Could not open a selector", e);
+			}
+		}
+		return instance;
+	}
+}
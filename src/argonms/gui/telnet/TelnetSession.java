@@ -0,0 +1,399 @@
+/*
+ * ArgonMS Server Manager - a process launcher and organizer utilizing Swing.
+ * Copyright (C) 2011-2013  GoldenKevin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package argonms.gui.telnet;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+/**
+ * One connection to a telnet server, which is reconnected with a growing
+ * delay whenever it is lost until disconnect is called. All of the I/O is done
+ * on the TelnetSelector thread; the public methods only ask it to act. Input
+ * waits in a queue of its own for each session, which is bounded so that a
+ * server that stops reading can't make the launcher hold on to everything
+ * that is typed into it.
+ * @author GoldenKevin
+ */
+public class TelnetSession {
+	/**
+	 * Receives what happens to a session. Both methods are called on the
+	 * TelnetSelector thread, so they must not block.
+	 */
+	public interface Listener {
+		/**
+		 * The contents of buf may be overwritten as soon as this method
+		 * returns.
+		 * @return how many of the given chars were taken. the rest are
+		 * offered again a little later, and no more is read from the server
+		 * until then
+		 */
+		public int output(char[] buf, int offset, int length);
+
+		public void statusChanged(String message, boolean connected);
+	}
+
+	private static final int READ_BUFFER_SIZE = 8192;
+	//bounds how much input may wait for a server that does not read it
+	private static final int MAX_QUEUED_BYTES = 64 * 1024;
+	private static final int MIN_RECONNECT_DELAY = 1000; //in ms
+	private static final int MAX_RECONNECT_DELAY = 30000; //in ms
+	//how often to offer output again that was not taken, in ms
+	private static final int OUTPUT_RETRY_INTERVAL = 50;
+
+	private static final int IDLE = 0, CONNECTING = 1, CONNECTED = 2, WAITING = 3;
+
+	private final Listener listener;
+	private final Charset charset;
+	//requested by the EDT, acted on by the selector thread
+	private String host;
+	private int port;
+	private boolean wanted;
+	private boolean closed;
+	private final Queue<ByteBuffer> writes;
+	private int queuedBytes;
+
+	//only touched by the selector thread
+	private final TelnetCodec codec;
+	private final CharsetDecoder decoder;
+	private final ByteBuffer readBuffer, data, replies;
+	private final CharBuffer chars;
+	private SocketChannel channel;
+	private SelectionKey key;
+	private int state;
+	private int failures;
+	private long reconnectAt;
+	private String target;
+
+	public TelnetSession(Listener listener) {
+		this.listener = listener;
+		charset = Charset.defaultCharset();
+		writes = new ArrayDeque<ByteBuffer>();
+		codec = new TelnetCodec();
+		decoder = charset.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+		//room for one read on top of what is left of a multibyte char
+		data = ByteBuffer.allocate(READ_BUFFER_SIZE + 16);
+		replies = ByteBuffer.allocate(READ_BUFFER_SIZE);
+		chars = CharBuffer.allocate(READ_BUFFER_SIZE + 16);
+		chars.flip();
+	}
+
+	/**
+	 * Connects to the given server, and keeps reconnecting to it whenever
+	 * the connection is lost.
+	 */
+	public void connect(String host, int port) {
+		synchronized (this) {
+			this.host = host;
+			this.port = port;
+			wanted = true;
+		}
+		TelnetSelector.getInstance().update(this);
+	}
+
+	public void disconnect() {
+		synchronized (this) {
+			wanted = false;
+		}
+		TelnetSelector.getInstance().update(this);
+	}
+
+	/**
+	 * Disconnects for good, and lets go of everything that is held.
+	 */
+	public void close() {
+		synchronized (this) {
+			wanted = false;
+			closed = true;
+		}
+		TelnetSelector.getInstance().update(this);
+	}
+
+	/**
+	 * Sends the given text to the server. Newlines are sent as CR LF.
+	 * @return false if the session is not connected, or if too much of what
+	 * was sent before is still waiting to be written
+	 */
+	public boolean send(String text) {
+		ByteBuffer encoded = TelnetCodec.encode(text, charset);
+		synchronized (this) {
+			if (!wanted || queuedBytes + encoded.remaining() > MAX_QUEUED_BYTES)
+				return false;
+			writes.add(encoded);
+			queuedBytes += encoded.remaining();
+		}
+		TelnetSelector.getInstance().update(this);
+		return true;
+	}
+
+	synchronized boolean isClosed() {
+		return closed;
+	}
+
+	private void setInterest() {
+		if (key == null || !key.isValid())
+			return;
+		int ops;
+		if (state == CONNECTING) {
+			ops = SelectionKey.OP_CONNECT;
+		} else {
+			ops = chars.hasRemaining() ? 0 : SelectionKey.OP_READ;
+			synchronized (this) {
+				if (!writes.isEmpty())
+					ops |= SelectionKey.OP_WRITE;
+			}
+		}
+		key.interestOps(ops);
+	}
+
+	private void open(Selector selector) {
+		String connectHost;
+		int connectPort;
+		synchronized (this) {
+			connectHost = host;
+			connectPort = port;
+		}
+		target = connectHost + ':' + connectPort;
+		codec.reset();
+		decoder.reset();
+		data.clear();
+		chars.clear();
+		chars.flip();
+		synchronized (this) {
+			//don't send what was typed into an older connection
+			writes.clear();
+			queuedBytes = 0;
+		}
+		try {
+			channel = SocketChannel.open();
+			channel.configureBlocking(false);
+			key = channel.register(selector, 0, this);
+			state = CONNECTING;
+			listener.statusChanged("Connecting to " + target, false);
+			if (channel.connect(new InetSocketAddress(connectHost, connectPort)))
+				connected();
+			else
+				setInterest();
+		} catch (IOException e) {
+			lost("Could not connect to " + target + ": " + e.getMessage());
+		}
+	}
+
+	private void connected() {
+		state = CONNECTED;
+		failures = 0;
+		listener.statusChanged("Connected to " + target, true);
+		setInterest();
+	}
+
+	private void closeChannel() {
+		if (key != null) {
+			key.cancel();
+			key = null;
+		}
+		if (channel != null) {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				System.err.println("Error in closing telnet connection to " + target);
+				e.printStackTrace();
+			}
+			channel = null;
+		}
+	}
+
+	/**
+	 * Closes the connection after it failed, and tries again later.
+	 */
+	private void lost(String reason) {
+		closeChannel();
+		failures++;
+		long delay = Math.min((long) MIN_RECONNECT_DELAY << Math.min(failures - 1, 5), MAX_RECONNECT_DELAY);
+		reconnectAt = System.currentTimeMillis() + delay;
+		state = WAITING;
+		listener.statusChanged(reason + " - retrying in " + (delay + 500) / 1000 + "s", false);
+	}
+
+	/**
+	 * Acts on whatever the EDT asked for since the last time.
+	 */
+	void update(Selector selector) {
+		boolean connect, moved;
+		synchronized (this) {
+			connect = wanted;
+			moved = !(host + ':' + port).equals(target);
+		}
+		if (connect && state != IDLE && moved) {
+			//asked to connect somewhere else
+			closeChannel();
+			failures = 0;
+			open(selector);
+		} else if (connect && state == IDLE) {
+			open(selector);
+		} else if (!connect && state != IDLE) {
+			closeChannel();
+			state = IDLE;
+			failures = 0;
+			listener.statusChanged("Disconnected", false);
+		} else {
+			setInterest();
+		}
+	}
+
+	/**
+	 * Hands output that was decoded to the listener.
+	 * @return false if the listener did not take all of it
+	 */
+	private boolean pump() {
+		while (true) {
+			while (chars.hasRemaining()) {
+				int taken = listener.output(chars.array(), chars.arrayOffset() + chars.position(), chars.remaining());
+				if (taken == 0)
+					return false;
+				chars.position(chars.position() + taken);
+			}
+			chars.clear();
+			data.flip();
+			decoder.decode(data, chars, false);
+			data.compact();
+			chars.flip();
+			if (!chars.hasRemaining())
+				return true;
+		}
+	}
+
+	private void read() throws IOException {
+		int length = channel.read(readBuffer);
+		if (length == -1) {
+			lost("Connection to " + target + " was closed");
+			return;
+		}
+		readBuffer.flip();
+		codec.receive(readBuffer, data, replies);
+		readBuffer.clear();
+		if (replies.position() != 0) {
+			replies.flip();
+			ByteBuffer reply = ByteBuffer.allocate(replies.remaining());
+			reply.put(replies).flip();
+			replies.clear();
+			synchronized (this) {
+				//always let these through, since the server waits for them
+				writes.add(reply);
+				queuedBytes += reply.remaining();
+			}
+		}
+		pump();
+		setInterest();
+	}
+
+	private void write() throws IOException {
+		while (true) {
+			ByteBuffer next;
+			synchronized (this) {
+				next = writes.peek();
+			}
+			if (next == null)
+				break;
+			int written = channel.write(next);
+			synchronized (this) {
+				queuedBytes -= written;
+				if (!next.hasRemaining())
+					writes.poll();
+			}
+			if (next.hasRemaining())
+				//the socket's send buffer is full
+				break;
+		}
+		setInterest();
+	}
+
+	/**
+	 * Called by the selector thread when this session threw, e.g. because of
+	 * a bug in its listener. Drops the connection rather than retrying, since
+	 * the same thing would most likely happen again, but it may still be
+	 * connected again on purpose.
+	 */
+	void failed(RuntimeException e) {
+		synchronized (this) {
+			wanted = false;
+		}
+		closeChannel();
+		state = IDLE;
+		failures = 0;
+		chars.clear();
+		chars.flip();
+		try {
+			listener.statusChanged("Disconnected after an error: " + e, false);
+		} catch (RuntimeException ex) {
+			//the listener may be what threw in the first place
+		}
+	}
+
+	/**
+	 * Called by the selector thread when the channel of this session is
+	 * ready.
+	 */
+	void handle(SelectionKey selected) {
+		try {
+			if (selected.isConnectable()) {
+				if (channel.finishConnect())
+					connected();
+				return;
+			}
+			if (selected.isReadable())
+				read();
+			if (state == CONNECTED && selected.isValid() && selected.isWritable())
+				write();
+		} catch (IOException e) {
+			lost((state == CONNECTING ? "Could not connect to " : "Lost connection to ") + target + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Called by the selector thread after every select.
+	 * @return the time at which this should be called again at the latest,
+	 * or Long.MAX_VALUE if there is nothing to wait for
+	 */
+	long tick(Selector selector, long now) {
+		if (state == WAITING) {
+			if (now < reconnectAt)
+				return reconnectAt;
+			state = IDLE;
+			update(selector);
+		}
+		if (state == CONNECTED && chars.hasRemaining()) {
+			if (!pump())
+				return now + OUTPUT_RETRY_INTERVAL;
+			setInterest();
+		}
+		return state == WAITING ? reconnectAt : Long.MAX_VALUE;
+	}
+}